@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+
+/**
+ * A forward-only cursor over an OpenStack listing. Only the page being walked is
+ * referenced, so memory stays bounded by the page size rather than by the tenant size,
+ * and callers can stop fetching as soon as they have what they need.
+ *
+ * @param <T> the type of the listed resources
+ */
+public abstract class ListingCursor<T> extends AbstractIterator<T> {
+
+	/**
+	 * Page size value meaning "let the server pick its default page size".
+	 */
+	public static final int SERVER_DEFAULT_PAGE_SIZE = 0;
+
+	private Iterator<? extends T> currentPage = Collections.<T>emptyIterator();
+	private int pagesFetched = 0;
+
+	/**
+	 * Fetches the next page of the listing.
+	 *
+	 * @return the next page, or absent if the listing is exhausted
+	 */
+	protected abstract Optional<? extends Iterable<? extends T>> fetchNextPage();
+
+	@Override
+	protected T computeNext() {
+		while (!currentPage.hasNext()) {
+			Optional<? extends Iterable<? extends T>> page = fetchNextPage();
+			if (!page.isPresent()) {
+				return endOfData();
+			}
+			pagesFetched++;
+			currentPage = page.get().iterator();
+		}
+		return currentPage.next();
+	}
+
+	/**
+	 * Returns the number of pages fetched so far.
+	 *
+	 * @return the number of pages fetched so far
+	 */
+	public int getPagesFetched() {
+		return pagesFetched;
+	}
+
+	/**
+	 * Walks the listing and collects the resources whose key is one of the wanted keys.
+	 * The walk stops as soon as every wanted key has been matched {@code expectedPerKey}
+	 * times; with {@code expectedPerKey <= 0} the whole listing is walked.
+	 *
+	 * @param wantedKeys     the keys to look for
+	 * @param keyFunction    extracts the key from a resource, may return null
+	 * @param expectedPerKey the number of resources expected for each key
+	 * @return the matched resources by key
+	 */
+	public <K> ListMultimap<K, T> collect(Collection<K> wantedKeys,
+			Function<? super T, K> keyFunction, int expectedPerKey) {
+		ListMultimap<K, T> matched = ArrayListMultimap.create();
+		if (wantedKeys == null || wantedKeys.isEmpty()) {
+			return matched;
+		}
+		Set<K> wanted = ImmutableSet.copyOf(wantedKeys);
+		Map<K, Integer> remaining = Maps.newHashMap();
+		if (expectedPerKey > 0) {
+			for (K key : wanted) {
+				remaining.put(key, expectedPerKey);
+			}
+		}
+		while (hasNext()) {
+			T resource = next();
+			K key = keyFunction.apply(resource);
+			if (key == null || !wanted.contains(key)) {
+				continue;
+			}
+			matched.put(key, resource);
+			if (expectedPerKey > 0) {
+				Integer left = remaining.get(key);
+				if (left != null) {
+					if (left <= 1) {
+						remaining.remove(key);
+					} else {
+						remaining.put(key, left - 1);
+					}
+				}
+				if (remaining.isEmpty()) {
+					break;
+				}
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Creates a cursor over a listing that is returned as a single page.
+	 *
+	 * @param listing the listing
+	 * @return the cursor
+	 */
+	public static <T> ListingCursor<T> of(final Iterable<? extends T> listing) {
+		return new ListingCursor<T>() {
+			private boolean fetched = false;
+
+			@Override
+			protected Optional<? extends Iterable<? extends T>> fetchNextPage() {
+				if (fetched || listing == null) {
+					return Optional.absent();
+				}
+				fetched = true;
+				return Optional.of(listing);
+			}
+		};
+	}
+
+	/**
+	 * Creates a cursor over a jclouds paged listing. Pages are requested lazily as the
+	 * cursor advances.
+	 *
+	 * @param listing the paged listing
+	 * @return the cursor
+	 */
+	public static <T> ListingCursor<T> ofPages(final PagedIterable<T> listing) {
+		return new ListingCursor<T>() {
+			private Iterator<IterableWithMarker<T>> pages;
+
+			@Override
+			protected Optional<? extends Iterable<? extends T>> fetchNextPage() {
+				if (listing == null) {
+					return Optional.absent();
+				}
+				if (pages == null) {
+					pages = listing.iterator();
+				}
+				return pages.hasNext() ? Optional.of(pages.next()) : Optional.<Iterable<T>>absent();
+			}
+		};
+	}
+
+	/**
+	 * Creates a cursor which requests pages of at most {@code pageSize} resources through
+	 * the given lister, following the marker of each page to the next one.
+	 *
+	 * @param lister   issues the listing request for the given pagination options
+	 * @param pageSize the page size
+	 * @return the cursor
+	 */
+	public static <T> ListingCursor<T> ofPaginated(Function<PaginationOptions, PaginatedCollection<T>> lister,
+			int pageSize) {
+		return ofPaginated(lister, new PaginationOptions().limit(pageSize));
+	}
+
+	/**
+	 * Creates a cursor which requests the first page with the given pagination options,
+	 * then follows the marker of each page to the next one.
+	 *
+	 * @param lister    issues the listing request for the given pagination options
+	 * @param firstPage the pagination options of the first page
+	 * @return the cursor
+	 */
+	public static <T> ListingCursor<T> ofPaginated(final Function<PaginationOptions, PaginatedCollection<T>> lister,
+			final PaginationOptions firstPage) {
+		return new ListingCursor<T>() {
+			private PaginationOptions nextOptions = firstPage;
+
+			@Override
+			protected Optional<? extends Iterable<? extends T>> fetchNextPage() {
+				if (nextOptions == null) {
+					return Optional.absent();
+				}
+				PaginatedCollection<T> page = lister.apply(nextOptions);
+				if (page == null) {
+					nextOptions = null;
+					return Optional.absent();
+				}
+				// The options of the next page come from the "next" link, marker and limit included.
+				nextOptions = page.nextMarker().isPresent() ? page.nextPaginationOptions() : null;
+				return Optional.of(page);
+			}
+		};
+	}
+}
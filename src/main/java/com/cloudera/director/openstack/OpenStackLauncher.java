@@ -38,6 +38,11 @@ public class OpenStackLauncher extends AbstractLauncher {
 	@VisibleForTesting
 	protected Config config = null;
 
+	/**
+	 * What the providers share for the lifetime of the plugin.
+	 */
+	private final PluginContext pluginContext = new PluginContext();
+
 	public OpenStackLauncher() {
 		super(Collections.singletonList(OpenStackProvider.METADATA), null);
 	}
@@ -57,6 +62,14 @@ public class OpenStackLauncher extends AbstractLauncher {
 				throw new RuntimeException(e);
 			}
 		}
+
+		// Close the broker connections of the notification listeners along with Director.
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				pluginContext.stop();
+			}
+		}, "openstack-plugin-shutdown"));
 	}
 	
 	/**
@@ -85,7 +98,7 @@ public class OpenStackLauncher extends AbstractLauncher {
 		// At this point the configuration object will already contain
 		// the required data for authentication.
 		
-		return  new OpenStackProvider(configuration, openstackConfig, localizationContext);
+		return  new OpenStackProvider(configuration, openstackConfig, pluginContext, localizationContext);
 	}
 
 }
@@ -57,6 +57,7 @@ public class OpenStackProvider extends AbstractCloudProvider {
 
 	private OpenStackCredentials credentials;
 	private Config openstackConfig;
+	private PluginContext pluginContext;
 
 	protected OpenStackCredentials getOpenStackCredentials(Configured configuration,
 			LocalizationContext localizationContext) {
@@ -80,8 +81,22 @@ public class OpenStackProvider extends AbstractCloudProvider {
 
 	public OpenStackProvider(Configured configuration, Config openstackConfig,
 			LocalizationContext rootLocalizationContext) {
+		this(configuration, openstackConfig, new PluginContext(), rootLocalizationContext);
+	}
+
+	/**
+	 * Creates a cloud provider whose resource providers share the given plugin context.
+	 *
+	 * @param configuration           the configuration
+	 * @param openstackConfig         the OpenStack config
+	 * @param pluginContext           the plugin context
+	 * @param rootLocalizationContext the root localization context
+	 */
+	public OpenStackProvider(Configured configuration, Config openstackConfig,
+			PluginContext pluginContext, LocalizationContext rootLocalizationContext) {
 		super(METADATA, rootLocalizationContext);
 		this.openstackConfig = openstackConfig;
+		this.pluginContext = pluginContext;
 		this.credentials = getOpenStackCredentials(configuration, rootLocalizationContext);
 	}
 
@@ -107,11 +122,11 @@ public class OpenStackProvider extends AbstractCloudProvider {
 			getProviderMetadata().getResourceProviderMetadata(resourceProviderId);
 		if (resourceProviderMetadata.getId().equals(NovaProvider.METADATA.getId())) {
 			return new NovaProvider(configuration, this.credentials, this.openstackConfig,
-				getLocalizationContext());
+				this.pluginContext, getLocalizationContext());
 		}
 
 		if (resourceProviderMetadata.getId().equals(TroveProvider.METADATA.getId())) {
-			return new TroveProvider(configuration, this.credentials, getLocalizationContext());
+			return new TroveProvider(configuration, this.credentials, this.pluginContext, getLocalizationContext());
 		}
 
 		throw new IllegalArgumentException("No such provider: " + resourceProviderMetadata.getId());
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A JSON client of an OpenStack service jclouds does not cover, authenticated with the
+ * Keystone v2 identity API the other OpenStack APIs of the plugin go through. The
+ * endpoint of the service in the region is taken from the service catalog, and the
+ * token is renewed whenever the service turns it down.
+ */
+public class OpenStackRestClient {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OpenStackRestClient.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+	private static final int READ_TIMEOUT_MILLIS = 120000;
+
+	private final String identityEndpoint;
+	private final String tenantName;
+	private final String userName;
+	private final String password;
+	private final String region;
+	private final String serviceType;
+
+	private String token;
+	private String projectId;
+	private String serviceEndpoint;
+
+	/**
+	 * Creates a client of the given type of service for the given credentials. Nothing
+	 * is requested until the first call.
+	 *
+	 * @param credentials the OpenStack credentials
+	 * @param region      the region
+	 * @param serviceType the type of the service in the catalog, such as orchestration
+	 */
+	public OpenStackRestClient(OpenStackCredentials credentials, String region, String serviceType) {
+		List<String> identity = Splitter.on(':').limit(2).splitToList(credentials.getIdentity());
+		this.identityEndpoint = trimTrailingSlash(credentials.getEndpoint());
+		this.tenantName = identity.get(0);
+		this.userName = identity.size() > 1 ? identity.get(1) : identity.get(0);
+		this.password = credentials.getCredential();
+		this.region = region;
+		this.serviceType = serviceType;
+	}
+
+	/**
+	 * Sends a request to the service, authenticating first if need be.
+	 *
+	 * @param method the HTTP method
+	 * @param path   the path under the endpoint of the service, with its query
+	 * @param body   the request body, or null
+	 * @return the response
+	 * @throws IllegalStateException if the service cannot be reached, or is not in the
+	 *                               catalog of the region
+	 */
+	public Response request(String method, String path, JsonObject body) {
+		String currentToken;
+		String endpoint;
+		synchronized (this) {
+			if (token == null) {
+				authenticate();
+			}
+			currentToken = token;
+			endpoint = serviceEndpoint;
+		}
+		Response response = send(method, endpoint + path, currentToken, body);
+		if (response.status == 401) {
+			LOG.info("The {} service turned the token down, authenticating again.", serviceType);
+			synchronized (this) {
+				if (currentToken.equals(token)) {
+					authenticate();
+				}
+				currentToken = token;
+				endpoint = serviceEndpoint;
+			}
+			response = send(method, endpoint + path, currentToken, body);
+		}
+		return response;
+	}
+
+	/**
+	 * Returns whether the catalog has an endpoint of the service in the region,
+	 * authenticating first if need be.
+	 *
+	 * @return whether the service is available
+	 * @throws IllegalStateException if Keystone cannot be reached
+	 */
+	public synchronized boolean isAvailable() {
+		if (token == null) {
+			try {
+				authenticate();
+			} catch (ServiceNotFoundException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the ID of the project the token is scoped to, authenticating first if need
+	 * be. Quotas are looked up by project ID, which may differ from the tenant name of
+	 * the credentials.
+	 *
+	 * @return the project ID
+	 * @throws IllegalStateException if the service cannot be reached, or is not in the
+	 *                               catalog of the region
+	 */
+	public synchronized String getProjectId() {
+		if (token == null) {
+			authenticate();
+		}
+		return projectId;
+	}
+
+	private void authenticate() {
+		JsonObject passwordCredentials = new JsonObject();
+		passwordCredentials.addProperty("username", userName);
+		passwordCredentials.addProperty("password", password);
+		JsonObject auth = new JsonObject();
+		auth.addProperty("tenantName", tenantName);
+		auth.add("passwordCredentials", passwordCredentials);
+		JsonObject body = new JsonObject();
+		body.add("auth", auth);
+
+		Response response = send("POST", identityEndpoint + "/tokens", null, body);
+		response.expect(200, "authenticate to " + identityEndpoint);
+		JsonObject access = response.json().getAsJsonObject("access");
+		String endpoint = null;
+		for (JsonElement service : access.getAsJsonArray("serviceCatalog")) {
+			if (!serviceType.equals(service.getAsJsonObject().get("type").getAsString())) {
+				continue;
+			}
+			JsonArray endpoints = service.getAsJsonObject().getAsJsonArray("endpoints");
+			for (JsonElement candidate : endpoints) {
+				JsonElement candidateRegion = candidate.getAsJsonObject().get("region");
+				if (candidateRegion != null && region.equals(candidateRegion.getAsString())) {
+					endpoint = candidate.getAsJsonObject().get("publicURL").getAsString();
+				}
+			}
+		}
+		if (endpoint == null) {
+			throw new ServiceNotFoundException("No " + serviceType + " endpoint in region " + region);
+		}
+		JsonObject accessToken = access.getAsJsonObject("token");
+		token = accessToken.get("id").getAsString();
+		JsonObject tenant = accessToken.getAsJsonObject("tenant");
+		projectId = tenant == null ? null : tenant.get("id").getAsString();
+		serviceEndpoint = trimTrailingSlash(endpoint);
+	}
+
+	private static Response send(String method, String url, String token, JsonObject body) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(url).openConnection();
+			connection.setRequestMethod(method);
+			connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+			connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+			connection.setRequestProperty("Accept", "application/json");
+			if (token != null) {
+				connection.setRequestProperty("X-Auth-Token", token);
+			}
+			if (body != null) {
+				byte[] bytes = body.toString().getBytes(UTF8);
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/json");
+				connection.setFixedLengthStreamingMode(bytes.length);
+				OutputStream out = connection.getOutputStream();
+				try {
+					out.write(bytes);
+				} finally {
+					out.close();
+				}
+			}
+			int status = connection.getResponseCode();
+			InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+			String content = "";
+			if (in != null) {
+				try {
+					content = new String(ByteStreams.toByteArray(in), UTF8);
+				} finally {
+					in.close();
+				}
+			}
+			return new Response(status, content);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to reach " + url + ": " + e.getMessage(), e);
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Encodes a path segment or query parameter value.
+	 *
+	 * @param value the value
+	 * @return the encoded value
+	 */
+	public static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String trimTrailingSlash(String url) {
+		return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+	}
+
+	/**
+	 * Thrown when the catalog has no endpoint of the service in the region.
+	 */
+	private static final class ServiceNotFoundException extends IllegalStateException {
+		private static final long serialVersionUID = 1L;
+
+		private ServiceNotFoundException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * A response of the service.
+	 */
+	public static final class Response {
+		private final int status;
+		private final String content;
+
+		private Response(int status, String content) {
+			this.status = status;
+			this.content = content;
+		}
+
+		/**
+		 * Returns the HTTP status.
+		 *
+		 * @return the HTTP status
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * Checks the HTTP status.
+		 *
+		 * @param expectedStatus the expected HTTP status
+		 * @param action         what the request was for, for the error message
+		 * @throws IllegalStateException if the status is not the expected one
+		 */
+		public void expect(int expectedStatus, String action) {
+			if (status != expectedStatus) {
+				throw new IllegalStateException(String.format("Unable to %s: HTTP %d %s", action, status, content));
+			}
+		}
+
+		/**
+		 * Parses the response body.
+		 *
+		 * @return the response body
+		 */
+		public JsonObject json() {
+			return new JsonParser().parse(content).getAsJsonObject();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.util.List;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * A notification emitted by an OpenStack service through oslo.messaging, such as
+ * {@code compute.instance.create.end} or {@code volume.attach.end}.
+ */
+public final class OsloNotification {
+
+	/**
+	 * The payload keys holding the IDs of the resources a notification is about.
+	 */
+	private static final List<String> RESOURCE_ID_KEYS =
+			ImmutableList.of("instance_id", "instance_uuid", "volume_id");
+
+	private final String eventType;
+	private final List<String> resourceIds;
+
+	private OsloNotification(String eventType, List<String> resourceIds) {
+		this.eventType = eventType;
+		this.resourceIds = resourceIds;
+	}
+
+	/**
+	 * Returns the event type.
+	 *
+	 * @return the event type
+	 */
+	public String getEventType() {
+		return eventType;
+	}
+
+	/**
+	 * Returns the IDs of the resources the notification is about.
+	 *
+	 * @return the resource IDs
+	 */
+	public List<String> getResourceIds() {
+		return resourceIds;
+	}
+
+	/**
+	 * Parses a notification message body. Both the bare message and the version 2
+	 * envelope, which wraps the message as a string under {@code oslo.message}, are
+	 * accepted.
+	 *
+	 * @param body the message body
+	 * @return the notification, absent if the body is not a notification
+	 */
+	public static Optional<OsloNotification> parse(String body) {
+		try {
+			JsonElement element = new JsonParser().parse(body);
+			if (!element.isJsonObject()) {
+				return Optional.absent();
+			}
+			JsonObject message = element.getAsJsonObject();
+			JsonElement envelope = message.get("oslo.message");
+			if (envelope != null && envelope.isJsonPrimitive()) {
+				message = new JsonParser().parse(envelope.getAsString()).getAsJsonObject();
+			}
+			JsonElement eventType = message.get("event_type");
+			if (eventType == null || !eventType.isJsonPrimitive()
+					|| !message.has("payload") || !message.get("payload").isJsonObject()) {
+				return Optional.absent();
+			}
+			JsonObject payload = message.getAsJsonObject("payload");
+			ImmutableList.Builder<String> resourceIds = ImmutableList.builder();
+			for (String key : RESOURCE_ID_KEYS) {
+				JsonElement value = payload.get(key);
+				if (value != null && value.isJsonPrimitive()) {
+					resourceIds.add(value.getAsString());
+				}
+			}
+			return Optional.of(new OsloNotification(eventType.getAsString(), resourceIds.build()));
+		} catch (JsonParseException e) {
+			return Optional.absent();
+		} catch (IllegalStateException e) {
+			return Optional.absent();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+/**
+ * What the providers of the plugin share for as long as the launcher lives. Director
+ * creates new cloud and resource providers for about every call, so the broker
+ * connections, threads and caches which are to outlive a call are kept here rather
+ * than in the providers, and released when the plugin shuts down.
+ */
+public class PluginContext {
+
+	/**
+	 * Wakes up the waiters of every provider when a notification is received.
+	 */
+	private final ResourceEvents resourceEvents = new ResourceEvents();
+
+	/**
+	 * The notification listeners by broker URI and exchanges.
+	 */
+	private final Map<String, NotificationListener> notificationListeners = Maps.newHashMap();
+
+	/**
+	 * The state shared by the providers of the same configuration, by key.
+	 */
+	private final Map<String, Object> sharedState = Maps.newHashMap();
+
+	private boolean stopped = false;
+
+	/**
+	 * Returns the events published by the notification listeners.
+	 *
+	 * @return the resource events
+	 */
+	public ResourceEvents getResourceEvents() {
+		return resourceEvents;
+	}
+
+	/**
+	 * Listens to the notifications of the given exchanges from a broker, unless already
+	 * listening to them. The notifications are published to the resource events.
+	 *
+	 * @param brokerUri the broker URI
+	 * @param exchanges the control exchanges of the services to listen to
+	 * @throws IllegalArgumentException if the broker URI is invalid
+	 */
+	public synchronized void listenToNotifications(String brokerUri, Collection<String> exchanges) {
+		String key = brokerUri + " " + ImmutableSortedSet.copyOf(exchanges);
+		if (stopped || notificationListeners.containsKey(key)) {
+			return;
+		}
+		NotificationListener listener = newNotificationListener(brokerUri, exchanges);
+		notificationListeners.put(key, listener);
+		listener.start();
+	}
+
+	/**
+	 * Returns the state shared under the given key, creating it on first use. The providers
+	 * of the same OpenStack endpoint, identity and region share their wait scheduler,
+	 * caches and completing allocations this way, so that they are not lost, nor
+	 * duplicated, with every new provider.
+	 *
+	 * @param key      the key of the state, naming what it is and the configuration it is for
+	 * @param type     the type of the state
+	 * @param supplier creates the state on first use
+	 * @return the shared state
+	 * @throws ClassCastException if the key is already used for state of another type
+	 */
+	public synchronized <T> T getSharedState(String key, Class<T> type, Supplier<? extends T> supplier) {
+		Object state = sharedState.get(key);
+		if (state == null) {
+			state = supplier.get();
+			sharedState.put(key, state);
+		}
+		return type.cast(state);
+	}
+
+	@VisibleForTesting
+	NotificationListener newNotificationListener(String brokerUri, Collection<String> exchanges) {
+		return new NotificationListener(brokerUri, exchanges, resourceEvents);
+	}
+
+	/**
+	 * Stops the notification listeners, closing their broker connections.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		for (NotificationListener listener : notificationListeners.values()) {
+			listener.stop();
+		}
+		notificationListeners.clear();
+	}
+}
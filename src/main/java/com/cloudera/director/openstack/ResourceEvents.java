@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hands the events published for OpenStack resources to the listeners, such as the
+ * {@link WaitScheduler}, which sweeps right away when a resource it waits on has an
+ * event. Events are not kept: a listener added later, or a resource nobody waits on,
+ * misses them, and the waits fall back to their periodic sweeps.
+ */
+public class ResourceEvents {
+
+	/**
+	 * Receives every published event.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when an event is published.
+		 *
+		 * @param resourceId the OpenStack resource ID
+		 * @param eventType  the event type
+		 */
+		void onEvent(String resourceId, String eventType);
+	}
+
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	/**
+	 * Publishes an event for the given resource to the listeners.
+	 *
+	 * @param resourceId the OpenStack resource ID
+	 * @param eventType  the event type
+	 */
+	public void publish(String resourceId, String eventType) {
+		if (resourceId == null) {
+			return;
+		}
+		for (Listener listener : listeners) {
+			listener.onEvent(resourceId, eventType);
+		}
+	}
+
+	/**
+	 * Adds a listener receiving every event published from now on.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+}
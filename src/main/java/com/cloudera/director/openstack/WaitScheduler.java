@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.director.spi.v1.model.exception.PluginExceptionConditionAccumulator;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Waits on OpenStack resources on behalf of every caller with a single thread. A wait
+ * registers a condition on a resource and gets a future back. On each tick the scheduler
+ * checks every resource type once, with one batched {@link Sweep} covering all of the
+ * pending resources of that type, completes the futures of the waits whose condition
+ * holds and expires the waits past their deadline. A wait registered while others are
+ * pending is checked on the next tick along with them, however many are registered in
+ * between, rather than with a sweep of its own. A wait registered while none is pending,
+ * or an event published to {@link ResourceEvents} for a pending resource, triggers
+ * a sweep right away. A sweep which fails is tried again on the next tick, and only fails
+ * its own waits once it has failed {@link #MAX_SWEEP_FAILURES} times in a row.
+ * <p>
+ * The thread is started on the first wait and stops once no wait is pending, so an idle
+ * scheduler holds no thread. The providers of the same configuration share a scheduler,
+ * so that their waits are checked together.
+ */
+public class WaitScheduler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WaitScheduler.class);
+
+	/**
+	 * How many sweeps of a type may fail in a row before the waits on that type fail, as
+	 * a listing fails now and then, such as while an API node restarts.
+	 */
+	static final int MAX_SWEEP_FAILURES = 3;
+
+	/**
+	 * Fetches the current state of a batch of resources of one type, typically with a
+	 * single listing call.
+	 *
+	 * @param <S> the type of the resource state
+	 */
+	public interface Sweep<S> {
+
+		/**
+		 * Fetches the current state of the given resources.
+		 *
+		 * @param resourceIds the IDs of the resources to check
+		 * @return the states by resource ID, without the resources which do not exist
+		 * @throws Exception if the resources cannot be checked
+		 */
+		Map<String, S> fetch(Set<String> resourceIds) throws Exception;
+	}
+
+	/**
+	 * A sweep which gets a lone resource directly and lists the resources otherwise, as a
+	 * single get is cheaper than a listing but a listing is cheaper than several gets.
+	 *
+	 * @param <S> the type of the resource state
+	 */
+	public abstract static class ListingSweep<S> implements Sweep<S> {
+
+		/**
+		 * Gets a single resource.
+		 *
+		 * @param resourceId the resource ID
+		 * @return the resource, or null if it does not exist
+		 */
+		protected abstract S get(String resourceId);
+
+		/**
+		 * Lists the resources of this type.
+		 *
+		 * @return the resources
+		 */
+		protected abstract Iterable<? extends S> list();
+
+		/**
+		 * Returns the ID of a resource.
+		 *
+		 * @param resource the resource
+		 * @return the resource ID
+		 */
+		protected abstract String getId(S resource);
+
+		@Override
+		public Map<String, S> fetch(Set<String> resourceIds) {
+			Map<String, S> resourcesById = Maps.newHashMap();
+			if (resourceIds.size() == 1) {
+				String resourceId = resourceIds.iterator().next();
+				S resource = get(resourceId);
+				if (resource != null) {
+					resourcesById.put(resourceId, resource);
+				}
+				return resourcesById;
+			}
+			// Stop walking the listing once every pending resource is found.
+			ListMultimap<String, S> found = ListingCursor.<S>of(list()).collect(resourceIds,
+					new Function<S, String>() {
+						@Override
+						public String apply(S resource) {
+							return getId(resource);
+						}
+					}, 1);
+			for (Map.Entry<String, S> entry : found.entries()) {
+				resourcesById.put(entry.getKey(), entry.getValue());
+			}
+			return resourcesById;
+		}
+	}
+
+	private static final class Wait<S> {
+		private final Sweep<S> sweep;
+		private final String resourceId;
+		private final Predicate<? super S> condition;
+		private final long deadlineNanos;
+		private final SettableFuture<Boolean> future = SettableFuture.create();
+
+		private Wait(Sweep<S> sweep, String resourceId, Predicate<? super S> condition, long deadlineNanos) {
+			this.sweep = sweep;
+			this.resourceId = resourceId;
+			this.condition = condition;
+			this.deadlineNanos = deadlineNanos;
+		}
+	}
+
+	private final long tickNanos;
+	private final String threadName;
+
+	private final Object lock = new Object();
+	private final Set<Wait<?>> waits = Sets.newLinkedHashSet();
+	private final Multiset<String> pendingResourceIds = HashMultiset.create();
+	private boolean sweepRequested = false;
+	private Thread thread;
+
+	/*
+	 * The number of failures in a row by sweep, only used by the scheduler thread
+	 */
+	private final Map<Sweep<?>, Integer> failuresBySweep = Maps.newHashMap();
+
+	/**
+	 * Creates a scheduler.
+	 *
+	 * @param events     the events which trigger an early sweep, or null
+	 * @param tick       the time between two sweeps
+	 * @param unit       the time unit of the tick
+	 * @param threadName the name of the scheduler thread
+	 */
+	public WaitScheduler(ResourceEvents events, long tick, TimeUnit unit, String threadName) {
+		this.tickNanos = unit.toNanos(tick);
+		this.threadName = threadName;
+		if (events != null) {
+			events.addListener(new ResourceEvents.Listener() {
+				@Override
+				public void onEvent(String resourceId, String eventType) {
+					synchronized (lock) {
+						if (pendingResourceIds.contains(resourceId)) {
+							requestSweep();
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits until the given condition holds for a resource. The condition is given the
+	 * current state of the resource, or null once the resource does not exist.
+	 *
+	 * @param sweep      the sweep checking resources of this type
+	 * @param resourceId the OpenStack resource ID
+	 * @param condition  the condition to wait for
+	 * @param timeout    the maximum time to wait
+	 * @param unit       the time unit of the timeout
+	 * @return a future completing with true when the condition holds, false when the
+	 *         timeout elapses first, or failing if the resource cannot be checked
+	 */
+	public <S> ListenableFuture<Boolean> await(Sweep<S> sweep, String resourceId,
+			Predicate<? super S> condition, long timeout, TimeUnit unit) {
+		Wait<S> wait = new Wait<S>(sweep, resourceId, condition, System.nanoTime() + unit.toNanos(timeout));
+		synchronized (lock) {
+			waits.add(wait);
+			pendingResourceIds.add(resourceId);
+			// A busy scheduler leaves the wait for its next tick, rather than every wait
+			// sweeping on its own.
+			if (waits.size() == 1) {
+				requestSweep();
+			}
+			if (thread == null) {
+				thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						runSweeps();
+					}
+				}, threadName);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+		return wait.future;
+	}
+
+	/**
+	 * Returns the number of pending waits.
+	 *
+	 * @return the number of pending waits
+	 */
+	public int getPendingCount() {
+		synchronized (lock) {
+			return waits.size();
+		}
+	}
+
+	/**
+	 * Blocks until a wait completes. A failure to check the resource is recorded as an
+	 * error and counts as the condition not being met.
+	 *
+	 * @param wait        the wait
+	 * @param accumulator the exception condition accumulator
+	 * @return whether the condition was met
+	 */
+	public static boolean getResult(Future<Boolean> wait, PluginExceptionConditionAccumulator accumulator) {
+		try {
+			return wait.get();
+		} catch (ExecutionException e) {
+			accumulator.addError(null, e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			accumulator.addError(null, "Interrupted while waiting on OpenStack resources.");
+		}
+		return false;
+	}
+
+	private void requestSweep() {
+		sweepRequested = true;
+		lock.notifyAll();
+	}
+
+	private void runSweeps() {
+		while (true) {
+			Map<Sweep<?>, List<Wait<?>>> waitsBySweep = Maps.newLinkedHashMap();
+			synchronized (lock) {
+				long nextTick = System.nanoTime() + tickNanos;
+				while (!sweepRequested && !waits.isEmpty()) {
+					long remainingNanos = nextTick - System.nanoTime();
+					if (remainingNanos <= 0) {
+						break;
+					}
+					try {
+						TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+					} catch (InterruptedException e) {
+						// Only this class holds the thread; treat it as a spurious wakeup.
+					}
+				}
+				if (waits.isEmpty()) {
+					thread = null;
+					return;
+				}
+				sweepRequested = false;
+				for (Wait<?> wait : waits) {
+					List<Wait<?>> sweepWaits = waitsBySweep.get(wait.sweep);
+					if (sweepWaits == null) {
+						sweepWaits = Lists.newArrayList();
+						waitsBySweep.put(wait.sweep, sweepWaits);
+					}
+					sweepWaits.add(wait);
+				}
+			}
+			for (Map.Entry<Sweep<?>, List<Wait<?>>> entry : waitsBySweep.entrySet()) {
+				sweep(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void sweep(Sweep sweep, List<Wait<?>> sweepWaits) {
+		Set<String> resourceIds = Sets.newHashSet();
+		for (Wait<?> wait : sweepWaits) {
+			resourceIds.add(wait.resourceId);
+		}
+		Map<String, ?> states;
+		try {
+			states = sweep.fetch(resourceIds);
+			failuresBySweep.remove(sweep);
+		} catch (Exception e) {
+			// Only the waits of this sweep are affected, and they are checked again on the
+			// next tick until the sweep has failed too many times in a row.
+			Integer failures = failuresBySweep.get(sweep);
+			int failureCount = failures == null ? 1 : failures + 1;
+			boolean retry = failureCount < MAX_SWEEP_FAILURES;
+			if (retry) {
+				failuresBySweep.put(sweep, failureCount);
+				LOG.info("Unable to check the status of {} resource(s), checking again on the next tick: {}",
+						resourceIds.size(), e.getMessage());
+			} else {
+				failuresBySweep.remove(sweep);
+				LOG.warn("Unable to check the status of {} resource(s): {}", resourceIds.size(), e.getMessage());
+			}
+			long now = System.nanoTime();
+			for (Wait<?> wait : sweepWaits) {
+				if (!retry || wait.future.isCancelled() || now - wait.deadlineNanos >= 0) {
+					complete(wait, null, wait.future.isCancelled() ? null : e);
+				}
+			}
+			return;
+		}
+		long now = System.nanoTime();
+		for (Wait wait : sweepWaits) {
+			if (wait.future.isCancelled()) {
+				complete(wait, null, null);
+				continue;
+			}
+			try {
+				if (wait.condition.apply(states.get(wait.resourceId))) {
+					complete(wait, true, null);
+				} else if (now - wait.deadlineNanos >= 0) {
+					complete(wait, false, null);
+				}
+			} catch (RuntimeException e) {
+				complete(wait, null, e);
+			}
+		}
+	}
+
+	private void complete(Wait<?> wait, Boolean result, Exception failure) {
+		synchronized (lock) {
+			waits.remove(wait);
+			pendingResourceIds.remove(wait.resourceId);
+		}
+		if (failure != null) {
+			wait.future.setException(failure);
+		} else if (result != null) {
+			wait.future.set(result);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.cinder;
+
+import java.util.Map;
+
+/**
+ * The part of the Cinder volume API which jclouds does not cover, used to plan the
+ * capacity of allocations.
+ */
+public interface CinderLimitsApi {
+
+	/**
+	 * Returns the absolute limits of the project, the volume quotas along with what the
+	 * project uses of them, such as {@code maxTotalVolumes} and {@code totalVolumesUsed}.
+	 * Cinder keeps the usage itself, so that it is read without listing every volume.
+	 *
+	 * @return the absolute limits by name
+	 */
+	Map<String, Integer> getAbsoluteLimits();
+}
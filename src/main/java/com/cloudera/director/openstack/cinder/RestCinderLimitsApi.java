@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.cinder;
+
+import java.util.Map;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.OpenStackRestClient;
+import com.cloudera.director.openstack.OpenStackRestClient.Response;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A {@link CinderLimitsApi} over the Cinder v1 REST API, authenticated with the Keystone
+ * v2 identity API the other OpenStack APIs of the plugin go through. The volume endpoint
+ * of the region, which ends with the project ID, is taken from the service catalog.
+ */
+public class RestCinderLimitsApi implements CinderLimitsApi {
+
+	private static final String VOLUME_SERVICE_TYPE = "volume";
+
+	private final OpenStackRestClient client;
+
+	/**
+	 * Creates a Cinder limits API for the given credentials. Nothing is requested until
+	 * the first call.
+	 *
+	 * @param credentials the OpenStack credentials
+	 * @param region      the region
+	 */
+	public RestCinderLimitsApi(OpenStackCredentials credentials, String region) {
+		this.client = new OpenStackRestClient(credentials, region, VOLUME_SERVICE_TYPE);
+	}
+
+	@Override
+	public Map<String, Integer> getAbsoluteLimits() {
+		Response response = client.request("GET", "/limits", null);
+		response.expect(200, "get the volume limits");
+		Map<String, Integer> limits = Maps.newHashMap();
+		for (Map.Entry<String, JsonElement> limit :
+				response.json().getAsJsonObject("limits").getAsJsonObject("absolute").entrySet()) {
+			JsonElement value = limit.getValue();
+			if (value.isJsonPrimitive() && ((JsonPrimitive) value).isNumber()) {
+				limits.put(limit.getKey(), value.getAsInt());
+			}
+		}
+		return limits;
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.heat;
+
+/**
+ * The subset of the OpenStack Heat orchestration API used to allocate whole clusters
+ * as stacks.
+ */
+public interface HeatApi {
+
+	/**
+	 * Submits a stack. The stack is left in place if its creation fails, so that the
+	 * failure can be inspected before it is deleted.
+	 *
+	 * @param stackName      the stack name
+	 * @param template       the HOT template, as JSON
+	 * @param timeoutMinutes the time Heat may take to create the stack
+	 * @return the stack ID
+	 */
+	String createStack(String stackName, String template, int timeoutMinutes);
+
+	/**
+	 * Gets a stack with its outputs.
+	 *
+	 * @param stackName the stack name
+	 * @return the stack, or null if it does not exist
+	 */
+	HeatStack getStack(String stackName);
+
+	/**
+	 * Deletes a stack along with all of its resources. Deleting a stack which does not
+	 * exist is not an error.
+	 *
+	 * @param stackName the stack name
+	 * @param stackId   the stack ID
+	 */
+	void deleteStack(String stackName, String stackId);
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.heat;
+
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The state of a Heat stack.
+ */
+public class HeatStack {
+
+	/**
+	 * The status of a stack whose creation completed.
+	 */
+	public static final String CREATE_COMPLETE = "CREATE_COMPLETE";
+
+	/**
+	 * The status of a deleted stack, which Heat keeps showing for a while.
+	 */
+	public static final String DELETE_COMPLETE = "DELETE_COMPLETE";
+
+	private static final String IN_PROGRESS_SUFFIX = "_IN_PROGRESS";
+
+	private final String id;
+	private final String name;
+	private final String status;
+	private final String statusReason;
+	private final Map<String, String> outputs;
+
+	/**
+	 * Creates a stack state.
+	 *
+	 * @param id           the stack ID
+	 * @param name         the stack name
+	 * @param status       the stack status, such as {@code CREATE_COMPLETE}
+	 * @param statusReason the reason of the status, or null
+	 * @param outputs      the stack outputs by key
+	 */
+	public HeatStack(String id, String name, String status, String statusReason, Map<String, String> outputs) {
+		this.id = Preconditions.checkNotNull(id, "id is null");
+		this.name = Preconditions.checkNotNull(name, "name is null");
+		this.status = Preconditions.checkNotNull(status, "status is null");
+		this.statusReason = statusReason;
+		this.outputs = ImmutableMap.copyOf(outputs);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getStatusReason() {
+		return statusReason;
+	}
+
+	/**
+	 * Returns the stack outputs, which Heat only resolves once the stack is created.
+	 *
+	 * @return the stack outputs by key
+	 */
+	public Map<String, String> getOutputs() {
+		return outputs;
+	}
+
+	/**
+	 * Returns whether Heat is still working on the stack.
+	 *
+	 * @return whether the stack is in progress
+	 */
+	public boolean isInProgress() {
+		return status.endsWith(IN_PROGRESS_SUFFIX);
+	}
+}
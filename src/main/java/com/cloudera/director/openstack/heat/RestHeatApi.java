@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.heat;
+
+import static com.cloudera.director.openstack.OpenStackRestClient.encode;
+
+import java.util.Map;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.OpenStackRestClient;
+import com.cloudera.director.openstack.OpenStackRestClient.Response;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A {@link HeatApi} over the Heat REST API, authenticated with the Keystone v2 identity
+ * API the other OpenStack APIs of the plugin go through. The orchestration endpoint of
+ * the region is taken from the service catalog, and the token is renewed whenever Heat
+ * turns it down.
+ */
+public class RestHeatApi implements HeatApi {
+
+	private static final String ORCHESTRATION_SERVICE_TYPE = "orchestration";
+
+	private final OpenStackRestClient client;
+
+	/**
+	 * Creates a Heat API for the given credentials. Nothing is requested until the first
+	 * call.
+	 *
+	 * @param credentials the OpenStack credentials
+	 * @param region      the region
+	 */
+	public RestHeatApi(OpenStackCredentials credentials, String region) {
+		this.client = new OpenStackRestClient(credentials, region, ORCHESTRATION_SERVICE_TYPE);
+	}
+
+	@Override
+	public String createStack(String stackName, String template, int timeoutMinutes) {
+		JsonObject body = new JsonObject();
+		body.addProperty("stack_name", stackName);
+		body.add("template", new JsonParser().parse(template));
+		body.addProperty("timeout_mins", timeoutMinutes);
+		body.addProperty("disable_rollback", true);
+		Response response = client.request("POST", "/stacks", body);
+		response.expect(201, "create stack " + stackName);
+		return response.json().getAsJsonObject("stack").get("id").getAsString();
+	}
+
+	@Override
+	public HeatStack getStack(String stackName) {
+		// Heat redirects the lookup by name to the stack itself.
+		Response response = client.request("GET", "/stacks/" + encode(stackName), null);
+		if (response.getStatus() == 404) {
+			return null;
+		}
+		response.expect(200, "get stack " + stackName);
+		JsonObject stack = response.json().getAsJsonObject("stack");
+		Map<String, String> outputs = Maps.newHashMap();
+		JsonElement outputList = stack.get("outputs");
+		if (outputList != null && outputList.isJsonArray()) {
+			for (JsonElement output : outputList.getAsJsonArray()) {
+				JsonElement value = output.getAsJsonObject().get("output_value");
+				if (value != null && !value.isJsonNull()) {
+					outputs.put(output.getAsJsonObject().get("output_key").getAsString(),
+							value.isJsonPrimitive() ? value.getAsString() : value.toString());
+				}
+			}
+		}
+		JsonElement statusReason = stack.get("stack_status_reason");
+		return new HeatStack(stack.get("id").getAsString(), stack.get("stack_name").getAsString(),
+				stack.get("stack_status").getAsString(),
+				statusReason == null || statusReason.isJsonNull() ? null : statusReason.getAsString(), outputs);
+	}
+
+	@Override
+	public void deleteStack(String stackName, String stackId) {
+		Response response = client.request("DELETE", "/stacks/" + encode(stackName) + "/" + encode(stackId), null);
+		if (response.getStatus() != 404) {
+			response.expect(204, "delete stack " + stackName);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of the OpenStack Neutron networking API used to give servers ports created
+ * ahead of them, and floating IPs.
+ */
+public interface NeutronApi {
+
+	/**
+	 * Returns whether the catalog has a network endpoint in the region.
+	 *
+	 * @return whether Neutron is available
+	 */
+	boolean isAvailable();
+
+	/**
+	 * Creates ports, all of them in one request.
+	 *
+	 * @param requests the ports to create
+	 * @return the created ports, in the order of the requests
+	 */
+	List<NeutronPort> createPorts(List<NeutronPortRequest> requests);
+
+	/**
+	 * Lists the ports bound to any of the given devices, such as servers.
+	 *
+	 * @param deviceIds the device IDs
+	 * @return the ports
+	 */
+	List<NeutronPort> listPortsByDeviceIds(Collection<String> deviceIds);
+
+	/**
+	 * Lists the ports of any of the given names.
+	 *
+	 * @param names the port names
+	 * @return the ports
+	 */
+	List<NeutronPort> listPortsByNames(Collection<String> names);
+
+	/**
+	 * Deletes a port, unbinding it from its device if need be. Deleting a port which
+	 * does not exist is not an error.
+	 *
+	 * @param portId the port ID
+	 */
+	void deletePort(String portId);
+
+	/**
+	 * Looks security groups of the tenant up by name.
+	 *
+	 * @param names the security group names
+	 * @return the IDs of the security groups found, by name
+	 */
+	Map<String, String> getSecurityGroupIdsByNames(Collection<String> names);
+
+	/**
+	 * Looks QoS policies up by name or ID.
+	 *
+	 * @param namesOrIds the QoS policy names or IDs
+	 * @return the IDs of the QoS policies found, by the given name or ID
+	 */
+	Map<String, String> getQosPolicyIds(Collection<String> namesOrIds);
+
+	/**
+	 * Lists the ports of any of the given IDs.
+	 *
+	 * @param portIds the port IDs
+	 * @return the ports
+	 */
+	List<NeutronPort> listPortsByIds(Collection<String> portIds);
+
+	/**
+	 * Looks the external networks floating IPs are allocated from up by name.
+	 *
+	 * @return the IDs of the external networks, by name
+	 */
+	Map<String, String> getExternalNetworkIdsByNames();
+
+	/**
+	 * Lists the floating IPs of the tenant.
+	 *
+	 * @return the floating IPs
+	 */
+	List<NeutronFloatingIp> listFloatingIps();
+
+	/**
+	 * Returns the floating IP quota of a project. Neutron keeps its own quotas, the
+	 * floating IP quota of Nova only counts under nova-network.
+	 *
+	 * @param projectId the project ID
+	 * @return the floating IP quota, negative when unlimited
+	 */
+	int getFloatingIpQuota(String projectId);
+
+	/**
+	 * Lists the floating IPs associated to any of the given ports.
+	 *
+	 * @param portIds the port IDs
+	 * @return the floating IPs
+	 */
+	List<NeutronFloatingIp> listFloatingIpsByPortIds(Collection<String> portIds);
+
+	/**
+	 * Returns a floating IP.
+	 *
+	 * @param floatingIpId the floating IP ID
+	 * @return the floating IP, or null if it does not exist
+	 */
+	NeutronFloatingIp getFloatingIp(String floatingIpId);
+
+	/**
+	 * Returns the floating IP of the given address.
+	 *
+	 * @param floatingIpAddress the floating IP address
+	 * @return the floating IP, or null if it does not exist
+	 */
+	NeutronFloatingIp getFloatingIpByAddress(String floatingIpAddress);
+
+	/**
+	 * Allocates a floating IP from an external network.
+	 *
+	 * @param floatingNetworkId the ID of the external network
+	 * @return the floating IP
+	 */
+	NeutronFloatingIp createFloatingIp(String floatingNetworkId);
+
+	/**
+	 * Associates a floating IP to a port, or dissociates it.
+	 *
+	 * @param floatingIpId the floating IP ID
+	 * @param portId       the port ID, or null to dissociate the floating IP
+	 * @return the floating IP
+	 */
+	NeutronFloatingIp associateFloatingIp(String floatingIpId, String portId);
+
+	/**
+	 * Releases a floating IP. Releasing a floating IP which does not exist is not an
+	 * error.
+	 *
+	 * @param floatingIpId the floating IP ID
+	 */
+	void deleteFloatingIp(String floatingIpId);
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A {@link FloatingIPApi} going to Neutron directly rather than through the floating IP
+ * proxy of Nova, which turns each call into Neutron calls of its own and only lists the
+ * floating IPs unfiltered.
+ * <p>
+ * The floating IPs are reported the way the Nova proxy reports them: their pool is the
+ * name of their external network, and their instance ID is the device of the port they
+ * are associated to. Floating IPs are associated through the ports of the servers.
+ */
+public class NeutronFloatingIPApi implements FloatingIPApi {
+
+	private final NeutronApi neutronApi;
+
+	/*
+	 * The external network IDs by name, looked up on first use and again whenever an
+	 * unknown network turns up
+	 */
+	private BiMap<String, String> externalNetworkIdsByNames;
+
+	/**
+	 * Creates a floating IP API over the given Neutron API.
+	 *
+	 * @param neutronApi the Neutron API
+	 */
+	public NeutronFloatingIPApi(NeutronApi neutronApi) {
+		this.neutronApi = neutronApi;
+	}
+
+	@Override
+	public FluentIterable<FloatingIP> list() {
+		return FluentIterable.from(toFloatingIps(neutronApi.listFloatingIps(), null));
+	}
+
+	@Override
+	public FloatingIP get(String id) {
+		NeutronFloatingIp floatingIp = neutronApi.getFloatingIp(id);
+		return floatingIp == null ? null : toFloatingIps(ImmutableList.of(floatingIp), null).get(0);
+	}
+
+	@Override
+	public FloatingIP create() {
+		Set<String> poolNames = getPoolNames();
+		if (poolNames.size() != 1) {
+			throw new IllegalStateException("The floating IP pool must be given among " + poolNames);
+		}
+		return allocateFromPool(poolNames.iterator().next());
+	}
+
+	@Override
+	public FloatingIP allocateFromPool(String pool) {
+		NeutronFloatingIp floatingIp = neutronApi.createFloatingIp(getExternalNetworkId(pool));
+		return toFloatingIp(floatingIp, null);
+	}
+
+	@Override
+	public void delete(String id) {
+		neutronApi.deleteFloatingIp(id);
+	}
+
+	/**
+	 * Associates a floating IP to the first port of a server. Servers with a port on
+	 * more than one network get their floating IP through
+	 * {@link #addToServer(String, String, String)}.
+	 *
+	 * @param address  the floating IP address
+	 * @param serverId the server ID
+	 */
+	@Override
+	public void addToServer(String address, String serverId) {
+		addToServer(getFloatingIpByAddress(address).getId(), serverId, null);
+	}
+
+	/**
+	 * Associates a floating IP to the port of a server on the given network.
+	 *
+	 * @param floatingIpId the floating IP ID
+	 * @param serverId     the server ID
+	 * @param networkId    the network ID, or null for the first port of the server
+	 * @throws IllegalStateException if the server has no port on the network
+	 */
+	public void addToServer(String floatingIpId, String serverId, String networkId) {
+		String portId = null;
+		for (NeutronPort port : neutronApi.listPortsByDeviceIds(ImmutableList.of(serverId))) {
+			if (networkId == null || networkId.equals(port.getNetworkId())) {
+				portId = port.getId();
+				break;
+			}
+		}
+		if (portId == null) {
+			throw new IllegalStateException(String.format("Server %s has no port%s to associate floating IP %s to",
+					serverId, networkId == null ? "" : " on network " + networkId, floatingIpId));
+		}
+		neutronApi.associateFloatingIp(floatingIpId, portId);
+	}
+
+	@Override
+	public void removeFromServer(String address, String serverId) {
+		neutronApi.associateFloatingIp(getFloatingIpByAddress(address).getId(), null);
+	}
+
+	/**
+	 * Lists the floating IPs associated to the ports of the given servers, letting
+	 * Neutron filter them rather than walking all the floating IPs of the tenant.
+	 *
+	 * @param serverIds the server IDs
+	 * @return the floating IPs by server ID
+	 */
+	public ListMultimap<String, FloatingIP> listByServerIds(Collection<String> serverIds) {
+		ListMultimap<String, FloatingIP> floatingIpsByServerIds = ArrayListMultimap.create();
+		if (serverIds.isEmpty()) {
+			return floatingIpsByServerIds;
+		}
+		Map<String, String> deviceIdsByPortIds = Maps.newHashMap();
+		for (NeutronPort port : neutronApi.listPortsByDeviceIds(serverIds)) {
+			deviceIdsByPortIds.put(port.getId(), port.getDeviceId());
+		}
+		if (deviceIdsByPortIds.isEmpty()) {
+			return floatingIpsByServerIds;
+		}
+		List<NeutronFloatingIp> floatingIps = neutronApi.listFloatingIpsByPortIds(deviceIdsByPortIds.keySet());
+		for (FloatingIP floatingIp : toFloatingIps(floatingIps, deviceIdsByPortIds)) {
+			floatingIpsByServerIds.put(floatingIp.getInstanceId(), floatingIp);
+		}
+		return floatingIpsByServerIds;
+	}
+
+	/**
+	 * Returns the names of the external networks floating IPs are allocated from.
+	 *
+	 * @return the floating IP pool names
+	 */
+	public Set<String> getPoolNames() {
+		return ImmutableSet.copyOf(getExternalNetworkIdsByNames(true).keySet());
+	}
+
+	private NeutronFloatingIp getFloatingIpByAddress(String address) {
+		NeutronFloatingIp floatingIp = neutronApi.getFloatingIpByAddress(address);
+		if (floatingIp == null) {
+			throw new IllegalStateException("Floating IP not found: " + address);
+		}
+		return floatingIp;
+	}
+
+	private String getExternalNetworkId(String pool) {
+		String networkId = getExternalNetworkIdsByNames(false).get(pool);
+		if (networkId == null) {
+			networkId = getExternalNetworkIdsByNames(true).get(pool);
+		}
+		if (networkId == null) {
+			throw new IllegalStateException("Floating IP pool not found: " + pool);
+		}
+		return networkId;
+	}
+
+	private synchronized BiMap<String, String> getExternalNetworkIdsByNames(boolean refresh) {
+		if (externalNetworkIdsByNames == null || refresh) {
+			// Names are not unique in Neutron; the floating IP pools of Nova are.
+			BiMap<String, String> networkIdsByNames = HashBiMap.create();
+			for (Map.Entry<String, String> network : neutronApi.getExternalNetworkIdsByNames().entrySet()) {
+				networkIdsByNames.forcePut(network.getKey(), network.getValue());
+			}
+			externalNetworkIdsByNames = networkIdsByNames;
+		}
+		return externalNetworkIdsByNames;
+	}
+
+	private synchronized String getPool(String floatingNetworkId) {
+		if (floatingNetworkId == null) {
+			return null;
+		}
+		String pool = getExternalNetworkIdsByNames(false).inverse().get(floatingNetworkId);
+		if (pool == null) {
+			pool = getExternalNetworkIdsByNames(true).inverse().get(floatingNetworkId);
+		}
+		return pool;
+	}
+
+	/**
+	 * Converts Neutron floating IPs, looking the devices of their ports up unless given.
+	 */
+	private List<FloatingIP> toFloatingIps(List<NeutronFloatingIp> floatingIps, Map<String, String> deviceIdsByPortIds) {
+		if (deviceIdsByPortIds == null) {
+			Set<String> portIds = Sets.newHashSet();
+			for (NeutronFloatingIp floatingIp : floatingIps) {
+				if (floatingIp.getPortId() != null) {
+					portIds.add(floatingIp.getPortId());
+				}
+			}
+			deviceIdsByPortIds = Maps.newHashMap();
+			if (!portIds.isEmpty()) {
+				for (NeutronPort port : neutronApi.listPortsByIds(portIds)) {
+					deviceIdsByPortIds.put(port.getId(), port.getDeviceId());
+				}
+			}
+		}
+		List<FloatingIP> converted = Lists.newArrayList();
+		for (NeutronFloatingIp floatingIp : floatingIps) {
+			String portId = floatingIp.getPortId();
+			converted.add(toFloatingIp(floatingIp, portId == null ? null : deviceIdsByPortIds.get(portId)));
+		}
+		return converted;
+	}
+
+	private FloatingIP toFloatingIp(NeutronFloatingIp floatingIp, String deviceId) {
+		return FloatingIP.builder()
+				.id(floatingIp.getId())
+				.ip(floatingIp.getFloatingIpAddress())
+				.fixedIp(floatingIp.getFixedIpAddress())
+				.instanceId(deviceId)
+				.pool(getPool(floatingIp.getFloatingNetworkId()))
+				.build();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The state of a Neutron floating IP.
+ */
+public class NeutronFloatingIp {
+
+	private final String id;
+	private final String floatingIpAddress;
+	private final String floatingNetworkId;
+	private final String portId;
+	private final String fixedIpAddress;
+
+	/**
+	 * Creates a floating IP state.
+	 *
+	 * @param id                the floating IP ID
+	 * @param floatingIpAddress the floating IP address
+	 * @param floatingNetworkId the ID of the external network of the floating IP
+	 * @param portId            the ID of the port the floating IP is associated to, or null
+	 * @param fixedIpAddress    the fixed IP address the floating IP maps to, or null
+	 */
+	public NeutronFloatingIp(String id, String floatingIpAddress, String floatingNetworkId, String portId,
+			String fixedIpAddress) {
+		this.id = Preconditions.checkNotNull(id, "id is null");
+		this.floatingIpAddress = floatingIpAddress;
+		this.floatingNetworkId = floatingNetworkId;
+		this.portId = portId;
+		this.fixedIpAddress = fixedIpAddress;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getFloatingIpAddress() {
+		return floatingIpAddress;
+	}
+
+	public String getFloatingNetworkId() {
+		return floatingNetworkId;
+	}
+
+	/**
+	 * Returns the port the floating IP is associated to.
+	 *
+	 * @return the port ID, or null if the floating IP is not associated
+	 */
+	public String getPortId() {
+		return portId;
+	}
+
+	public String getFixedIpAddress() {
+		return fixedIpAddress;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The state of a Neutron port.
+ */
+public class NeutronPort {
+
+	private final String id;
+	private final String name;
+	private final String networkId;
+	private final String deviceId;
+	private final List<String> fixedIps;
+
+	/**
+	 * Creates a port state.
+	 *
+	 * @param id        the port ID
+	 * @param name      the port name
+	 * @param networkId the ID of the network of the port
+	 * @param deviceId  the ID of the device the port is bound to, or null
+	 * @param fixedIps  the fixed IP addresses of the port
+	 */
+	public NeutronPort(String id, String name, String networkId, String deviceId, List<String> fixedIps) {
+		this.id = Preconditions.checkNotNull(id, "id is null");
+		this.name = name;
+		this.networkId = networkId;
+		this.deviceId = deviceId == null || deviceId.isEmpty() ? null : deviceId;
+		this.fixedIps = ImmutableList.copyOf(fixedIps);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getNetworkId() {
+		return networkId;
+	}
+
+	/**
+	 * Returns the device the port is bound to, such as a server.
+	 *
+	 * @return the device ID, or null if the port is not bound
+	 */
+	public String getDeviceId() {
+		return deviceId;
+	}
+
+	public List<String> getFixedIps() {
+		return fixedIps;
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A port to create.
+ */
+public class NeutronPortRequest {
+
+	/**
+	 * The VNIC type of a port backed by a virtual switch.
+	 */
+	public static final String VNIC_TYPE_NORMAL = "normal";
+
+	/**
+	 * The VNIC type of a port backed by an SR-IOV virtual function passed through to the server.
+	 */
+	public static final String VNIC_TYPE_DIRECT = "direct";
+
+	/**
+	 * The VNIC type of a port backed by an SR-IOV virtual function through a MacVTap device.
+	 */
+	public static final String VNIC_TYPE_MACVTAP = "macvtap";
+
+	/**
+	 * The VNIC type of a port backed by a whole physical function passed through to the server.
+	 */
+	public static final String VNIC_TYPE_DIRECT_PHYSICAL = "direct-physical";
+
+	private final String networkId;
+	private final String name;
+	private final String vnicType;
+	private final List<String> securityGroupIds;
+	private final String qosPolicyId;
+
+	/**
+	 * Creates a port request without QoS policy.
+	 *
+	 * @param networkId        the ID of the network of the port
+	 * @param name             the port name
+	 * @param vnicType         the VNIC type the port is bound with, such as direct
+	 * @param securityGroupIds the IDs of the security groups of the port
+	 */
+	public NeutronPortRequest(String networkId, String name, String vnicType, List<String> securityGroupIds) {
+		this(networkId, name, vnicType, securityGroupIds, null);
+	}
+
+	/**
+	 * Creates a port request.
+	 *
+	 * @param networkId        the ID of the network of the port
+	 * @param name             the port name
+	 * @param vnicType         the VNIC type the port is bound with, such as direct
+	 * @param securityGroupIds the IDs of the security groups of the port
+	 * @param qosPolicyId      the ID of the QoS policy of the port, or null
+	 */
+	public NeutronPortRequest(String networkId, String name, String vnicType, List<String> securityGroupIds,
+			String qosPolicyId) {
+		this.networkId = Preconditions.checkNotNull(networkId, "networkId is null");
+		this.name = Preconditions.checkNotNull(name, "name is null");
+		this.vnicType = Preconditions.checkNotNull(vnicType, "vnicType is null");
+		this.securityGroupIds = ImmutableList.copyOf(securityGroupIds);
+		this.qosPolicyId = qosPolicyId;
+	}
+
+	public String getNetworkId() {
+		return networkId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getVnicType() {
+		return vnicType;
+	}
+
+	public List<String> getSecurityGroupIds() {
+		return securityGroupIds;
+	}
+
+	/**
+	 * Returns the QoS policy of the port, such as one limiting its bandwidth.
+	 *
+	 * @return the QoS policy ID, or null
+	 */
+	public String getQosPolicyId() {
+		return qosPolicyId;
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import static com.cloudera.director.openstack.OpenStackRestClient.encode;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.OpenStackRestClient;
+import com.cloudera.director.openstack.OpenStackRestClient.Response;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A {@link NeutronApi} over the Neutron v2.0 REST API, authenticated with the Keystone
+ * v2 identity API the other OpenStack APIs of the plugin go through. The network
+ * endpoint of the region is taken from the service catalog.
+ */
+public class RestNeutronApi implements NeutronApi {
+
+	private static final String NETWORK_SERVICE_TYPE = "network";
+
+	private static final String VERSION_PATH = "/v2.0";
+
+	/**
+	 * How many values a listing filters on at most, so that its URL stays short. Neutron
+	 * matches any of the values of a filter given several times.
+	 */
+	private static final int FILTER_VALUES_PER_REQUEST = 50;
+
+	private final OpenStackRestClient client;
+
+	/**
+	 * Creates a Neutron API for the given credentials. Nothing is requested until the
+	 * first call.
+	 *
+	 * @param credentials the OpenStack credentials
+	 * @param region      the region
+	 */
+	public RestNeutronApi(OpenStackCredentials credentials, String region) {
+		this.client = new OpenStackRestClient(credentials, region, NETWORK_SERVICE_TYPE);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return client.isAvailable();
+	}
+
+	@Override
+	public List<NeutronPort> createPorts(List<NeutronPortRequest> requests) {
+		if (requests.isEmpty()) {
+			return ImmutableList.of();
+		}
+		JsonArray ports = new JsonArray();
+		for (NeutronPortRequest request : requests) {
+			JsonObject port = new JsonObject();
+			port.addProperty("network_id", request.getNetworkId());
+			port.addProperty("name", request.getName());
+			port.addProperty("binding:vnic_type", request.getVnicType());
+			if (!request.getSecurityGroupIds().isEmpty()) {
+				JsonArray securityGroups = new JsonArray();
+				for (String securityGroupId : request.getSecurityGroupIds()) {
+					securityGroups.add(new JsonPrimitive(securityGroupId));
+				}
+				port.add("security_groups", securityGroups);
+			}
+			if (request.getQosPolicyId() != null) {
+				port.addProperty("qos_policy_id", request.getQosPolicyId());
+			}
+			ports.add(port);
+		}
+		JsonObject body = new JsonObject();
+		body.add("ports", ports);
+		Response response = client.request("POST", VERSION_PATH + "/ports", body);
+		response.expect(201, "create " + requests.size() + " port(s)");
+		return parsePorts(response.json().getAsJsonArray("ports"));
+	}
+
+	@Override
+	public List<NeutronPort> listPortsByDeviceIds(Collection<String> deviceIds) {
+		return listPorts("device_id", deviceIds);
+	}
+
+	@Override
+	public List<NeutronPort> listPortsByNames(Collection<String> names) {
+		return listPorts("name", names);
+	}
+
+	@Override
+	public List<NeutronPort> listPortsByIds(Collection<String> portIds) {
+		return listPorts("id", portIds);
+	}
+
+	@Override
+	public void deletePort(String portId) {
+		Response response = client.request("DELETE", VERSION_PATH + "/ports/" + encode(portId), null);
+		if (response.getStatus() != 404) {
+			response.expect(204, "delete port " + portId);
+		}
+	}
+
+	@Override
+	public Map<String, String> getSecurityGroupIdsByNames(Collection<String> names) {
+		Map<String, String> securityGroupIdsByNames = Maps.newHashMap();
+		for (List<String> chunk : Iterables.partition(names, FILTER_VALUES_PER_REQUEST)) {
+			Response response = client.request("GET", VERSION_PATH + "/security-groups?fields=id&fields=name&"
+					+ filter("name", chunk), null);
+			response.expect(200, "list security groups");
+			for (JsonElement securityGroup : response.json().getAsJsonArray("security_groups")) {
+				JsonObject fields = securityGroup.getAsJsonObject();
+				securityGroupIdsByNames.put(fields.get("name").getAsString(), fields.get("id").getAsString());
+			}
+		}
+		return securityGroupIdsByNames;
+	}
+
+	@Override
+	public Map<String, String> getQosPolicyIds(Collection<String> namesOrIds) {
+		Map<String, String> qosPolicyIds = Maps.newHashMap();
+		if (namesOrIds.isEmpty()) {
+			return qosPolicyIds;
+		}
+		// A policy is given by name or ID, which one filter cannot match, and a tenant has few of them.
+		Response response = client.request("GET", VERSION_PATH + "/qos/policies?fields=id&fields=name", null);
+		if (response.getStatus() == 404) {
+			// The QoS extension is not enabled.
+			return qosPolicyIds;
+		}
+		response.expect(200, "list QoS policies");
+		for (JsonElement qosPolicy : response.json().getAsJsonArray("policies")) {
+			JsonObject fields = qosPolicy.getAsJsonObject();
+			String id = fields.get("id").getAsString();
+			String name = getString(fields, "name");
+			if (namesOrIds.contains(id)) {
+				qosPolicyIds.put(id, id);
+			} else if (name != null && namesOrIds.contains(name)) {
+				qosPolicyIds.put(name, id);
+			}
+		}
+		return qosPolicyIds;
+	}
+
+	@Override
+	public Map<String, String> getExternalNetworkIdsByNames() {
+		Response response = client.request("GET", VERSION_PATH + "/networks?router%3Aexternal=True&fields=id&fields=name",
+				null);
+		response.expect(200, "list external networks");
+		Map<String, String> networkIdsByNames = Maps.newHashMap();
+		for (JsonElement network : response.json().getAsJsonArray("networks")) {
+			JsonObject fields = network.getAsJsonObject();
+			networkIdsByNames.put(getString(fields, "name"), fields.get("id").getAsString());
+		}
+		return networkIdsByNames;
+	}
+
+	@Override
+	public List<NeutronFloatingIp> listFloatingIps() {
+		Response response = client.request("GET", VERSION_PATH + "/floatingips", null);
+		response.expect(200, "list floating IPs");
+		return parseFloatingIps(response.json().getAsJsonArray("floatingips"));
+	}
+
+	@Override
+	public int getFloatingIpQuota(String projectId) {
+		Response response = client.request("GET", VERSION_PATH + "/quotas/" + encode(projectId), null);
+		response.expect(200, "get the quotas");
+		return response.json().getAsJsonObject("quota").get("floatingip").getAsInt();
+	}
+
+	@Override
+	public List<NeutronFloatingIp> listFloatingIpsByPortIds(Collection<String> portIds) {
+		return listFloatingIps("port_id", portIds);
+	}
+
+	@Override
+	public NeutronFloatingIp getFloatingIp(String floatingIpId) {
+		Response response = client.request("GET", VERSION_PATH + "/floatingips/" + encode(floatingIpId), null);
+		if (response.getStatus() == 404) {
+			return null;
+		}
+		response.expect(200, "get floating IP " + floatingIpId);
+		return parseFloatingIp(response.json().getAsJsonObject("floatingip"));
+	}
+
+	@Override
+	public NeutronFloatingIp getFloatingIpByAddress(String floatingIpAddress) {
+		List<NeutronFloatingIp> floatingIps =
+				listFloatingIps("floating_ip_address", ImmutableList.of(floatingIpAddress));
+		return floatingIps.isEmpty() ? null : floatingIps.get(0);
+	}
+
+	@Override
+	public NeutronFloatingIp createFloatingIp(String floatingNetworkId) {
+		JsonObject floatingIp = new JsonObject();
+		floatingIp.addProperty("floating_network_id", floatingNetworkId);
+		JsonObject body = new JsonObject();
+		body.add("floatingip", floatingIp);
+		Response response = client.request("POST", VERSION_PATH + "/floatingips", body);
+		response.expect(201, "allocate a floating IP from network " + floatingNetworkId);
+		return parseFloatingIp(response.json().getAsJsonObject("floatingip"));
+	}
+
+	@Override
+	public NeutronFloatingIp associateFloatingIp(String floatingIpId, String portId) {
+		JsonObject floatingIp = new JsonObject();
+		floatingIp.add("port_id", portId == null ? JsonNull.INSTANCE : new JsonPrimitive(portId));
+		JsonObject body = new JsonObject();
+		body.add("floatingip", floatingIp);
+		Response response = client.request("PUT", VERSION_PATH + "/floatingips/" + encode(floatingIpId), body);
+		response.expect(200, "associate floating IP " + floatingIpId + " to port " + portId);
+		return parseFloatingIp(response.json().getAsJsonObject("floatingip"));
+	}
+
+	@Override
+	public void deleteFloatingIp(String floatingIpId) {
+		Response response = client.request("DELETE", VERSION_PATH + "/floatingips/" + encode(floatingIpId), null);
+		if (response.getStatus() != 404) {
+			response.expect(204, "release floating IP " + floatingIpId);
+		}
+	}
+
+	private List<NeutronFloatingIp> listFloatingIps(String field, Collection<String> values) {
+		List<NeutronFloatingIp> floatingIps = Lists.newArrayList();
+		for (List<String> chunk : Iterables.partition(values, FILTER_VALUES_PER_REQUEST)) {
+			Response response = client.request("GET", VERSION_PATH + "/floatingips?" + filter(field, chunk), null);
+			response.expect(200, "list floating IPs");
+			floatingIps.addAll(parseFloatingIps(response.json().getAsJsonArray("floatingips")));
+		}
+		return floatingIps;
+	}
+
+	private List<NeutronPort> listPorts(String field, Collection<String> values) {
+		List<NeutronPort> ports = Lists.newArrayList();
+		for (List<String> chunk : Iterables.partition(values, FILTER_VALUES_PER_REQUEST)) {
+			Response response = client.request("GET", VERSION_PATH + "/ports?" + filter(field, chunk), null);
+			response.expect(200, "list ports");
+			ports.addAll(parsePorts(response.json().getAsJsonArray("ports")));
+		}
+		return ports;
+	}
+
+	private static String filter(String field, List<String> values) {
+		StringBuilder query = new StringBuilder();
+		for (String value : values) {
+			if (query.length() > 0) {
+				query.append('&');
+			}
+			query.append(field).append('=').append(encode(value));
+		}
+		return query.toString();
+	}
+
+	private static List<NeutronPort> parsePorts(JsonArray ports) {
+		List<NeutronPort> parsed = Lists.newArrayList();
+		for (JsonElement port : ports) {
+			JsonObject fields = port.getAsJsonObject();
+			List<String> fixedIps = Lists.newArrayList();
+			JsonElement fixedIpList = fields.get("fixed_ips");
+			if (fixedIpList != null && fixedIpList.isJsonArray()) {
+				for (JsonElement fixedIp : fixedIpList.getAsJsonArray()) {
+					fixedIps.add(fixedIp.getAsJsonObject().get("ip_address").getAsString());
+				}
+			}
+			parsed.add(new NeutronPort(fields.get("id").getAsString(), getString(fields, "name"),
+					getString(fields, "network_id"), getString(fields, "device_id"), fixedIps));
+		}
+		return parsed;
+	}
+
+	private static List<NeutronFloatingIp> parseFloatingIps(JsonArray floatingIps) {
+		List<NeutronFloatingIp> parsed = Lists.newArrayList();
+		for (JsonElement floatingIp : floatingIps) {
+			parsed.add(parseFloatingIp(floatingIp.getAsJsonObject()));
+		}
+		return parsed;
+	}
+
+	private static NeutronFloatingIp parseFloatingIp(JsonObject fields) {
+		return new NeutronFloatingIp(fields.get("id").getAsString(), getString(fields, "floating_ip_address"),
+				getString(fields, "floating_network_id"), getString(fields, "port_id"),
+				getString(fields, "fixed_ip_address"));
+	}
+
+	private static String getString(JsonObject fields, String name) {
+		JsonElement value = fields.get(name);
+		return value == null || value.isJsonNull() ? null : value.getAsString();
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * An append-only record of the progress of one allocation, kept in a local file so that
+ * an allocation retried after the plugin went down picks up where it stopped. Each line
+ * records a resource created for an instance, or a phase the instance completed, and is
+ * synced to disk before the resource is relied upon.
+ * <p>
+ * The journal of an allocation is found again from its instance IDs, which Director
+ * passes unchanged on a retry. A journal which cannot be written is kept in memory, as
+ * the resources themselves remain tagged with their instance ID.
+ */
+class AllocationJournal {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AllocationJournal.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Splitter FIELD_SPLITTER = Splitter.on('\t');
+
+	/**
+	 * The kinds of journal entries.
+	 */
+	enum Entry {
+		SERVER,
+		VOLUME,
+		FLOATING_IP,
+		PHASE
+	}
+
+	/**
+	 * The allocation phases an instance goes through once its server is created.
+	 */
+	enum Phase {
+
+		/**
+		 * The instance has its private IP and, if requested, its floating IP.
+		 */
+		NETWORKED,
+
+		/**
+		 * The instance has its volumes attached and is ready.
+		 */
+		COMPLETE
+	}
+
+	private final File file;
+	private final ListMultimap<String, String> entries = ArrayListMultimap.create();
+	private FileOutputStream out;
+	private boolean writable = true;
+
+	private AllocationJournal(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens the journal of the allocation of the given instances, reading back what an
+	 * earlier attempt recorded.
+	 *
+	 * @param directory   the journal directory
+	 * @param instanceIds the instance IDs of the allocation
+	 * @return the journal
+	 */
+	static AllocationJournal open(File directory, Collection<String> instanceIds) {
+		String key = Joiner.on(',').join(Ordering.natural().sortedCopy(instanceIds));
+		String name = "allocation-" + Hashing.sha1().hashString(key, UTF8) + ".journal";
+		AllocationJournal journal = new AllocationJournal(new File(directory, name));
+		journal.load();
+		return journal;
+	}
+
+	/**
+	 * Returns whether an earlier attempt of this allocation recorded anything.
+	 *
+	 * @return whether the journal has entries
+	 */
+	synchronized boolean isResumed() {
+		return !entries.isEmpty();
+	}
+
+	/**
+	 * Records an entry for an instance.
+	 *
+	 * @param instanceId the instance ID
+	 * @param entry      the kind of entry
+	 * @param value      the resource ID, or the phase name
+	 */
+	synchronized void record(String instanceId, Entry entry, String value) {
+		entries.put(instanceId + '\t' + entry, value);
+		if (!writable) {
+			return;
+		}
+		try {
+			if (out == null) {
+				Files.createParentDirs(file);
+				out = new FileOutputStream(file, true);
+			}
+			out.write((instanceId + '\t' + entry + '\t' + value + '\n').getBytes(UTF8));
+			out.getFD().sync();
+		} catch (IOException e) {
+			LOG.warn("Unable to write the allocation journal {}, keeping it in memory: {}", file, e.getMessage());
+			writable = false;
+		}
+	}
+
+	/**
+	 * Records that an instance completed a phase.
+	 *
+	 * @param instanceId the instance ID
+	 * @param phase      the phase
+	 */
+	void record(String instanceId, Phase phase) {
+		record(instanceId, Entry.PHASE, phase.name());
+	}
+
+	/**
+	 * Returns the values recorded for an instance, oldest first.
+	 *
+	 * @param instanceId the instance ID
+	 * @param entry      the kind of entry
+	 * @return the values
+	 */
+	synchronized List<String> get(String instanceId, Entry entry) {
+		return ImmutableList.copyOf(entries.get(instanceId + '\t' + entry));
+	}
+
+	/**
+	 * Returns whether an instance completed a phase.
+	 *
+	 * @param instanceId the instance ID
+	 * @param phase      the phase
+	 * @return whether the phase is recorded
+	 */
+	boolean hasPhase(String instanceId, Phase phase) {
+		return get(instanceId, Entry.PHASE).contains(phase.name());
+	}
+
+	/**
+	 * Deletes the journal once the allocation no longer needs resuming, either because it
+	 * completed or because its resources were released.
+	 */
+	synchronized void discard() {
+		entries.clear();
+		close();
+		if (file.exists() && !file.delete()) {
+			LOG.warn("Unable to delete the allocation journal {}.", file);
+		}
+	}
+
+	private void load() {
+		if (!file.exists()) {
+			return;
+		}
+		try {
+			for (String line : Files.readLines(file, UTF8)) {
+				List<String> fields = FIELD_SPLITTER.splitToList(line);
+				// The last line may be torn if the plugin went down while writing it.
+				if (fields.size() != 3 || !isEntry(fields.get(1))) {
+					continue;
+				}
+				entries.put(fields.get(0) + '\t' + fields.get(1), fields.get(2));
+			}
+			LOG.info("Resuming allocation from journal {} with {} entries.", file, entries.size());
+		} catch (IOException e) {
+			LOG.warn("Unable to read the allocation journal {}: {}", file, e.getMessage());
+		}
+	}
+
+	private static boolean isEntry(String name) {
+		for (Entry entry : Entry.values()) {
+			if (entry.name().equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes the journal file, keeping it for a later attempt.
+	 */
+	synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				LOG.debug("Unable to close the allocation journal {}.", file, e);
+			}
+			out = null;
+		}
+	}
+}
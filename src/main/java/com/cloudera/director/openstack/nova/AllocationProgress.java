@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Follows the instances of an allocation as they complete, so that the allocation can
+ * return as soon as enough of them are complete, while the others carry on.
+ */
+class AllocationProgress {
+
+	private final Set<String> instanceIds;
+	private final Set<String> pendingInstanceIds;
+	private final int requiredCount;
+	private int completedCount;
+	private final CountDownLatch satisfied = new CountDownLatch(1);
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	/**
+	 * Creates the progress of an allocation.
+	 *
+	 * @param instanceIds   the instance IDs of the allocation
+	 * @param requiredCount the number of complete instances which satisfy the allocation
+	 */
+	AllocationProgress(Collection<String> instanceIds, int requiredCount) {
+		this.instanceIds = ImmutableSet.copyOf(instanceIds);
+		this.pendingInstanceIds = Sets.newHashSet(instanceIds);
+		this.requiredCount = requiredCount;
+	}
+
+	/**
+	 * Records that an instance went through every step of the allocation.
+	 *
+	 * @param instanceId the instance ID
+	 */
+	synchronized void completed(String instanceId) {
+		if (pendingInstanceIds.remove(instanceId) && ++completedCount >= requiredCount) {
+			satisfied.countDown();
+		}
+	}
+
+	/**
+	 * Records that the allocation ended, whatever the outcome. Whoever waits for it to be
+	 * satisfied is woken up.
+	 */
+	void finished() {
+		finished.countDown();
+		satisfied.countDown();
+	}
+
+	/**
+	 * Returns whether an instance is still on its way.
+	 *
+	 * @param instanceId the instance ID
+	 * @return whether the instance belongs to the allocation and is not complete yet
+	 */
+	synchronized boolean isPending(String instanceId) {
+		return pendingInstanceIds.contains(instanceId);
+	}
+
+	/**
+	 * Returns whether enough instances are complete.
+	 *
+	 * @return whether the allocation is satisfied
+	 */
+	synchronized boolean isSatisfied() {
+		return completedCount >= requiredCount;
+	}
+
+	/**
+	 * Returns the instances of the allocation.
+	 *
+	 * @return the instance IDs
+	 */
+	Set<String> getInstanceIds() {
+		return instanceIds;
+	}
+
+	/**
+	 * Returns the instances which are not complete yet.
+	 *
+	 * @return the instance IDs
+	 */
+	synchronized Set<String> getPendingInstanceIds() {
+		return ImmutableSet.copyOf(pendingInstanceIds);
+	}
+
+	/**
+	 * Waits until enough instances are complete, or the allocation ended.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	void awaitSatisfied() throws InterruptedException {
+		satisfied.await();
+	}
+
+	/**
+	 * Waits until the allocation ended.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	void awaitFinished() throws InterruptedException {
+		finished.await();
+	}
+
+	/**
+	 * Waits until the allocation ended, for up to the given time.
+	 *
+	 * @param timeout the timeout
+	 * @param unit    the timeout unit
+	 * @return whether the allocation ended in time
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+		return finished.await(timeout, unit);
+	}
+}
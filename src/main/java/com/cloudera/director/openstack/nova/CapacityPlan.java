@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Works out how many new instances fit in the tenant quotas, from the quota limits, what
+ * the tenant uses already, and what each instance takes. A negative limit is unlimited.
+ */
+class CapacityPlan {
+
+	private final List<Quota> quotas = Lists.newArrayList();
+
+	/**
+	 * Adds a quota the new instances count against.
+	 *
+	 * @param resource    the resource name, as shown in messages
+	 * @param limit       the quota limit, negative when unlimited
+	 * @param used        how much of the quota is used already
+	 * @param perInstance how much of the quota each instance takes
+	 * @return this plan
+	 */
+	CapacityPlan require(String resource, int limit, int used, int perInstance) {
+		if (limit >= 0 && perInstance > 0) {
+			quotas.add(new Quota(resource, limit, used, perInstance));
+		}
+		return this;
+	}
+
+	/**
+	 * Returns how many of the wanted instances fit.
+	 *
+	 * @param wanted the number of wanted instances
+	 * @return the number of instances which fit, at most the wanted number
+	 */
+	int getFittingCount(int wanted) {
+		int fitting = wanted;
+		for (Quota quota : quotas) {
+			fitting = Math.min(fitting, quota.getFittingCount());
+		}
+		return fitting;
+	}
+
+	/**
+	 * Describes the quotas which keep some of the wanted instances from fitting.
+	 *
+	 * @param wanted the number of wanted instances
+	 * @return the description, empty when they all fit
+	 */
+	String describeShortfall(int wanted) {
+		List<String> shortfalls = Lists.newArrayList();
+		for (Quota quota : quotas) {
+			if (quota.getFittingCount() < wanted) {
+				shortfalls.add(String.format("%s: %d of %d used, %d per instance",
+						quota.resource, quota.used, quota.limit, quota.perInstance));
+			}
+		}
+		return Joiner.on("; ").join(shortfalls);
+	}
+
+	private static final class Quota {
+		private final String resource;
+		private final int limit;
+		private final int used;
+		private final int perInstance;
+
+		private Quota(String resource, int limit, int used, int perInstance) {
+			this.resource = resource;
+			this.limit = limit;
+			this.used = used;
+			this.perInstance = perInstance;
+		}
+
+		private int getFittingCount() {
+			return Math.max(0, (limit - used) / perInstance);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The allocations which returned once enough of their instances were ready, and keep
+ * completing the others in the background. Director asks about these instances through
+ * new providers, so the allocations are shared by the providers of a configuration and
+ * looked up by instance ID.
+ */
+class CompletingAllocations {
+
+	/*
+	 * Runs the allocations which return early, and the allocations themselves until their
+	 * grace period passes
+	 */
+	private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(
+			Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+					.setNameFormat("nova-completion-%d").setDaemon(true).build()));
+
+	/*
+	 * The progress of the completing allocations, by instance ID
+	 */
+	private final ConcurrentMap<String, AllocationProgress> progressByInstanceId = Maps.newConcurrentMap();
+
+	/**
+	 * Returns the executor running the allocations.
+	 *
+	 * @return the executor
+	 */
+	ListeningExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Follows an allocation until it is removed.
+	 *
+	 * @param progress the allocation progress
+	 */
+	void add(AllocationProgress progress) {
+		for (String instanceId : progress.getInstanceIds()) {
+			progressByInstanceId.put(instanceId, progress);
+		}
+	}
+
+	/**
+	 * Stops following an allocation. The instances which a later allocation took over are
+	 * left to it.
+	 *
+	 * @param progress the allocation progress
+	 */
+	void remove(AllocationProgress progress) {
+		for (String instanceId : progress.getInstanceIds()) {
+			progressByInstanceId.remove(instanceId, progress);
+		}
+	}
+
+	/**
+	 * Returns whether an instance is still provisioning after its allocation returned.
+	 *
+	 * @param instanceId the instance ID
+	 * @return whether the instance is still provisioning
+	 */
+	boolean isCompleting(String instanceId) {
+		AllocationProgress progress = progressByInstanceId.get(instanceId);
+		return progress != null && progress.isPending(instanceId);
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.domain.Flavor;
+import org.jclouds.openstack.nova.v2_0.extensions.FlavorExtraSpecsApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+
+/**
+ * The flavors of a region along with their extra specs, such as the CPU policy, the
+ * memory page size and the number of NUMA nodes, which the flavor name does not tell.
+ * <p>
+ * Reading the extra specs takes a request per flavor, so the catalog is a snapshot,
+ * taken once and kept for a while.
+ */
+class FlavorCatalog {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FlavorCatalog.class);
+
+	/**
+	 * The flavors from the cheapest. OpenStack has no flavor price, so the fewer
+	 * the vCPUs, then the RAM, then the disks, the cheaper the flavor.
+	 */
+	private static final Comparator<FlavorTraits> CHEAPEST_FIRST = new Comparator<FlavorTraits>() {
+		@Override
+		public int compare(FlavorTraits flavor1, FlavorTraits flavor2) {
+			int result = Ints.compare(flavor1.getVcpus(), flavor2.getVcpus());
+			if (result == 0) {
+				result = Ints.compare(flavor1.getRam(), flavor2.getRam());
+			}
+			if (result == 0) {
+				result = Ints.compare(flavor1.getDisk() + flavor1.getEphemeral(), flavor2.getDisk() + flavor2.getEphemeral());
+			}
+			return result != 0 ? result : flavor1.getName().compareTo(flavor2.getName());
+		}
+	};
+
+	private final Map<String, FlavorTraits> flavorsByNames;
+	private final long loadedAtMillis;
+
+	/**
+	 * Creates a catalog of the given flavors.
+	 *
+	 * @param flavors        the flavors
+	 * @param loadedAtMillis when the flavors were read
+	 */
+	FlavorCatalog(Collection<FlavorTraits> flavors, long loadedAtMillis) {
+		Map<String, FlavorTraits> flavorsByNames = Maps.newLinkedHashMap();
+		for (FlavorTraits flavor : Ordering.from(CHEAPEST_FIRST).sortedCopy(flavors)) {
+			flavorsByNames.put(flavor.getName(), flavor);
+		}
+		this.flavorsByNames = ImmutableMap.copyOf(flavorsByNames);
+		this.loadedAtMillis = loadedAtMillis;
+	}
+
+	/**
+	 * Reads the flavors of a region along with their extra specs. The flavors are kept
+	 * without extra specs when the extension is not available, or the tenant may not
+	 * read them.
+	 *
+	 * @param novaApi the Nova API
+	 * @param region  the region
+	 * @return the flavor catalog
+	 */
+	static FlavorCatalog load(NovaApi novaApi, String region) {
+		Optional<FlavorExtraSpecsApi> extraSpecsApi = novaApi.getFlavorExtraSpecsApi(region);
+		List<FlavorTraits> flavors = Lists.newArrayList();
+		for (Flavor flavor : novaApi.getFlavorApi(region).listInDetail().concat()) {
+			Map<String, String> extraSpecs = ImmutableMap.of();
+			if (extraSpecsApi.isPresent()) {
+				try {
+					extraSpecs = extraSpecsApi.get().getMetadata(flavor.getId());
+				} catch (RuntimeException e) {
+					LOG.warn("Unable to read the extra specs of flavor {}: {}", flavor.getName(), e.getMessage());
+				}
+			}
+			flavors.add(new FlavorTraits(flavor.getId(), flavor.getName(), flavor.getVcpus(), flavor.getRam(),
+					flavor.getDisk(), flavor.getEphemeral().or(0), parseSwap(flavor.getSwap()), extraSpecs));
+		}
+		LOG.info("Read {} flavors in region {}.", flavors.size(), region);
+		return new FlavorCatalog(flavors, System.currentTimeMillis());
+	}
+
+	private static int parseSwap(Optional<String> swap) {
+		// Nova gives an empty string for a flavor without swap.
+		Integer swapMb = swap.isPresent() ? Ints.tryParse(swap.get()) : null;
+		return swapMb == null ? 0 : swapMb;
+	}
+
+	/**
+	 * Returns whether the catalog was read more than the given time ago.
+	 *
+	 * @param maxAgeMillis the maximum age in milliseconds
+	 * @param nowMillis    the current time in milliseconds
+	 * @return whether the catalog is to be read again
+	 */
+	boolean isOlderThan(long maxAgeMillis, long nowMillis) {
+		return nowMillis - loadedAtMillis > maxAgeMillis;
+	}
+
+	/**
+	 * Returns a flavor by name.
+	 *
+	 * @param name the flavor name
+	 * @return the flavor, or null if there is no such flavor
+	 */
+	FlavorTraits getFlavor(String name) {
+		return flavorsByNames.get(name);
+	}
+
+	/**
+	 * Returns the cheapest flavor meeting the given requirements.
+	 *
+	 * @param requirements the flavor requirements
+	 * @return the cheapest flavor meeting them, or null if none does
+	 */
+	FlavorTraits recommend(FlavorRequirements requirements) {
+		for (FlavorTraits flavor : flavorsByNames.values()) {
+			if (requirements.isMetBy(flavor)) {
+				return flavor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps the flavor catalog of a region, reading it again once it gets old. The
+	 * providers of a configuration share the cache, rather than each reading the flavors
+	 * and their extra specs again.
+	 */
+	static final class Cache {
+		private final long maxAgeMillis;
+		private FlavorCatalog catalog;
+
+		/**
+		 * Creates an empty cache.
+		 *
+		 * @param maxAgeMillis how long a catalog is kept, in milliseconds
+		 */
+		Cache(long maxAgeMillis) {
+			this.maxAgeMillis = maxAgeMillis;
+		}
+
+		/**
+		 * Returns the flavor catalog of a region, reading it when missing or old.
+		 *
+		 * @param novaApi the Nova API
+		 * @param region  the region
+		 * @return the flavor catalog
+		 */
+		synchronized FlavorCatalog get(NovaApi novaApi, String region) {
+			if (catalog == null || catalog.isOlderThan(maxAgeMillis, System.currentTimeMillis())) {
+				catalog = load(novaApi, region);
+			}
+			return catalog;
+		}
+	}
+
+	/**
+	 * What a flavor provides.
+	 */
+	static final class FlavorTraits {
+		private final String id;
+		private final String name;
+		private final int vcpus;
+		private final int ram;
+		private final int disk;
+		private final int ephemeral;
+		private final int swap;
+		private final Map<String, String> extraSpecs;
+
+		/**
+		 * Creates the traits of a flavor.
+		 *
+		 * @param id         the flavor ID
+		 * @param name       the flavor name
+		 * @param vcpus      the number of vCPUs
+		 * @param ram        the RAM in MB
+		 * @param disk       the root disk size in GB
+		 * @param ephemeral  the ephemeral disk size in GB
+		 * @param swap       the swap disk size in MB
+		 * @param extraSpecs the extra specs
+		 */
+		FlavorTraits(String id, String name, int vcpus, int ram, int disk, int ephemeral, int swap,
+				Map<String, String> extraSpecs) {
+			this.id = id;
+			this.name = name;
+			this.vcpus = vcpus;
+			this.ram = ram;
+			this.disk = disk;
+			this.ephemeral = ephemeral;
+			this.swap = swap;
+			this.extraSpecs = ImmutableMap.copyOf(extraSpecs);
+		}
+
+		String getId() {
+			return id;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		int getVcpus() {
+			return vcpus;
+		}
+
+		int getRam() {
+			return ram;
+		}
+
+		int getDisk() {
+			return disk;
+		}
+
+		int getEphemeral() {
+			return ephemeral;
+		}
+
+		int getSwap() {
+			return swap;
+		}
+
+		Map<String, String> getExtraSpecs() {
+			return extraSpecs;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * What the flavor of a template is to provide, so that the instances of performance
+ * sensitive roles do not land on a flavor without pinned CPUs or huge pages.
+ * <p>
+ * The requirements are given as a comma separated list of {@code key=value} entries.
+ * The {@code vcpus}, {@code ram} (MB), {@code disk} (GB), {@code ephemeral} (GB) and
+ * {@code swap} (MB) keys give minimums. Any other key is an extra spec of the flavor,
+ * such as {@code hw:cpu_policy=dedicated} or {@code hw:numa_nodes=2}, which the flavor
+ * must have with that value.
+ */
+class FlavorRequirements {
+
+	static final String VCPUS = "vcpus";
+	static final String RAM = "ram";
+	static final String DISK = "disk";
+	static final String EPHEMERAL = "ephemeral";
+	static final String SWAP = "swap";
+
+	static final String MEM_PAGE_SIZE = "hw:mem_page_size";
+
+	/**
+	 * The page sizes which do not back the memory with huge pages.
+	 */
+	private static final ImmutableSet<String> NOT_LARGE_PAGE_SIZES = ImmutableSet.of("small", "any");
+
+	private static final Splitter ENTRY_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final Splitter KEY_SPLITTER = Splitter.on('=').trimResults().limit(2);
+	private static final Joiner ENTRY_JOINER = Joiner.on(',');
+
+	private final Map<String, Integer> minimums;
+	private final Map<String, String> extraSpecs;
+
+	private FlavorRequirements(Map<String, Integer> minimums, Map<String, String> extraSpecs) {
+		this.minimums = minimums;
+		this.extraSpecs = extraSpecs;
+	}
+
+	/**
+	 * Parses flavor requirements.
+	 *
+	 * @param spec the requirements, or null
+	 * @return the flavor requirements
+	 * @throws IllegalArgumentException if an entry is not of the form {@code key=value}, a
+	 *                                  key is given twice, or a minimum is not a
+	 *                                  non-negative number
+	 */
+	static FlavorRequirements parse(String spec) {
+		Map<String, Integer> minimums = Maps.newLinkedHashMap();
+		Map<String, String> extraSpecs = Maps.newLinkedHashMap();
+		for (String entry : ENTRY_SPLITTER.split(Strings.nullToEmpty(spec))) {
+			List<String> keyAndValue = KEY_SPLITTER.splitToList(entry);
+			if (keyAndValue.size() != 2 || keyAndValue.get(0).isEmpty() || keyAndValue.get(1).isEmpty()) {
+				throw new IllegalArgumentException("Invalid flavor requirement: " + entry);
+			}
+			String key = keyAndValue.get(0);
+			String value = keyAndValue.get(1);
+			if (minimums.containsKey(key) || extraSpecs.containsKey(key)) {
+				throw new IllegalArgumentException("Duplicate flavor requirement: " + key);
+			}
+			if (isMinimum(key)) {
+				Integer minimum = Ints.tryParse(value);
+				if (minimum == null || minimum < 0) {
+					throw new IllegalArgumentException("Invalid flavor requirement: " + entry);
+				}
+				minimums.put(key, minimum);
+			} else {
+				extraSpecs.put(key, value);
+			}
+		}
+		return new FlavorRequirements(ImmutableMap.copyOf(minimums), ImmutableMap.copyOf(extraSpecs));
+	}
+
+	private static boolean isMinimum(String key) {
+		return VCPUS.equals(key) || RAM.equals(key) || DISK.equals(key) || EPHEMERAL.equals(key) || SWAP.equals(key);
+	}
+
+	/**
+	 * Returns whether there is no requirement.
+	 *
+	 * @return whether there is no requirement
+	 */
+	boolean isEmpty() {
+		return minimums.isEmpty() && extraSpecs.isEmpty();
+	}
+
+	/**
+	 * Returns whether a flavor meets the requirements.
+	 *
+	 * @param flavor the flavor
+	 * @return whether the flavor meets the requirements
+	 */
+	boolean isMetBy(FlavorCatalog.FlavorTraits flavor) {
+		return getUnmet(flavor).isEmpty();
+	}
+
+	/**
+	 * Returns the requirements a flavor does not meet.
+	 *
+	 * @param flavor the flavor
+	 * @return the unmet requirements, as {@code key=value} entries
+	 */
+	List<String> getUnmet(FlavorCatalog.FlavorTraits flavor) {
+		List<String> unmet = Lists.newArrayList();
+		for (Map.Entry<String, Integer> minimum : minimums.entrySet()) {
+			if (getAmount(flavor, minimum.getKey()) < minimum.getValue()) {
+				unmet.add(minimum.getKey() + "=" + minimum.getValue());
+			}
+		}
+		for (Map.Entry<String, String> extraSpec : extraSpecs.entrySet()) {
+			if (!matches(extraSpec.getKey(), extraSpec.getValue(), flavor.getExtraSpecs().get(extraSpec.getKey()))) {
+				unmet.add(extraSpec.getKey() + "=" + extraSpec.getValue());
+			}
+		}
+		return ImmutableList.copyOf(unmet);
+	}
+
+	private static int getAmount(FlavorCatalog.FlavorTraits flavor, String key) {
+		if (VCPUS.equals(key)) {
+			return flavor.getVcpus();
+		} else if (RAM.equals(key)) {
+			return flavor.getRam();
+		} else if (DISK.equals(key)) {
+			return flavor.getDisk();
+		} else if (EPHEMERAL.equals(key)) {
+			return flavor.getEphemeral();
+		}
+		return flavor.getSwap();
+	}
+
+	private static boolean matches(String key, String required, String actual) {
+		if (actual == null) {
+			return false;
+		}
+		// Large pages are met by any huge page size, such as 2048 or 1GB.
+		if (MEM_PAGE_SIZE.equals(key) && "large".equalsIgnoreCase(required)) {
+			return !NOT_LARGE_PAGE_SIZES.contains(actual.toLowerCase());
+		}
+		return required.equalsIgnoreCase(actual);
+	}
+
+	@Override
+	public String toString() {
+		List<String> entries = Lists.newArrayList();
+		for (Map.Entry<String, Integer> minimum : minimums.entrySet()) {
+			entries.add(minimum.getKey() + "=" + minimum.getValue());
+		}
+		for (Map.Entry<String, String> extraSpec : extraSpecs.entrySet()) {
+			entries.add(extraSpec.getKey() + "=" + extraSpec.getValue());
+		}
+		return ENTRY_JOINER.join(entries);
+	}
+}
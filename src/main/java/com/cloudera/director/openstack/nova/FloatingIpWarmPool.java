@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps a number of allocated, unassociated floating IPs at hand for each floating IP
+ * pool, so that an instance gets its floating IP with a single association call. The
+ * floating IPs of the project which are not associated to any server are taken into the
+ * warm pool before new ones are allocated, and the warm pool is refilled in the
+ * background after each hand out.
+ * <p>
+ * The providers of the same configuration share a warm pool, so that a floating IP is
+ * handed out once whichever provider asks for it. A floating IP handed out stays claimed
+ * until a listing started after the hand out shows it associated or gone.
+ * <p>
+ * With a size of 0 every floating IP is allocated on demand, as without a warm pool.
+ */
+class FloatingIpWarmPool {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FloatingIpWarmPool.class);
+
+	private final Supplier<FloatingIPApi> floatingIpApiSupplier;
+	private final int size;
+	private final Executor executor;
+
+	private final Map<String, Deque<FloatingIP>> readyByPool = Maps.newHashMap();
+	private final Set<String> refillingPools = Sets.newHashSet();
+
+	/*
+	 * The floating IPs handed out, until a listing shows them associated or gone, with the
+	 * number of listings started before each hand out
+	 */
+	private final Map<String, Long> claimedIds = Maps.newHashMap();
+	private long listingCount = 0;
+
+	/**
+	 * Creates an empty warm pool.
+	 *
+	 * @param floatingIpApiSupplier supplies the floating IP API
+	 * @param size                  the number of floating IPs to keep at hand per pool
+	 * @param executor              the executor refilling the warm pool
+	 */
+	FloatingIpWarmPool(Supplier<FloatingIPApi> floatingIpApiSupplier, int size, Executor executor) {
+		this.floatingIpApiSupplier = floatingIpApiSupplier;
+		this.size = size;
+		this.executor = executor;
+	}
+
+	/**
+	 * Hands out an unassociated floating IP of the given pool, allocating one if none is
+	 * at hand.
+	 *
+	 * @param pool the floating IP pool name
+	 * @return the floating IP
+	 */
+	FloatingIP acquire(String pool) {
+		FloatingIPApi floatingIpApi = floatingIpApiSupplier.get();
+		if (size <= 0) {
+			return floatingIpApi.allocateFromPool(pool);
+		}
+		FloatingIP floatingIp = poll(pool);
+		boolean refilling;
+		synchronized (this) {
+			refilling = refillingPools.contains(pool);
+		}
+		if (floatingIp == null && !refilling) {
+			// The first hand out of a pool adopts the floating IPs the project holds already.
+			adoptUnassociated(floatingIpApi, pool);
+			floatingIp = poll(pool);
+		}
+		if (floatingIp == null) {
+			floatingIp = claim(floatingIpApi.allocateFromPool(pool));
+		}
+		scheduleRefill(pool);
+		return floatingIp;
+	}
+
+	/**
+	 * Takes back a floating IP whose association failed or timed out. The warm pool adopts
+	 * it again once a listing shows it unassociated, so that a floating IP the project held
+	 * before is not deleted. Without a warm pool, the floating IP was allocated for the
+	 * hand out and is deleted.
+	 *
+	 * @param pool       the floating IP pool name
+	 * @param floatingIp the floating IP handed out
+	 */
+	void release(String pool, FloatingIP floatingIp) {
+		if (size <= 0) {
+			floatingIpApiSupplier.get().delete(floatingIp.getId());
+			return;
+		}
+		synchronized (this) {
+			claimedIds.remove(floatingIp.getId());
+		}
+		scheduleRefill(pool);
+	}
+
+	/**
+	 * Returns the number of floating IPs at hand for the given pool.
+	 *
+	 * @param pool the floating IP pool name
+	 * @return the number of floating IPs at hand
+	 */
+	synchronized int getReadyCount(String pool) {
+		Deque<FloatingIP> ready = readyByPool.get(pool);
+		return ready == null ? 0 : ready.size();
+	}
+
+	private synchronized FloatingIP poll(String pool) {
+		Deque<FloatingIP> ready = readyByPool.get(pool);
+		return ready == null ? null : claim(ready.pollFirst());
+	}
+
+	private synchronized FloatingIP claim(FloatingIP floatingIp) {
+		if (floatingIp != null) {
+			claimedIds.put(floatingIp.getId(), listingCount);
+		}
+		return floatingIp;
+	}
+
+	private synchronized Deque<FloatingIP> ready(String pool) {
+		Deque<FloatingIP> ready = readyByPool.get(pool);
+		if (ready == null) {
+			ready = Queues.newArrayDeque();
+			readyByPool.put(pool, ready);
+		}
+		return ready;
+	}
+
+	private void adoptUnassociated(FloatingIPApi floatingIpApi, String pool) {
+		long listing;
+		synchronized (this) {
+			listing = ++listingCount;
+		}
+		Set<String> seenIds = Sets.newHashSet();
+		Set<String> associatedIds = Sets.newHashSet();
+		Set<FloatingIP> unassociated = Sets.newLinkedHashSet();
+		for (FloatingIP floatingIp : floatingIpApi.list()) {
+			seenIds.add(floatingIp.getId());
+			if (floatingIp.getInstanceId() != null) {
+				associatedIds.add(floatingIp.getId());
+			} else if (pool.equals(floatingIp.getPool()) && floatingIp.getIp() != null) {
+				unassociated.add(floatingIp);
+			}
+		}
+		synchronized (this) {
+			// A claimed floating IP is done with once associated or released. The listing
+			// tells nothing about the floating IPs handed out after it started, which are
+			// allocated but not associated yet.
+			Iterator<Map.Entry<String, Long>> claimed = claimedIds.entrySet().iterator();
+			while (claimed.hasNext()) {
+				Map.Entry<String, Long> claim = claimed.next();
+				if (claim.getValue() < listing
+						&& (associatedIds.contains(claim.getKey()) || !seenIds.contains(claim.getKey()))) {
+					claimed.remove();
+				}
+			}
+			Deque<FloatingIP> ready = ready(pool);
+			Set<String> readyIds = Sets.newHashSet();
+			for (FloatingIP floatingIp : ready) {
+				readyIds.add(floatingIp.getId());
+			}
+			for (FloatingIP floatingIp : unassociated) {
+				if (!claimedIds.containsKey(floatingIp.getId()) && !readyIds.contains(floatingIp.getId())) {
+					ready.addLast(floatingIp);
+				}
+			}
+		}
+	}
+
+	private void scheduleRefill(final String pool) {
+		synchronized (this) {
+			if (!refillingPools.add(pool)) {
+				return;
+			}
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refill(pool);
+				} finally {
+					synchronized (FloatingIpWarmPool.this) {
+						refillingPools.remove(pool);
+					}
+				}
+			}
+		});
+	}
+
+	private void refill(String pool) {
+		FloatingIPApi floatingIpApi = floatingIpApiSupplier.get();
+		try {
+			adoptUnassociated(floatingIpApi, pool);
+			while (getReadyCount(pool) < size) {
+				FloatingIP floatingIp = floatingIpApi.allocateFromPool(pool);
+				synchronized (this) {
+					ready(pool).addLast(floatingIp);
+				}
+			}
+		} catch (RuntimeException e) {
+			// Hand outs fall back to allocating on demand until the next refill.
+			LOG.warn("Unable to refill the floating IP warm pool {}: {}", pool, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jclouds.openstack.nova.v2_0.domain.BlockDeviceMapping;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * The hypervisor local disks of the instances of a template, carved out of the
+ * ephemeral disk of the flavor rather than attached from Cinder, for data which does
+ * not need to outlive the instance, such as HDFS blocks.
+ * <p>
+ * Without a volume number, the instances get the ephemeral disk of the flavor whole.
+ * Otherwise they get that many blank local disks of the volume size, which together
+ * have to fit in the ephemeral disk of the flavor. The swap disk of the flavor, if any,
+ * comes after them. The disks follow the root disk in the order the hypervisor names
+ * them, which is recorded in the server metadata so that they can be found on the
+ * instance.
+ */
+class LocalDiskLayout {
+
+	private static final String DEVICE_PREFIX = "/dev/vd";
+	private static final Joiner DEVICE_JOINER = Joiner.on(',');
+
+	private final int diskNumber;
+	private final int diskSize;
+	private final boolean mapped;
+	private final boolean swap;
+
+	private LocalDiskLayout(int diskNumber, int diskSize, boolean mapped, boolean swap) {
+		this.diskNumber = diskNumber;
+		this.diskSize = diskSize;
+		this.mapped = mapped;
+		this.swap = swap;
+	}
+
+	/**
+	 * Lays the local disks of the instances out on a flavor.
+	 *
+	 * @param volumeNumber the number of local disks, or 0 for the ephemeral disk of the flavor
+	 * @param volumeSize   the size of the local disks in GB
+	 * @param flavor       the flavor
+	 * @return the local disk layout
+	 * @throws IllegalArgumentException if the flavor has no ephemeral disk, or too small a one
+	 */
+	static LocalDiskLayout of(int volumeNumber, int volumeSize, FlavorCatalog.FlavorTraits flavor) {
+		if (flavor.getEphemeral() <= 0) {
+			throw new IllegalArgumentException("Flavor " + flavor.getName() + " has no ephemeral disk");
+		}
+		boolean swap = flavor.getSwap() > 0;
+		if (volumeNumber <= 0 || volumeSize <= 0) {
+			return new LocalDiskLayout(1, flavor.getEphemeral(), false, swap);
+		}
+		// Nova turns down local disks adding up to more than the ephemeral disk.
+		if (volumeNumber * volumeSize > flavor.getEphemeral()) {
+			throw new IllegalArgumentException(String.format(
+					"%d local disks of %d GB do not fit in the %d GB ephemeral disk of flavor %s",
+					volumeNumber, volumeSize, flavor.getEphemeral(), flavor.getName()));
+		}
+		return new LocalDiskLayout(volumeNumber, volumeSize, true, swap);
+	}
+
+	/**
+	 * Returns the device names of the local data disks, right after the root disk.
+	 *
+	 * @return the device names of the local disks
+	 */
+	List<String> getDevices() {
+		ImmutableList.Builder<String> devices = ImmutableList.builder();
+		for (int i = 1; i <= diskNumber; i++) {
+			devices.add(getDevice(i));
+		}
+		return devices.build();
+	}
+
+	/**
+	 * Returns the size of each of the local data disks.
+	 *
+	 * @return the size of the local disks in GB
+	 */
+	int getDiskSize() {
+		return diskSize;
+	}
+
+	/**
+	 * Returns the device name of the swap disk, after the local data disks.
+	 *
+	 * @return the device name of the swap disk, or null if the flavor has none
+	 */
+	String getSwapDevice() {
+		return swap ? getDevice(diskNumber + 1) : null;
+	}
+
+	/**
+	 * Returns the block device mappings which boot a server from the given image with the
+	 * local disks, or none when the server gets the ephemeral disk of the flavor whole.
+	 *
+	 * @param image the image ID
+	 * @return the block device mappings
+	 */
+	Set<BlockDeviceMapping> getBlockDeviceMappings(String image) {
+		if (!mapped) {
+			return ImmutableSet.of();
+		}
+		ImmutableSet.Builder<BlockDeviceMapping> mappings = ImmutableSet.builder();
+		mappings.add(BlockDeviceMapping.builder()
+				.uuid(image)
+				.sourceType("image")
+				.destinationType("local")
+				.bootIndex(0)
+				.deleteOnTermination(true)
+				.build());
+		for (String device : getDevices()) {
+			mappings.add(BlockDeviceMapping.builder()
+					.deviceName(device)
+					.sourceType("blank")
+					.destinationType("local")
+					.volumeSize(diskSize)
+					.bootIndex(-1)
+					.deleteOnTermination(true)
+					.build());
+		}
+		return mappings.build();
+	}
+
+	/**
+	 * Returns the number of local disks mapped at boot, which the ephemeral disk of the
+	 * flavor is otherwise used for.
+	 *
+	 * @return the number of local disks mapped at boot
+	 */
+	int getMappedDiskNumber() {
+		return mapped ? diskNumber : 0;
+	}
+
+	/**
+	 * Returns the server metadata recording the layout.
+	 *
+	 * @return the server metadata
+	 */
+	Map<String, String> getMetadata() {
+		Map<String, String> metadata = Maps.newHashMap();
+		metadata.put(NovaInstance.DIRECTOR_LOCAL_DISKS, DEVICE_JOINER.join(getDevices()));
+		metadata.put(NovaInstance.DIRECTOR_LOCAL_DISK_SIZE, Integer.toString(diskSize));
+		if (swap) {
+			metadata.put(NovaInstance.DIRECTOR_SWAP_DISK, getSwapDevice());
+		}
+		return metadata;
+	}
+
+	private static String getDevice(int index) {
+		return DEVICE_PREFIX + NovaProvider.getDeviceLetters(index);
+	}
+}
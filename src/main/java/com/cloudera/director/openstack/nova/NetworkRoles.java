@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * The networks the instances of a template get a NIC on, by role, such as management
+ * and data, so that bulk traffic can be kept off the management network.
+ * <p>
+ * The network ID of the template has the management role and comes first. The other
+ * networks are given as a comma separated list of {@code role=networkId} entries, such
+ * as {@code data=net-2,storage=net-3}, and get their NICs in that order.
+ */
+class NetworkRoles {
+
+	/**
+	 * The role of the network ID of the template, which the private and floating IP
+	 * addresses of the instances are on.
+	 */
+	static final String MANAGEMENT_ROLE = "management";
+
+	private static final Splitter ENTRY_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final Splitter ROLE_SPLITTER = Splitter.on('=').trimResults().limit(2);
+	private static final Joiner ROLE_JOINER = Joiner.on(',');
+
+	private final Map<String, String> networkIdsByRoles;
+
+	private NetworkRoles(Map<String, String> networkIdsByRoles) {
+		this.networkIdsByRoles = networkIdsByRoles;
+	}
+
+	/**
+	 * Parses the networks of a template.
+	 *
+	 * @param managementNetworkId the ID of the management network
+	 * @param spec                the other networks by role, or null
+	 * @return the network roles
+	 * @throws IllegalArgumentException if an entry is not of the form {@code role=networkId},
+	 *                                  or a role or network is given twice
+	 */
+	static NetworkRoles parse(String managementNetworkId, String spec) {
+		Map<String, String> networkIdsByRoles = Maps.newLinkedHashMap();
+		networkIdsByRoles.put(MANAGEMENT_ROLE, Strings.nullToEmpty(managementNetworkId));
+		for (String entry : ENTRY_SPLITTER.split(Strings.nullToEmpty(spec))) {
+			List<String> roleAndNetworkId = splitEntry("network", entry);
+			String role = roleAndNetworkId.get(0);
+			String networkId = roleAndNetworkId.get(1);
+			if (networkIdsByRoles.containsKey(role)) {
+				throw new IllegalArgumentException("Duplicate network role: " + role);
+			}
+			// Nova lists the addresses of a server by network, so a network cannot serve two roles.
+			if (networkIdsByRoles.containsValue(networkId)) {
+				throw new IllegalArgumentException("Duplicate network: " + networkId);
+			}
+			networkIdsByRoles.put(role, networkId);
+		}
+		return new NetworkRoles(networkIdsByRoles);
+	}
+
+	/**
+	 * Parses values given by role, such as the QoS policies of the ports, as a comma
+	 * separated list of {@code role=value} entries.
+	 *
+	 * @param kind what the values are, for the error messages
+	 * @param spec the values by role, or null
+	 * @return the values by role
+	 * @throws IllegalArgumentException if an entry is not of the form {@code role=value},
+	 *                                  or a role is given twice or has no network
+	 */
+	Map<String, String> parseByRole(String kind, String spec) {
+		Map<String, String> valuesByRoles = Maps.newLinkedHashMap();
+		for (String entry : ENTRY_SPLITTER.split(Strings.nullToEmpty(spec))) {
+			List<String> roleAndValue = splitEntry(kind, entry);
+			String role = roleAndValue.get(0);
+			if (!networkIdsByRoles.containsKey(role)) {
+				throw new IllegalArgumentException("No network has role " + role);
+			}
+			if (valuesByRoles.containsKey(role)) {
+				throw new IllegalArgumentException("Duplicate " + kind + " role: " + role);
+			}
+			valuesByRoles.put(role, roleAndValue.get(1));
+		}
+		return valuesByRoles;
+	}
+
+	private static List<String> splitEntry(String kind, String entry) {
+		List<String> roleAndValue = ROLE_SPLITTER.splitToList(entry);
+		if (roleAndValue.size() != 2 || roleAndValue.get(0).isEmpty() || roleAndValue.get(1).isEmpty()) {
+			throw new IllegalArgumentException("Invalid " + kind + " entry: " + entry);
+		}
+		return roleAndValue;
+	}
+
+	/**
+	 * Returns the roles, the management role first.
+	 *
+	 * @return the roles, in NIC order
+	 */
+	List<String> getRoles() {
+		return ImmutableList.copyOf(networkIdsByRoles.keySet());
+	}
+
+	/**
+	 * Returns the network IDs, the management network first.
+	 *
+	 * @return the network IDs, in NIC order
+	 */
+	List<String> getNetworkIds() {
+		return ImmutableList.copyOf(networkIdsByRoles.values());
+	}
+
+	/**
+	 * Returns the network of a role.
+	 *
+	 * @param role the role
+	 * @return the network ID, or null if no network has the role
+	 */
+	String getNetworkId(String role) {
+		return networkIdsByRoles.get(role);
+	}
+
+	/**
+	 * Returns the roles as recorded in the server metadata, in NIC order.
+	 *
+	 * @return the comma separated roles
+	 */
+	String formatRoles() {
+		return ROLE_JOINER.join(networkIdsByRoles.keySet());
+	}
+
+	/**
+	 * Parses the roles recorded in the server metadata.
+	 *
+	 * @param roles the comma separated roles, or null for a server with only the
+	 *              management network
+	 * @return the roles, in NIC order
+	 */
+	static List<String> parseRoles(String roles) {
+		return roles == null ? ImmutableList.of(MANAGEMENT_ROLE) : ENTRY_SPLITTER.splitToList(roles);
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Map;
+
+/**
+ * The subset of the Nova compute API which jclouds does not cover, used to plan the
+ * capacity of allocations and to place their servers.
+ */
+public interface NovaComputeApi {
+
+	/**
+	 * Returns the ID of the project the plugin allocates in.
+	 *
+	 * @return the project ID, or null if the identity service does not tell
+	 */
+	String getProjectId();
+
+	/**
+	 * Returns the absolute limits of the project, the quotas along with what the project
+	 * uses of them, such as {@code maxTotalInstances} and {@code totalInstancesUsed}.
+	 * Nova keeps the usage itself, so that it is read without listing every server.
+	 *
+	 * @return the absolute limits by name
+	 */
+	Map<String, Integer> getAbsoluteLimits();
+
+	/**
+	 * Returns the server group of the project with the given name.
+	 *
+	 * @param name the server group name
+	 * @return the server group, or null if there is none
+	 */
+	NovaServerGroup findServerGroup(String name);
+
+	/**
+	 * Creates a server group.
+	 *
+	 * @param name   the server group name
+	 * @param policy the policy of the group, such as {@code anti-affinity}
+	 * @return the created server group
+	 */
+	NovaServerGroup createServerGroup(String name, String policy);
+
+	/**
+	 * Deletes a server group, unless it is already gone. Its servers are left as they are.
+	 *
+	 * @param serverGroupId the server group ID
+	 */
+	void deleteServerGroup(String serverGroupId);
+}
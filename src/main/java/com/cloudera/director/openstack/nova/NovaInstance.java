@@ -18,18 +18,23 @@ package com.cloudera.director.openstack.nova;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import org.jclouds.openstack.nova.v2_0.domain.Address;
 import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.domain.ServerExtendedAttributes;
 
 import com.cloudera.director.spi.v1.compute.util.AbstractComputeInstance;
 import com.cloudera.director.spi.v1.util.DisplayPropertiesUtil;
 import com.cloudera.director.spi.v1.model.DisplayProperty;
 import com.cloudera.director.spi.v1.model.DisplayPropertyToken;
 import com.cloudera.director.spi.v1.model.util.SimpleDisplayPropertyBuilder;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
 
@@ -40,6 +45,29 @@ import com.google.common.collect.Maps;
 public class NovaInstance 
 	extends AbstractComputeInstance<NovaInstanceTemplate, Server>{
 	
+	/**
+	 * The metadata key recording the availability zones a server was tried in.
+	 */
+	static final String DIRECTOR_PLACEMENT = "DIRECTOR_PLACEMENT";
+
+	/**
+	 * The metadata key naming the server group a server was placed in.
+	 */
+	static final String DIRECTOR_SERVER_GROUP = "DIRECTOR_SERVER_GROUP";
+
+	/**
+	 * The metadata key listing the roles of the networks of a server, in NIC order.
+	 */
+	static final String DIRECTOR_NETWORK_ROLES = "DIRECTOR_NETWORK_ROLES";
+
+	/**
+	 * The metadata keys recording the device names of the local disks of a server, their
+	 * size in GB and the device name of its swap disk.
+	 */
+	static final String DIRECTOR_LOCAL_DISKS = "DIRECTOR_LOCAL_DISKS";
+	static final String DIRECTOR_LOCAL_DISK_SIZE = "DIRECTOR_LOCAL_DISK_SIZE";
+	static final String DIRECTOR_SWAP_DISK = "DIRECTOR_SWAP_DISK";
+
 	/**
 	 * The list of display properties (including inherited properties).
 	 */
@@ -70,6 +98,48 @@ public class NovaInstance
 			}	
 		},
 		
+		/**
+		 * The ID of the host the instance runs on, unique to the tenant.
+		 */
+		HOST_ID(new SimpleDisplayPropertyBuilder()
+				.displayKey("hostId")
+				.defaultDescription("The ID of the host the instance runs on, unique to the tenant.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				return instance.getHostId();
+			}
+		},
+
+		/**
+		 * The name of the hypervisor host the instance runs on, only shown to administrators.
+		 */
+		HYPERVISOR_HOSTNAME(new SimpleDisplayPropertyBuilder()
+				.displayKey("hypervisorHostname")
+				.defaultDescription("The name of the hypervisor host the instance runs on, if visible.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				return NovaInstance.getHypervisorHostName(instance);
+			}
+		},
+
+		/**
+		 * The availability zone the instance runs in.
+		 */
+		AVAILABILITY_ZONE(new SimpleDisplayPropertyBuilder()
+				.displayKey("availabilityZone")
+				.defaultDescription("The availability zone the instance runs in.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				return instance.getAvailabilityZone().orNull();
+			}
+		},
+
 		/**
 		 * The ID of the instance.
 		 */
@@ -130,7 +200,8 @@ public class NovaInstance
 				.build()) {
 			@Override
 			protected String getPropertyValue(Server instance) {
-				return NovaInstance.getPrivateIpAddress(instance).getHostAddress();
+				InetAddress privateIpAddress = NovaInstance.getPrivateIpAddress(instance);
+				return privateIpAddress == null ? null : privateIpAddress.getHostAddress();
 			}
 		},
 		
@@ -141,7 +212,8 @@ public class NovaInstance
 				.build()) {
 			@Override
 			protected String getPropertyValue(Server instance) {
-				return NovaInstance.getFloatingIpAddress(instance).getHostAddress();
+				InetAddress floatingIpAddress = NovaInstance.getFloatingIpAddress(instance);
+				return floatingIpAddress == null ? null : floatingIpAddress.getHostAddress();
 			}
 		},
 		
@@ -152,7 +224,130 @@ public class NovaInstance
 				.build()) {
 			@Override
 			protected String getPropertyValue(Server instance) {
-				return new String("networkID");
+				return null;
+			}
+
+			@Override
+			protected String getPropertyValue(NovaInstance novaInstance) {
+				return novaInstance.getTemplate().getNetworkRoles().getNetworkId(NetworkRoles.MANAGEMENT_ROLE);
+			}
+		},
+
+		/**
+		 * The addresses of the instance by network role, such as management=10.0.0.5,data=10.1.0.5.
+		 */
+		NETWORK_ADDRESSES(new SimpleDisplayPropertyBuilder()
+				.displayKey("networkAddresses")
+				.defaultDescription("The IP addresses of the instance by network role.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> hostAddressesByRoles = Maps.newLinkedHashMap();
+				for (Map.Entry<String, InetAddress> entry : NovaInstance.getAddressesByRoles(instance).entrySet()) {
+					hostAddressesByRoles.put(entry.getKey(), entry.getValue().getHostAddress());
+				}
+				return hostAddressesByRoles.isEmpty() ? null :
+						Joiner.on(',').withKeyValueSeparator("=").join(hostAddressesByRoles);
+			}
+		},
+
+		/**
+		 * The availability zones the instance was tried in, the last one being where it runs.
+		 */
+		PLACEMENT(new SimpleDisplayPropertyBuilder()
+				.displayKey("placement")
+				.defaultDescription("The availability zones the instance was tried in, the last one being where it runs.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> metadata = instance.getMetadata();
+				return metadata == null ? null : metadata.get(DIRECTOR_PLACEMENT);
+			}
+		},
+
+		/**
+		 * The server group the instance was placed in.
+		 */
+		SERVER_GROUP(new SimpleDisplayPropertyBuilder()
+				.displayKey("serverGroup")
+				.defaultDescription("The server group the instance was placed in.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> metadata = instance.getMetadata();
+				return metadata == null ? null : metadata.get(DIRECTOR_SERVER_GROUP);
+			}
+		},
+
+		/**
+		 * The device names of the hypervisor local disks of the instance, such as /dev/vdb,/dev/vdc.
+		 */
+		LOCAL_DISKS(new SimpleDisplayPropertyBuilder()
+				.displayKey("localDisks")
+				.defaultDescription("The device names of the hypervisor local disks of the instance.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> metadata = instance.getMetadata();
+				return metadata == null ? null : metadata.get(DIRECTOR_LOCAL_DISKS);
+			}
+		},
+
+		/**
+		 * The size in GB of each of the hypervisor local disks of the instance.
+		 */
+		LOCAL_DISK_SIZE(new SimpleDisplayPropertyBuilder()
+				.displayKey("localDiskSizeGB")
+				.defaultDescription("The size in GB of each of the hypervisor local disks of the instance.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> metadata = instance.getMetadata();
+				return metadata == null ? null : metadata.get(DIRECTOR_LOCAL_DISK_SIZE);
+			}
+		},
+
+		/**
+		 * The device name of the swap disk of the instance, if its flavor has one.
+		 */
+		SWAP_DISK(new SimpleDisplayPropertyBuilder()
+				.displayKey("swapDisk")
+				.defaultDescription("The device name of the swap disk of the instance.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				Map<String, String> metadata = instance.getMetadata();
+				return metadata == null ? null : metadata.get(DIRECTOR_SWAP_DISK);
+			}
+		},
+
+		/**
+		 * The rack of the instance, mapped from where it runs by the template.
+		 */
+		RACK(new SimpleDisplayPropertyBuilder()
+				.displayKey("rack")
+				.defaultDescription("The rack of the instance, mapped from where it runs.")
+				.sensitive(false)
+				.build()) {
+			@Override
+			protected String getPropertyValue(Server instance) {
+				return getRack(instance, RackMapping.parse(null));
+			}
+
+			@Override
+			protected String getPropertyValue(NovaInstance novaInstance) {
+				return getRack(novaInstance.unwrap(), novaInstance.getTemplate().getRackMapping());
+			}
+
+			private String getRack(Server instance, RackMapping rackMapping) {
+				return rackMapping.getRack(NovaInstance.getHypervisorHostName(instance), instance.getHostId(),
+						instance.getAvailabilityZone().orNull());
 			}
 		};
 		
@@ -177,6 +372,17 @@ public class NovaInstance
 		 * @return the value of the property from the specified instance
 		 */
 		protected abstract String getPropertyValue(Server instance);
+
+		/**
+		 * Returns the value of the property from the specified instance, for properties which
+		 * depend on more than the server, such as the template it was allocated from.
+		 *
+		 * @param novaInstance the instance
+		 * @return the value of the property from the specified instance
+		 */
+		protected String getPropertyValue(NovaInstance novaInstance) {
+			return getPropertyValue(novaInstance.unwrap());
+		}
 		
 		@Override
 		public DisplayProperty unwrap() {
@@ -189,7 +395,7 @@ public class NovaInstance
 	
 	protected NovaInstance(NovaInstanceTemplate template, String instanceId,
 			Server novaInstance) {
-		super(template, instanceId, getPrivateIpAddress(novaInstance));
+		super(template, instanceId, getPrivateIpAddress(novaInstance), novaInstance);
 	}
 
 	public Map<String, String> getProperties() {
@@ -197,14 +403,27 @@ public class NovaInstance
 		Server instance = unwrap();
 		if (instance != null) {
 			for (NovaInstanceDisplayPropertyToken propertyToken : NovaInstanceDisplayPropertyToken.values()) {
-				properties.put(propertyToken.unwrap().getDisplayKey(), propertyToken.getPropertyValue(instance));
+				properties.put(propertyToken.unwrap().getDisplayKey(), propertyToken.getPropertyValue(this));
 			}
 		}
 		return properties;
 	}
+
+	/**
+	 * Returns the IP addresses of the instance by the role of their network, such as
+	 * management and data, so that bulk traffic can be directed to its own network.
+	 *
+	 * @return the IP addresses by role, in NIC order, without the networks the instance
+	 *         has no IPv4 address on yet
+	 */
+	public Map<String, InetAddress> getNetworkAddresses() {
+		Server instance = unwrap();
+		return instance == null ? Collections.<String, InetAddress>emptyMap() : getAddressesByRoles(instance);
+	}
 	
 	/**
-	 * Returns the private IP address of the specified Nova instance.
+	 * Returns the private IP address of the specified Nova instance, on its management
+	 * network.
 	 *
 	 * @param instance the instance
 	 * @return the private IP address of the specified Nova instance
@@ -214,7 +433,7 @@ public class NovaInstance
 		Preconditions.checkNotNull(server, "instance is null");
 		InetAddress privateIpAddress = null;
 		try {
-			Iterator<Address> iterator = server.getAddresses().values().iterator();
+			Iterator<Address> iterator = getManagementAddresses(server).iterator();
 			Address address = null;
 			while (iterator.hasNext()) {
 				// Find the first IPv4 address.
@@ -230,6 +449,63 @@ public class NovaInstance
 		return privateIpAddress;
 	}
 
+	/**
+	 * Returns the name of the hypervisor host of the specified Nova instance, which Nova only
+	 * tells administrators.
+	 *
+	 * @param server the instance
+	 * @return the hypervisor host name, or null if it is not visible
+	 */
+	private static String getHypervisorHostName(Server server) {
+		Optional<ServerExtendedAttributes> extendedAttributes = server.getExtendedAttributes();
+		return extendedAttributes.isPresent() ? extendedAttributes.get().getHypervisorHostName() : null;
+	}
+
+	/**
+	 * Returns the first IPv4 address of the specified Nova instance on each of its
+	 * networks, by the role of the network. Nova lists the addresses of a server by
+	 * network in NIC order, which is the order of the roles recorded in its metadata.
+	 *
+	 * @param server the instance
+	 * @return the IP addresses by role
+	 * @throws IllegalArgumentException if an address is not valid
+	 */
+	private static Map<String, InetAddress> getAddressesByRoles(Server server) {
+		Map<String, String> metadata = server.getMetadata();
+		Iterator<String> roles = NetworkRoles.parseRoles(
+				metadata == null ? null : metadata.get(DIRECTOR_NETWORK_ROLES)).iterator();
+		Map<String, InetAddress> addressesByRoles = Maps.newLinkedHashMap();
+		try {
+			for (Collection<Address> addresses : server.getAddresses().asMap().values()) {
+				if (!roles.hasNext()) {
+					break;
+				}
+				String role = roles.next();
+				for (Address address : addresses) {
+					if (address.getVersion() == 4) {
+						addressesByRoles.put(role, InetAddress.getByName(address.getAddr()));
+						break;
+					}
+				}
+			}
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException("Invalid IP address", e);
+		}
+		return addressesByRoles;
+	}
+
+	/**
+	 * Returns the addresses of the specified Nova instance on its management network,
+	 * which is its first network.
+	 *
+	 * @param server the instance
+	 * @return the fixed and floating addresses on the management network
+	 */
+	private static Collection<Address> getManagementAddresses(Server server) {
+		Iterator<Collection<Address>> addresses = server.getAddresses().asMap().values().iterator();
+		return addresses.hasNext() ? addresses.next() : Collections.<Address>emptyList();
+	}
+
 	/**
 	 * Returns the Public IP address of the specified Nova instance if it exists.
 	 *
@@ -240,7 +516,8 @@ public class NovaInstance
 		Preconditions.checkNotNull(server, "instance is null");
 		InetAddress floatingIpAddress = null;
 		try {
-			Iterator<Address> iterator = server.getAddresses().values().iterator();
+			// The floating IP follows the fixed IP it maps to on the management network.
+			Iterator<Address> iterator = getManagementAddresses(server).iterator();
 			Address floatingAddress = null;
 			// Find the first IPv4 address.
 			while (iterator.hasNext()) {
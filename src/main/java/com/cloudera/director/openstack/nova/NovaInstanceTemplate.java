@@ -23,8 +23,10 @@ import com.cloudera.director.spi.v1.compute.ComputeInstanceTemplate;
 import com.cloudera.director.spi.v1.model.ConfigurationProperty;
 import com.cloudera.director.spi.v1.model.Configured;
 import com.cloudera.director.spi.v1.model.LocalizationContext;
+import com.cloudera.director.spi.v1.model.util.SimpleResourceTemplate;
 import com.cloudera.director.spi.v1.util.ConfigurationPropertiesUtil;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 
 /**
  * Represents a template for constructing Nova compute instance.
@@ -35,7 +37,43 @@ public class NovaInstanceTemplate extends ComputeInstanceTemplate{
 	 * A splitter for comma-separated lists.
 	 */
 	protected static final Splitter CSV_SPLITTER = Splitter.on(",").trimResults().omitEmptyStrings();
-	  
+
+	/**
+	 * The volume provisioning which attaches Cinder volumes once the instance is active.
+	 */
+	public static final String VOLUME_PROVISIONING_ATTACH = "attach";
+
+	/**
+	 * The volume provisioning which has Nova create the volumes at boot.
+	 */
+	public static final String VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING = "blockDeviceMapping";
+
+	/**
+	 * The volume provisioning which uses hypervisor local disks out of the ephemeral disk
+	 * of the flavor rather than Cinder volumes.
+	 */
+	public static final String VOLUME_PROVISIONING_LOCAL = "local";
+
+	/**
+	 * The server group policy which places the instances without regard to each other.
+	 */
+	public static final String SERVER_GROUP_POLICY_NONE = "none";
+
+	/**
+	 * The server group policy which places each instance on a different host.
+	 */
+	public static final String SERVER_GROUP_POLICY_ANTI_AFFINITY = "anti-affinity";
+
+	/**
+	 * The server group policy which places the instances on different hosts where it can.
+	 */
+	public static final String SERVER_GROUP_POLICY_SOFT_ANTI_AFFINITY = "soft-anti-affinity";
+
+	/**
+	 * What the QoS policies given by network role are called in error messages.
+	 */
+	static final String QOS_POLICY = "QoS policy";
+
 	/**
 	 * The list of configuration properties (including inherited properties).
 	 */
@@ -55,10 +93,83 @@ public class NovaInstanceTemplate extends ComputeInstanceTemplate{
 		return CONFIGURATION_PROPERTIES;
 	}
 	
+	/**
+	 * The mapping of the instances to racks.
+	 */
+	private final RackMapping rackMapping;
+
+	/**
+	 * The networks of the instances, by role.
+	 */
+	private final NetworkRoles networkRoles;
+
+	/**
+	 * The QoS policies of the ports of the instances, by network role.
+	 */
+	private final Map<String, String> qosPolicies;
+
 	public NovaInstanceTemplate(String name, Configured configuration,
 			Map<String, String> tags,
 			LocalizationContext providerLocalizationContext) {
 		super(name, configuration, tags, providerLocalizationContext);
+		LocalizationContext templateLocalizationContext =
+				SimpleResourceTemplate.getTemplateLocalizationContext(providerLocalizationContext);
+		RackMapping parsedRackMapping;
+		try {
+			parsedRackMapping = RackMapping.parse(getConfigurationValue(
+					NovaInstanceTemplateConfigurationProperty.RACK_MAPPING, templateLocalizationContext));
+		} catch (IllegalArgumentException e) {
+			// The validator reports it. Until it is fixed, every instance is in the default rack.
+			parsedRackMapping = RackMapping.parse(null);
+		}
+		this.rackMapping = parsedRackMapping;
+		String networkId = getConfigurationValue(
+				NovaInstanceTemplateConfigurationProperty.NETWORK_ID, templateLocalizationContext);
+		NetworkRoles parsedNetworkRoles;
+		try {
+			parsedNetworkRoles = NetworkRoles.parse(networkId, getConfigurationValue(
+					NovaInstanceTemplateConfigurationProperty.ADDITIONAL_NETWORKS, templateLocalizationContext));
+		} catch (IllegalArgumentException e) {
+			// The validator reports it. Until it is fixed, the instances are on the management network only.
+			parsedNetworkRoles = NetworkRoles.parse(networkId, null);
+		}
+		this.networkRoles = parsedNetworkRoles;
+		Map<String, String> parsedQosPolicies;
+		try {
+			parsedQosPolicies = networkRoles.parseByRole(QOS_POLICY, getConfigurationValue(
+					NovaInstanceTemplateConfigurationProperty.QOS_POLICIES, templateLocalizationContext));
+		} catch (IllegalArgumentException e) {
+			// The validator reports it. Until it is fixed, the ports have no QoS policy.
+			parsedQosPolicies = ImmutableMap.of();
+		}
+		this.qosPolicies = parsedQosPolicies;
+	}
+
+	/**
+	 * Returns the mapping of the instances to racks.
+	 *
+	 * @return the rack mapping
+	 */
+	RackMapping getRackMapping() {
+		return rackMapping;
+	}
+
+	/**
+	 * Returns the networks of the instances, by role.
+	 *
+	 * @return the network roles
+	 */
+	NetworkRoles getNetworkRoles() {
+		return networkRoles;
+	}
+
+	/**
+	 * Returns the QoS policies of the ports of the instances, by name or ID.
+	 *
+	 * @return the QoS policies by network role
+	 */
+	Map<String, String> getQosPolicies() {
+		return qosPolicies;
 	}
 
 }
@@ -16,6 +16,7 @@
 
 package com.cloudera.director.openstack.nova;
 
+import com.cloudera.director.openstack.neutron.NeutronPortRequest;
 import com.cloudera.director.spi.v1.compute.ComputeInstanceTemplate.ComputeInstanceTemplateConfigurationPropertyToken;
 import com.cloudera.director.spi.v1.model.ConfigurationProperty;
 import com.cloudera.director.spi.v1.model.ConfigurationPropertyToken;
@@ -24,13 +25,16 @@ import com.cloudera.director.spi.v1.model.util.SimpleConfigurationPropertyBuilde
 public enum NovaInstanceTemplateConfigurationProperty implements ConfigurationPropertyToken{
 	 
 	/**
-	 * The availability zone.
+	 * The availability zones, optionally weighted, such as {@code zone1:2,zone2:1}.
 	 */
 	AVAILABILITY_ZONE(new SimpleConfigurationPropertyBuilder()
 			.configKey("availabilityZone")
 			.name("Availability zone")
 			.widget(ConfigurationProperty.Widget.OPENLIST)
-			.defaultDescription("The availability zone")
+			.defaultDescription(
+				"The availability zone, or a comma separated list of zones with optional weights, " +
+				"such as zone1:2,zone2:1. The instances are spread over the zones, and fail over " +
+				"to the next zone when theirs cannot take them.")
 			.build()),
 	
 	/**
@@ -67,7 +71,22 @@ public enum NovaInstanceTemplateConfigurationProperty implements ConfigurationPr
 			.defaultDescription("The network ID")
 			.defaultErrorMessage("Network ID is mandatory")
 			.build()),
-	
+
+	/**
+	 * The other networks the instances get a NIC on, by role.
+	 */
+	ADDITIONAL_NETWORKS(new SimpleConfigurationPropertyBuilder()
+			.configKey("additionalNetworks")
+			.name("Additional networks")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.TEXT)
+			.defaultValue("")
+			.defaultDescription(
+				"A comma separated list of role=networkId entries, such as data=<network ID>. " +
+				"The instances get a NIC on each of them, after the one on the network ID, " +
+				"which has the management role.")
+			.build()),
+
 	/**
 	 * The instance type (e.g. m1.medium, m1.large, etc), input must be the name.
 	 */
@@ -87,7 +106,24 @@ public enum NovaInstanceTemplateConfigurationProperty implements ConfigurationPr
 				"m1.large",
 				"m1.xlarge")
 			.build()),
-	
+
+	/**
+	 * What the flavor is to provide, checked against its size and extra specs.
+	 */
+	FLAVOR_REQUIREMENTS(new SimpleConfigurationPropertyBuilder()
+			.configKey("flavorRequirements")
+			.name("Flavor requirements")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.TEXT)
+			.defaultValue("")
+			.defaultDescription(
+				"A comma separated list of key=value entries the flavor is to meet, such as " +
+				"vcpus=8,ram=32768,ephemeral=200,hw:cpu_policy=dedicated,hw:mem_page_size=large. " +
+				"vcpus, ram (MB), disk (GB), ephemeral (GB) and swap (MB) are minimums, any other " +
+				"key is a flavor extra spec. A flavor falling short gets a warning naming the " +
+				"cheapest flavor which meets them.")
+			.build()),
+
 	/**
 	 * Name of the key pair to use for new instances.
 	 */
@@ -135,6 +171,190 @@ public enum NovaInstanceTemplateConfigurationProperty implements ConfigurationPr
 			.widget(ConfigurationProperty.Widget.NUMBER)
 			.defaultValue("10")
 			.defaultDescription("The size of volumes attached to each instance by GB. Should be 1~200")
+			.build()),
+
+	/**
+	 * How the volumes of each new instance are provisioned.
+	 */
+	VOLUME_PROVISIONING(new SimpleConfigurationPropertyBuilder()
+			.configKey("volumeProvisioning")
+			.name("Volume provisioning")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.LIST)
+			.defaultValue(NovaInstanceTemplate.VOLUME_PROVISIONING_ATTACH)
+			.defaultDescription(
+				"How the volumes are provisioned. With attach, Cinder volumes are created and " +
+				"attached once the instance is active, and deleted on teardown. With " +
+				"blockDeviceMapping, Nova creates the volumes while booting the instance, and " +
+				"deletes them along with it. With local, the instance gets hypervisor local disks " +
+				"out of the ephemeral disk of the flavor, either whole or as the given number of " +
+				"disks of the given size, which go away with the instance.")
+			.addValidValues(
+				NovaInstanceTemplate.VOLUME_PROVISIONING_ATTACH,
+				NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING,
+				NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL)
+			.build()),
+
+	/**
+	 * The number of spare servers booted along with each allocation.
+	 */
+	SPARE_INSTANCES(new SimpleConfigurationPropertyBuilder()
+			.configKey("spareInstances")
+			.name("Spare instances")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("0")
+			.defaultDescription(
+				"The number of extra servers booted with each allocation. The first servers " +
+				"to get ready are used, and the slowest ones are deleted.")
+			.build()),
+
+	/**
+	 * How long the allocation waits for its servers before spares replace the slow ones.
+	 */
+	STRAGGLER_TIMEOUT_SECONDS(new SimpleConfigurationPropertyBuilder()
+			.configKey("stragglerTimeoutSeconds")
+			.name("Straggler timeout")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("30")
+			.defaultDescription(
+				"How long, in seconds, to wait for the servers of an allocation to get ready " +
+				"when spares are booted. Servers which are not ready by then are replaced by " +
+				"ready spares.")
+			.build()),
+
+	/**
+	 * How many times longer than its peers a server may take before it is replaced.
+	 */
+	STRAGGLER_FACTOR(new SimpleConfigurationPropertyBuilder()
+			.configKey("stragglerFactor")
+			.name("Straggler factor")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("0")
+			.defaultDescription(
+				"Once half of the servers of an allocation are ready, a server still building " +
+				"for longer than this many times their median boot time is replaced by a fresh " +
+				"one, in another availability zone when the instance has no Cinder volumes. " +
+				"0 disables the replacement.")
+			.build()),
+
+	/**
+	 * How long instances may keep completing once the allocation has returned.
+	 */
+	COMPLETION_GRACE_SECONDS(new SimpleConfigurationPropertyBuilder()
+			.configKey("completionGraceSeconds")
+			.name("Completion grace period")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("0")
+			.defaultDescription(
+				"When positive, the allocation returns as soon as the minimum number of " +
+				"instances are ready, and the other instances keep provisioning in the " +
+				"background for up to this many seconds. Instances not ready by then are " +
+				"deleted. 0 waits for all the instances.")
+			.build()),
+
+	/**
+	 * The number of servers booted together.
+	 */
+	WAVE_SIZE(new SimpleConfigurationPropertyBuilder()
+			.configKey("waveSize")
+			.name("Wave size")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("0")
+			.defaultDescription(
+				"The number of servers booted together. Larger allocations boot in waves of " +
+				"this size, so as not to overload the scheduler and the network agents. 0 boots " +
+				"all the servers in one wave.")
+			.build()),
+
+	/**
+	 * How much of a wave has to be active before the next wave starts.
+	 */
+	WAVE_START_PERCENT(new SimpleConfigurationPropertyBuilder()
+			.configKey("waveStartPercent")
+			.name("Wave start percentage")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.NUMBER)
+			.defaultValue("80")
+			.defaultDescription(
+				"The percentage of the servers of a wave which have to be active before the " +
+				"next wave starts. The next wave starts after two minutes regardless.")
+			.build()),
+
+	/**
+	 * How the instances of an allocation are placed with regard to each other's hosts.
+	 */
+	SERVER_GROUP_POLICY(new SimpleConfigurationPropertyBuilder()
+			.configKey("serverGroupPolicy")
+			.name("Server group policy")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.LIST)
+			.defaultValue(NovaInstanceTemplate.SERVER_GROUP_POLICY_NONE)
+			.defaultDescription(
+				"How the instances of an allocation are placed with regard to each other. With " +
+				"anti-affinity, no two instances share a host, and those no host is left for " +
+				"fail to boot. With soft-anti-affinity, instances share a host only when they " +
+				"have to.")
+			.addValidValues(
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_NONE,
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY,
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_SOFT_ANTI_AFFINITY)
+			.build()),
+
+	/**
+	 * How the instances are mapped to racks, from where they run.
+	 */
+	RACK_MAPPING(new SimpleConfigurationPropertyBuilder()
+			.configKey("rackMapping")
+			.name("Rack mapping")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.TEXT)
+			.defaultValue("")
+			.defaultDescription(
+				"A comma separated list of location=rack entries, such as " +
+				"compute-1=/rack1,zone2=/rack2. The location is a hypervisor host name, a host " +
+				"ID or an availability zone. Instances matching none of them are in " +
+				"/default-rack.")
+			.build()),
+
+	/**
+	 * The VNIC type of the ports the instances get when the ports are created through Neutron.
+	 */
+	VNIC_TYPE(new SimpleConfigurationPropertyBuilder()
+			.configKey("vnicType")
+			.name("VNIC type")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.LIST)
+			.defaultValue(NeutronPortRequest.VNIC_TYPE_NORMAL)
+			.defaultDescription(
+				"How the ports of the instances are bound when the provider creates them through " +
+				"Neutron: normal for a virtual switch port, direct or macvtap for an SR-IOV " +
+				"virtual function, direct-physical for a whole physical function.")
+			.addValidValues(
+				NeutronPortRequest.VNIC_TYPE_NORMAL,
+				NeutronPortRequest.VNIC_TYPE_DIRECT,
+				NeutronPortRequest.VNIC_TYPE_MACVTAP,
+				NeutronPortRequest.VNIC_TYPE_DIRECT_PHYSICAL)
+			.build()),
+
+	/**
+	 * The Neutron QoS policies of the ports of the instances, by network role.
+	 */
+	QOS_POLICIES(new SimpleConfigurationPropertyBuilder()
+			.configKey("qosPolicies")
+			.name("QoS policies")
+			.required(false)
+			.widget(ConfigurationProperty.Widget.TEXT)
+			.defaultValue("")
+			.defaultDescription(
+				"A comma separated list of role=policy entries, such as management=<policy>,data=<policy>, " +
+				"naming the Neutron QoS policy, by name or ID, of the ports on the network of each " +
+				"role. The policies hold the bandwidth limit and minimum bandwidth rules. Requires " +
+				"the ports to be created through Neutron.")
 			.build());
 	/**
 	 * The configuration property.
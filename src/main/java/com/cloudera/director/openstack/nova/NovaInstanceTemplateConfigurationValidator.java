@@ -16,18 +16,34 @@
 
 package com.cloudera.director.openstack.nova;
 
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.ADDITIONAL_NETWORKS;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.AVAILABILITY_ZONE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.FLAVOR_REQUIREMENTS;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.KEY_NAME;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.NETWORK_ID;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.QOS_POLICIES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.RACK_MAPPING;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SECURITY_GROUP_NAMES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SERVER_GROUP_POLICY;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.COMPLETION_GRACE_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SPARE_INSTANCES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_FACTOR;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.TYPE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_NUMBER;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_PROVISIONING;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VNIC_TYPE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_START_PERCENT;
 import static org.jclouds.openstack.nova.v2_0.domain.Image.Status.ACTIVE;
 import static com.cloudera.director.spi.v1.model.InstanceTemplate.InstanceTemplateConfigurationPropertyToken.INSTANCE_NAME_PREFIX;
 import static com.cloudera.director.spi.v1.model.util.Validations.addError;
+import static com.cloudera.director.spi.v1.model.util.Validations.addWarning;
 
 import java.util.List;
+import java.util.Map;
 
 import org.jclouds.openstack.nova.v2_0.NovaApi;
 import org.jclouds.openstack.nova.v2_0.domain.Image;
@@ -40,6 +56,8 @@ import org.jclouds.openstack.nova.v2_0.features.ImageApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cloudera.director.openstack.neutron.NeutronApi;
+import com.cloudera.director.openstack.neutron.NeutronPortRequest;
 import com.cloudera.director.spi.v1.model.ConfigurationValidator;
 import com.cloudera.director.spi.v1.model.Configured;
 import com.cloudera.director.spi.v1.model.LocalizationContext;
@@ -47,9 +65,11 @@ import com.cloudera.director.spi.v1.model.exception.PluginExceptionConditionAccu
 import com.cloudera.director.spi.v1.model.exception.TransientProviderException;
 import com.cloudera.director.spi.v1.util.Preconditions;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * Validates Nova instance template configuration.
@@ -82,6 +102,66 @@ public class NovaInstanceTemplateConfigurationValidator implements Configuration
 	@VisibleForTesting
 	static final String INVALID_VOLUME_SIZE_MSG = "Invalid volume size";
 
+	@VisibleForTesting
+	static final String INVALID_VOLUME_PROVISIONING_MSG = "Invalid volume provisioning: %s";
+
+	@VisibleForTesting
+	static final String INVALID_SPARE_INSTANCES_MSG = "Spare instances must be a non-negative number: %s";
+
+	@VisibleForTesting
+	static final String INVALID_STRAGGLER_TIMEOUT_MSG = "Straggler timeout must be a positive number of seconds: %s";
+
+	@VisibleForTesting
+	static final String INVALID_STRAGGLER_FACTOR_MSG = "Straggler factor must be 0, or at least 1: %s";
+
+	@VisibleForTesting
+	static final String INVALID_COMPLETION_GRACE_MSG =
+			"Completion grace period must be a non-negative number of seconds: %s";
+
+	@VisibleForTesting
+	static final String INVALID_WAVE_SIZE_MSG = "Wave size must be a non-negative number: %s";
+
+	@VisibleForTesting
+	static final String INVALID_WAVE_START_PERCENT_MSG = "Wave start percentage must be between 0 and 100: %s";
+
+	@VisibleForTesting
+	static final String INVALID_SERVER_GROUP_POLICY_MSG = "Invalid server group policy: %s";
+
+	@VisibleForTesting
+	static final String INVALID_RACK_MAPPING_MSG = "Invalid rack mapping: %s";
+
+	@VisibleForTesting
+	static final String INVALID_ADDITIONAL_NETWORKS_MSG = "Invalid additional networks: %s";
+
+	@VisibleForTesting
+	static final String INVALID_VNIC_TYPE_MSG = "Invalid VNIC type: %s";
+
+	@VisibleForTesting
+	static final String INVALID_QOS_POLICIES_MSG = "Invalid QoS policies: %s";
+
+	@VisibleForTesting
+	static final String QOS_POLICY_NOT_FOUND_MSG = "QoS policy not found: %s";
+
+	@VisibleForTesting
+	static final String QOS_POLICIES_WITHOUT_NEUTRON_PORTS_MSG =
+			"QoS policies require the ports to be created through Neutron";
+
+	@VisibleForTesting
+	static final String INVALID_LOCAL_DISKS_MSG = "Invalid local disks: %s";
+
+	@VisibleForTesting
+	static final String FLAVOR_NOT_FOUND_MSG = "Flavor not found: %s";
+
+	@VisibleForTesting
+	static final String INVALID_FLAVOR_REQUIREMENTS_MSG = "Invalid flavor requirements: %s";
+
+	@VisibleForTesting
+	static final String FLAVOR_REQUIREMENTS_UNMET_MSG =
+			"Flavor %s does not meet %s; %s is the cheapest flavor which does";
+
+	@VisibleForTesting
+	static final String FLAVOR_REQUIREMENTS_UNMET_BY_ALL_MSG = "Flavor %s does not meet %s, nor does any other flavor";
+
 	/**
 	 * The Nova provider
 	 */
@@ -107,6 +187,20 @@ public class NovaInstanceTemplateConfigurationValidator implements Configuration
 		checkKeyName(novaApi, region, configuration, accumulator, localizationContext);
 		checkSecurityGroupNames(novaApi, region, configuration, accumulator, localizationContext);
 		checkPrefix(configuration, accumulator, localizationContext);
+		checkVolumeProvisioning(configuration, accumulator, localizationContext);
+		checkSpareInstances(configuration, accumulator, localizationContext);
+		checkStragglerFactor(configuration, accumulator, localizationContext);
+		checkCompletionGrace(configuration, accumulator, localizationContext);
+		checkWaves(configuration, accumulator, localizationContext);
+		checkServerGroupPolicy(configuration, accumulator, localizationContext);
+		checkRackMapping(configuration, accumulator, localizationContext);
+		checkAdditionalNetworks(configuration, accumulator, localizationContext);
+		checkVnicType(configuration, accumulator, localizationContext);
+		checkQosPolicies(provider.getNeutronApi(), provider.isNeutronPortProvisioning(), configuration, accumulator,
+				localizationContext);
+		FlavorCatalog flavorCatalog = provider.getFlavorCatalog();
+		checkFlavor(flavorCatalog, configuration, accumulator, localizationContext);
+		checkLocalDisks(flavorCatalog, configuration, accumulator, localizationContext);
 	}
 
 	/**
@@ -123,21 +217,31 @@ public class NovaInstanceTemplateConfigurationValidator implements Configuration
 			Configured configuration,
 			PluginExceptionConditionAccumulator accumulator,
 			LocalizationContext localizationContext) {
-		String zoneName = configuration.getConfigurationValue(AVAILABILITY_ZONE, localizationContext);
-		if(zoneName != null) {
-			LOG.info(">> Describing zone '{}",zoneName);
+		String zoneNames = configuration.getConfigurationValue(AVAILABILITY_ZONE, localizationContext);
+		if(zoneNames != null) {
+			LOG.info(">> Describing zone '{}",zoneNames);
 			
+			ZonePlacement placement;
+			try {
+				placement = ZonePlacement.parse(zoneNames);
+			} catch (IllegalArgumentException e) {
+				addError(accumulator, AVAILABILITY_ZONE, localizationContext, null, INVALID_AVAILABILITY_ZONE_MSG, zoneNames);
+				return;
+			}
 			try {
-				Boolean contains = false; 
 				FluentIterable<AvailabilityZone> availabilityZones = novaApi.getAvailabilityZoneApi(region).get().listAvailabilityZones();
-				for (AvailabilityZone availabilityZone: availabilityZones) {
-					if (availabilityZone.getName().equals(zoneName)) {
-						contains = true;
-						break;
+				// Each of the weighted zones has to exist.
+				for (String zoneName : placement.getZones()) {
+					Boolean contains = false; 
+					for (AvailabilityZone availabilityZone: availabilityZones) {
+						if (availabilityZone.getName().equals(zoneName)) {
+							contains = true;
+							break;
+						}
+					}
+					if (!contains) {
+						addError(accumulator, AVAILABILITY_ZONE, localizationContext, null, INVALID_AVAILABILITY_ZONE_MSG, zoneName);
 					}
-				}
-				if (!contains) {
-					addError(accumulator, AVAILABILITY_ZONE, localizationContext, null, INVALID_AVAILABILITY_ZONE_MSG, zoneName);
 				}
 			}
 			catch (Exception e) {
@@ -321,5 +425,333 @@ public class NovaInstanceTemplateConfigurationValidator implements Configuration
 		}
 	}
 
-}
+	/**
+	 * Validates the configured volume provisioning.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkVolumeProvisioning(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String volumeProvisioning = configuration.getConfigurationValue(VOLUME_PROVISIONING, localizationContext);
+		LOG.info(">> Validating volume provisioning '{}'", volumeProvisioning);
+		if (volumeProvisioning != null
+				&& !NovaInstanceTemplate.VOLUME_PROVISIONING_ATTACH.equals(volumeProvisioning)
+				&& !NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING.equals(volumeProvisioning)
+				&& !NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL.equals(volumeProvisioning)) {
+			addError(accumulator, VOLUME_PROVISIONING, localizationContext, null,
+					INVALID_VOLUME_PROVISIONING_MSG, volumeProvisioning);
+		}
+	}
+
+	/**
+	 * Validates the configured spare instances and straggler timeout.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkSpareInstances(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String spareInstances = configuration.getConfigurationValue(SPARE_INSTANCES, localizationContext);
+		LOG.info(">> Validating spare instances '{}'", spareInstances);
+		if (spareInstances != null && parseInt(spareInstances, -1) < 0) {
+			addError(accumulator, SPARE_INSTANCES, localizationContext, null,
+					INVALID_SPARE_INSTANCES_MSG, spareInstances);
+		}
+		String stragglerTimeout = configuration.getConfigurationValue(STRAGGLER_TIMEOUT_SECONDS, localizationContext);
+		if (stragglerTimeout != null && parseInt(stragglerTimeout, 0) < 1) {
+			addError(accumulator, STRAGGLER_TIMEOUT_SECONDS, localizationContext, null,
+					INVALID_STRAGGLER_TIMEOUT_MSG, stragglerTimeout);
+		}
+	}
+
+	/**
+	 * Validates the configured straggler factor.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkStragglerFactor(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String stragglerFactor = configuration.getConfigurationValue(STRAGGLER_FACTOR, localizationContext);
+		LOG.info(">> Validating straggler factor '{}'", stragglerFactor);
+		if (stragglerFactor == null) {
+			return;
+		}
+		double factor;
+		try {
+			factor = Double.parseDouble(stragglerFactor);
+		}
+		catch (NumberFormatException e) {
+			factor = -1;
+		}
+		if (factor != 0 && !(factor >= 1)) {
+			addError(accumulator, STRAGGLER_FACTOR, localizationContext, null,
+					INVALID_STRAGGLER_FACTOR_MSG, stragglerFactor);
+		}
+	}
+
+	/**
+	 * Validates the configured completion grace period.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkCompletionGrace(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String completionGrace = configuration.getConfigurationValue(COMPLETION_GRACE_SECONDS, localizationContext);
+		LOG.info(">> Validating completion grace period '{}'", completionGrace);
+		if (completionGrace != null && parseInt(completionGrace, -1) < 0) {
+			addError(accumulator, COMPLETION_GRACE_SECONDS, localizationContext, null,
+					INVALID_COMPLETION_GRACE_MSG, completionGrace);
+		}
+	}
+
+	/**
+	 * Validates the configured wave size and wave start percentage.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkWaves(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String waveSize = configuration.getConfigurationValue(WAVE_SIZE, localizationContext);
+		LOG.info(">> Validating wave size '{}'", waveSize);
+		if (waveSize != null && parseInt(waveSize, -1) < 0) {
+			addError(accumulator, WAVE_SIZE, localizationContext, null,
+					INVALID_WAVE_SIZE_MSG, waveSize);
+		}
+		String waveStartPercent = configuration.getConfigurationValue(WAVE_START_PERCENT, localizationContext);
+		int percent = waveStartPercent == null ? 0 : parseInt(waveStartPercent, -1);
+		if (percent < 0 || percent > 100) {
+			addError(accumulator, WAVE_START_PERCENT, localizationContext, null,
+					INVALID_WAVE_START_PERCENT_MSG, waveStartPercent);
+		}
+	}
+
+	/**
+	 * Validates the configured server group policy.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkServerGroupPolicy(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String policy = configuration.getConfigurationValue(SERVER_GROUP_POLICY, localizationContext);
+		LOG.info(">> Validating server group policy '{}'", policy);
+		if (policy != null
+				&& !NovaInstanceTemplate.SERVER_GROUP_POLICY_NONE.equals(policy)
+				&& !NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY.equals(policy)
+				&& !NovaInstanceTemplate.SERVER_GROUP_POLICY_SOFT_ANTI_AFFINITY.equals(policy)) {
+			addError(accumulator, SERVER_GROUP_POLICY, localizationContext, null,
+					INVALID_SERVER_GROUP_POLICY_MSG, policy);
+		}
+	}
+
+	/**
+	 * Validates the configured rack mapping.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkRackMapping(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String rackMapping = configuration.getConfigurationValue(RACK_MAPPING, localizationContext);
+		LOG.info(">> Validating rack mapping '{}'", rackMapping);
+		try {
+			RackMapping.parse(rackMapping);
+		} catch (IllegalArgumentException e) {
+			addError(accumulator, RACK_MAPPING, localizationContext, null,
+					INVALID_RACK_MAPPING_MSG, rackMapping);
+		}
+	}
 
+	/**
+	 * Validates the configured additional networks.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkAdditionalNetworks(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String additionalNetworks = configuration.getConfigurationValue(ADDITIONAL_NETWORKS, localizationContext);
+		LOG.info(">> Validating additional networks '{}'", additionalNetworks);
+		try {
+			NetworkRoles.parse(configuration.getConfigurationValue(NETWORK_ID, localizationContext), additionalNetworks);
+		} catch (IllegalArgumentException e) {
+			addError(accumulator, ADDITIONAL_NETWORKS, localizationContext, null,
+					INVALID_ADDITIONAL_NETWORKS_MSG, e.getMessage());
+		}
+	}
+
+	/**
+	 * Validates the configured VNIC type.
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	static void checkVnicType(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String vnicType = configuration.getConfigurationValue(VNIC_TYPE, localizationContext);
+		LOG.info(">> Validating VNIC type '{}'", vnicType);
+		if (vnicType != null
+				&& !NeutronPortRequest.VNIC_TYPE_NORMAL.equals(vnicType)
+				&& !NeutronPortRequest.VNIC_TYPE_DIRECT.equals(vnicType)
+				&& !NeutronPortRequest.VNIC_TYPE_MACVTAP.equals(vnicType)
+				&& !NeutronPortRequest.VNIC_TYPE_DIRECT_PHYSICAL.equals(vnicType)) {
+			addError(accumulator, VNIC_TYPE, localizationContext, null, INVALID_VNIC_TYPE_MSG, vnicType);
+		}
+	}
+
+	/**
+	 * Validates the configured QoS policies.
+	 * @param neutronApi		the Neutron API
+	 * @param neutronPorts		whether the ports are created through Neutron
+	 * @param configuration		the configuration to be validated.
+	 * @param accumulator		the exception condition accumulator.
+	 * @param localizationContext		the localization context.
+	 */
+	@VisibleForTesting
+	void checkQosPolicies(NeutronApi neutronApi,
+			boolean neutronPorts,
+			Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String qosPolicies = configuration.getConfigurationValue(QOS_POLICIES, localizationContext);
+		LOG.info(">> Validating QoS policies '{}'", qosPolicies);
+		NetworkRoles networkRoles;
+		try {
+			networkRoles = NetworkRoles.parse(configuration.getConfigurationValue(NETWORK_ID, localizationContext),
+					configuration.getConfigurationValue(ADDITIONAL_NETWORKS, localizationContext));
+		} catch (IllegalArgumentException e) {
+			// Reported with the additional networks.
+			return;
+		}
+		Map<String, String> qosPoliciesByRoles;
+		try {
+			qosPoliciesByRoles = networkRoles.parseByRole(NovaInstanceTemplate.QOS_POLICY, qosPolicies);
+		} catch (IllegalArgumentException e) {
+			addError(accumulator, QOS_POLICIES, localizationContext, null, INVALID_QOS_POLICIES_MSG, e.getMessage());
+			return;
+		}
+		if (qosPoliciesByRoles.isEmpty()) {
+			return;
+		}
+		// Nova creates its ports without QoS policy.
+		if (!neutronPorts) {
+			addError(accumulator, QOS_POLICIES, localizationContext, null, QOS_POLICIES_WITHOUT_NEUTRON_PORTS_MSG);
+			return;
+		}
+		try {
+			Map<String, String> qosPolicyIds = neutronApi.getQosPolicyIds(qosPoliciesByRoles.values());
+			for (String qosPolicy : Sets.newLinkedHashSet(qosPoliciesByRoles.values())) {
+				if (!qosPolicyIds.containsKey(qosPolicy)) {
+					addError(accumulator, QOS_POLICIES, localizationContext, null, QOS_POLICY_NOT_FOUND_MSG, qosPolicy);
+				}
+			}
+		}
+		catch (Exception e) {
+			throw Throwables.propagate(e);
+		}
+	}
+
+	/**
+	 * Validates the configured flavor, which has to exist, against the flavor
+	 * requirements. A flavor falling short of them is only warned about, along with the
+	 * cheapest flavor which meets them.
+	 *
+	 * @param flavorCatalog       the flavor catalog of the region
+	 * @param configuration       the configuration to be validated
+	 * @param accumulator         the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	@VisibleForTesting
+	static void checkFlavor(FlavorCatalog flavorCatalog,
+			Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String flavorName = configuration.getConfigurationValue(TYPE, localizationContext);
+		String spec = configuration.getConfigurationValue(FLAVOR_REQUIREMENTS, localizationContext);
+		LOG.info(">> Validating flavor '{}' against requirements '{}'", flavorName, spec);
+		FlavorRequirements requirements = null;
+		try {
+			requirements = FlavorRequirements.parse(spec);
+		} catch (IllegalArgumentException e) {
+			addError(accumulator, FLAVOR_REQUIREMENTS, localizationContext, null, INVALID_FLAVOR_REQUIREMENTS_MSG,
+					e.getMessage());
+		}
+		if (flavorName == null) {
+			return;
+		}
+		FlavorCatalog.FlavorTraits flavor = flavorCatalog.getFlavor(flavorName);
+		if (flavor == null) {
+			addError(accumulator, TYPE, localizationContext, null, FLAVOR_NOT_FOUND_MSG, flavorName);
+			return;
+		}
+		if (requirements == null || requirements.isMetBy(flavor)) {
+			return;
+		}
+		String unmet = Joiner.on(',').join(requirements.getUnmet(flavor));
+		FlavorCatalog.FlavorTraits recommended = flavorCatalog.recommend(requirements);
+		if (recommended != null) {
+			addWarning(accumulator, TYPE, localizationContext, null, FLAVOR_REQUIREMENTS_UNMET_MSG, flavorName, unmet,
+					recommended.getName());
+		} else {
+			addWarning(accumulator, TYPE, localizationContext, null, FLAVOR_REQUIREMENTS_UNMET_BY_ALL_MSG, flavorName,
+					unmet);
+		}
+	}
+
+	/**
+	 * Validates that the flavor provides the local disks, when the volumes are local
+	 * disks out of its ephemeral disk.
+	 *
+	 * @param flavorCatalog       the flavor catalog of the region
+	 * @param configuration       the configuration to be validated
+	 * @param accumulator         the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	@VisibleForTesting
+	static void checkLocalDisks(FlavorCatalog flavorCatalog,
+			Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		if (!NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL.equals(
+				configuration.getConfigurationValue(VOLUME_PROVISIONING, localizationContext))) {
+			return;
+		}
+		String flavorName = configuration.getConfigurationValue(TYPE, localizationContext);
+		LOG.info(">> Validating the local disks of flavor '{}'", flavorName);
+		FlavorCatalog.FlavorTraits flavor = flavorName == null ? null : flavorCatalog.getFlavor(flavorName);
+		int volumeNumber = parseInt(configuration.getConfigurationValue(VOLUME_NUMBER, localizationContext), -1);
+		int volumeSize = parseInt(configuration.getConfigurationValue(VOLUME_SIZE, localizationContext), -1);
+		if (flavor == null || volumeNumber < 0 || volumeSize < 0) {
+			// Reported with the flavor, volume number or volume size.
+			return;
+		}
+		try {
+			LocalDiskLayout.of(volumeNumber, volumeSize, flavor);
+		} catch (IllegalArgumentException e) {
+			addError(accumulator, VOLUME_PROVISIONING, localizationContext, null, INVALID_LOCAL_DISKS_MSG, e.getMessage());
+		}
+	}
+
+	private static int parseInt(String value, int invalidValue) {
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			return invalidValue;
+		}
+	}
+
+}
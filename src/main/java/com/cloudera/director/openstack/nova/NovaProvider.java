@@ -15,13 +15,25 @@
  */
 package com.cloudera.director.openstack.nova;
 
-import java.util.ArrayList;
+import java.io.File;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jclouds.ContextBuilder;
 import org.jclouds.apis.ApiMetadata;
@@ -30,16 +42,19 @@ import org.jclouds.openstack.cinder.v1.CinderApi;
 import org.jclouds.openstack.cinder.v1.CinderApiMetadata;
 import org.jclouds.openstack.cinder.v1.domain.Volume;
 import org.jclouds.openstack.cinder.v1.features.VolumeApi;
-import org.jclouds.openstack.cinder.v1.options.CreateVolumeOptions;
 import org.jclouds.openstack.nova.v2_0.NovaApi;
 import org.jclouds.openstack.nova.v2_0.NovaApiMetadata;
+import org.jclouds.openstack.nova.v2_0.domain.BlockDeviceMapping;
 import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
 import org.jclouds.openstack.nova.v2_0.domain.FloatingIPPool;
+import org.jclouds.openstack.nova.v2_0.domain.Network;
+import org.jclouds.openstack.nova.v2_0.domain.Quota;
 import org.jclouds.openstack.nova.v2_0.domain.Server;
 import org.jclouds.openstack.nova.v2_0.domain.Server.Status;
 import org.jclouds.openstack.nova.v2_0.domain.ServerCreated;
 import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
 import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPPoolApi;
+import org.jclouds.openstack.nova.v2_0.extensions.QuotaApi;
 import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
 import org.jclouds.openstack.nova.v2_0.features.FlavorApi;
 import org.jclouds.openstack.nova.v2_0.features.ServerApi;
@@ -48,18 +63,39 @@ import org.jclouds.openstack.v2_0.domain.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.ALLOCATION_BACKEND;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.FLOATING_IP_WARM_POOL_SIZE;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.JOURNAL_DIRECTORY;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.LISTING_PAGE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.NOTIFICATION_BROKER_URI;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.PORT_PROVISIONING;
 import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.REGION;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
-import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.NETWORK_ID;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.TYPE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SECURITY_GROUP_NAMES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SERVER_GROUP_POLICY;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.AVAILABILITY_ZONE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.KEY_NAME;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.FLOATING_IP_POOL;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.COMPLETION_GRACE_SECONDS;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_NUMBER;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_PROVISIONING;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_SIZE;
 
+import com.cloudera.director.openstack.ListingCursor;
 import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.PluginContext;
+import com.cloudera.director.openstack.WaitScheduler;
+import com.cloudera.director.openstack.cinder.CinderLimitsApi;
+import com.cloudera.director.openstack.cinder.RestCinderLimitsApi;
+import com.cloudera.director.openstack.heat.HeatApi;
+import com.cloudera.director.openstack.heat.HeatStack;
+import com.cloudera.director.openstack.heat.RestHeatApi;
+import com.cloudera.director.openstack.neutron.NeutronApi;
+import com.cloudera.director.openstack.neutron.NeutronFloatingIPApi;
+import com.cloudera.director.openstack.neutron.NeutronPort;
+import com.cloudera.director.openstack.neutron.NeutronPortRequest;
+import com.cloudera.director.openstack.neutron.RestNeutronApi;
 import com.cloudera.director.spi.v1.compute.util.AbstractComputeProvider;
 import com.cloudera.director.spi.v1.model.ConfigurationProperty;
 import com.cloudera.director.spi.v1.model.Configured;
@@ -73,15 +109,38 @@ import com.cloudera.director.spi.v1.model.util.SimpleResourceTemplate;
 import com.cloudera.director.spi.v1.provider.ResourceProviderMetadata;
 import com.cloudera.director.spi.v1.provider.util.SimpleResourceProviderMetadata;
 import com.cloudera.director.spi.v1.util.ConfigurationPropertiesUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.SetMultimap;
 
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Module;
 import com.typesafe.config.Config;
 
@@ -92,7 +151,157 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 	private static final ApiMetadata NOVA_API_METADATA = new NovaApiMetadata();
 	private static final ApiMetadata CINDER_API_METADATA = new CinderApiMetadata();
 
-	private static final String VOLUME_DESCRIPTION = "SSD";
+	static final String VOLUME_DESCRIPTION = "SSD";
+
+	static final String DIRECTOR_ID = NovaServerInventory.DIRECTOR_ID;
+
+	/**
+	 * The metadata key marking the last allocation phase a server completed.
+	 */
+	private static final String PHASE = "DIRECTOR_PHASE";
+
+	/**
+	 * The metadata key recording the availability zones a server was tried in.
+	 */
+	static final String DIRECTOR_PLACEMENT = NovaInstance.DIRECTOR_PLACEMENT;
+
+	/**
+	 * The metadata key naming the server group a server was placed in.
+	 */
+	private static final String DIRECTOR_SERVER_GROUP = NovaInstance.DIRECTOR_SERVER_GROUP;
+
+	/**
+	 * The metadata key listing the roles of the networks of a server, in NIC order.
+	 */
+	private static final String DIRECTOR_NETWORK_ROLES = NovaInstance.DIRECTOR_NETWORK_ROLES;
+
+	/**
+	 * The prefix of the name of the ports created for an instance, followed by its ID.
+	 */
+	private static final String DIRECTOR_PORT_PREFIX = "director-port-";
+
+	/**
+	 * The metadata key naming the Heat stack a server was created by.
+	 */
+	private static final String DIRECTOR_STACK = "DIRECTOR_STACK";
+
+	/**
+	 * How long Heat may take to create a stack, and to delete one.
+	 */
+	private static final int STACK_CREATE_TIMEOUT_MINUTES = 60;
+	private static final long STACK_DELETE_TIMEOUT_SECONDS = 1800;
+
+	/**
+	 * The control exchanges of the services whose notifications wake up the waiters.
+	 */
+	private static final List<String> NOTIFICATION_EXCHANGES = ImmutableList.of("nova", "cinder");
+
+	/**
+	 * The time between two status sweeps of the pending waits.
+	 */
+	private static final long WAIT_TICK_SECONDS = 5;
+
+	/**
+	 * How long new servers may take to get a private IP.
+	 */
+	static final long PRIVATE_IP_TIMEOUT_SECONDS = 15;
+
+	/**
+	 * The minimum time a server takes before it counts as a straggler, since servers are
+	 * only seen ready once per tick.
+	 */
+	static final long STRAGGLER_MIN_SECONDS = 2 * WAIT_TICK_SECONDS;
+
+	/**
+	 * The prefix of the tags of servers which failed over to another zone, which are
+	 * released in the background.
+	 */
+	static final String FAILED_OVER_PREFIX = "failed-over-";
+
+	/**
+	 * How long a wave of servers may take to get active before the next wave starts anyway.
+	 */
+	static final long WAVE_TIMEOUT_SECONDS = 120;
+
+	/**
+	 * How long servers and volumes may take to be deleted, and volumes to be detached
+	 * once their server is deleted.
+	 */
+	private static final long SERVER_DELETE_TIMEOUT_SECONDS = 120;
+	private static final long VOLUME_DELETE_TIMEOUT_SECONDS = 600;
+	private static final long VOLUME_SETTLE_TIMEOUT_SECONDS = 10;
+
+	/**
+	 * How long a floating IP may take to show as associated.
+	 */
+	private static final long FLOATING_IP_ASSOCIATION_TIMEOUT_SECONDS = 30;
+
+	/**
+	 * The maximum number of API calls issued concurrently.
+	 */
+	private static final int API_CONCURRENCY = 8;
+
+	/**
+	 * How long the flavor catalog of a region is kept before it is read again. Flavors
+	 * seldom change, and reading their extra specs takes a request per flavor.
+	 */
+	private static final long FLAVOR_CATALOG_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	static final Predicate<Server> HAS_ADDRESS = new Predicate<Server>() {
+		@Override
+		public boolean apply(Server server) {
+			return server != null && server.getAddresses() != null && !server.getAddresses().isEmpty();
+		}
+	};
+
+	/**
+	 * The volume statuses from which a volume can be deleted, or is being deleted already.
+	 */
+	private static final Set<Volume.Status> VOLUME_SETTLED_STATUSES = EnumSet.of(Volume.Status.AVAILABLE,
+			Volume.Status.ERROR, Volume.Status.DELETING, Volume.Status.ERROR_DELETING);
+
+	/**
+	 * The statuses of servers left by an earlier allocation which are kept on a retry.
+	 * Servers in any other status are replaced.
+	 */
+	private static final Set<Status> REUSABLE_SERVER_STATUSES = EnumSet.of(Status.ACTIVE, Status.BUILD);
+
+	/**
+	 * The statuses of volumes left by an earlier allocation which are attached, or being
+	 * attached, and the statuses of those which can still be attached.
+	 */
+	static final Set<Volume.Status> ATTACHED_VOLUME_STATUSES = EnumSet.of(Volume.Status.ATTACHING,
+			Volume.Status.IN_USE);
+	static final Set<Volume.Status> REUSABLE_VOLUME_STATUSES = EnumSet.of(Volume.Status.CREATING,
+			Volume.Status.AVAILABLE);
+
+	private static final Predicate<HeatStack> STACK_SETTLED = new Predicate<HeatStack>() {
+		@Override
+		public boolean apply(HeatStack stack) {
+			return stack == null || !stack.isInProgress();
+		}
+	};
+
+	private static final Predicate<HeatStack> STACK_DELETED = new Predicate<HeatStack>() {
+		@Override
+		public boolean apply(HeatStack stack) {
+			return stack == null || HeatStack.DELETE_COMPLETE.equals(stack.getStatus());
+		}
+	};
+
+	private static final Function<Volume, String> VOLUME_DIRECTOR_ID = new Function<Volume, String>() {
+		@Override
+		public String apply(Volume volume) {
+			return volume.getMetadata() == null ? null : volume.getMetadata().get(DIRECTOR_ID);
+		}
+	};
+
+	private static final Function<FloatingIP, String> FLOATING_IP_INSTANCE_ID = new Function<FloatingIP, String>() {
+		@Override
+		public String apply(FloatingIP floatingIp) {
+			return floatingIp.getInstanceId();
+		}
+	};
 	/**
 	 * The provider configuration properties.
 	 */	
@@ -104,6 +313,27 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 	 * The resource provider ID.
 	 */
 	public static final String ID = NovaProvider.class.getCanonicalName();
+
+	/**
+	 * The allocation backend issuing the Nova, Cinder and floating IP calls itself.
+	 */
+	public static final String ALLOCATION_BACKEND_NOVA = "nova";
+
+	/**
+	 * The allocation backend submitting each allocation to Heat as a stack.
+	 */
+	public static final String ALLOCATION_BACKEND_HEAT = "heat";
+
+	/**
+	 * The port provisioning letting Nova create the ports of the servers at boot.
+	 */
+	public static final String PORT_PROVISIONING_NOVA = "nova";
+
+	/**
+	 * The port provisioning creating the ports of the servers in bulk through Neutron
+	 * ahead of them.
+	 */
+	public static final String PORT_PROVISIONING_NEUTRON = "neutron";
 	
 	/**
 	 * The resource provider metadata.
@@ -143,15 +373,178 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 	 * Region of the provider
 	 */
 	private String region;
+
+	/*
+	 * Number of servers requested per listing page, 0 for the server default
+	 */
+	private final int listingPageSize;
+
+	/*
+	 * The directory of the allocation journals
+	 */
+	private final File journalDirectory;
+
+	/*
+	 * The APIs of the region for the shared state, and the local server inventory,
+	 * shared with the providers of the same configuration, resolved on first use
+	 */
+	private NovaRegionApis regionApis;
+	private NovaServerInventory serverInventory;
+
+	/*
+	 * What the providers of the plugin share, such as the notification listeners
+	 */
+	private final PluginContext pluginContext;
+
+	/*
+	 * Checks the pending server, volume and floating IP waits, one sweep per type per tick,
+	 * shared with the providers of the same configuration
+	 */
+	final WaitScheduler waitScheduler;
+
+	/*
+	 * Issues independent API calls concurrently, its threads go away when idle
+	 */
+	private final ListeningExecutorService apiExecutor = newApiExecutor();
+
+	/*
+	 * Releases the resources an allocation no longer needs once it has returned
+	 */
+	private final ListeningExecutorService releaseExecutor = newReleaseExecutor();
+
+	/*
+	 * The allocations still completing instances after they returned, shared with the
+	 * providers of the same configuration, resolved on first use
+	 */
+	private CompletingAllocations completingAllocations;
+
+	/*
+	 * The wait sweeps by resource type, shared with the providers of the same
+	 * configuration so that their waits are checked together, resolved on first use.
+	 * They go through the shared region APIs rather than through the provider creating them.
+	 */
+	private WaitScheduler.Sweep<Server> serverSweep;
+	private WaitScheduler.Sweep<Volume> volumeSweep;
+	private WaitScheduler.Sweep<FloatingIP> floatingIpSweep;
+
+	/*
+	 * Number of floating IPs kept at hand per pool, and the warm pool shared with the
+	 * providers of the same configuration, resolved on first use
+	 */
+	private final int floatingIpWarmPoolSize;
+	private FloatingIpWarmPool floatingIpWarmPool;
+
+	/*
+	 * Whether allocations go through Heat stacks, and the Heat API and stack sweep
+	 * created on first use
+	 */
+	private final boolean heatBackend;
+	private HeatApi heatApi;
+	private WaitScheduler.Sweep<HeatStack> stackSweep;
+
+	/*
+	 * Whether the ports of the servers are created through Neutron, and the Neutron API
+	 * created on first use
+	 */
+	final boolean neutronPorts;
+	private NeutronApi neutronApi;
+
+	/*
+	 * The parts of the Nova API jclouds does not cover, created on first use
+	 */
+	private NovaComputeApi computeApi;
+
+	/*
+	 * The part of the Cinder API jclouds does not cover, created on first use
+	 */
+	private CinderLimitsApi cinderLimitsApi;
+
+	/*
+	 * The floating IP API going to Neutron directly, present when the catalog has a
+	 * network endpoint, resolved on first use
+	 */
+	private Optional<NeutronFloatingIPApi> neutronFloatingIpApi;
+
+	/*
+	 * The flavors of the region along with their extra specs, shared with the providers
+	 * of the same configuration, resolved on first use
+	 */
+	private FlavorCatalog.Cache flavorCatalogCache;
 	
 	public NovaProvider(Configured configuration, OpenStackCredentials credentials,
 			Config openstackConfig, LocalizationContext localizationContext) {
+		this(configuration, credentials, openstackConfig, new PluginContext(), localizationContext);
+	}
+
+	public NovaProvider(Configured configuration, OpenStackCredentials credentials,
+			Config openstackConfig, PluginContext pluginContext, LocalizationContext localizationContext) {
 		super(configuration, METADATA, localizationContext);
 		this.credentials = credentials;
 		this.openstackConfig = openstackConfig;
+		this.pluginContext = pluginContext;
 		this.novaApi = buildNovaAPI();
 		this.cinderApi = buildCinderAPI();
 		this.region = configuration.getConfigurationValue(REGION, localizationContext);
+		this.waitScheduler = getSharedState("nova-wait-scheduler", WaitScheduler.class, new Supplier<WaitScheduler>() {
+			@Override
+			public WaitScheduler get() {
+				return new WaitScheduler(pluginContext.getResourceEvents(), WAIT_TICK_SECONDS, TimeUnit.SECONDS, "nova-wait-scheduler");
+			}
+		});
+		this.listingPageSize = Integer.parseInt(
+				configuration.getConfigurationValue(LISTING_PAGE_SIZE, localizationContext));
+		this.floatingIpWarmPoolSize = Integer.parseInt(
+				configuration.getConfigurationValue(FLOATING_IP_WARM_POOL_SIZE, localizationContext));
+		this.heatBackend = ALLOCATION_BACKEND_HEAT.equals(
+				configuration.getConfigurationValue(ALLOCATION_BACKEND, localizationContext));
+		// Heat creates the ports of the servers of its stacks.
+		this.neutronPorts = !heatBackend && PORT_PROVISIONING_NEUTRON.equals(
+				configuration.getConfigurationValue(PORT_PROVISIONING, localizationContext));
+		String journalDirectory = configuration.getConfigurationValue(JOURNAL_DIRECTORY, localizationContext);
+		this.journalDirectory = journalDirectory == null || journalDirectory.isEmpty() ?
+				new File(System.getProperty("java.io.tmpdir"), "director-openstack-journal") :
+				new File(journalDirectory);
+		String brokerUri = configuration.getConfigurationValue(NOTIFICATION_BROKER_URI, localizationContext);
+		if (brokerUri != null && !brokerUri.isEmpty()) {
+			// One listener per broker for the whole plugin, however many providers are created.
+			pluginContext.listenToNotifications(brokerUri, NOTIFICATION_EXCHANGES);
+		}
+	}
+	
+	/**
+	 * Returns the state shared with the other providers of the same endpoint, identity and
+	 * region, creating it on first use.
+	 *
+	 * @param name     what the state is
+	 * @param type     the type of the state
+	 * @param supplier creates the state on first use
+	 * @return the shared state
+	 */
+	private <T> T getSharedState(String name, Class<T> type, Supplier<? extends T> supplier) {
+		String key = name + " " + credentials.getEndpoint() + " " + credentials.getIdentity() + " " + getRegion();
+		return pluginContext.getSharedState(key, type, supplier);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <S> WaitScheduler.Sweep<S> getSharedSweep(String name, Supplier<WaitScheduler.Sweep<S>> supplier) {
+		return getSharedState(name, WaitScheduler.Sweep.class, supplier);
+	}
+
+	private static ListeningExecutorService newApiExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(API_CONCURRENCY, API_CONCURRENCY,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat("nova-api-%d").setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		return MoreExecutors.listeningDecorator(executor);
+	}
+
+	private static ListeningExecutorService newReleaseExecutor() {
+		// The releases mostly wait, so one thread at a time is enough.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat("nova-release-%d").setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		return MoreExecutors.listeningDecorator(executor);
 	}
 	
 	public NovaApi getNovaApi() {
@@ -165,185 +558,579 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 	public String getRegion() {
 		return region;
 	}
-	
-	private NovaApi buildNovaAPI() {
-		Iterable<Module> modules = ImmutableSet.<Module>of(new SLF4JLoggingModule());
-		String endpoint = credentials.getEndpoint();
-		String identity = credentials.getIdentity();
-		String credential = credentials.getCredential();
 
-		return ContextBuilder.newBuilder(NOVA_API_METADATA)
-			  .endpoint(endpoint)
-			  .credentials(identity, credential)
-			  .modules(modules)
-			  .buildApi(NovaApi.class);
+	/**
+	 * Returns whether the ports of the servers are created through Neutron ahead of them.
+	 *
+	 * @return whether the ports are created through Neutron
+	 */
+	boolean isNeutronPortProvisioning() {
+		return neutronPorts;
 	}
 
-	private CinderApi buildCinderAPI() {
-		Iterable<Module> modules = ImmutableSet.<Module>of(new SLF4JLoggingModule());
-		String endpoint = credentials.getEndpoint();
-		String identity = credentials.getIdentity();
-		String credential = credentials.getCredential();
-		
-		return ContextBuilder.newBuilder(CINDER_API_METADATA)
-			  .endpoint(endpoint)
-			  .credentials(identity, credential)
-			  .modules(modules)
-			  .buildApi(CinderApi.class);
+	/**
+	 * Returns the APIs of the region for the shared state, pointed at the APIs of this
+	 * provider.
+	 *
+	 * @return the APIs of the region
+	 */
+	private synchronized NovaRegionApis getRegionApis() {
+		if (regionApis == null) {
+			regionApis = getSharedState("nova-region-apis", NovaRegionApis.class, new Supplier<NovaRegionApis>() {
+				@Override
+				public NovaRegionApis get() {
+					return new NovaRegionApis(getRegion());
+				}
+			});
+		}
+		regionApis.use(getNovaApi(), getCinderApi());
+		return regionApis;
 	}
-	
-	public NovaInstanceTemplate createResourceTemplate(String name,
-			Configured configuration, Map<String, String> tags) {
-		return new NovaInstanceTemplate(name, configuration, tags, this.getLocalizationContext());
+
+	/**
+	 * Returns the local inventory of the servers created by Director, shared with the
+	 * providers of the same configuration so that they refresh it together. The listing
+	 * page size is the one of the provider creating it.
+	 *
+	 * @return the server inventory
+	 */
+	synchronized NovaServerInventory getServerInventory() {
+		final NovaRegionApis apis = getRegionApis();
+		if (serverInventory == null) {
+			serverInventory = getSharedState("nova-server-inventory", NovaServerInventory.class,
+					new Supplier<NovaServerInventory>() {
+						@Override
+						public NovaServerInventory get() {
+							return new NovaServerInventory(apis.getServerApiSupplier(), listingPageSize);
+						}
+					});
+		}
+		return serverInventory;
 	}
-	
-	private void VerifyVolumeAttachementApi() {
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
-		Optional<VolumeAttachmentApi> volumeAttApi = novaApi.getVolumeAttachmentApi(region);
-		if (!volumeAttApi.isPresent()) {
-			throw new UnrecoverableProviderException("Volume Attachment API does not exist.");
-		}			
+
+	/**
+	 * Returns the allocations still completing instances after they returned, which
+	 * Director may ask about through another provider.
+	 *
+	 * @return the completing allocations
+	 */
+	private synchronized CompletingAllocations getCompletingAllocations() {
+		if (completingAllocations == null) {
+			completingAllocations = getSharedState("nova-completing-allocations", CompletingAllocations.class,
+					new Supplier<CompletingAllocations>() {
+						@Override
+						public CompletingAllocations get() {
+							return new CompletingAllocations();
+						}
+					});
+		}
+		return completingAllocations;
 	}
-	
-	// We do not use ServerPredicates and VolumePredicates for
-	// we feel it is not easy to use.
-	private Boolean pollServerStatus(String novaInstanceId, Status status,
-			long maxWaitInSec, long preiodInSec,
-			PluginExceptionConditionAccumulator accumulator) {
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
-		ServerApi serverApi = novaApi.getServerApi(region);
-		try {
-			while (maxWaitInSec > 0) {
-				Server server = serverApi.get(novaInstanceId); 
-				if (server == null) {
-					if (status.equals(Status.DELETED)) {
-						return true;
-					}
-					else {
-						return false;
-					}
-				}
-				if (server.getStatus().equals(status)) {
-					return true;
+
+	/**
+	 * Returns the sweep checking servers for the wait scheduler, which brings the server
+	 * inventory up to date once for every pending server.
+	 *
+	 * @return the server sweep
+	 */
+	synchronized WaitScheduler.Sweep<Server> getServerSweep() {
+		final NovaServerInventory inventory = getServerInventory();
+		if (serverSweep == null) {
+			serverSweep = getSharedSweep("nova-server-sweep", new Supplier<WaitScheduler.Sweep<Server>>() {
+				@Override
+				public WaitScheduler.Sweep<Server> get() {
+					return newServerSweep(inventory);
 				}
-				maxWaitInSec -= preiodInSec;
-				TimeUnit.SECONDS.sleep(preiodInSec);
-			}
-		} catch (Exception e) {
-			accumulator.addError(null, e.getMessage());
+			});
 		}
-		return false;
+		return serverSweep;
 	}
 
-	private Boolean pollVolumeStatus(String volumeId, Volume.Status status,
-			long maxWaitInSec, long preiodInSec,
-			PluginExceptionConditionAccumulator accumulator) {
-		CinderApi cinderApi = getCinderApi();
-		String region = getRegion();
-		VolumeApi volumeApi = cinderApi.getVolumeApi(region);
-		try {
-			while (maxWaitInSec > 0) {
-				// There is not Volume.Status.DELELTED.
-				Volume volume = volumeApi.get(volumeId);
-				if (volume!=null && volume.getStatus().equals(status)) {
-					return true;
+	private static WaitScheduler.Sweep<Server> newServerSweep(final NovaServerInventory inventory) {
+		return new WaitScheduler.Sweep<Server>() {
+			@Override
+			public Map<String, Server> fetch(Set<String> novaInstanceIds) {
+				inventory.refresh();
+				Map<String, Server> servers = Maps.newHashMap();
+				for (String novaInstanceId : novaInstanceIds) {
+					Optional<Server> server = inventory.get(novaInstanceId);
+					if (server.isPresent()) {
+						servers.put(novaInstanceId, server.get());
+					}
 				}
-				maxWaitInSec -= preiodInSec;
-				TimeUnit.SECONDS.sleep(preiodInSec);
+				return servers;
 			}
-		} catch (Exception e) {
-			accumulator.addError(null, e.getMessage());
-		}
-		return false;
+		};
 	}
 
-	private Boolean pollVolumeDeleted(String volumeId,
-			long maxWaitInSec, long preiodInSec,
-			PluginExceptionConditionAccumulator accumulator) {
-		CinderApi cinderApi = getCinderApi();
-		String region = getRegion();
-		VolumeApi volumeApi = cinderApi.getVolumeApi(region);
-		try {
-			while (maxWaitInSec > 0) {
-				if (volumeApi.get(volumeId) == null) {
-					return true;
+	/**
+	 * Returns the sweep checking volumes for the wait scheduler.
+	 *
+	 * @return the volume sweep
+	 */
+	private synchronized WaitScheduler.Sweep<Volume> getVolumeSweep() {
+		final NovaRegionApis apis = getRegionApis();
+		if (volumeSweep == null) {
+			volumeSweep = getSharedSweep("nova-volume-sweep", new Supplier<WaitScheduler.Sweep<Volume>>() {
+				@Override
+				public WaitScheduler.Sweep<Volume> get() {
+					return newVolumeSweep(apis);
 				}
-				maxWaitInSec -= preiodInSec;
-				TimeUnit.SECONDS.sleep(preiodInSec);
-			}
-		} catch (Exception e) {
-			accumulator.addError(null, e.getMessage());
+			});
 		}
-		return false;
+		return volumeSweep;
 	}
 
-	private void VerifyFloatingIPApis(String floatingIpPool) {
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
-		Optional<FloatingIPApi> floatingIpApi = novaApi.getFloatingIPApi(region);
-		if (!floatingIpApi.isPresent()) {
-			throw new UnrecoverableProviderException("FloatingIp API does not exist.");
-		}
-		Optional<FloatingIPPoolApi> floatingIpPoolApi = novaApi.getFloatingIPPoolApi(region);
-		if (!floatingIpPoolApi.isPresent()) {
-			throw new UnrecoverableProviderException("FloatingIpPool API does not exist.");
-		}
-		FluentIterable<? extends FloatingIPPool> fltIpPool = floatingIpPoolApi.get().list();
-		boolean poolExists = false;
-		for (FloatingIPPool pool : fltIpPool) {
-			if (pool.getName().equals(floatingIpPool)) {
-				poolExists = true;
-				break;
+	private static WaitScheduler.Sweep<Volume> newVolumeSweep(final NovaRegionApis apis) {
+		return new WaitScheduler.ListingSweep<Volume>() {
+			@Override
+			protected Volume get(String volumeId) {
+				return apis.getVolumeApi().get(volumeId);
 			}
-		}
-		if (!poolExists) {
-			throw new UnrecoverableProviderException("FloatingIpPool does not exist.");
-		}
-	}
+
+			@Override
+			protected Iterable<? extends Volume> list() {
+				return apis.getVolumeApi().listInDetail();
+			}
+
+			@Override
+			protected String getId(Volume volume) {
+				return volume.getId();
+			}
+		};
+	}
+
+	/**
+	 * Returns the sweep checking floating IPs for the wait scheduler.
+	 *
+	 * @return the floating IP sweep
+	 */
+	private synchronized WaitScheduler.Sweep<FloatingIP> getFloatingIpSweep() {
+		final NovaRegionApis apis = getRegionApis();
+		apis.useFloatingIpApi(getFloatingIpApi());
+		if (floatingIpSweep == null) {
+			floatingIpSweep = getSharedSweep("nova-floating-ip-sweep", new Supplier<WaitScheduler.Sweep<FloatingIP>>() {
+				@Override
+				public WaitScheduler.Sweep<FloatingIP> get() {
+					return newFloatingIpSweep(apis);
+				}
+			});
+		}
+		return floatingIpSweep;
+	}
+
+	private static WaitScheduler.Sweep<FloatingIP> newFloatingIpSweep(final NovaRegionApis apis) {
+		return new WaitScheduler.ListingSweep<FloatingIP>() {
+			@Override
+			protected FloatingIP get(String floatingIpId) {
+				return apis.getFloatingIpApi().get().get(floatingIpId);
+			}
+
+			@Override
+			protected Iterable<? extends FloatingIP> list() {
+				return apis.getFloatingIpApi().get().list();
+			}
+
+			@Override
+			protected String getId(FloatingIP floatingIp) {
+				return floatingIp.getId();
+			}
+		};
+	}
+
+	/**
+	 * Returns the floating IP warm pool, shared with the providers of the same
+	 * configuration so that a floating IP is handed out once whichever provider asks for
+	 * it. The warm pool size is the one of the provider creating it.
+	 *
+	 * @return the floating IP warm pool
+	 */
+	synchronized FloatingIpWarmPool getFloatingIpWarmPool() {
+		final NovaRegionApis apis = getRegionApis();
+		apis.useFloatingIpApi(getFloatingIpApi());
+		if (floatingIpWarmPool == null) {
+			floatingIpWarmPool = getSharedState("nova-floating-ip-warm-pool", FloatingIpWarmPool.class,
+					new Supplier<FloatingIpWarmPool>() {
+						@Override
+						public FloatingIpWarmPool get() {
+							return newFloatingIpWarmPool(apis, floatingIpWarmPoolSize);
+						}
+					});
+		}
+		return floatingIpWarmPool;
+	}
+
+	private static FloatingIpWarmPool newFloatingIpWarmPool(final NovaRegionApis apis, int size) {
+		// The refills outlive the provider creating the warm pool, so they get threads of their own.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat("nova-floating-ip-refill-%d").setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		return new FloatingIpWarmPool(new Supplier<FloatingIPApi>() {
+			@Override
+			public FloatingIPApi get() {
+				return apis.getFloatingIpApi().get();
+			}
+		}, size, executor);
+	}
+
+	/**
+	 * Returns the Heat API, creating it on first use.
+	 *
+	 * @return the Heat API
+	 */
+	synchronized HeatApi getHeatApi() {
+		if (heatApi == null) {
+			heatApi = new RestHeatApi(credentials, getRegion());
+		}
+		return heatApi;
+	}
+
+	/**
+	 * Returns the Nova compute API going over REST, creating it on first use.
+	 *
+	 * @return the Nova compute API
+	 */
+	synchronized NovaComputeApi getComputeApi() {
+		if (computeApi == null) {
+			computeApi = new RestNovaComputeApi(credentials, getRegion());
+		}
+		return computeApi;
+	}
+
+	/**
+	 * Returns the Cinder limits API going over REST, creating it on first use.
+	 *
+	 * @return the Cinder limits API
+	 */
+	synchronized CinderLimitsApi getCinderLimitsApi() {
+		if (cinderLimitsApi == null) {
+			cinderLimitsApi = new RestCinderLimitsApi(credentials, getRegion());
+		}
+		return cinderLimitsApi;
+	}
+
+	/**
+	 * Returns the Neutron API, creating it on first use.
+	 *
+	 * @return the Neutron API
+	 */
+	synchronized NeutronApi getNeutronApi() {
+		if (neutronApi == null) {
+			neutronApi = new RestNeutronApi(credentials, getRegion());
+		}
+		return neutronApi;
+	}
+
+	/**
+	 * Returns the floating IP API going to Neutron directly, if the catalog has a network
+	 * endpoint. Otherwise floating IPs go through the floating IP proxy of Nova.
+	 *
+	 * @return the Neutron floating IP API, if Neutron is available
+	 */
+	synchronized Optional<NeutronFloatingIPApi> getNeutronFloatingIpApi() {
+		if (neutronFloatingIpApi == null) {
+			NeutronApi neutronApi = getNeutronApi();
+			boolean available;
+			try {
+				available = neutronApi.isAvailable();
+			} catch (RuntimeException e) {
+				// Asked again on next use, rather than settling on Nova for good.
+				LOG.warn("Unable to look Neutron up, going through Nova for floating IPs: {}", e.getMessage());
+				return Optional.absent();
+			}
+			LOG.info("Floating IPs go through {}.", available ? "Neutron" : "Nova");
+			neutronFloatingIpApi = available ?
+					Optional.of(new NeutronFloatingIPApi(neutronApi)) : Optional.<NeutronFloatingIPApi>absent();
+		}
+		return neutronFloatingIpApi;
+	}
+
+	/**
+	 * Returns the flavor catalog of the region, reading it again once it gets old.
+	 *
+	 * @return the flavor catalog
+	 */
+	FlavorCatalog getFlavorCatalog() {
+		return getFlavorCatalogCache().get(getNovaApi(), getRegion());
+	}
+
+	private synchronized FlavorCatalog.Cache getFlavorCatalogCache() {
+		if (flavorCatalogCache == null) {
+			flavorCatalogCache = getSharedState("nova-flavor-catalog", FlavorCatalog.Cache.class,
+					new Supplier<FlavorCatalog.Cache>() {
+						@Override
+						public FlavorCatalog.Cache get() {
+							return new FlavorCatalog.Cache(FLAVOR_CATALOG_MAX_AGE_MILLIS);
+						}
+					});
+		}
+		return flavorCatalogCache;
+	}
+
+	/**
+	 * Returns the floating IP API, going to Neutron directly when it is available.
+	 *
+	 * @return the floating IP API, absent if neither Neutron nor the floating IP
+	 *         extension of Nova is available
+	 */
+	private Optional<FloatingIPApi> getFloatingIpApi() {
+		Optional<NeutronFloatingIPApi> neutronFloatingIpApi = getNeutronFloatingIpApi();
+		return neutronFloatingIpApi.isPresent() ? Optional.<FloatingIPApi>of(neutronFloatingIpApi.get()) :
+				getNovaApi().getFloatingIPApi(getRegion());
+	}
+
+	/**
+	 * Returns the sweep checking Heat stacks for the wait scheduler. There are few stacks
+	 * pending at a time, so each one is fetched on its own.
+	 *
+	 * @return the stack sweep
+	 */
+	private synchronized WaitScheduler.Sweep<HeatStack> getStackSweep() {
+		final NovaRegionApis apis = getRegionApis();
+		apis.useHeatApi(getHeatApi());
+		if (stackSweep == null) {
+			stackSweep = getSharedSweep("nova-stack-sweep", new Supplier<WaitScheduler.Sweep<HeatStack>>() {
+				@Override
+				public WaitScheduler.Sweep<HeatStack> get() {
+					return newStackSweep(apis);
+				}
+			});
+		}
+		return stackSweep;
+	}
+
+	private static WaitScheduler.Sweep<HeatStack> newStackSweep(final NovaRegionApis apis) {
+		return new WaitScheduler.Sweep<HeatStack>() {
+			@Override
+			public Map<String, HeatStack> fetch(Set<String> stackNames) {
+				HeatApi heatApi = apis.getHeatApi();
+				Map<String, HeatStack> stacks = Maps.newHashMap();
+				for (String stackName : stackNames) {
+					HeatStack stack = heatApi.getStack(stackName);
+					if (stack != null) {
+						stacks.put(stackName, stack);
+					}
+				}
+				return stacks;
+			}
+		};
+	}
+
+	private static Predicate<Server> serverStatusIs(final Status status) {
+		return new Predicate<Server>() {
+			@Override
+			public boolean apply(Server server) {
+				// Deleted servers drop out of the inventory.
+				return server == null ? status == Status.DELETED : server.getStatus() == status;
+			}
+		};
+	}
+
+	private static Predicate<Volume> volumeStatusIn(final Set<Volume.Status> statuses) {
+		return new Predicate<Volume>() {
+			@Override
+			public boolean apply(Volume volume) {
+				return volume != null && statuses.contains(volume.getStatus());
+			}
+		};
+	}
+
+	private static Predicate<FloatingIP> floatingIpAssociatedTo(final String novaInstanceId) {
+		return new Predicate<FloatingIP>() {
+			@Override
+			public boolean apply(FloatingIP floatingIp) {
+				return floatingIp != null && novaInstanceId.equals(floatingIp.getInstanceId());
+			}
+		};
+	}
 	
-	private FloatingIP createAndAssignFloatingIP(String floatingIpPool, String instanceId,
-			PluginExceptionConditionAccumulator accumulator) {
+	private NovaApi buildNovaAPI() {
+		Iterable<Module> modules = ImmutableSet.<Module>of(new SLF4JLoggingModule());
+		String endpoint = credentials.getEndpoint();
+		String identity = credentials.getIdentity();
+		String credential = credentials.getCredential();
+
+		return ContextBuilder.newBuilder(NOVA_API_METADATA)
+			  .endpoint(endpoint)
+			  .credentials(identity, credential)
+			  .modules(modules)
+			  .buildApi(NovaApi.class);
+	}
+
+	private CinderApi buildCinderAPI() {
+		Iterable<Module> modules = ImmutableSet.<Module>of(new SLF4JLoggingModule());
+		String endpoint = credentials.getEndpoint();
+		String identity = credentials.getIdentity();
+		String credential = credentials.getCredential();
+		
+		return ContextBuilder.newBuilder(CINDER_API_METADATA)
+			  .endpoint(endpoint)
+			  .credentials(identity, credential)
+			  .modules(modules)
+			  .buildApi(CinderApi.class);
+	}
+	
+	public NovaInstanceTemplate createResourceTemplate(String name,
+			Configured configuration, Map<String, String> tags) {
+		return new NovaInstanceTemplate(name, configuration, tags, this.getLocalizationContext());
+	}
+	
+	void VerifyVolumeAttachementApi() {
 		NovaApi novaApi = getNovaApi();
 		String region = getRegion();
-		try {
-			FloatingIPApi floatingIpApi = novaApi.getFloatingIPApi(region).get();
-			FloatingIP floatingIp = floatingIpApi.allocateFromPool(floatingIpPool);
-			String fltip = floatingIp.getIp();
-			String floatingIpId = floatingIp.getId();
-			int retryNum = 10;
-			// We need to check whether floating IP was created.
-			while (fltip.isEmpty() && retryNum > 0) {
-				TimeUnit.SECONDS.sleep(5);
-				fltip = floatingIp.getIp();
-				retryNum--;
-			}
-			// Wait some time here, or it might fail for the instance network info is not ready.
-			TimeUnit.SECONDS.sleep(10);
-			floatingIpApi.addToServer(fltip, instanceId);
-			// AddToServer does not have return value, so we have to check whether 
-			// floating IP was successfully associated.
-			floatingIp = floatingIpApi.get(floatingIpId); 
-			while (floatingIp.getInstanceId() == null || floatingIp.getInstanceId().isEmpty()) {
-				TimeUnit.SECONDS.sleep(5);
-				floatingIpApi.addToServer(fltip, instanceId);
-				retryNum--;
-			}
-			if (fltip.isEmpty() || floatingIp.getInstanceId() == null ||
-					floatingIp.getInstanceId().isEmpty() ||
-					!floatingIp.getInstanceId().equals(instanceId) ) {
-				floatingIpApi.delete(floatingIp.getId());
-				return null;
+		Optional<VolumeAttachmentApi> volumeAttApi = novaApi.getVolumeAttachmentApi(region);
+		if (!volumeAttApi.isPresent()) {
+			throw new UnrecoverableProviderException("Volume Attachment API does not exist.");
+		}			
+	}
+	
+	// We do not use ServerPredicates and VolumePredicates for
+	// we feel it is not easy to use. The waits are all checked by the wait scheduler.
+	ListenableFuture<Boolean> awaitServerStatus(String novaInstanceId, Status status,
+			long maxWaitInSec) {
+		return waitScheduler.await(getServerSweep(), novaInstanceId, serverStatusIs(status),
+				maxWaitInSec, TimeUnit.SECONDS);
+	}
+
+	private ListenableFuture<Boolean> awaitVolumeStatus(String volumeId, Set<Volume.Status> statuses,
+			long maxWaitInSec) {
+		return waitScheduler.await(getVolumeSweep(), volumeId, volumeStatusIn(statuses),
+				maxWaitInSec, TimeUnit.SECONDS);
+	}
+
+	private ListenableFuture<Boolean> awaitVolumeDeleted(String volumeId, long maxWaitInSec) {
+		// There is not Volume.Status.DELELTED.
+		return waitScheduler.await(getVolumeSweep(), volumeId, Predicates.<Volume>isNull(),
+				maxWaitInSec, TimeUnit.SECONDS);
+	}
+
+	Boolean pollVolumeStatus(String volumeId, Volume.Status status,
+			long maxWaitInSec, PluginExceptionConditionAccumulator accumulator) {
+		return WaitScheduler.getResult(awaitVolumeStatus(volumeId, EnumSet.of(status), maxWaitInSec), accumulator);
+	}
+
+	void VerifyFloatingIPApis(String floatingIpPool) {
+		Optional<NeutronFloatingIPApi> neutronFloatingIpApi = getNeutronFloatingIpApi();
+		if (neutronFloatingIpApi.isPresent()) {
+			// The floating IP pools are the external networks.
+			if (!neutronFloatingIpApi.get().getPoolNames().contains(floatingIpPool)) {
+				throw new UnrecoverableProviderException("FloatingIpPool does not exist.");
 			}
-			return floatingIp;
-		} catch (Exception e) {
-			accumulator.addError(null, e.getMessage());
-			return null;
+			return;
+		}
+		NovaApi novaApi = getNovaApi();
+		String region = getRegion();
+		Optional<FloatingIPApi> floatingIpApi = novaApi.getFloatingIPApi(region);
+		if (!floatingIpApi.isPresent()) {
+			throw new UnrecoverableProviderException("FloatingIp API does not exist.");
+		}
+		Optional<FloatingIPPoolApi> floatingIpPoolApi = novaApi.getFloatingIPPoolApi(region);
+		if (!floatingIpPoolApi.isPresent()) {
+			throw new UnrecoverableProviderException("FloatingIpPool API does not exist.");
+		}
+		FluentIterable<? extends FloatingIPPool> fltIpPool = floatingIpPoolApi.get().list();
+		boolean poolExists = false;
+		for (FloatingIPPool pool : fltIpPool) {
+			if (pool.getName().equals(floatingIpPool)) {
+				poolExists = true;
+				break;
+			}
+		}
+		if (!poolExists) {
+			throw new UnrecoverableProviderException("FloatingIpPool does not exist.");
 		}
 	}
 	
-	private void releaseResources(int volumeNumber, int volumeSize,
+	/**
+	 * Associates a floating IP to an instance once it has an address, since Nova cannot
+	 * associate it before the instance network is set up. The association is checked
+	 * with the other pending floating IPs, in one batch per tick. A floating IP whose
+	 * association fails or times out goes back to the warm pool.
+	 *
+	 * @param addressWait    the wait for the instance address
+	 * @param floatingIpPool the floating IP pool
+	 * @param novaInstanceId the Nova instance ID
+	 * @param instanceId     the instance ID
+	 * @param networkId      the network of the port the floating IP goes to
+	 * @param journal        the allocation journal
+	 * @return a future completing with the associated floating IP, or with null if the
+	 *         instance has no address or the association failed
+	 */
+	ListenableFuture<FloatingIP> assignFloatingIpOnceAddressed(ListenableFuture<Boolean> addressWait,
+			final String floatingIpPool, final String novaInstanceId, final String instanceId, final String networkId,
+			final AllocationJournal journal) {
+		final FloatingIPApi floatingIpApi = getFloatingIpApi().get();
+		final FloatingIpWarmPool warmPool = getFloatingIpWarmPool();
+		final WaitScheduler.Sweep<FloatingIP> floatingIpSweep = getFloatingIpSweep();
+		return Futures.transform(addressWait, new AsyncFunction<Boolean, FloatingIP>() {
+			@Override
+			public ListenableFuture<FloatingIP> apply(Boolean hasAddress) {
+				if (!hasAddress) {
+					return Futures.immediateFuture(null);
+				}
+				// The warm pool hands out a floating IP which already has its address.
+				final FloatingIP floatingIp = warmPool.acquire(floatingIpPool);
+				// Floating IPs cannot be tagged, so only the journal finds them if we go down
+				// before the association.
+				journal.record(instanceId, AllocationJournal.Entry.FLOATING_IP, floatingIp.getId());
+				try {
+					if (floatingIpApi instanceof NeutronFloatingIPApi) {
+						// Neutron associates it to the port on the management network.
+						((NeutronFloatingIPApi) floatingIpApi).addToServer(floatingIp.getId(), novaInstanceId, networkId);
+					} else {
+						floatingIpApi.addToServer(floatingIp.getIp(), novaInstanceId);
+					}
+				} catch (RuntimeException e) {
+					warmPool.release(floatingIpPool, floatingIp);
+					throw e;
+				}
+				// AddToServer does not have return value, so we have to check whether
+				// floating IP was successfully associated.
+				ListenableFuture<Boolean> associated = waitScheduler.await(floatingIpSweep, floatingIp.getId(),
+						floatingIpAssociatedTo(novaInstanceId), FLOATING_IP_ASSOCIATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				return Futures.transform(associated, new Function<Boolean, FloatingIP>() {
+					@Override
+					public FloatingIP apply(Boolean isAssociated) {
+						if (!isAssociated) {
+							warmPool.release(floatingIpPool, floatingIp);
+							return null;
+						}
+						// The association does not update the server, so the inventory would keep
+						// serving the addresses it had before.
+						try {
+							getServerInventory().reload(novaInstanceId);
+						} catch (RuntimeException e) {
+							LOG.warn("Unable to read server {} again: {}", novaInstanceId, e.getMessage());
+						}
+						return floatingIp;
+					}
+				}, apiExecutor);
+			}
+		}, apiExecutor);
+	}
+
+	/**
+	 * Blocks until a floating IP assignment completes. A failure is recorded as an error.
+	 *
+	 * @param assignment  the floating IP assignment
+	 * @param accumulator the exception condition accumulator
+	 * @return the associated floating IP, or null if the assignment failed
+	 */
+	static FloatingIP getFloatingIp(Future<FloatingIP> assignment,
+			PluginExceptionConditionAccumulator accumulator) {
+		try {
+			return assignment.get();
+		} catch (ExecutionException e) {
+			accumulator.addError(null, e.getCause().getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			accumulator.addError(null, "Interrupted while assigning floating IPs.");
+		}
+		return null;
+	}
+	
+	void releaseResources(int volumeNumber, int volumeSize,
 			String floatingIpPool,
 			Collection<String> instanceIds,
 			Collection<String> fltIpIds,
@@ -354,383 +1141,1079 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 		CinderApi cinderApi = getCinderApi();
 		String region = getRegion();
 		ServerApi serverApi = novaApi.getServerApi(region);
-		Optional<FloatingIPApi> floatingIpApi = novaApi.getFloatingIPApi(region);
+		Optional<FloatingIPApi> floatingIpApi = getFloatingIpApi();
 
 		BiMap<String, String> novaInstanceIdsByInstanceIds =
 				getNovaInstanceIdsByInstanceIds(instanceIds);
 
-		// Delete the floating IPs associated to the instances and in fltIpIds.
-		if (floatingIpApi.isPresent() && floatingIpPool != null && !floatingIpPool.isEmpty()) {
-			Set<String> floatingIpIds = getFloatingIPIdsByInstanceIds(instanceIds);
-			if (fltIpIds != null && !fltIpIds.isEmpty()) {
-				floatingIpIds.addAll(fltIpIds);
-			}
-			for (String floatingIpId : floatingIpIds) {
-				floatingIpApi.get().delete(floatingIpId);
+		boolean hasInstances = instanceIds != null && !instanceIds.isEmpty();
+		// Look the volumes up first, so that each one can be deleted as soon as its
+		// server is gone rather than once every server is.
+		Collection<String> volumeIds = Collections.emptySet();
+		if (hasInstances && volumeNumber > 0 && volumeSize > 0) {
+			volumeIds = getVolumeIdsByInstanceIds(instanceIds, volumeNumber);
+		}
+
+		// Floating IPs, instances and volumes are torn down concurrently. Each future
+		// completes with whether its resource is gone.
+		Map<String, ListenableFuture<Boolean>> teardowns = Maps.newLinkedHashMap();
+
+		// Delete the floating IPs associated to the instances and in fltIpIds.
+		if (floatingIpApi.isPresent() && floatingIpPool != null && !floatingIpPool.isEmpty()) {
+			Set<String> floatingIpIds = getFloatingIPIdsByNovaInstanceIds(novaInstanceIdsByInstanceIds.values());
+			if (fltIpIds != null && !fltIpIds.isEmpty()) {
+				floatingIpIds.addAll(fltIpIds);
+			}
+			for (String floatingIpId : floatingIpIds) {
+				teardowns.put("floating IP " + floatingIpId, deleteFloatingIp(floatingIpApi.get(), floatingIpId));
+			}
+		}
+
+		// The server groups Heat does not own go once their last server does.
+		Set<String> serverGroupNames = Sets.newHashSet();
+		if (hasInstances) {
+			// Delete the instances, and the volumes as they get detached.
+			NovaServerInventory inventory = getServerInventory();
+			for (String currentId : instanceIds) {
+				String novaInstanceId = novaInstanceIdsByInstanceIds.get(currentId);
+				if (novaInstanceId != null) {
+					Server server = heatBackend ? null : inventory.get(novaInstanceId).orNull();
+					if (server != null && server.getMetadata() != null
+							&& server.getMetadata().containsKey(DIRECTOR_SERVER_GROUP)) {
+						serverGroupNames.add(server.getMetadata().get(DIRECTOR_SERVER_GROUP));
+					}
+					teardowns.put("instance " + novaInstanceId, deleteServer(serverApi, novaInstanceId));
+				}
+			}
+			if (!heatBackend) {
+				// The group named after the instances goes as well, should none of its servers
+				// have been seen, such as when they failed to boot.
+				serverGroupNames.add(getServerGroupName(instanceIds));
+			}
+			VolumeApi volumeApi = cinderApi.getVolumeApi(region);
+			for (String volumeId : volumeIds) {
+				teardowns.put("volume " + volumeId, deleteVolumeWhenDetached(volumeApi, volumeId));
+			}
+			if (neutronPorts) {
+				// Nova leaves the ports it did not create. Those bound to the servers go, along
+				// with the unbound ones left by servers which failed to boot or were replaced.
+				NeutronApi neutronApi = getNeutronApi();
+				Set<String> portIds = Sets.newLinkedHashSet();
+				for (NeutronPort port : neutronApi.listPortsByDeviceIds(novaInstanceIdsByInstanceIds.values())) {
+					portIds.add(port.getId());
+				}
+				List<String> portNames = Lists.newArrayList();
+				for (String currentId : instanceIds) {
+					portNames.add(DIRECTOR_PORT_PREFIX + currentId);
+				}
+				for (NeutronPort port : neutronApi.listPortsByNames(portNames)) {
+					if (port.getDeviceId() == null) {
+						portIds.add(port.getId());
+					}
+				}
+				for (String portId : portIds) {
+					teardowns.put("port " + portId, deletePort(neutronApi, portId));
+				}
+			}
+		}
+
+		for (Map.Entry<String, ListenableFuture<Boolean>> teardown : teardowns.entrySet()) {
+			if (!WaitScheduler.getResult(teardown.getValue(), accumulator)) {
+				LOG.info("Unable to delete {}.", teardown.getKey());
+			}
+		}
+		deleteEmptyServerGroups(serverGroupNames);
+	}
+
+	/**
+	 * Deletes the given server groups which no server is left in. Nova drops the deleted
+	 * servers from their group, so that the group of instances released in parts goes
+	 * along with the last of them.
+	 *
+	 * @param serverGroupNames the server group names
+	 */
+	private void deleteEmptyServerGroups(Collection<String> serverGroupNames) {
+		if (serverGroupNames.isEmpty()) {
+			return;
+		}
+		NovaComputeApi computeApi = getComputeApi();
+		for (String serverGroupName : serverGroupNames) {
+			try {
+				NovaServerGroup group = computeApi.findServerGroup(serverGroupName);
+				if (group == null) {
+					continue;
+				}
+				if (!group.getMembers().isEmpty()) {
+					LOG.info("Keeping server group {}, which {} server(s) are still in.", serverGroupName,
+							group.getMembers().size());
+					continue;
+				}
+				LOG.info(">> Deleting server group {}", serverGroupName);
+				computeApi.deleteServerGroup(group.getId());
+			} catch (RuntimeException e) {
+				LOG.warn("Unable to delete server group {}: {}", serverGroupName, e.getMessage());
+			}
+		}
+	}
+
+	private ListenableFuture<Boolean> deleteFloatingIp(final FloatingIPApi floatingIpApi,
+			final String floatingIpId) {
+		return apiExecutor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				floatingIpApi.delete(floatingIpId);
+				return true;
+			}
+		});
+	}
+
+	private ListenableFuture<Boolean> deletePort(final NeutronApi neutronApi, final String portId) {
+		return apiExecutor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				neutronApi.deletePort(portId);
+				return true;
+			}
+		});
+	}
+
+	ListenableFuture<ServerCreated> createServer(final ServerSpec serverSpec, final ServerApi serverApi,
+			final String instanceId, final String placement) {
+		return apiExecutor.submit(new Callable<ServerCreated>() {
+			@Override
+			public ServerCreated call() {
+				return serverSpec.create(serverApi, instanceId, placement);
+			}
+		});
+	}
+
+	/**
+	 * Boots the server of an instance in the zones it was not tried in yet, one after the
+	 * other, until one of them takes it.
+	 *
+	 * @param serverSpec                  what the server is booted with
+	 * @param serverApi                   the server API
+	 * @param instanceId                  the instance ID
+	 * @param placement                   the zone placement
+	 * @param record                      the placement record so far
+	 * @param placementsByNovaInstanceIds the placement records by Nova instance ID, which
+	 *                                    get the one of the created server
+	 * @return the created server, or null if no zone is left or took it
+	 */
+	static ServerCreated failOver(ServerSpec serverSpec, ServerApi serverApi, String instanceId,
+			ZonePlacement placement, String record, Map<String, String> placementsByNovaInstanceIds) {
+		for (String zone = placement.getFailoverZone(record); zone != null; zone = placement.getFailoverZone(record)) {
+			record = ZonePlacement.record(record, zone);
+			try {
+				ServerCreated server = serverSpec.create(serverApi, instanceId, record);
+				LOG.info("Failed over instance {} to zone {} with {}.", instanceId, zone, server.getId());
+				placementsByNovaInstanceIds.put(server.getId(), record);
+				return server;
+			} catch (RuntimeException e) {
+				LOG.info("Unable to create the server of {} in zone {}: {}", instanceId, zone, e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Fails over the server of an instance which went into error, such as when no host of
+	 * its zone could take it. The server is tagged apart to be released, and a new one is
+	 * booted in the next zone.
+	 *
+	 * @param serverSpec                  what the server is booted with
+	 * @param serverApi                   the server API
+	 * @param novaInstanceId              the Nova instance ID of the server
+	 * @param instanceId                  the instance ID
+	 * @param placement                   the zone placement
+	 * @param placementsByNovaInstanceIds the placement records by Nova instance ID
+	 * @return the new server, or null if the server is not in error or could not fail over
+	 */
+	static ServerCreated failOverErrored(ServerSpec serverSpec, ServerApi serverApi, String novaInstanceId,
+			String instanceId, ZonePlacement placement, Map<String, String> placementsByNovaInstanceIds) {
+		String record = placementsByNovaInstanceIds.get(novaInstanceId);
+		if (placement.getFailoverZone(record) == null) {
+			return null;
+		}
+		try {
+			Server server = serverApi.get(novaInstanceId);
+			if (server == null || server.getStatus() != Status.ERROR) {
+				return null;
+			}
+			LOG.info("Server {} of instance {} went into error in zone {}.", novaInstanceId, instanceId,
+					ZonePlacement.getZone(record));
+			serverApi.updateMetadata(novaInstanceId, ImmutableMap.of(DIRECTOR_ID, FAILED_OVER_PREFIX + instanceId));
+		} catch (RuntimeException e) {
+			LOG.info("Unable to fail over server {} of instance {}: {}", novaInstanceId, instanceId, e.getMessage());
+			return null;
+		}
+		ServerCreated replacement = failOver(serverSpec, serverApi, instanceId, placement, record,
+				placementsByNovaInstanceIds);
+		if (replacement == null) {
+			serverApi.updateMetadata(novaInstanceId, ImmutableMap.of(DIRECTOR_ID, instanceId));
+		}
+		return replacement;
+	}
+
+	private ListenableFuture<Boolean> deleteServer(final ServerApi serverApi, final String novaInstanceId) {
+		ListenableFuture<Boolean> deleteCall = apiExecutor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return serverApi.delete(novaInstanceId);
+			}
+		});
+		return Futures.transform(deleteCall, new AsyncFunction<Boolean, Boolean>() {
+			@Override
+			public ListenableFuture<Boolean> apply(Boolean accepted) {
+				//Make sure the instance is deleted.
+				return awaitServerStatus(novaInstanceId, Status.DELETED, SERVER_DELETE_TIMEOUT_SECONDS);
+			}
+		});
+	}
+
+	private ListenableFuture<Boolean> deleteVolumeWhenDetached(final VolumeApi volumeApi, final String volumeId) {
+		// Wait until the volume is available or error (ready for delete). Volumes attached
+		// to a server are only detached as the server goes away.
+		ListenableFuture<Boolean> settled = awaitVolumeStatus(volumeId, VOLUME_SETTLED_STATUSES,
+				SERVER_DELETE_TIMEOUT_SECONDS + VOLUME_SETTLE_TIMEOUT_SECONDS);
+		return Futures.transform(settled, new AsyncFunction<Boolean, Boolean>() {
+			@Override
+			public ListenableFuture<Boolean> apply(Boolean isSettled) {
+				if (!isSettled) {
+					return Futures.immediateFuture(false);
+				}
+				Volume volume = volumeApi.get(volumeId);
+				if (volume == null) {
+					return Futures.immediateFuture(true);
+				}
+				Volume.Status volumeStatus = volume.getStatus();
+				// For available or error, delete them.
+				// For deleting, wait them deleted.
+				// For error_deleting, leave them.
+				if (volumeStatus == Volume.Status.AVAILABLE || volumeStatus == Volume.Status.ERROR) {
+					if (!volumeApi.delete(volumeId)) {
+						return Futures.immediateFuture(false);
+					}
+					return awaitVolumeDeleted(volumeId, VOLUME_DELETE_TIMEOUT_SECONDS);
+				}
+				if (volumeStatus == Volume.Status.DELETING) {
+					return awaitVolumeDeleted(volumeId, VOLUME_DELETE_TIMEOUT_SECONDS);
+				}
+				return Futures.immediateFuture(false);
+			}
+		}, apiExecutor);
+	}
+	
+	public void allocate(NovaInstanceTemplate template, Collection<String> instanceIds,
+			int minCount) throws InterruptedException {
+		if (heatBackend) {
+			allocateStack(template, instanceIds, minCount);
+			return;
+		}
+		if (instanceIds == null || instanceIds.isEmpty()) {
+			allocate(template, instanceIds, minCount, null, null);
+			return;
+		}
+		LocalizationContext templateLocalizationContext =
+				SimpleResourceTemplate.getTemplateLocalizationContext(getLocalizationContext());
+		long completionGraceSeconds = Long.parseLong(
+				template.getConfigurationValue(COMPLETION_GRACE_SECONDS, templateLocalizationContext));
+		if (completionGraceSeconds > 0 && minCount < instanceIds.size()) {
+			allocateInBackground(template, instanceIds, minCount, completionGraceSeconds);
+			return;
+		}
+		allocate(template, instanceIds, minCount, new AllocationProgress(instanceIds, instanceIds.size()));
+	}
+
+	/**
+	 * Allocates the instances on a background thread, and returns as soon as the minimum
+	 * number of them are ready. The other instances keep going for up to the grace period,
+	 * and are left out of {@link #find} until they are ready. Those which are not ready by
+	 * the end of the grace period are released.
+	 * <p>
+	 * If the allocation ends before enough instances are ready, this call has its outcome.
+	 *
+	 * @param template               the instance template
+	 * @param instanceIds            the instance IDs
+	 * @param minCount               the minimum number of instances
+	 * @param completionGraceSeconds the grace period in seconds
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	private void allocateInBackground(final NovaInstanceTemplate template, final Collection<String> instanceIds,
+			final int minCount, final long completionGraceSeconds) throws InterruptedException {
+		final AllocationProgress progress = new AllocationProgress(instanceIds, Math.max(minCount, 1));
+		final CompletingAllocations completingAllocations = getCompletingAllocations();
+		completingAllocations.add(progress);
+		final ListenableFuture<Void> allocation = completingAllocations.getExecutor().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws InterruptedException {
+				try {
+					allocate(template, instanceIds, minCount, progress);
+					return null;
+				} finally {
+					progress.finished();
+				}
+			}
+		});
+		try {
+			progress.awaitSatisfied();
+			if (!progress.isSatisfied() || allocation.isDone()) {
+				completingAllocations.remove(progress);
+				allocation.get();
+				return;
+			}
+		} catch (InterruptedException e) {
+			completingAllocations.remove(progress);
+			allocation.cancel(true);
+			throw e;
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+		LOG.info("{} instance(s) are ready, completing the other {} within {} seconds.",
+				instanceIds.size() - progress.getPendingInstanceIds().size(),
+				progress.getPendingInstanceIds().size(), completionGraceSeconds);
+		completingAllocations.getExecutor().submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					completeInBackground(template, allocation, progress, completionGraceSeconds);
+				} finally {
+					completingAllocations.remove(progress);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for an allocation which returned early to end, and cancels it if it does not
+	 * end within the grace period. The instances it did not get ready are then released.
+	 *
+	 * @param template               the instance template
+	 * @param allocation             the allocation
+	 * @param progress               the allocation progress
+	 * @param completionGraceSeconds the grace period in seconds
+	 */
+	private void completeInBackground(NovaInstanceTemplate template, Future<Void> allocation,
+			AllocationProgress progress, long completionGraceSeconds) {
+		try {
+			if (!progress.awaitFinished(completionGraceSeconds, TimeUnit.SECONDS)) {
+				LOG.info("Instances {} are not ready after {} seconds.", progress.getPendingInstanceIds(),
+						completionGraceSeconds);
+				allocation.cancel(true);
+				progress.awaitFinished();
+			}
+			Set<String> pendingInstanceIds = progress.getPendingInstanceIds();
+			if (!pendingInstanceIds.isEmpty()) {
+				LOG.info("Releasing {} instance(s) which did not get ready.", pendingInstanceIds.size());
+				delete(template, pendingInstanceIds);
+			}
+		} catch (UnrecoverableProviderException e) {
+			LOG.info("Problem releasing the instances which did not get ready: {}", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void allocate(NovaInstanceTemplate template, Collection<String> instanceIds,
+			int minCount, AllocationProgress progress) throws InterruptedException {
+		// The journal outlives this call only if the plugin goes down, or an unexpected
+		// failure leaves resources behind, so that the next attempt resumes from it.
+		AllocationJournal journal = AllocationJournal.open(journalDirectory, instanceIds);
+		try {
+			allocate(template, instanceIds, minCount, journal, progress);
+			journal.discard();
+		} catch (UnrecoverableProviderException e) {
+			journal.discard();
+			throw e;
+		} finally {
+			journal.close();
+		}
+	}
+
+	private void allocate(NovaInstanceTemplate template, Collection<String> instanceIds,
+			int minCount, AllocationJournal journal, AllocationProgress progress) throws InterruptedException {
+		// If we are not given enough instanceIds. Throw exception.
+		if (instanceIds == null || instanceIds.isEmpty() || instanceIds.size() < minCount) {
+			PluginExceptionDetails pluginExceptionDetails =
+					new PluginExceptionDetails(new PluginExceptionConditionAccumulator().getConditionsByKey());
+			throw new UnrecoverableProviderException("No enough instanceIds.", pluginExceptionDetails);
+		}
+		new ServerAllocation(this, template, instanceIds, minCount, journal, progress).run();
+	}
+
+	/**
+	 * Releases the given instances once the floating IP assignments still in flight for
+	 * them complete, without waiting for it. The failures are only logged.
+	 *
+	 * @param volumeNumber                 the number of volumes per instance
+	 * @param volumeSize                   the size of the volumes
+	 * @param floatingIpPool               the floating IP pool, or null
+	 * @param instanceIdsByNovaInstanceIds the instance IDs by Nova instance ID
+	 * @param floatingIpAssignments        the floating IP assignments by Nova instance ID
+	 */
+	void releaseInBackground(final int volumeNumber, final int volumeSize, final String floatingIpPool,
+			Map<String, String> instanceIdsByNovaInstanceIds,
+			Map<String, ListenableFuture<FloatingIP>> floatingIpAssignments) {
+		if (instanceIdsByNovaInstanceIds.isEmpty()) {
+			return;
+		}
+		final Collection<String> releasedInstanceIds = ImmutableList.copyOf(instanceIdsByNovaInstanceIds.values());
+		final Collection<ListenableFuture<FloatingIP>> pendingAssignments = Lists.newArrayList();
+		for (String novaInstanceId : instanceIdsByNovaInstanceIds.keySet()) {
+			ListenableFuture<FloatingIP> assignment = floatingIpAssignments.get(novaInstanceId);
+			if (assignment != null) {
+				pendingAssignments.add(assignment);
+			}
+		}
+		LOG.info("Releasing {} spare, straggling or failed over instance(s) in the background.",
+				releasedInstanceIds.size());
+		releaseExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
+				Set<String> floatingIpIds = Sets.newHashSet();
+				for (ListenableFuture<FloatingIP> assignment : pendingAssignments) {
+					FloatingIP floatingIp = getFloatingIp(assignment, accumulator);
+					if (floatingIp != null) {
+						floatingIpIds.add(floatingIp.getId());
+					}
+				}
+				releaseResources(volumeNumber, volumeSize, floatingIpPool, releasedInstanceIds, floatingIpIds,
+						accumulator);
+				if (accumulator.hasError()) {
+					LOG.info("Problem releasing spare, straggling or failed over instances: {}", accumulator.getConditionsByKey());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Allocates the instances as one Heat stack, which creates the servers along with
+	 * their volumes and floating IPs on the Heat side, in parallel. The stack is tracked
+	 * through its status alone, and its outputs map the instances to their servers.
+	 * <p>
+	 * A stack is created as a whole or not at all, so a failed stack is deleted whatever
+	 * the minimum count. The stack name is derived from the instance IDs, so a retry
+	 * picks up the stack of an earlier attempt.
+	 *
+	 * @param template    the instance template
+	 * @param instanceIds the instance IDs
+	 * @param minCount    the minimum number of instances
+	 */
+	private void allocateStack(NovaInstanceTemplate template, Collection<String> instanceIds, int minCount) {
+		PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
+		if (instanceIds == null || instanceIds.isEmpty() || instanceIds.size() < minCount) {
+			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
+			throw new UnrecoverableProviderException("No enough instanceIds.", pluginExceptionDetails);
+		}
+
+		LocalizationContext templateLocalizationContext =
+				SimpleResourceTemplate.getTemplateLocalizationContext(getLocalizationContext());
+		String floatingIpPool = template.getConfigurationValue(FLOATING_IP_POOL, templateLocalizationContext);
+		if (floatingIpPool != null && !floatingIpPool.isEmpty()) {
+			VerifyFloatingIPApis(floatingIpPool);
+		}
+
+		HeatApi heatApi = getHeatApi();
+		String stackName = getStackName(instanceIds);
+		HeatStack stack = heatApi.getStack(stackName);
+		if (stack != null && !stack.isInProgress() && !HeatStack.CREATE_COMPLETE.equals(stack.getStatus())) {
+			LOG.info("Deleting stack {} left in {} by an earlier attempt.", stackName, stack.getStatus());
+			heatApi.deleteStack(stackName, stack.getId());
+			if (!WaitScheduler.getResult(waitScheduler.await(getStackSweep(), stackName, STACK_DELETED,
+					STACK_DELETE_TIMEOUT_SECONDS, TimeUnit.SECONDS), accumulator)) {
+				PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
+				throw new UnrecoverableProviderException(String.format(
+						"Problem allocating %d instances: Unable to delete the failed stack %s.",
+						instanceIds.size(), stackName), pluginExceptionDetails);
+			}
+			stack = null;
+		}
+		if (stack == null) {
+			// A stack is created whole or not at all, so every instance has to fit.
+			// Local disks take no Cinder quota.
+			int volumeNumber = isLocalDisks(template, templateLocalizationContext) ? 0 :
+					Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
+			int volumeSize = Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext));
+			CapacityPlan capacityPlan = planCapacity(template.getConfigurationValue(TYPE, templateLocalizationContext),
+					volumeNumber, volumeSize, floatingIpPool);
+			if (capacityPlan.getFittingCount(instanceIds.size()) < instanceIds.size()) {
+				PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
+				throw new UnrecoverableProviderException(String.format(
+						"Problem allocating %d instances: Only %d instances fit in the quotas (%s).",
+						instanceIds.size(), capacityPlan.getFittingCount(instanceIds.size()),
+						capacityPlan.describeShortfall(instanceIds.size())), pluginExceptionDetails);
+			}
+			String stackTemplate = renderStackTemplate(template, templateLocalizationContext, instanceIds, stackName);
+			LOG.info(">> Creating stack {} for {} instance(s)", stackName, instanceIds.size());
+			heatApi.createStack(stackName, stackTemplate, STACK_CREATE_TIMEOUT_MINUTES);
+		}
+
+		// Heat times the creation out on its own, so the wait only covers a stuck stack.
+		WaitScheduler.getResult(waitScheduler.await(getStackSweep(), stackName, STACK_SETTLED,
+				STACK_CREATE_TIMEOUT_MINUTES + 5, TimeUnit.MINUTES), accumulator);
+		stack = heatApi.getStack(stackName);
+		if (stack != null && HeatStack.CREATE_COMPLETE.equals(stack.getStatus())) {
+			Collection<String> missingInstanceIds = Sets.newHashSet(instanceIds);
+			for (String outputKey : stack.getOutputs().keySet()) {
+				missingInstanceIds.remove(NovaStackTemplate.getInstanceId(outputKey));
+			}
+			if (missingInstanceIds.isEmpty()) {
+				LOG.info("<< Stack {} created {} instance(s)", stackName, instanceIds.size());
+				return;
+			}
+			accumulator.addError(null, String.format("Stack %s has no server for %d instance(s).",
+					stackName, missingInstanceIds.size()));
+		}
+
+		String status = stack == null ? "gone" : stack.getStatus();
+		if (stack != null) {
+			if (stack.getStatusReason() != null) {
+				accumulator.addError(null, stack.getStatusReason());
+			}
+			heatApi.deleteStack(stackName, stack.getId());
+			if (!WaitScheduler.getResult(waitScheduler.await(getStackSweep(), stackName, STACK_DELETED,
+					STACK_DELETE_TIMEOUT_SECONDS, TimeUnit.SECONDS), accumulator)) {
+				LOG.info("Unable to delete stack {}.", stackName);
+			}
+		}
+		PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
+		throw new UnrecoverableProviderException(String.format(
+				"Problem allocating %d instances: Stack %s is %s.", instanceIds.size(), stackName, status),
+				pluginExceptionDetails);
+	}
+
+	private String renderStackTemplate(NovaInstanceTemplate template, LocalizationContext templateLocalizationContext,
+			Collection<String> instanceIds, String stackName) {
+		int volumeNumber = Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
+		int volumeSize = Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext));
+		// A stack is created as a whole, so its servers are spread over the zones but
+		// cannot fail over one by one.
+		ZonePlacement placement =
+				ZonePlacement.parse(template.getConfigurationValue(AVAILABILITY_ZONE, templateLocalizationContext));
+		Map<String, String> zonesByInstanceIds = placement.assign(instanceIds);
+		String serverGroupPolicy = template.getConfigurationValue(SERVER_GROUP_POLICY, templateLocalizationContext);
+		String serverGroup = hasServerGroup(serverGroupPolicy) ? getServerGroupName(instanceIds) : null;
+		NovaStackTemplate stackTemplate = new NovaStackTemplate(
+				template.getConfigurationValue(IMAGE, templateLocalizationContext),
+				template.getConfigurationValue(TYPE, templateLocalizationContext),
+				template.getConfigurationValue(KEY_NAME, templateLocalizationContext),
+				template.getNetworkRoles().getNetworkIds(),
+				placement.getPrimaryZone(),
+				NovaInstanceTemplate.CSV_SPLITTER.splitToList(
+						template.getConfigurationValue(SECURITY_GROUP_NAMES, templateLocalizationContext)))
+				.floatingIpPool(template.getConfigurationValue(FLOATING_IP_POOL, templateLocalizationContext));
+		LocalDiskLayout localDiskLayout = null;
+		if (isLocalDisks(template, templateLocalizationContext)) {
+			localDiskLayout = getLocalDiskLayout(template, templateLocalizationContext);
+			stackTemplate.localDisks(localDiskLayout.getMappedDiskNumber(), localDiskLayout.getDiskSize());
+		} else {
+			stackTemplate.volumes(volumeNumber, volumeSize, isBlockDeviceMapping(template, templateLocalizationContext));
+		}
+		if (serverGroup != null) {
+			stackTemplate.serverGroup(serverGroup, serverGroupPolicy);
+		}
+		for (String instanceId : instanceIds) {
+			Map<String, String> tags = new HashMap<String, String>();
+			tags.put(DIRECTOR_ID, instanceId);
+			tags.put(DIRECTOR_STACK, stackName);
+			tags.put(DIRECTOR_NETWORK_ROLES, template.getNetworkRoles().formatRoles());
+			if (serverGroup != null) {
+				tags.put(DIRECTOR_SERVER_GROUP, serverGroup);
+			}
+			// The local disks are in the metadata of their own, no Cinder volume is attached.
+			tags.put("VOLUME_NUMBER", Integer.toString(localDiskLayout != null ? 0 : volumeNumber));
+			tags.put("VOLUME_SIZE", Integer.toString(volumeSize));
+			if (localDiskLayout != null) {
+				tags.putAll(localDiskLayout.getMetadata());
+			}
+			String zone = zonesByInstanceIds.get(instanceId);
+			if (zone != null) {
+				tags.put(DIRECTOR_PLACEMENT, zone);
+			}
+			stackTemplate.addServer(instanceId, decorateInstanceName(template, instanceId), tags, zone);
+		}
+		return stackTemplate.render();
+	}
+
+	/**
+	 * Blocks until the given number of futures complete with true, all of them complete,
+	 * or the timeout passes, whichever comes first.
+	 *
+	 * @param futures the futures
+	 * @param count   the number of futures to complete with true
+	 * @param timeout the timeout
+	 * @param unit    the unit of the timeout
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	static void awaitFirst(Collection<ListenableFuture<Boolean>> futures, int count, long timeout,
+			TimeUnit unit) throws InterruptedException {
+		final CountDownLatch succeeded = new CountDownLatch(count);
+		final AtomicInteger pending = new AtomicInteger(futures.size());
+		for (ListenableFuture<Boolean> future : futures) {
+			Futures.addCallback(future, new FutureCallback<Boolean>() {
+				@Override
+				public void onSuccess(Boolean result) {
+					if (Boolean.TRUE.equals(result)) {
+						succeeded.countDown();
+					}
+					onCompletion();
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					onCompletion();
+				}
+
+				private void onCompletion() {
+					if (pending.decrementAndGet() == 0) {
+						while (succeeded.getCount() > 0) {
+							succeeded.countDown();
+						}
+					}
+				}
+			});
+		}
+		succeeded.await(timeout, unit);
+	}
+
+	/**
+	 * Reads the Nova and Cinder quotas of the project, along with what it uses already, to
+	 * plan how many instances of the given shape fit. Nova and Cinder keep what the project
+	 * uses in their absolute limits, so that no server or volume is listed. The floating
+	 * IPs are checked against the quota of Neutron when they go through it. Quotas which
+	 * cannot be read are left out of the plan.
+	 *
+	 * @param flavorName        the flavor name
+	 * @param volumeNumber      the number of volumes per instance, attached or mapped at boot
+	 * @param volumeSize        the size of the volumes in GB
+	 * @param floatingIpPool    the pool of the floating IP of each instance, null or empty for none
+	 * @return the capacity plan
+	 */
+	CapacityPlan planCapacity(String flavorName, int volumeNumber, int volumeSize,
+			String floatingIpPool) {
+		String region = getRegion();
+		CapacityPlan plan = new CapacityPlan();
+		// Quotas are kept by project ID, which is not the tenant name of the credentials.
+		String projectId = null;
+		try {
+			projectId = getComputeApi().getProjectId();
+		} catch (RuntimeException e) {
+			LOG.info("Unable to resolve the project ID: {}", e.getMessage());
+		}
+		if (projectId == null) {
+			LOG.info("Leaving the quotas out, as the project ID is unknown.");
+			return plan;
+		}
+
+		Optional<QuotaApi> quotaApi = getNovaApi().getQuotaApi(region);
+		Quota quota = null;
+		Map<String, Integer> limits = null;
+		FlavorCatalog.FlavorTraits flavor = null;
+		if (quotaApi.isPresent()) {
+			try {
+				quota = quotaApi.get().getByTenant(projectId);
+				limits = getComputeApi().getAbsoluteLimits();
+			} catch (RuntimeException e) {
+				quota = null;
+				LOG.info("Unable to read the Nova quotas: {}", e.getMessage());
 			}
 		}
-		
-		if (instanceIds == null || instanceIds.isEmpty()) {
-			// If instanceIds is empty, no need to do following things.
-			return;
-		}
-		
-		// Delete the instances.
-		for (String currentId : instanceIds) {
-			try{
-				String novaInstanceId = novaInstanceIdsByInstanceIds.get(currentId);
-				if (novaInstanceId != null) {
-					serverApi.delete(novaInstanceId);
-				}
-			} catch (Exception e) {
-				accumulator.addError(null, e.getMessage());
+		if (quota != null) {
+			try {
+				flavor = getFlavorCatalog().getFlavor(flavorName);
+			} catch (RuntimeException e) {
+				LOG.info("Unable to read flavor {}, leaving the cores and RAM out: {}", flavorName, e.getMessage());
 			}
 		}
-		
-		//Make sure all instances deleted.
-		for (String currentId : instanceIds) {
-			try{
-				String novaInstanceId = novaInstanceIdsByInstanceIds.get(currentId);
-				if (novaInstanceId != null && !pollServerStatus(novaInstanceId, Status.DELETED, 120, 5, accumulator)) {
-					LOG.info("Instance {} can not be deleted.", novaInstanceId);
-				}
-			} catch (Exception e) {
-				accumulator.addError(null, e.getMessage());
+		if (quota != null) {
+			plan.require("instances", quota.getInstances(), getUsage(limits, "totalInstancesUsed"), 1);
+			if (flavor != null) {
+				plan.require("cores", quota.getCores(), getUsage(limits, "totalCoresUsed"), flavor.getVcpus());
+				plan.require("RAM (MB)", quota.getRam(), getUsage(limits, "totalRAMUsed"), flavor.getRam());
 			}
 		}
 
-		// Delete the volumes.
-		if (volumeNumber > 0 && volumeSize > 0) {
-			// Get all volumes by instanceIds.
-			Collection<String> volumeIds = getVolumeIdsByInstanceIds(instanceIds);
-			Set<String> volumeToDeleteIds = Sets.newHashSet();
-			Set<String> deletingVolumeIds = Sets.newHashSet();
-			Set<String> errorDeletingVolumeIds = Sets.newHashSet();
-			VolumeApi  volumeApi = cinderApi.getVolumeApi(region);
-			for (String volId : volumeIds) {
-				// Wait until volumes available or error (ready for delete).
-				Volume currentVolume = volumeApi.get(volId);
-				long pollingTimeoutSeconds = 10;
-				long checkInterval = 5;
-				try {
-					while (pollingTimeoutSeconds > 0) {
-						Volume.Status volumeStatus = volumeApi.get(volId).getStatus();
-						// For available or error, delete them.
-						// For error_deleting, leave them.
-						// For deleting, wait them deleted.
-						if (volumeStatus == Volume.Status.AVAILABLE ||
-								volumeStatus == Volume.Status.ERROR) {
-							volumeToDeleteIds.add(currentVolume.getId());
-							break;
-						}
-						if (volumeStatus == Volume.Status.DELETING) {
-							deletingVolumeIds.add(currentVolume.getId());
-							break;
-						}
-						if (volumeStatus == Volume.Status.ERROR_DELETING) {
-							errorDeletingVolumeIds.add(currentVolume.getId());
-							break;
-						}
-						// If not above cases, poll again.
-						TimeUnit.SECONDS.sleep(checkInterval);
-						pollingTimeoutSeconds -= checkInterval;
-					}
-				}
-				catch (Exception e) {
-					accumulator.addError(null, e.getMessage());
+		Optional<FloatingIPApi> floatingIpApi = getFloatingIpApi();
+		if (floatingIpPool != null && !floatingIpPool.isEmpty() && floatingIpApi.isPresent()) {
+			try {
+				// The floating IP quota of Nova does not count the floating IPs of Neutron.
+				Integer floatingIpQuota = getNeutronFloatingIpApi().isPresent() ?
+						Integer.valueOf(getNeutronApi().getFloatingIpQuota(projectId)) :
+						quota != null ? quota.getFloatingIps() : null;
+				if (floatingIpQuota != null) {
+					// The floating IPs at hand in the warm pool go to the new instances.
+					int usedFloatingIps = floatingIpApi.get().list().size()
+							- getFloatingIpWarmPool().getReadyCount(floatingIpPool);
+					plan.require("floating IPs", floatingIpQuota, Math.max(0, usedFloatingIps), 1);
 				}
+			} catch (RuntimeException e) {
+				LOG.info("Unable to read the floating IP quota: {}", e.getMessage());
 			}
+		}
 
-			for (String volumeId : volumeToDeleteIds) {
-				// Delete the volume.
-				boolean deleted = volumeApi.delete(volumeId);
-				if (!deleted) {
-					LOG.info("Unable to delete volume {}.", volumeId);
-				}
-			}
-			for (String volumeId : volumeToDeleteIds) {
-				// Wait until the volume deleted.
-				if (!pollVolumeDeleted(volumeId, 600, 5, accumulator)) {
-					LOG.info("Unable to delete volume {}.", volumeId);
-				}
+		if (volumeNumber > 0 && volumeSize > 0) {
+			Map<String, Integer> volumeLimits = null;
+			try {
+				volumeLimits = getCinderLimitsApi().getAbsoluteLimits();
+			} catch (RuntimeException e) {
+				LOG.info("Unable to read the Cinder quotas: {}", e.getMessage());
 			}
-			for (String volumeId : errorDeletingVolumeIds) {
-				// Also log all undeletable volumes.
-				LOG.info("Unable to delete volume {}.", volumeId);
+			if (volumeLimits != null) {
+				plan.require("volumes", getLimit(volumeLimits, "maxTotalVolumes"),
+						getUsage(volumeLimits, "totalVolumesUsed"), volumeNumber);
+				plan.require("volume gigabytes", getLimit(volumeLimits, "maxTotalVolumeGigabytes"),
+						getUsage(volumeLimits, "totalGigabytesUsed"), volumeNumber * volumeSize);
 			}
 		}
+		return plan;
 	}
-	
-	public void allocate(NovaInstanceTemplate template, Collection<String> instanceIds,
-			int minCount) throws InterruptedException {
-
-		PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
-		// If we are not given enough instanceIds. Throw exception.
-		if (instanceIds == null || instanceIds.isEmpty() || instanceIds.size() < minCount) {
-			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
-			throw new UnrecoverableProviderException("No enough instanceIds.", pluginExceptionDetails);
-		}
 
-		LocalizationContext providerLocalizationContext = getLocalizationContext();
-		LocalizationContext templateLocalizationContext =
-				SimpleResourceTemplate.getTemplateLocalizationContext(providerLocalizationContext);
+	private static int getLimit(Map<String, Integer> limits, String name) {
+		// A limit Cinder does not report is not enforced.
+		Integer limit = limits.get(name);
+		return limit == null ? -1 : limit;
+	}
 
-		// Provisioning the cluster
-		NovaApi novaApi = getNovaApi();
-		CinderApi cinderApi = getCinderApi();
-		String region = getRegion();
-		ServerApi serverApi = novaApi.getServerApi(region);
+	private static int getUsage(Map<String, Integer> limits, String name) {
+		Integer used = limits.get(name);
+		return used == null ? 0 : used;
+	}
 
-		final Set<String> novaInstancesNotReady = Sets.newHashSet();
-		final Set<String> novaInstancesReady = Sets.newHashSet();
-		final Set<String> floatingIps = Sets.newHashSet();
+	/**
+	 * Returns a queue which gets the keys of the given futures as the futures complete.
+	 *
+	 * @param futures the futures by key
+	 * @return the queue of keys
+	 */
+	static <K> BlockingQueue<K> inCompletionOrder(Map<K, ? extends ListenableFuture<?>> futures) {
+		BlockingQueue<K> completed = new LinkedBlockingQueue<K>();
+		for (Map.Entry<K, ? extends ListenableFuture<?>> future : futures.entrySet()) {
+			notifyOnCompletion(completed, future.getKey(), future.getValue());
+		}
+		return completed;
+	}
 
-		String image = template.getConfigurationValue(IMAGE, templateLocalizationContext);
-		String flavorName = template.getConfigurationValue(TYPE, templateLocalizationContext);
-		String network = template.getConfigurationValue(NETWORK_ID, templateLocalizationContext);
-		String azone = template.getConfigurationValue(AVAILABILITY_ZONE, templateLocalizationContext);
-		String securityGroups = template.getConfigurationValue(SECURITY_GROUP_NAMES, templateLocalizationContext);
-		String keyName = template.getConfigurationValue(KEY_NAME, templateLocalizationContext);
-		String floatingIpPool = template.getConfigurationValue(FLOATING_IP_POOL, templateLocalizationContext);
-		List<String> securityGroupNames = NovaInstanceTemplate.CSV_SPLITTER.splitToList(securityGroups);
-		int volumeNumber = Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
-		int volumeSize = Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext));
-		String flavorId = getFlavorIDByName(flavorName);
+	/**
+	 * Adds a key to a queue once the given future completes.
+	 *
+	 * @param completed the queue of keys
+	 * @param key       the key of the future
+	 * @param future    the future
+	 */
+	static <K> void notifyOnCompletion(final BlockingQueue<K> completed, final K key,
+			ListenableFuture<?> future) {
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				completed.add(key);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+	}
 
-		if (volumeNumber > 0 && volumeSize > 0) {
-			// If volume number and volume size are > 0, we will verify whether
-			// VolumeAttachmentApi presents. If not we will not continue.
-			VerifyVolumeAttachementApi();
+	static boolean isDoneAndTrue(ListenableFuture<Boolean> future) {
+		if (future == null || !future.isDone()) {
+			return false;
 		}
-		if (floatingIpPool != null && !floatingIpPool.isEmpty()) {
-			// If floatingIpPool is not empty, verify whether
-			// floatingIpApi and flotingipPool present. If not we will not continue.
-			VerifyFloatingIPApis(floatingIpPool);
+		try {
+			return Boolean.TRUE.equals(Futures.getUnchecked(future));
+		} catch (RuntimeException e) {
+			return false;
 		}
+	}
 
-		// For idempotency, we need to release resources first.
-		releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
-		
-		for (String currentId : instanceIds) {
-			// Create instance for each IntanceId (which is not the nova instance ID, but will be transferred to
-			// Instance name).
-			String decoratedInstanceName = decorateInstanceName(template, currentId);
+	/**
+	 * Returns the IDs the spares of an allocation are tagged with, which do not depend on
+	 * the order of the instance IDs, so that a retry finds the spares of an earlier attempt.
+	 *
+	 * @param instanceIds    the instance IDs
+	 * @param spareInstances the number of spares
+	 * @return the spare IDs
+	 */
+	@VisibleForTesting
+	static List<String> getSpareInstanceIds(Collection<String> instanceIds, int spareInstances) {
+		List<String> spareInstanceIds = Lists.newArrayList();
+		String key = Joiner.on(',').join(Ordering.natural().sortedCopy(instanceIds));
+		String prefix = "spare-" + Hashing.sha1().hashString(key, Charsets.UTF_8).toString().substring(0, 16) + "-";
+		for (int i = 0; i < spareInstances; i++) {
+			spareInstanceIds.add(prefix + i);
+		}
+		return spareInstanceIds;
+	}
 
-			// Tag all the new instances so that we can easily find them later on
-			Map<String, String> tags = new HashMap<String, String>();
-			tags.put("DIRECTOR_ID", currentId);
-			tags.put("VOLUME_NUMBER", Integer.toString(volumeNumber));
-			tags.put("VOLUME_SIZE", Integer.toString(volumeSize));
+	/**
+	 * Returns the name of the stack allocating the given instances, which does not depend
+	 * on their order.
+	 *
+	 * @param instanceIds the instance IDs
+	 * @return the stack name
+	 */
+	private static String getStackName(Collection<String> instanceIds) {
+		String key = Joiner.on(',').join(Ordering.natural().sortedCopy(instanceIds));
+		return "director-" + Hashing.sha1().hashString(key, Charsets.UTF_8).toString().substring(0, 16);
+	}
 
-			CreateServerOptions createServerOps = new CreateServerOptions()
-								.keyPairName(keyName)
-								.networks(network)
-								.availabilityZone(azone)
-								.securityGroupNames(securityGroupNames)
-								.metadata(tags);
-			
-			try {
-				ServerCreated currentServer = serverApi.create(decoratedInstanceName, image, flavorId, createServerOps);
-				novaInstancesNotReady.add(currentServer.getId());
-			} catch (Exception e) {
-				// Server creation failed. But it may not fail allocate
-				// method, if success instances number is enough.
-			}			
-		}
-		
-		if (novaInstancesNotReady.size() < minCount) {
-			// Instance number does not meet the requirement. Delete instances
-			// and floating IPs if existing.
-			// Release all resources already allocated.
-			String errorMsg = String.format(
-					"Problem allocating %d instances: Can only allocate %d instances while we want at least %d.",
-					instanceIds.size(), novaInstancesNotReady.size(), minCount);
-			releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
-			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
-			throw new UnrecoverableProviderException(errorMsg, pluginExceptionDetails);
-		}
-		
-		// Wait until all of them to have a private IP
-		int totalTimePollingSeconds = 0;
-		int pollingTimeoutSeconds = 10;
-		boolean timeoutExceeded = false;
-		while (!novaInstancesNotReady.isEmpty() && !timeoutExceeded) {
-			LOG.info(">> Waiting for {} instance(s) to get Private IP",
-					novaInstancesNotReady.size());
-			List<String> tempList = Lists.newArrayList();
-			for (String novaInstanceId : novaInstancesNotReady) {
-				Server novaInstance = serverApi.get(novaInstanceId);
-				if (novaInstance.getAddresses() != null && !novaInstance.getAddresses().isEmpty()) {
-					tempList.add(novaInstanceId);
-					LOG.info("<< Instance {} got IP {}", novaInstanceId, novaInstance.getAddresses());
-				}
-			}
-			
-			for (String novaInstanceId : tempList) {
-				novaInstancesReady.add(novaInstanceId);
-				novaInstancesNotReady.remove(novaInstanceId);
-			}
-			
-			if (!novaInstancesNotReady.isEmpty()) {
-				LOG.info("Waiting 5 seconds until next check, {} instance(s) still don't have an IP",
-						novaInstancesNotReady.size());
-				
-				if (totalTimePollingSeconds > pollingTimeoutSeconds) {
-					timeoutExceeded = true;
-				}
-				TimeUnit.SECONDS.sleep(5);
-				totalTimePollingSeconds += 5;
+	/**
+	 * Returns the name of the server group of the given instances, derived from their IDs
+	 * like the stack name.
+	 *
+	 * @param instanceIds the instance IDs
+	 * @return the server group name
+	 */
+	static String getServerGroupName(Collection<String> instanceIds) {
+		return getStackName(instanceIds) + "-group";
+	}
+
+	static boolean hasServerGroup(String serverGroupPolicy) {
+		return serverGroupPolicy != null && !serverGroupPolicy.isEmpty()
+				&& !NovaInstanceTemplate.SERVER_GROUP_POLICY_NONE.equals(serverGroupPolicy);
+	}
+
+	/**
+	 * Deletes the stacks all of whose instances are to be deleted, with one call each.
+	 * The instances of stacks which are only partly deleted are left to be released one
+	 * by one, and deleting their stack later removes whatever is left of it.
+	 *
+	 * @param instanceIds the instance IDs to delete
+	 * @param accumulator the exception condition accumulator
+	 * @return the instance IDs which are still to be released
+	 */
+	private Collection<String> deleteStacks(Collection<String> instanceIds,
+			PluginExceptionConditionAccumulator accumulator) {
+		BiMap<String, String> novaInstanceIdsByInstanceIds = getNovaInstanceIdsByInstanceIds(instanceIds);
+		NovaServerInventory inventory = getServerInventory();
+		SetMultimap<String, String> instanceIdsByStackNames = HashMultimap.create();
+		for (Map.Entry<String, String> entry : novaInstanceIdsByInstanceIds.entrySet()) {
+			Server server = inventory.get(entry.getValue()).orNull();
+			if (server != null && server.getMetadata() != null && server.getMetadata().containsKey(DIRECTOR_STACK)) {
+				instanceIdsByStackNames.put(server.getMetadata().get(DIRECTOR_STACK), entry.getKey());
 			}
 		}
 
-		if (floatingIpPool != null && !floatingIpPool.isEmpty()) {
-			LOG.info(">> Waiting for {} instance(s) to get Floating IP",
-					novaInstancesReady.size());
-			List<String> tempList = Lists.newArrayList();
-			for (String novaInstanceId : novaInstancesReady) {
-				FloatingIP fltip = createAndAssignFloatingIP(floatingIpPool, novaInstanceId, accumulator);
-				if (fltip != null) {
-					floatingIps.add(fltip.getId());
-				}
-				else {
-					tempList.add(novaInstanceId);
+		HeatApi heatApi = getHeatApi();
+		Collection<String> remainingInstanceIds = Sets.newLinkedHashSet(instanceIds);
+		Map<String, ListenableFuture<Boolean>> deletions = Maps.newHashMap();
+		for (String stackName : instanceIdsByStackNames.keySet()) {
+			HeatStack stack = heatApi.getStack(stackName);
+			if (stack == null) {
+				continue;
+			}
+			Set<String> stackInstanceIds = Sets.newHashSet();
+			for (String outputKey : stack.getOutputs().keySet()) {
+				String instanceId = NovaStackTemplate.getInstanceId(outputKey);
+				if (instanceId != null) {
+					stackInstanceIds.add(instanceId);
 				}
 			}
-			for (String novaInstanceId : tempList) {
-				novaInstancesReady.remove(novaInstanceId);
-				novaInstancesNotReady.add(novaInstanceId);
-			}			
-		}
-		
-		int successfulOperationCount = instanceIds.size() - novaInstancesNotReady.size();
-		if (successfulOperationCount < minCount) {
-			// Instance number does not meet the requirement. Delete instances
-			// and floating IPs if existing.
-			// Release all resources already allocated.
-			String errorMsg = String.format(
-					"Problem allocating %d instances: Can only get %d instances with IPs while we want %d.",
-					instanceIds.size(), successfulOperationCount, minCount);
-			releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
-			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
-			throw new UnrecoverableProviderException(errorMsg, pluginExceptionDetails);
+			if (!remainingInstanceIds.containsAll(stackInstanceIds)) {
+				LOG.info("Releasing {} of the instances of stack {} one by one.",
+						instanceIdsByStackNames.get(stackName).size(), stackName);
+				continue;
+			}
+			LOG.info(">> Deleting stack {}", stackName);
+			heatApi.deleteStack(stackName, stack.getId());
+			deletions.put(stackName, waitScheduler.await(getStackSweep(), stackName, STACK_DELETED,
+					STACK_DELETE_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			remainingInstanceIds.removeAll(stackInstanceIds);
+			remainingInstanceIds.removeAll(instanceIdsByStackNames.get(stackName));
 		}
-		else {
-			// Just delete the fail ones.
-			Collection<String> failInstances = Lists.newArrayList();
-			for (String instanceId : novaInstancesNotReady) {
-				failInstances.add(serverApi.get(instanceId).getMetadata().get("DIRECTOR_ID"));
+		for (Map.Entry<String, ListenableFuture<Boolean>> deletion : deletions.entrySet()) {
+			if (!WaitScheduler.getResult(deletion.getValue(), accumulator)) {
+				accumulator.addError(null, String.format("Unable to delete stack %s.", deletion.getKey()));
 			}
-			releaseResources(volumeNumber, volumeSize, floatingIpPool, failInstances, null, accumulator);
 		}
-		
-		if (volumeNumber > 0 && volumeSize > 0 && novaInstancesReady.size() > 0) {
-			// Need to allocate volumes for instances.
-			// Wait all instances to be in "ACTIVE" status.
-			List<String> tempList = Lists.newArrayList();
-			for (String novaInstanceId : novaInstancesReady) {
-				if (!pollServerStatus(novaInstanceId, Status.ACTIVE, 120, 5, accumulator)) {
-					tempList.add(novaInstanceId);
-				}
-			}
-			for (String novaInstanceId : tempList) {
-				// Add instance which cannot be ACTIVE to novaInstancesNotReady. 
-				novaInstancesReady.remove(novaInstanceId);
-				novaInstancesNotReady.add(novaInstanceId);
-			}
-			
-			LOG.info("Need to allocate {} volumes for each instances.", volumeNumber);
-			
-			VolumeApi volumeApi = cinderApi.getVolumeApi(region);
-			// We have already confirmed volumeAttApi exists, so get will not fail.
-			VolumeAttachmentApi volumeAttachmentApi = novaApi.getVolumeAttachmentApi(region).get();
-			
-			//Create all volumes before attaching them to save time.
-			Map<String, Collection<String>> volumeIdsByNovaInstanceIds = Maps.newHashMap();
-			for (String novaInstanceId: novaInstancesReady) {
-				LOG.info(">> Start to create {} volumes for the instances {}.", volumeNumber, novaInstanceId);
-				Map<String, String> tags = new HashMap<String, String>();
-				final List<String> volumeIds = new ArrayList<String>();
-				String instanceId = serverApi.get(novaInstanceId).getMetadata().get("DIRECTOR_ID");
-				tags.put("DIRECTOR_ID", instanceId);
-				CreateVolumeOptions createVolOps = CreateVolumeOptions.Builder
-						.description(VOLUME_DESCRIPTION)
-						.availabilityZone(azone)
-						.metadata(tags);
-				for (int i = 0; i < volumeNumber; i++) {
-					Volume currentVolume = volumeApi.create(volumeSize, createVolOps);
-					volumeIds.add(currentVolume.getId());
-				}
-				volumeIdsByNovaInstanceIds.put(novaInstanceId, volumeIds);
-			}
-			
-			LOG.info(">> Waiting for {} instance(s) to be attached by volumes.",
-					novaInstancesReady.size());
-			final List<String> activeVolIds = new ArrayList<String>();
-			List<String> tempList1 = Lists.newArrayList();
-			for (String novaInstanceId: novaInstancesReady) {
-				Collection<String> involvedVolumeIds = volumeIdsByNovaInstanceIds.get(novaInstanceId);
-				for (String volId : involvedVolumeIds) {
-					// We do not set the device so that the devices could be set automatically.
-					String device = "";
-					// Wait until Available. The default awaitAvailable wait time is too long (10min).
-					// If not success, we delete it, and regenerate a new volId.
-					boolean createdSuccess = false;
-					if (pollVolumeStatus(volId, Volume.Status.AVAILABLE, 30, 5, accumulator)) {
-						activeVolIds.add(volId);
-						createdSuccess = true;
-					}
-					if (!createdSuccess) {
-						// Delete the volume. Instance will be deleted later.
-						volumeApi.delete(volId);
-						tempList1.add(novaInstanceId);
-						LOG.info("Time out on Volume: " + volId);
-					}
-					else {
-						// Attach the volume to the instance. 
-						volumeAttachmentApi.attachVolumeToServerAsDevice(volId, novaInstanceId, device);
-						// Wait until In-use.
-						if (!pollVolumeStatus(volId, Volume.Status.IN_USE, 30, 5, accumulator)) {
-							// Attach fail. Delete the volume. Instance will be deleted later.
-							boolean volDeleted = volumeApi.delete(volId);
-							if (volDeleted) {
-								activeVolIds.remove(volId);
-							}
-							tempList1.add(novaInstanceId);
-							LOG.info("Time out on Volume: " + volId);
-						}
-					}
+		return remainingInstanceIds;
+	}
+
+	/**
+	 * Records that the given instances are complete, both in the journal and as a phase
+	 * marker in their server metadata, which outlives the journal host.
+	 *
+	 * @param serverApi                    the server API
+	 * @param novaInstanceIds              the Nova instance IDs
+	 * @param instanceIdsByNovaInstanceIds the instance IDs by Nova instance ID
+	 * @param journal                      the allocation journal
+	 * @param accumulator                  the exception condition accumulator
+	 */
+	void markComplete(final ServerApi serverApi, Collection<String> novaInstanceIds,
+			Map<String, String> instanceIdsByNovaInstanceIds, AllocationJournal journal,
+			PluginExceptionConditionAccumulator accumulator) {
+		Map<String, ListenableFuture<Boolean>> markers = Maps.newHashMap();
+		for (final String novaInstanceId : novaInstanceIds) {
+			journal.record(instanceIdsByNovaInstanceIds.get(novaInstanceId), AllocationJournal.Phase.COMPLETE);
+			markers.put(novaInstanceId, apiExecutor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					serverApi.updateMetadata(novaInstanceId,
+							ImmutableMap.of(PHASE, AllocationJournal.Phase.COMPLETE.name()));
+					return true;
 				}
+			}));
+		}
+		// A missing marker only costs a later retry a closer look at the instance.
+		PluginExceptionConditionAccumulator markerAccumulator = new PluginExceptionConditionAccumulator();
+		for (Map.Entry<String, ListenableFuture<Boolean>> marker : markers.entrySet()) {
+			if (!WaitScheduler.getResult(marker.getValue(), markerAccumulator)) {
+				LOG.info("Unable to mark instance {} as complete.", marker.getKey());
 			}
-			for (String novaInstanceId : tempList1) {
-				novaInstancesReady.remove(novaInstanceId);
-				novaInstancesNotReady.add(novaInstanceId);
-			}
+		}
+	}
 
-			if (novaInstancesReady.size() < minCount) {
-				// If instances with private IP and volumes do not meet the minCount, delete all of them.
-				String errorMsg = String.format(
-						"Problem allocating %d instances: Can only get %d instances with volumes while we want %d.",
-						instanceIds.size(), novaInstancesReady.size(), minCount);
-				releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
-				PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
-				throw new UnrecoverableProviderException(errorMsg, pluginExceptionDetails);
+	/**
+	 * Returns whether an instance kept from an earlier attempt completed a phase, as told
+	 * by the journal or by the phase marker in its server metadata.
+	 *
+	 * @param instanceId     the instance ID
+	 * @param novaInstanceId the Nova instance ID
+	 * @param phase          the phase
+	 * @param journal        the allocation journal
+	 * @return whether the phase is completed
+	 */
+	boolean hasCompleted(String instanceId, String novaInstanceId, AllocationJournal.Phase phase,
+			AllocationJournal journal) {
+		if (journal.hasPhase(instanceId, phase) || journal.hasPhase(instanceId, AllocationJournal.Phase.COMPLETE)) {
+			return true;
+		}
+		Server server = getServerInventory().get(novaInstanceId).orNull();
+		return server != null && server.getMetadata() != null
+				&& AllocationJournal.Phase.COMPLETE.name().equals(server.getMetadata().get(PHASE));
+	}
+	
+	/**
+	 * Looks up the servers an earlier allocation left for the given instance IDs. Servers
+	 * which are running or still building are kept, and the others are released along
+	 * with their volumes and floating IPs. Floating IPs the journal knows of, which never
+	 * got associated, are released as well.
+	 *
+	 * @param volumeNumber   the number of volumes per instance
+	 * @param volumeSize     the size of the volumes
+	 * @param floatingIpPool the floating IP pool, or null
+	 * @param instanceIds    the instance IDs
+	 * @param journal        the allocation journal
+	 * @param accumulator    the exception condition accumulator
+	 * @return the Nova instance IDs of the kept servers by instance ID
+	 */
+	Map<String, String> reconcileServers(int volumeNumber, int volumeSize, String floatingIpPool,
+			Collection<String> instanceIds, AllocationJournal journal, PluginExceptionConditionAccumulator accumulator) {
+		Map<String, String> reusedNovaInstanceIds = Maps.newHashMap();
+		if (journal.isResumed() && floatingIpPool != null && !floatingIpPool.isEmpty()) {
+			releaseUnassociatedFloatingIPs(floatingIpPool, instanceIds, journal);
+		}
+		BiMap<String, String> novaInstanceIdsByInstanceIds = getNovaInstanceIdsByInstanceIds(instanceIds);
+		if (novaInstanceIdsByInstanceIds.isEmpty()) {
+			return reusedNovaInstanceIds;
+		}
+		NovaServerInventory inventory = getServerInventory();
+		Collection<String> brokenInstanceIds = Lists.newArrayList();
+		for (Map.Entry<String, String> entry : novaInstanceIdsByInstanceIds.entrySet()) {
+			Server server = inventory.get(entry.getValue()).orNull();
+			if (server != null && REUSABLE_SERVER_STATUSES.contains(server.getStatus())) {
+				reusedNovaInstanceIds.put(entry.getKey(), entry.getValue());
+			} else {
+				brokenInstanceIds.add(entry.getKey());
 			}
-			else {
-				// Just delete the fail ones.
-				Collection<String> failInstances = Lists.newArrayList();
-				for (String novaInstanceId : novaInstancesNotReady) {
-					failInstances.add(serverApi.get(novaInstanceId).getMetadata().get("DIRECTOR_ID"));
+		}
+		if (!brokenInstanceIds.isEmpty()) {
+			LOG.info("Replacing {} instance(s) left in a failed state.", brokenInstanceIds.size());
+			releaseResources(volumeNumber, volumeSize, floatingIpPool, brokenInstanceIds, null, accumulator);
+		}
+		return reusedNovaInstanceIds;
+	}
+
+	private void releaseUnassociatedFloatingIPs(String floatingIpPool, Collection<String> instanceIds,
+			AllocationJournal journal) {
+		FloatingIPApi floatingIpApi = getFloatingIpApi().get();
+		FloatingIpWarmPool warmPool = getFloatingIpWarmPool();
+		for (String instanceId : instanceIds) {
+			for (String floatingIpId : journal.get(instanceId, AllocationJournal.Entry.FLOATING_IP)) {
+				FloatingIP floatingIp = floatingIpApi.get(floatingIpId);
+				if (floatingIp != null && floatingIp.getInstanceId() == null) {
+					LOG.info("Releasing floating IP {} left unassociated.", floatingIpId);
+					warmPool.release(floatingIpPool, floatingIp);
 				}
-				releaseResources(volumeNumber, volumeSize, floatingIpPool, failInstances, null, accumulator);
 			}
 		}
-		if (accumulator.hasError()) {
-			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
-			throw new UnrecoverableProviderException("Problem allocating instances and volumes.", pluginExceptionDetails);
+	}
+
+	static boolean isBlockDeviceMapping(NovaInstanceTemplate template,
+			LocalizationContext templateLocalizationContext) {
+		return NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING.equals(
+				template.getConfigurationValue(VOLUME_PROVISIONING, templateLocalizationContext));
+	}
+
+	static boolean isLocalDisks(NovaInstanceTemplate template,
+			LocalizationContext templateLocalizationContext) {
+		return NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL.equals(
+				template.getConfigurationValue(VOLUME_PROVISIONING, templateLocalizationContext));
+	}
+
+	/**
+	 * Lays the local disks of the instances of a template out on its flavor.
+	 *
+	 * @param template                    the template
+	 * @param templateLocalizationContext the template localization context
+	 * @return the local disk layout
+	 * @throws IllegalArgumentException if the flavor does not exist or has too small an
+	 *                                  ephemeral disk
+	 */
+	LocalDiskLayout getLocalDiskLayout(NovaInstanceTemplate template,
+			LocalizationContext templateLocalizationContext) {
+		String flavorName = template.getConfigurationValue(TYPE, templateLocalizationContext);
+		FlavorCatalog.FlavorTraits flavor = getFlavorCatalog().getFlavor(flavorName);
+		if (flavor == null) {
+			throw new IllegalArgumentException("Flavor not found: " + flavorName);
 		}
+		return LocalDiskLayout.of(
+				Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext)),
+				Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext)),
+				flavor);
 	}
-	
-	private String getFlavorIDByName(String flavorName) {
+
+	/**
+	 * Returns the block device mappings which boot a server from the given image, with
+	 * the given number of blank volumes created by Nova and deleted along with the server.
+	 *
+	 * @param image        the image ID
+	 * @param volumeNumber the number of volumes
+	 * @param volumeSize   the size of the volumes in GB
+	 * @return the block device mappings
+	 */
+	@VisibleForTesting
+	static Set<BlockDeviceMapping> getBlockDeviceMappings(String image, int volumeNumber, int volumeSize) {
+		// Once any mapping is given, the image has to be mapped as the boot device as well.
+		ImmutableSet.Builder<BlockDeviceMapping> mappings = ImmutableSet.builder();
+		mappings.add(BlockDeviceMapping.builder()
+				.uuid(image)
+				.sourceType("image")
+				.destinationType("local")
+				.bootIndex(0)
+				.deleteOnTermination(true)
+				.build());
+		for (int i = 1; i <= volumeNumber; i++) {
+			// The device names keep the otherwise identical mappings apart.
+			mappings.add(BlockDeviceMapping.builder()
+					.deviceName("/dev/vd" + getDeviceLetters(i))
+					.sourceType("blank")
+					.destinationType("volume")
+					.volumeSize(volumeSize)
+					.bootIndex(-1)
+					.deleteOnTermination(true)
+					.build());
+		}
+		return mappings.build();
+	}
+
+	static String getDeviceLetters(int index) {
+		// a, b, ..., z, aa, ab, ... as the kernel names disks.
+		StringBuilder letters = new StringBuilder();
+		for (int i = index; i >= 0; i = i / 26 - 1) {
+			letters.insert(0, (char) ('a' + i % 26));
+		}
+		return letters.toString();
+	}
+
+	String getFlavorIDByName(String flavorName) {
 		NovaApi novaApi = getNovaApi();
 		String region = getRegion();
 		FlavorApi flavorApi = novaApi.getFlavorApi(region);
@@ -743,44 +2226,58 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 		return null; 
 	}
 
-	private Set<String> getFloatingIPIdsByInstanceIds(Collection<String> instanceIds) {
+	private Set<String> getFloatingIPIdsByNovaInstanceIds(Collection<String> novaInstanceIds) {
 		Set<String> floatingIpIds = Sets.newHashSet();
-		if (instanceIds == null || instanceIds.isEmpty()) {
-			return floatingIpIds;
+		for (FloatingIP floatingIp : getFloatingIPsByNovaInstanceIds(novaInstanceIds).values()) {
+			floatingIpIds.add(floatingIp.getId());
+		}
+		return floatingIpIds;
+	}
+
+	ListMultimap<String, FloatingIP> getFloatingIPsByNovaInstanceIds(Collection<String> novaInstanceIds) {
+		if (novaInstanceIds == null || novaInstanceIds.isEmpty()) {
+			return ArrayListMultimap.create();
 		}
 		
+		Optional<NeutronFloatingIPApi> neutronFloatingIpApi = getNeutronFloatingIpApi();
+		if (neutronFloatingIpApi.isPresent()) {
+			// Neutron filters the floating IPs by the ports of the servers.
+			return neutronFloatingIpApi.get().listByServerIds(novaInstanceIds);
+		}
 		NovaApi novaApi = getNovaApi();
 		String region = getRegion();
 		FloatingIPApi floatingIpApi = novaApi.getFloatingIPApi(region).get();
-		Set<String> novaInstanceIds = getNovaInstanceIdsByInstanceIds(instanceIds).values();
-		FluentIterable<FloatingIP> floatingIps = floatingIpApi.list();
-		for (FloatingIP floatingIp : floatingIps) {
-			if (novaInstanceIds.contains(floatingIp.getInstanceId())) {
-				floatingIpIds.add(floatingIp.getId());
-			}
-		}
-		return floatingIpIds;
+		// os-floating-ips is not paginated, and an instance may hold more than one
+		// floating IP, so walk the whole listing.
+		return ListingCursor.of(floatingIpApi.list()).collect(novaInstanceIds, FLOATING_IP_INSTANCE_ID, 0);
 	}
 	
-	private Set<String> getVolumeIdsByInstanceIds(Collection<String> instanceIds) {
+	private Set<String> getVolumeIdsByInstanceIds(Collection<String> instanceIds, int volumeNumber) {
 		final Set<String> volumeIds = Sets.newHashSet();
+		for (Volume volume : getVolumesByInstanceIds(instanceIds, volumeNumber).values()) {
+			volumeIds.add(volume.getId());
+		}
+		return volumeIds;
+	}
+
+	/**
+	 * Returns the volumes tagged with the given instance IDs.
+	 *
+	 * @param instanceIds  the instance IDs
+	 * @param volumeNumber the number of volumes per instance after which the listing walk
+	 *                     may stop, or 0 to walk the whole listing
+	 * @return the volumes by instance ID
+	 */
+	ListMultimap<String, Volume> getVolumesByInstanceIds(Collection<String> instanceIds, int volumeNumber) {
 		if (instanceIds == null || instanceIds.isEmpty()) {
-			return volumeIds;
+			return ArrayListMultimap.create();
 		}
 		
 		CinderApi cinderApi = getCinderApi();
 		String region = getRegion();
 		VolumeApi volumeApi = cinderApi.getVolumeApi(region);
-		FluentIterable<? extends Volume> volumes= volumeApi.listInDetail();
-		for (String instanceId: instanceIds) {
-			for (Volume volume: volumes) {
-				if (volume.getMetadata() != null && volume.getMetadata().get("DIRECTOR_ID") != null
-					&& volume.getMetadata().get("DIRECTOR_ID").equals(instanceId)) {
-					volumeIds.add(volume.getId());
-				}
-			}
-		}
-		return volumeIds;
+		// Stop walking the listing once every instance has all of its volumes.
+		return ListingCursor.<Volume>of(volumeApi.listInDetail()).collect(instanceIds, VOLUME_DIRECTOR_ID, volumeNumber);
 	}
 	
 	public void delete(NovaInstanceTemplate template, Collection<String> instanceIds)
@@ -793,11 +2290,17 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 		LocalizationContext providerLocalizationContext = getLocalizationContext();
 		LocalizationContext templateLocalizationContext =
 			SimpleResourceTemplate.getTemplateLocalizationContext(providerLocalizationContext);
-		int volumeNumber = Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
+		// Volumes mapped at boot and local disks go away with their server.
+		int volumeNumber = isBlockDeviceMapping(template, templateLocalizationContext)
+				|| isLocalDisks(template, templateLocalizationContext) ? 0 :
+				Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
 		int volumeSize = Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext));
 		String floatingIpPool = template.getConfigurationValue(FLOATING_IP_POOL, templateLocalizationContext);
 		PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
 
+		if (heatBackend) {
+			instanceIds = deleteStacks(instanceIds, accumulator);
+		}
 		releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, null, accumulator);
 		if (accumulator.hasError()) {
 			PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
@@ -814,17 +2317,18 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 			return novaInstances;
 		}
 		
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
+		NovaServerInventory inventory = getServerInventory();
 		BiMap<String, String> instanceIdsByNovaInstanceId = 
 				getNovaInstanceIdsByInstanceIds(instanceIds);
 		
-		ServerApi serverApi = novaApi.getServerApi(region);
-		
 		for (String currentId : instanceIds) {
+			if (isCompleting(currentId)) {
+				continue;
+			}
 			String novaInstanceId = instanceIdsByNovaInstanceId.get(currentId);
-			if (novaInstanceId != null) {
-				novaInstances.add(new NovaInstance(template, currentId, serverApi.get(novaInstanceId)));
+			Server server = novaInstanceId == null ? null : inventory.get(novaInstanceId).orNull();
+			if (server != null) {
+				novaInstances.add(new NovaInstance(template, currentId, server));
 			}
 		}
 		
@@ -839,20 +2343,23 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 			return instanceStatesByInstanceIds;
 		}
 		
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
-		ServerApi serverApi = novaApi.getServerApi(region);
+		NovaServerInventory inventory = getServerInventory();
 		BiMap<String, String> instanceIdsByNovaInstanceIds =
 				getNovaInstanceIdsByInstanceIds(instanceIds);
 
 		for (String currentId : instanceIds) {
 			String novaInstanceId = instanceIdsByNovaInstanceIds.get(currentId);
-			if (novaInstanceId == null) {
+			Server server = novaInstanceId == null ? null : inventory.get(novaInstanceId).orNull();
+			if (server != null && isCompleting(currentId)) {
+				// Still provisioning after its allocation returned.
+				instanceStatesByInstanceIds.put(currentId, NovaInstanceState.fromInstanceStateName(Status.BUILD));
+			}
+			else if (server == null) {
 				InstanceState instanceStateDel = NovaInstanceState.fromInstanceStateName(Status.DELETED);
 				instanceStatesByInstanceIds.put(currentId, instanceStateDel);
 			}
 			else {
-				Status instance_state =  serverApi.get(novaInstanceId).getStatus();
+				Status instance_state = server.getStatus();
 				InstanceState instanceState = NovaInstanceState.fromInstanceStateName(instance_state);
 				instanceStatesByInstanceIds.put(currentId, instanceState);
 			}
@@ -865,39 +2372,237 @@ public class NovaProvider extends AbstractComputeProvider<NovaInstance, NovaInst
 		return NovaInstance.TYPE;
 	}
 	
-	private static String decorateInstanceName(NovaInstanceTemplate template, String currentId){
+	static String decorateInstanceName(NovaInstanceTemplate template, String currentId){
 		return template.getInstanceNamePrefix() + "-" + currentId;
 	}
 	
+	/**
+	 * Returns whether an instance is still provisioning after its allocation returned.
+	 *
+	 * @param instanceId the instance ID
+	 * @return whether the instance is still provisioning
+	 */
+	private boolean isCompleting(String instanceId) {
+		return getCompletingAllocations().isCompleting(instanceId);
+	}
+
 	/**
 	 * Returns a map from instance ID to corresponding Nova instance ID for the specified
-	 * instance IDs.
+	 * instance IDs. The server inventory is brought up to date first, which only fetches
+	 * the servers changed since the previous call.
 	 *
 	 * @param instanceIds the given instance IDs
 	 * @return the map from instance ID to corresponding Nova instance ID
 	 */
-	private BiMap<String, String> getNovaInstanceIdsByInstanceIds(
+	BiMap<String, String> getNovaInstanceIdsByInstanceIds(
 		  Collection<String> instanceIds) {
-		// Traverse the server metadata to get the instances.
-		
-		final BiMap<String, String> novaInstanceIdsByInstanceId = HashBiMap.create();
 		if (instanceIds == null || instanceIds.isEmpty()) {
-			return novaInstanceIdsByInstanceId;
+			return HashBiMap.create();
 		}
-		NovaApi novaApi = getNovaApi();
-		String region = getRegion();
-		ServerApi serverApi = novaApi.getServerApi(region);
-		// Transfer to List, for FluentIterable can only be parsed once.
-		List<Server> servers = serverApi.listInDetail().concat().toList();
-		for (String instanceId : instanceIds) {
-			for (Server server: servers) {
-				if (server.getMetadata() != null && server.getMetadata().get("DIRECTOR_ID") != null
-					&& server.getMetadata().get("DIRECTOR_ID").equals(instanceId)) {
-					novaInstanceIdsByInstanceId.put(instanceId, server.getId());
+		NovaServerInventory inventory = getServerInventory();
+		inventory.refresh();
+		return inventory.getServerIdsByInstanceIds(instanceIds);
+	}
+
+	/**
+	 * What the servers of an allocation are booted with, but for the instance they are
+	 * for and where they are placed.
+	 */
+	static final class ServerSpec {
+		private final NovaInstanceTemplate template;
+		private final String image;
+		private final String flavorId;
+		private final String keyName;
+		private final NetworkRoles networkRoles;
+		private final List<String> securityGroupNames;
+		private final Set<BlockDeviceMapping> blockDeviceMappings;
+		private final int volumeNumber;
+		private final int volumeSize;
+		private final String serverGroup;
+		// The ports of the servers, created through Neutron when the API is set
+		private NeutronApi neutronApi;
+		private String vnicType;
+		private List<String> securityGroupIds;
+		private Map<String, String> qosPolicyIdsByRoles;
+		private final ConcurrentMap<String, List<String>> portIdsByInstanceIds = Maps.newConcurrentMap();
+		// The local disks of the servers, recorded in their metadata, when set
+		private LocalDiskLayout localDiskLayout;
+		// The server group the servers are booted into, when set
+		private String serverGroupId;
+
+		ServerSpec(NovaInstanceTemplate template, String image, String flavorId, String keyName,
+				NetworkRoles networkRoles, List<String> securityGroupNames, Set<BlockDeviceMapping> blockDeviceMappings,
+				int volumeNumber, int volumeSize, String serverGroup) {
+			this.template = template;
+			this.image = image;
+			this.flavorId = flavorId;
+			this.keyName = keyName;
+			this.networkRoles = networkRoles;
+			this.securityGroupNames = securityGroupNames;
+			this.blockDeviceMappings = blockDeviceMappings;
+			this.volumeNumber = volumeNumber;
+			this.volumeSize = volumeSize;
+			this.serverGroup = serverGroup;
+		}
+
+		/**
+		 * Returns the network the private and floating IP addresses of the servers are on.
+		 *
+		 * @return the management network ID
+		 */
+		String getManagementNetworkId() {
+			return networkRoles.getNetworkId(NetworkRoles.MANAGEMENT_ROLE);
+		}
+
+		/**
+		 * Boots the servers on ports created through Neutron rather than by Nova.
+		 *
+		 * @param neutronApi          the Neutron API
+		 * @param vnicType            the VNIC type of the ports
+		 * @param securityGroupIds    the IDs of the security groups of the ports
+		 * @param qosPolicyIdsByRoles the IDs of the QoS policies of the ports, by network role
+		 */
+		void neutronPorts(NeutronApi neutronApi, String vnicType, List<String> securityGroupIds,
+				Map<String, String> qosPolicyIdsByRoles) {
+			this.neutronApi = neutronApi;
+			this.vnicType = vnicType;
+			this.securityGroupIds = securityGroupIds;
+			this.qosPolicyIdsByRoles = qosPolicyIdsByRoles;
+		}
+
+		/**
+		 * Records the local disks of the servers in their metadata, so that they can be
+		 * found on the instances.
+		 *
+		 * @param localDiskLayout the local disk layout
+		 */
+		void localDisks(LocalDiskLayout localDiskLayout) {
+			this.localDiskLayout = localDiskLayout;
+		}
+
+		/**
+		 * Boots the servers into the given server group, which the scheduler places them by.
+		 *
+		 * @param serverGroupId the server group ID
+		 */
+		void serverGroupId(String serverGroupId) {
+			this.serverGroupId = serverGroupId;
+		}
+
+		/**
+		 * Creates the ports of the servers of some instances in one request, ahead of
+		 * booting them. The servers not given ports here get theirs when they boot, so a
+		 * failed request is recorded as a warning rather than failing the allocation.
+		 *
+		 * @param instanceIds the instance IDs
+		 * @param accumulator the exception condition accumulator
+		 */
+		void preparePorts(Collection<String> instanceIds, PluginExceptionConditionAccumulator accumulator) {
+			if (neutronApi == null || instanceIds.isEmpty()) {
+				return;
+			}
+			List<NeutronPortRequest> requests = Lists.newArrayList();
+			for (String instanceId : instanceIds) {
+				requests.addAll(getPortRequests(instanceId));
+			}
+			List<NeutronPort> ports;
+			try {
+				ports = neutronApi.createPorts(requests);
+			} catch (RuntimeException e) {
+				LOG.info("Unable to create the ports of {} instance(s) in bulk: {}", instanceIds.size(), e.getMessage());
+				accumulator.addWarning(null, String.format("Unable to create the ports of %d instance(s) in bulk: %s",
+						instanceIds.size(), e.getMessage()));
+				return;
+			}
+			int roleCount = networkRoles.getNetworkIds().size();
+			Iterator<NeutronPort> portIterator = ports.iterator();
+			for (String instanceId : instanceIds) {
+				List<String> portIds = Lists.newArrayList();
+				for (int i = 0; i < roleCount && portIterator.hasNext(); i++) {
+					portIds.add(portIterator.next().getId());
 				}
+				portIdsByInstanceIds.put(instanceId, portIds);
+			}
+		}
+
+		private List<NeutronPortRequest> getPortRequests(String instanceId) {
+			List<NeutronPortRequest> requests = Lists.newArrayList();
+			for (String role : networkRoles.getRoles()) {
+				requests.add(new NeutronPortRequest(networkRoles.getNetworkId(role), DIRECTOR_PORT_PREFIX + instanceId,
+						vnicType, securityGroupIds, qosPolicyIdsByRoles.get(role)));
+			}
+			return requests;
+		}
+
+		private List<String> takePorts(String instanceId) {
+			List<String> portIds = portIdsByInstanceIds.remove(instanceId);
+			if (portIds != null) {
+				return portIds;
+			}
+			portIds = Lists.newArrayList();
+			for (NeutronPort port : neutronApi.createPorts(getPortRequests(instanceId))) {
+				portIds.add(port.getId());
+			}
+			return portIds;
+		}
+
+		/**
+		 * Boots the server of an instance, named and tagged after it, in the last zone of
+		 * its placement record.
+		 *
+		 * @param serverApi  the server API
+		 * @param instanceId the instance ID
+		 * @param placement  the placement record, or null to let Nova pick the zone
+		 * @return the created server
+		 */
+		ServerCreated create(ServerApi serverApi, String instanceId, String placement) {
+			// Tag all the new instances so that we can easily find them later on
+			Map<String, String> tags = new HashMap<String, String>();
+			tags.put(DIRECTOR_ID, instanceId);
+			// The local disks are in the metadata of their own, no Cinder volume is attached.
+			tags.put("VOLUME_NUMBER", Integer.toString(localDiskLayout != null ? 0 : volumeNumber));
+			tags.put("VOLUME_SIZE", Integer.toString(volumeSize));
+			String availabilityZone = ZonePlacement.getZone(placement);
+			if (availabilityZone != null) {
+				tags.put(DIRECTOR_PLACEMENT, placement);
+			}
+			if (serverGroup != null) {
+				tags.put(DIRECTOR_SERVER_GROUP, serverGroup);
+			}
+			tags.put(DIRECTOR_NETWORK_ROLES, networkRoles.formatRoles());
+			if (localDiskLayout != null) {
+				tags.putAll(localDiskLayout.getMetadata());
+			}
+
+			CreateServerOptions createServerOps = serverGroupId != null ?
+					new ServerGroupCreateServerOptions(serverGroupId) : new CreateServerOptions();
+			createServerOps.keyPairName(keyName)
+					.availabilityZone(availabilityZone)
+					.metadata(tags);
+			List<String> portIds = null;
+			if (neutronApi == null) {
+				createServerOps.networks(networkRoles.getNetworkIds()).securityGroupNames(securityGroupNames);
+			} else {
+				// The ports carry the security groups, in NIC order.
+				portIds = takePorts(instanceId);
+				List<Network> nics = Lists.newArrayList();
+				for (String portId : portIds) {
+					nics.add(Network.builder().portUuid(portId).build());
+				}
+				createServerOps.novaNetworks(nics);
+			}
+			if (!blockDeviceMappings.isEmpty()) {
+				createServerOps.blockDeviceMappings(blockDeviceMappings);
+			}
+			try {
+				return serverApi.create(decorateInstanceName(template, instanceId), image, flavorId, createServerOps);
+			} catch (RuntimeException e) {
+				if (portIds != null) {
+					// The ports are left for the next try, such as in another zone.
+					portIdsByInstanceIds.putIfAbsent(instanceId, portIds);
+				}
+				throw e;
 			}
 		}
-		
-		return novaInstanceIdsByInstanceId;
 	}
 }
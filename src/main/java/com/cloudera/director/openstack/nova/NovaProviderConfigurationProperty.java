@@ -30,6 +30,62 @@ public enum NovaProviderConfigurationProperty implements ConfigurationPropertyTo
 	 .required(true)
 	 .defaultValue("regionOne")
 	 .defaultDescription("Region to target for deployment.")
+	 .build()),
+
+	 LISTING_PAGE_SIZE(new SimpleConfigurationPropertyBuilder()
+	 .configKey("listingPageSize")
+	 .name("Listing page size")
+	 .required(false)
+	 .defaultValue("0")
+	 .defaultDescription("Number of servers requested per page when looking up instances; 0 uses the server default.")
+	 .build()),
+
+	 NOTIFICATION_BROKER_URI(new SimpleConfigurationPropertyBuilder()
+	 .configKey("notificationBrokerUri")
+	 .name("Notification broker URI")
+	 .required(false)
+	 .defaultDescription("AMQP URI of the broker carrying the Nova and Cinder notifications, "
+	 		+ "used to react to instance and volume events without waiting for the next poll.")
+	 .build()),
+
+	 FLOATING_IP_WARM_POOL_SIZE(new SimpleConfigurationPropertyBuilder()
+	 .configKey("floatingIpWarmPoolSize")
+	 .name("Floating IP warm pool size")
+	 .required(false)
+	 .defaultValue("0")
+	 .defaultDescription("Number of allocated, unassociated floating IPs kept at hand per floating IP pool "
+	 		+ "and refilled in the background; 0 allocates each floating IP on demand.")
+	 .build()),
+
+	 JOURNAL_DIRECTORY(new SimpleConfigurationPropertyBuilder()
+	 .configKey("journalDirectory")
+	 .name("Allocation journal directory")
+	 .required(false)
+	 .defaultDescription("Local directory recording the progress of allocations, so that an allocation "
+	 		+ "interrupted by a restart resumes where it stopped; defaults to the system temporary directory.")
+	 .build()),
+
+	 ALLOCATION_BACKEND(new SimpleConfigurationPropertyBuilder()
+	 .configKey("allocationBackend")
+	 .name("Allocation backend")
+	 .required(false)
+	 .defaultValue(NovaProvider.ALLOCATION_BACKEND_NOVA)
+	 .widget(ConfigurationProperty.Widget.LIST)
+	 .defaultDescription("How instances are allocated: nova issues the Nova, Cinder and floating IP calls "
+	 		+ "from the plugin, heat submits each allocation as one Heat stack and deletes it as one.")
+	 .addValidValues(NovaProvider.ALLOCATION_BACKEND_NOVA, NovaProvider.ALLOCATION_BACKEND_HEAT)
+	 .build()),
+
+	 PORT_PROVISIONING(new SimpleConfigurationPropertyBuilder()
+	 .configKey("portProvisioning")
+	 .name("Port provisioning")
+	 .required(false)
+	 .defaultValue(NovaProvider.PORT_PROVISIONING_NOVA)
+	 .widget(ConfigurationProperty.Widget.LIST)
+	 .defaultDescription("How the ports of the instances are created with the nova allocation backend: nova "
+	 		+ "lets Nova create them at boot, neutron creates them in bulk through Neutron ahead of the servers, "
+	 		+ "with the VNIC type of the template, and deletes them along with the servers.")
+	 .addValidValues(NovaProvider.PORT_PROVISIONING_NOVA, NovaProvider.PORT_PROVISIONING_NEUTRON)
 	 .build());
 
 	/**
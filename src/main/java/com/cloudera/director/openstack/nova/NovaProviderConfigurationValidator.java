@@ -25,9 +25,15 @@ import org.jclouds.openstack.nova.v2_0.NovaApiMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.ALLOCATION_BACKEND;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.FLOATING_IP_WARM_POOL_SIZE;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.LISTING_PAGE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.NOTIFICATION_BROKER_URI;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.PORT_PROVISIONING;
 import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.REGION;
 import static com.cloudera.director.spi.v1.model.util.Validations.addError;
 
+import com.cloudera.director.openstack.NotificationListener;
 import com.cloudera.director.openstack.OpenStackCredentials;
 import com.cloudera.director.spi.v1.model.ConfigurationValidator;
 import com.cloudera.director.spi.v1.model.Configured;
@@ -45,6 +51,22 @@ public class NovaProviderConfigurationValidator implements ConfigurationValidato
 
 	@VisibleForTesting
 	static final String REGION_NOT_FOUND_MSG = "Region '%s' not found.";
+
+	@VisibleForTesting
+	static final String INVALID_LISTING_PAGE_SIZE_MSG = "Listing page size must be a non-negative integer: %s";
+
+	@VisibleForTesting
+	static final String INVALID_FLOATING_IP_WARM_POOL_SIZE_MSG =
+			"Floating IP warm pool size must be a non-negative integer: %s";
+
+	@VisibleForTesting
+	static final String INVALID_NOTIFICATION_BROKER_URI_MSG = "Notification broker URI must be an amqp:// or amqps:// URI: %s";
+
+	@VisibleForTesting
+	static final String INVALID_ALLOCATION_BACKEND_MSG = "Allocation backend must be nova or heat: %s";
+
+	@VisibleForTesting
+	static final String INVALID_PORT_PROVISIONING_MSG = "Port provisioning must be nova or neutron: %s";
 	
 	private OpenStackCredentials credentials;
 	
@@ -68,6 +90,11 @@ public class NovaProviderConfigurationValidator implements ConfigurationValidato
 				  .modules(modules)
 				  .buildApi(NovaApi.class);
 		checkRegion(novapi, configuration, accumulator, localizationContext);
+		checkListingPageSize(configuration, accumulator, localizationContext);
+		checkNotificationBrokerUri(configuration, accumulator, localizationContext);
+		checkFloatingIpWarmPoolSize(configuration, accumulator, localizationContext);
+		checkAllocationBackend(configuration, accumulator, localizationContext);
+		checkPortProvisioning(configuration, accumulator, localizationContext);
 	}
 	
 	/**
@@ -89,5 +116,92 @@ public class NovaProviderConfigurationValidator implements ConfigurationValidato
 		
 	}
 
-}
+	/**
+	 * Validates the configured listing page size.
+	 * @param configuration the configuration to be validated
+	 * @param accumulator the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	static void checkListingPageSize(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String pageSize = configuration.getConfigurationValue(LISTING_PAGE_SIZE, localizationContext);
+		try {
+			if (Integer.parseInt(pageSize) < 0) {
+				addError(accumulator, LISTING_PAGE_SIZE, localizationContext, null, INVALID_LISTING_PAGE_SIZE_MSG, pageSize);
+			}
+		} catch (NumberFormatException e) {
+			addError(accumulator, LISTING_PAGE_SIZE, localizationContext, null, INVALID_LISTING_PAGE_SIZE_MSG, pageSize);
+		}
+	}
+
+	/**
+	 * Validates the configured floating IP warm pool size.
+	 * @param configuration the configuration to be validated
+	 * @param accumulator the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	static void checkFloatingIpWarmPoolSize(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String warmPoolSize = configuration.getConfigurationValue(FLOATING_IP_WARM_POOL_SIZE, localizationContext);
+		try {
+			if (Integer.parseInt(warmPoolSize) < 0) {
+				addError(accumulator, FLOATING_IP_WARM_POOL_SIZE, localizationContext, null,
+						INVALID_FLOATING_IP_WARM_POOL_SIZE_MSG, warmPoolSize);
+			}
+		} catch (NumberFormatException e) {
+			addError(accumulator, FLOATING_IP_WARM_POOL_SIZE, localizationContext, null,
+					INVALID_FLOATING_IP_WARM_POOL_SIZE_MSG, warmPoolSize);
+		}
+	}
 
+	/**
+	 * Validates the configured notification broker URI.
+	 * @param configuration the configuration to be validated
+	 * @param accumulator the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	static void checkNotificationBrokerUri(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String brokerUri = configuration.getConfigurationValue(NOTIFICATION_BROKER_URI, localizationContext);
+		if (brokerUri != null && !brokerUri.isEmpty() && !NotificationListener.isValidBrokerUri(brokerUri)) {
+			addError(accumulator, NOTIFICATION_BROKER_URI, localizationContext, null,
+					INVALID_NOTIFICATION_BROKER_URI_MSG, brokerUri);
+		}
+	}
+
+	/**
+	 * Validates the configured allocation backend.
+	 * @param configuration the configuration to be validated
+	 * @param accumulator the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	static void checkAllocationBackend(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String backend = configuration.getConfigurationValue(ALLOCATION_BACKEND, localizationContext);
+		if (!NovaProvider.ALLOCATION_BACKEND_NOVA.equals(backend) && !NovaProvider.ALLOCATION_BACKEND_HEAT.equals(backend)) {
+			addError(accumulator, ALLOCATION_BACKEND, localizationContext, null, INVALID_ALLOCATION_BACKEND_MSG, backend);
+		}
+	}
+
+	/**
+	 * Validates the configured port provisioning.
+	 * @param configuration the configuration to be validated
+	 * @param accumulator the exception condition accumulator
+	 * @param localizationContext the localization context
+	 */
+	static void checkPortProvisioning(Configured configuration,
+			PluginExceptionConditionAccumulator accumulator,
+			LocalizationContext localizationContext) {
+		String portProvisioning = configuration.getConfigurationValue(PORT_PROVISIONING, localizationContext);
+		if (!NovaProvider.PORT_PROVISIONING_NOVA.equals(portProvisioning)
+				&& !NovaProvider.PORT_PROVISIONING_NEUTRON.equals(portProvisioning)) {
+			addError(accumulator, PORT_PROVISIONING, localizationContext, null,
+					INVALID_PORT_PROVISIONING_MSG, portProvisioning);
+		}
+	}
+
+}
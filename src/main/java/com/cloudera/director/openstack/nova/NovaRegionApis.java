@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import org.jclouds.openstack.cinder.v1.CinderApi;
+import org.jclouds.openstack.cinder.v1.features.VolumeApi;
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+
+import com.cloudera.director.openstack.heat.HeatApi;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+
+/**
+ * The APIs of one Nova region, for the state shared by the providers of the same
+ * endpoint, identity and region. The providers point it at their own APIs as they use
+ * the shared state, and the shared state resolves the APIs from it on every call, so
+ * that it holds on to no provider.
+ */
+class NovaRegionApis {
+
+	private final String region;
+
+	private volatile NovaApi novaApi;
+	private volatile CinderApi cinderApi;
+
+	/*
+	 * The floating IP API the providers settled on, null until one of them did
+	 */
+	private volatile Optional<FloatingIPApi> floatingIpApi;
+	private volatile HeatApi heatApi;
+
+	/**
+	 * Creates the APIs of a region, pointed at no API yet.
+	 *
+	 * @param region the region
+	 */
+	NovaRegionApis(String region) {
+		this.region = region;
+	}
+
+	/**
+	 * Points the region at the APIs of a provider.
+	 *
+	 * @param novaApi   the Nova API
+	 * @param cinderApi the Cinder API
+	 */
+	void use(NovaApi novaApi, CinderApi cinderApi) {
+		this.novaApi = novaApi;
+		this.cinderApi = cinderApi;
+	}
+
+	/**
+	 * Points the region at the floating IP API a provider settled on.
+	 *
+	 * @param floatingIpApi the floating IP API, absent if there is none
+	 */
+	void useFloatingIpApi(Optional<FloatingIPApi> floatingIpApi) {
+		this.floatingIpApi = floatingIpApi;
+	}
+
+	/**
+	 * Points the region at the Heat API of a provider.
+	 *
+	 * @param heatApi the Heat API
+	 */
+	void useHeatApi(HeatApi heatApi) {
+		this.heatApi = heatApi;
+	}
+
+	/**
+	 * Returns the server API of the region.
+	 *
+	 * @return the server API
+	 */
+	ServerApi getServerApi() {
+		return novaApi.getServerApi(region);
+	}
+
+	/**
+	 * Returns the volume API of the region.
+	 *
+	 * @return the volume API
+	 */
+	VolumeApi getVolumeApi() {
+		return cinderApi.getVolumeApi(region);
+	}
+
+	/**
+	 * Returns the floating IP API of the region. Until a provider settled on one, this is
+	 * the floating IP extension of Nova.
+	 *
+	 * @return the floating IP API, absent if there is none
+	 */
+	Optional<FloatingIPApi> getFloatingIpApi() {
+		Optional<FloatingIPApi> api = floatingIpApi;
+		return api != null ? api : novaApi.getFloatingIPApi(region);
+	}
+
+	/**
+	 * Returns the Heat API of the region.
+	 *
+	 * @return the Heat API
+	 */
+	HeatApi getHeatApi() {
+		return heatApi;
+	}
+
+	/**
+	 * Returns a supplier resolving the server API of the region on every call.
+	 *
+	 * @return the server API supplier
+	 */
+	Supplier<ServerApi> getServerApiSupplier() {
+		return new Supplier<ServerApi>() {
+			@Override
+			public ServerApi get() {
+				return getServerApi();
+			}
+		};
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A Nova server group, which the scheduler places the servers booted into it by.
+ */
+public class NovaServerGroup {
+
+	private final String id;
+	private final String name;
+	private final Set<String> members;
+
+	/**
+	 * Creates a server group.
+	 *
+	 * @param id      the server group ID
+	 * @param name    the server group name
+	 * @param members the IDs of the servers in the group
+	 */
+	public NovaServerGroup(String id, String name, Set<String> members) {
+		this.id = Preconditions.checkNotNull(id, "id is null");
+		this.name = Preconditions.checkNotNull(name, "name is null");
+		this.members = ImmutableSet.copyOf(members);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the IDs of the servers in the group. Nova drops a server from its group once
+	 * it is deleted.
+	 *
+	 * @return the member server IDs
+	 */
+	public Set<String> getMembers() {
+		return members;
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.domain.Server.Status;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudera.director.openstack.ListingCursor;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
+
+/**
+ * A local inventory of the servers created by Director, kept up to date with
+ * {@code changes-since} listings. The first refresh lists every server; later
+ * refreshes only fetch the servers that changed since the previous one, deleted
+ * servers included, so steady-state polling costs a handful of records.
+ */
+class NovaServerInventory {
+
+	private static final Logger LOG = LoggerFactory.getLogger(NovaServerInventory.class);
+
+	/**
+	 * The metadata key tagging servers with their Director instance ID.
+	 */
+	static final String DIRECTOR_ID = "DIRECTOR_ID";
+
+	/**
+	 * How far back to look when no server timestamp is available, to absorb clock skew
+	 * between the plugin host and Nova.
+	 */
+	private static final long CLOCK_SKEW_MARGIN_MILLIS = 5 * 60 * 1000L;
+
+	private final Supplier<ServerApi> serverApiSupplier;
+	private final int pageSize;
+
+	private final Map<String, Server> serversById = Maps.newHashMap();
+	private final BiMap<String, String> serverIdsByInstanceId = HashBiMap.create();
+	private Date changesSince;
+	private int lastRefreshCount;
+
+	/**
+	 * Creates an empty inventory.
+	 *
+	 * @param serverApiSupplier supplies the server API to list with
+	 * @param pageSize          the listing page size, 0 for the server default
+	 */
+	NovaServerInventory(Supplier<ServerApi> serverApiSupplier, int pageSize) {
+		this.serverApiSupplier = serverApiSupplier;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Applies the changes since the previous refresh, or loads every server on the
+	 * first refresh.
+	 */
+	synchronized void refresh() {
+		final ServerApi serverApi = serverApiSupplier.get();
+		Date refreshStart = new Date();
+		PaginationOptions options = new PaginationOptions();
+		if (pageSize > ListingCursor.SERVER_DEFAULT_PAGE_SIZE) {
+			options.limit(pageSize);
+		}
+		boolean delta = changesSince != null;
+		if (delta) {
+			options.changesSince(changesSince);
+		}
+		ListingCursor<Server> servers = ListingCursor.ofPaginated(
+				new Function<PaginationOptions, PaginatedCollection<Server>>() {
+					@Override
+					public PaginatedCollection<Server> apply(PaginationOptions pageOptions) {
+						return serverApi.listInDetail(pageOptions);
+					}
+				}, options);
+
+		Date watermark = null;
+		int count = 0;
+		while (servers.hasNext()) {
+			Server server = servers.next();
+			count++;
+			apply(server);
+			Date updated = server.getUpdated();
+			if (updated != null && (watermark == null || updated.after(watermark))) {
+				watermark = updated;
+			}
+		}
+		lastRefreshCount = count;
+
+		// Prefer the Nova clock. Records updated at the watermark itself are fetched again
+		// next time, which is harmless since applying a record twice changes nothing.
+		if (watermark != null) {
+			changesSince = watermark;
+		} else if (!delta) {
+			changesSince = new Date(refreshStart.getTime() - CLOCK_SKEW_MARGIN_MILLIS);
+		}
+		LOG.debug("Server inventory {} refresh applied {} record(s) in {} page(s).",
+				delta ? "delta" : "full", count, servers.getPagesFetched());
+	}
+
+	/**
+	 * Forgets every server, so the next refresh lists the whole tenant again.
+	 */
+	synchronized void reset() {
+		serversById.clear();
+		serverIdsByInstanceId.clear();
+		changesSince = null;
+	}
+
+	/**
+	 * Reads a server again. Some changes, such as a floating IP association, do not
+	 * update the server, so later refreshes would not fetch them.
+	 *
+	 * @param serverId the Nova server ID
+	 */
+	synchronized void reload(String serverId) {
+		Server server = serverApiSupplier.get().get(serverId);
+		if (server == null) {
+			forget(serverId);
+		} else {
+			apply(server);
+		}
+	}
+
+	private void apply(Server server) {
+		if (server.getStatus() == Status.DELETED) {
+			// Nova may list deleted servers without their metadata, so they are forgotten
+			// by server ID.
+			forget(server.getId());
+			return;
+		}
+		String instanceId = server.getMetadata() == null ? null : server.getMetadata().get(DIRECTOR_ID);
+		if (instanceId == null) {
+			// Not a server we manage, keep the inventory bounded to our own servers.
+			return;
+		}
+		serversById.put(server.getId(), server);
+		serverIdsByInstanceId.forcePut(instanceId, server.getId());
+	}
+
+	private void forget(String serverId) {
+		serversById.remove(serverId);
+		serverIdsByInstanceId.inverse().remove(serverId);
+	}
+
+	/**
+	 * Returns the last known state of the given server.
+	 *
+	 * @param serverId the Nova server ID
+	 * @return the server, absent if it is unknown or deleted
+	 */
+	synchronized Optional<Server> get(String serverId) {
+		return Optional.fromNullable(serversById.get(serverId));
+	}
+
+	/**
+	 * Returns a map from Director instance ID to Nova server ID for the given instance
+	 * IDs which have a live server.
+	 *
+	 * @param instanceIds the Director instance IDs
+	 * @return the map from instance ID to Nova server ID
+	 */
+	synchronized BiMap<String, String> getServerIdsByInstanceIds(Collection<String> instanceIds) {
+		BiMap<String, String> serverIds = HashBiMap.create();
+		for (String instanceId : instanceIds) {
+			String serverId = serverIdsByInstanceId.get(instanceId);
+			if (serverId != null) {
+				serverIds.put(instanceId, serverId);
+			}
+		}
+		return serverIds;
+	}
+
+	/**
+	 * Returns the number of records applied by the last refresh.
+	 *
+	 * @return the number of records applied by the last refresh
+	 */
+	synchronized int getLastRefreshCount() {
+		return lastRefreshCount;
+	}
+}
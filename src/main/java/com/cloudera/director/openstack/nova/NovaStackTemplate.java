@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Renders the instances of one allocation into a Heat HOT template, with a server per
+ * instance along with its volumes and floating IP. The template has an output per
+ * instance giving the Nova instance ID of its server.
+ * <p>
+ * The resources carry the same metadata as those the plugin creates itself, so that the
+ * instances are found, checked and released the same way whichever backend created them.
+ */
+class NovaStackTemplate {
+
+	private static final String TEMPLATE_VERSION = "2014-10-16";
+
+	private static final String SERVER_PREFIX = "server-";
+
+	private static final String SERVER_GROUP = "server-group";
+
+	private final String image;
+	private final String flavor;
+	private final String keyName;
+	private final List<String> networks;
+	private final String availabilityZone;
+	private final List<String> securityGroupNames;
+	private final Map<String, Object> resources = Maps.newLinkedHashMap();
+	private final Map<String, Object> outputs = Maps.newLinkedHashMap();
+
+	private String floatingIpPool;
+	private int volumeNumber;
+	private int volumeSize;
+	private boolean bootVolumes;
+	private int localDiskNumber;
+	private int localDiskSize;
+	private boolean hasServerGroup;
+
+	/**
+	 * Creates an empty template for servers of the given image and flavor.
+	 *
+	 * @param image              the image ID
+	 * @param flavor             the flavor name
+	 * @param keyName            the key pair name
+	 * @param networks           the network IDs, in NIC order
+	 * @param availabilityZone   the availability zone, or null
+	 * @param securityGroupNames the security group names
+	 */
+	NovaStackTemplate(String image, String flavor, String keyName, List<String> networks, String availabilityZone,
+			List<String> securityGroupNames) {
+		this.image = image;
+		this.flavor = flavor;
+		this.keyName = keyName;
+		this.networks = ImmutableList.copyOf(networks);
+		this.availabilityZone = availabilityZone;
+		this.securityGroupNames = ImmutableList.copyOf(securityGroupNames);
+	}
+
+	/**
+	 * Gives each server a floating IP from the given pool.
+	 *
+	 * @param floatingIpPool the floating IP pool name
+	 * @return this template
+	 */
+	NovaStackTemplate floatingIpPool(String floatingIpPool) {
+		this.floatingIpPool = floatingIpPool;
+		return this;
+	}
+
+	/**
+	 * Gives each server volumes, either Cinder volumes attached to it, or volumes mapped
+	 * at boot which go away with it.
+	 *
+	 * @param volumeNumber the number of volumes per server
+	 * @param volumeSize   the size of the volumes in GB
+	 * @param bootVolumes  whether the volumes are mapped at boot
+	 * @return this template
+	 */
+	NovaStackTemplate volumes(int volumeNumber, int volumeSize, boolean bootVolumes) {
+		this.volumeNumber = volumeNumber;
+		this.volumeSize = volumeSize;
+		this.bootVolumes = bootVolumes;
+		return this;
+	}
+
+	/**
+	 * Gives each server local disks carved out of the ephemeral disk of the flavor,
+	 * which go away with it.
+	 *
+	 * @param localDiskNumber the number of local disks per server
+	 * @param localDiskSize   the size of the local disks in GB
+	 * @return this template
+	 */
+	NovaStackTemplate localDisks(int localDiskNumber, int localDiskSize) {
+		this.localDiskNumber = localDiskNumber;
+		this.localDiskSize = localDiskSize;
+		return this;
+	}
+
+	/**
+	 * Places the servers in a server group of the given policy, which goes away with the
+	 * stack.
+	 *
+	 * @param name   the server group name
+	 * @param policy the server group policy, such as anti-affinity
+	 * @return this template
+	 */
+	NovaStackTemplate serverGroup(String name, String policy) {
+		resources.put(SERVER_GROUP, resource("OS::Nova::ServerGroup", ImmutableMap.<String, Object>of(
+				"name", name,
+				"policies", ImmutableList.of(policy))));
+		this.hasServerGroup = true;
+		return this;
+	}
+
+	/**
+	 * Adds the server of an instance, along with its volumes and floating IP. Servers
+	 * are to be added once the volumes and floating IP pool are set.
+	 *
+	 * @param instanceId the instance ID
+	 * @param serverName the server name
+	 * @param metadata   the server metadata
+	 */
+	void addServer(String instanceId, String serverName, Map<String, String> metadata) {
+		addServer(instanceId, serverName, metadata, availabilityZone);
+	}
+
+	/**
+	 * Adds the server of an instance in the given availability zone, along with its
+	 * volumes and floating IP.
+	 *
+	 * @param instanceId       the instance ID
+	 * @param serverName       the server name
+	 * @param metadata         the server metadata
+	 * @param availabilityZone the availability zone of the server and its volumes, or null
+	 */
+	void addServer(String instanceId, String serverName, Map<String, String> metadata, String availabilityZone) {
+		String server = SERVER_PREFIX + instanceId;
+		Map<String, Object> properties = Maps.newLinkedHashMap();
+		properties.put("name", serverName);
+		properties.put("image", image);
+		properties.put("flavor", flavor);
+		properties.put("key_name", keyName);
+		if (availabilityZone != null && !availabilityZone.isEmpty()) {
+			properties.put("availability_zone", availabilityZone);
+		}
+		properties.put("security_groups", securityGroupNames);
+		List<Object> nics = Lists.newArrayList();
+		for (String network : networks) {
+			nics.add(ImmutableMap.of("network", network));
+		}
+		properties.put("networks", nics);
+		properties.put("metadata", metadata);
+		if (hasServerGroup) {
+			properties.put("scheduler_hints", ImmutableMap.of("group", getResource(SERVER_GROUP)));
+		}
+		boolean hasVolumes = volumeNumber > 0 && volumeSize > 0;
+		if (hasVolumes && bootVolumes) {
+			List<Object> mappings = Lists.newArrayList();
+			mappings.add(ImmutableMap.of("image", image, "boot_index", 0, "delete_on_termination", true));
+			for (int i = 0; i < volumeNumber; i++) {
+				mappings.add(ImmutableMap.of("volume_size", volumeSize, "boot_index", -1,
+						"delete_on_termination", true));
+			}
+			properties.put("block_device_mapping_v2", mappings);
+		} else if (localDiskNumber > 0 && localDiskSize > 0) {
+			// Nova boots from the image on the hypervisor, ahead of the local disks.
+			List<Object> mappings = Lists.newArrayList();
+			for (int i = 1; i <= localDiskNumber; i++) {
+				mappings.add(ImmutableMap.of("device_name", "vd" + NovaProvider.getDeviceLetters(i),
+						"ephemeral_size", localDiskSize, "boot_index", -1, "delete_on_termination", true));
+			}
+			properties.put("block_device_mapping_v2", mappings);
+		}
+		resources.put(server, resource("OS::Nova::Server", properties));
+
+		if (hasVolumes && !bootVolumes) {
+			for (int i = 0; i < volumeNumber; i++) {
+				String volume = "volume-" + instanceId + "-" + i;
+				Map<String, Object> volumeProperties = Maps.newLinkedHashMap();
+				volumeProperties.put("size", volumeSize);
+				volumeProperties.put("description", NovaProvider.VOLUME_DESCRIPTION);
+				if (availabilityZone != null && !availabilityZone.isEmpty()) {
+					volumeProperties.put("availability_zone", availabilityZone);
+				}
+				volumeProperties.put("metadata", ImmutableMap.of(NovaServerInventory.DIRECTOR_ID, instanceId));
+				resources.put(volume, resource("OS::Cinder::Volume", volumeProperties));
+				resources.put("volume-attachment-" + instanceId + "-" + i, resource("OS::Cinder::VolumeAttachment",
+						ImmutableMap.<String, Object>of(
+								"instance_uuid", getResource(server),
+								"volume_id", getResource(volume))));
+			}
+		}
+
+		if (floatingIpPool != null && !floatingIpPool.isEmpty()) {
+			String floatingIp = "floating-ip-" + instanceId;
+			resources.put(floatingIp, resource("OS::Nova::FloatingIP",
+					ImmutableMap.<String, Object>of("pool", floatingIpPool)));
+			resources.put("floating-ip-association-" + instanceId, resource("OS::Nova::FloatingIPAssociation",
+					ImmutableMap.<String, Object>of(
+							"floating_ip", getResource(floatingIp),
+							"server_id", getResource(server))));
+		}
+
+		outputs.put(getServerOutputKey(instanceId), ImmutableMap.of("value", getResource(server)));
+	}
+
+	/**
+	 * Renders the template.
+	 *
+	 * @return the HOT template, as JSON
+	 */
+	String render() {
+		Map<String, Object> template = Maps.newLinkedHashMap();
+		template.put("heat_template_version", TEMPLATE_VERSION);
+		template.put("resources", resources);
+		template.put("outputs", outputs);
+		return new GsonBuilder().create().toJson(template);
+	}
+
+	/**
+	 * Returns the key of the output giving the Nova instance ID of an instance.
+	 *
+	 * @param instanceId the instance ID
+	 * @return the output key
+	 */
+	static String getServerOutputKey(String instanceId) {
+		return SERVER_PREFIX + instanceId;
+	}
+
+	/**
+	 * Returns the instance ID an output is for, or null if it is not a server output.
+	 *
+	 * @param outputKey the output key
+	 * @return the instance ID, or null
+	 */
+	static String getInstanceId(String outputKey) {
+		return outputKey.startsWith(SERVER_PREFIX) ? outputKey.substring(SERVER_PREFIX.length()) : null;
+	}
+
+	private static Map<String, Object> resource(String type, Map<String, Object> properties) {
+		return ImmutableMap.<String, Object>of("type", type, "properties", properties);
+	}
+
+	private static Map<String, Object> getResource(String name) {
+		return ImmutableMap.<String, Object>of("get_resource", name);
+	}
+}
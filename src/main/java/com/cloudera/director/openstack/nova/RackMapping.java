@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Map;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Maps where an instance runs to a rack label, so that Hadoop can be given the topology
+ * of the cluster.
+ * <p>
+ * The mapping is given as a comma separated list of {@code location=rack} entries, where
+ * the location is a hypervisor host name, a host ID or an availability zone, such as
+ * {@code compute-1=/rack1,compute-2=/rack1,zone2=/rack2}. The most specific location
+ * wins, and instances matching none of them are in the default rack.
+ */
+class RackMapping {
+
+	/**
+	 * The rack of the instances the mapping does not place, as Hadoop names it.
+	 */
+	static final String DEFAULT_RACK = "/default-rack";
+
+	private static final Splitter ENTRY_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final Splitter.MapSplitter MAP_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings()
+			.withKeyValueSeparator(Splitter.on('=').trimResults().limit(2));
+
+	private final Map<String, String> racksByLocations;
+
+	private RackMapping(Map<String, String> racksByLocations) {
+		this.racksByLocations = racksByLocations;
+	}
+
+	/**
+	 * Parses a rack mapping.
+	 *
+	 * @param spec the rack mapping, or null
+	 * @return the rack mapping
+	 * @throws IllegalArgumentException if an entry is not of the form {@code location=rack},
+	 *                                  or a rack is not an absolute path
+	 */
+	static RackMapping parse(String spec) {
+		String entries = Strings.nullToEmpty(spec);
+		if (!ENTRY_SPLITTER.split(entries).iterator().hasNext()) {
+			return new RackMapping(ImmutableMap.<String, String>of());
+		}
+		Map<String, String> racksByLocations = Maps.newHashMap(MAP_SPLITTER.split(entries));
+		for (Map.Entry<String, String> entry : racksByLocations.entrySet()) {
+			if (entry.getKey().isEmpty() || !entry.getValue().startsWith("/")) {
+				throw new IllegalArgumentException("Invalid rack mapping: " + entry.getKey() + "=" + entry.getValue());
+			}
+		}
+		return new RackMapping(ImmutableMap.copyOf(racksByLocations));
+	}
+
+	/**
+	 * Returns the rack of an instance from where it runs.
+	 *
+	 * @param hypervisorHostName the hypervisor host name, or null
+	 * @param hostId             the host ID, or null
+	 * @param availabilityZone   the availability zone, or null
+	 * @return the rack label
+	 */
+	String getRack(String hypervisorHostName, String hostId, String availabilityZone) {
+		for (String location : new String[] { hypervisorHostName, hostId, availabilityZone }) {
+			String rack = location == null ? null : racksByLocations.get(location);
+			if (rack != null) {
+				return rack;
+			}
+		}
+		return DEFAULT_RACK;
+	}
+}
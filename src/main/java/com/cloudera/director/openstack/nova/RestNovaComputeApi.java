@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static com.cloudera.director.openstack.OpenStackRestClient.encode;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.OpenStackRestClient;
+import com.cloudera.director.openstack.OpenStackRestClient.Response;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A {@link NovaComputeApi} over the Nova v2 REST API, authenticated with the Keystone v2
+ * identity API the other OpenStack APIs of the plugin go through. The compute endpoint
+ * of the region, which ends with the project ID, is taken from the service catalog.
+ */
+public class RestNovaComputeApi implements NovaComputeApi {
+
+	private static final String COMPUTE_SERVICE_TYPE = "compute";
+
+	private final OpenStackRestClient client;
+
+	/**
+	 * Creates a compute API for the given credentials. Nothing is requested until the
+	 * first call.
+	 *
+	 * @param credentials the OpenStack credentials
+	 * @param region      the region
+	 */
+	public RestNovaComputeApi(OpenStackCredentials credentials, String region) {
+		this.client = new OpenStackRestClient(credentials, region, COMPUTE_SERVICE_TYPE);
+	}
+
+	@Override
+	public String getProjectId() {
+		return client.getProjectId();
+	}
+
+	@Override
+	public Map<String, Integer> getAbsoluteLimits() {
+		Response response = client.request("GET", "/limits", null);
+		response.expect(200, "get the limits");
+		Map<String, Integer> limits = Maps.newHashMap();
+		for (Map.Entry<String, JsonElement> limit :
+				response.json().getAsJsonObject("limits").getAsJsonObject("absolute").entrySet()) {
+			JsonElement value = limit.getValue();
+			if (value.isJsonPrimitive() && ((JsonPrimitive) value).isNumber()) {
+				limits.put(limit.getKey(), value.getAsInt());
+			}
+		}
+		return limits;
+	}
+
+	@Override
+	public NovaServerGroup findServerGroup(String name) {
+		Response response = client.request("GET", "/os-server-groups", null);
+		response.expect(200, "list the server groups");
+		for (JsonElement serverGroup : response.json().getAsJsonArray("server_groups")) {
+			JsonObject group = serverGroup.getAsJsonObject();
+			if (name.equals(group.get("name").getAsString())) {
+				return toServerGroup(group);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public NovaServerGroup createServerGroup(String name, String policy) {
+		JsonArray policies = new JsonArray();
+		policies.add(new JsonPrimitive(policy));
+		JsonObject serverGroup = new JsonObject();
+		serverGroup.addProperty("name", name);
+		serverGroup.add("policies", policies);
+		JsonObject body = new JsonObject();
+		body.add("server_group", serverGroup);
+		Response response = client.request("POST", "/os-server-groups", body);
+		response.expect(200, "create server group " + name);
+		return toServerGroup(response.json().getAsJsonObject("server_group"));
+	}
+
+	@Override
+	public void deleteServerGroup(String serverGroupId) {
+		Response response = client.request("DELETE", "/os-server-groups/" + encode(serverGroupId), null);
+		if (response.getStatus() != 404) {
+			response.expect(204, "delete server group " + serverGroupId);
+		}
+	}
+
+	private static NovaServerGroup toServerGroup(JsonObject group) {
+		Set<String> members = Sets.newLinkedHashSet();
+		JsonElement memberList = group.get("members");
+		if (memberList != null && memberList.isJsonArray()) {
+			for (JsonElement member : memberList.getAsJsonArray()) {
+				members.add(member.getAsString());
+			}
+		}
+		return new NovaServerGroup(group.get("id").getAsString(), group.get("name").getAsString(), members);
+	}
+}
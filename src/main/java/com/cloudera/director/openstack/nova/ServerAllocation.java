@@ -0,0 +1,805 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.jclouds.openstack.cinder.v1.domain.Volume;
+import org.jclouds.openstack.cinder.v1.features.VolumeApi;
+import org.jclouds.openstack.cinder.v1.options.CreateVolumeOptions;
+import org.jclouds.openstack.nova.v2_0.domain.BlockDeviceMapping;
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.domain.Server.Status;
+import org.jclouds.openstack.nova.v2_0.domain.ServerCreated;
+import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static com.cloudera.director.openstack.nova.NovaProvider.ATTACHED_VOLUME_STATUSES;
+import static com.cloudera.director.openstack.nova.NovaProvider.DIRECTOR_ID;
+import static com.cloudera.director.openstack.nova.NovaProvider.DIRECTOR_PLACEMENT;
+import static com.cloudera.director.openstack.nova.NovaProvider.FAILED_OVER_PREFIX;
+import static com.cloudera.director.openstack.nova.NovaProvider.HAS_ADDRESS;
+import static com.cloudera.director.openstack.nova.NovaProvider.PRIVATE_IP_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaProvider.REUSABLE_VOLUME_STATUSES;
+import static com.cloudera.director.openstack.nova.NovaProvider.STRAGGLER_MIN_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaProvider.WAVE_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaProvider.awaitFirst;
+import static com.cloudera.director.openstack.nova.NovaProvider.failOver;
+import static com.cloudera.director.openstack.nova.NovaProvider.failOverErrored;
+import static com.cloudera.director.openstack.nova.NovaProvider.getFloatingIp;
+import static com.cloudera.director.openstack.nova.NovaProvider.getServerGroupName;
+import static com.cloudera.director.openstack.nova.NovaProvider.hasServerGroup;
+import static com.cloudera.director.openstack.nova.NovaProvider.inCompletionOrder;
+import static com.cloudera.director.openstack.nova.NovaProvider.isBlockDeviceMapping;
+import static com.cloudera.director.openstack.nova.NovaProvider.isDoneAndTrue;
+import static com.cloudera.director.openstack.nova.NovaProvider.isLocalDisks;
+import static com.cloudera.director.openstack.nova.NovaProvider.notifyOnCompletion;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.TYPE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SECURITY_GROUP_NAMES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SERVER_GROUP_POLICY;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.AVAILABILITY_ZONE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.KEY_NAME;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.FLOATING_IP_POOL;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SPARE_INSTANCES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_FACTOR;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_NUMBER;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VNIC_TYPE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_START_PERCENT;
+import com.cloudera.director.openstack.WaitScheduler;
+import com.cloudera.director.openstack.neutron.NeutronApi;
+import com.cloudera.director.openstack.nova.NovaProvider.ServerSpec;
+import com.cloudera.director.spi.v1.model.LocalizationContext;
+import com.cloudera.director.spi.v1.model.exception.PluginExceptionConditionAccumulator;
+import com.cloudera.director.spi.v1.model.exception.PluginExceptionDetails;
+import com.cloudera.director.spi.v1.model.exception.UnrecoverableProviderException;
+import com.cloudera.director.spi.v1.model.util.SimpleResourceTemplate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * One allocation of servers, along with what it learns on the way. The phases run in
+ * order: the servers of an earlier attempt are reconciled, the allocation is fitted
+ * in the quotas, the servers are created in waves, and the instances get their
+ * addresses, floating IPs and volumes. Each phase leaves out the instances which
+ * cannot be completed, and fails the allocation when fewer than the minimum count are
+ * left.
+ */
+final class ServerAllocation {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ServerAllocation.class);
+
+	final NovaProvider provider;
+	final NovaInstanceTemplate template;
+	private final int minCount;
+	final AllocationJournal journal;
+	private final AllocationProgress progress;
+	private final PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
+	final ServerApi serverApi;
+
+	Collection<String> instanceIds;
+	private List<String> spareInstanceIds;
+
+	private final NetworkRoles networkRoles;
+	final String floatingIpPool;
+	final boolean assignFloatingIps;
+	private final int requestedVolumeNumber;
+	private final int volumeSize;
+	private final boolean hasVolumes;
+	private final LocalDiskLayout localDiskLayout;
+	final int volumeNumber;
+	private final String flavorName;
+	private final String flavorId;
+	final long stragglerTimeoutSeconds;
+	final StragglerDetector stragglerDetector;
+	private final int waveSize;
+	private final int waveStartPercent;
+	private final String serverGroup;
+	private final String serverGroupPolicy;
+	final ServerSpec serverSpec;
+	final ZonePlacement placement;
+
+	final Set<String> novaInstancesNotReady = Sets.newHashSet();
+	private final Set<String> novaInstancesReady = Sets.newHashSet();
+	private final Set<String> floatingIps = Sets.newHashSet();
+	final Map<String, String> instanceIdsByNovaInstanceIds = Maps.newHashMap();
+	final Map<String, String> spareInstanceIdsByNovaInstanceIds = Maps.newHashMap();
+	final Map<String, String> placementsByNovaInstanceIds = Maps.newHashMap();
+	Map<String, String> reusedNovaInstanceIds;
+	private final Set<String> networkedNovaInstanceIds = Sets.newHashSet();
+	private final Set<String> completeNovaInstanceIds = Sets.newHashSet();
+	final Map<String, ListenableFuture<Boolean>> addressWaits = Maps.newHashMap();
+	final Map<String, ListenableFuture<FloatingIP>> floatingIpAssignments = Maps.newHashMap();
+
+	/**
+	 * Reads what the servers are booted with from the template.
+	 *
+	 * @param provider    the provider allocating the servers
+	 * @param template    the instance template
+	 * @param instanceIds the instance IDs
+	 * @param minCount    the minimum number of instances
+	 * @param journal     the allocation journal
+	 * @param progress    the allocation progress
+	 */
+	ServerAllocation(NovaProvider provider, NovaInstanceTemplate template, Collection<String> instanceIds,
+			int minCount, AllocationJournal journal, AllocationProgress progress) {
+		this.provider = provider;
+		this.template = template;
+		this.instanceIds = instanceIds;
+		this.minCount = minCount;
+		this.journal = journal;
+		this.progress = progress;
+		this.serverApi = provider.getNovaApi().getServerApi(provider.getRegion());
+
+		LocalizationContext templateLocalizationContext =
+				SimpleResourceTemplate.getTemplateLocalizationContext(provider.getLocalizationContext());
+		String image = template.getConfigurationValue(IMAGE, templateLocalizationContext);
+		this.flavorName = template.getConfigurationValue(TYPE, templateLocalizationContext);
+		// The instances get a NIC on each network of the template, the management one first.
+		this.networkRoles = template.getNetworkRoles();
+		String azone = template.getConfigurationValue(AVAILABILITY_ZONE, templateLocalizationContext);
+		String securityGroups = template.getConfigurationValue(SECURITY_GROUP_NAMES, templateLocalizationContext);
+		String keyName = template.getConfigurationValue(KEY_NAME, templateLocalizationContext);
+		this.floatingIpPool = template.getConfigurationValue(FLOATING_IP_POOL, templateLocalizationContext);
+		this.assignFloatingIps = floatingIpPool != null && !floatingIpPool.isEmpty();
+		List<String> securityGroupNames = NovaInstanceTemplate.CSV_SPLITTER.splitToList(securityGroups);
+		this.requestedVolumeNumber =
+				Integer.parseInt(template.getConfigurationValue(VOLUME_NUMBER, templateLocalizationContext));
+		this.volumeSize = Integer.parseInt(template.getConfigurationValue(VOLUME_SIZE, templateLocalizationContext));
+		this.hasVolumes = requestedVolumeNumber > 0 && volumeSize > 0;
+		// Volumes mapped at boot are created and deleted by Nova along with the server, so
+		// none of them is left for the plugin to create, attach or tear down. Neither are
+		// local disks, which come out of the ephemeral disk of the flavor.
+		boolean bootVolumes = isBlockDeviceMapping(template, templateLocalizationContext);
+		this.localDiskLayout = isLocalDisks(template, templateLocalizationContext) ?
+				provider.getLocalDiskLayout(template, templateLocalizationContext) : null;
+		this.volumeNumber = bootVolumes || localDiskLayout != null ? 0 : requestedVolumeNumber;
+		this.flavorId = provider.getFlavorIDByName(flavorName);
+		Set<BlockDeviceMapping> blockDeviceMappings = bootVolumes && hasVolumes ?
+				provider.getBlockDeviceMappings(image, requestedVolumeNumber, volumeSize) :
+				localDiskLayout != null ? localDiskLayout.getBlockDeviceMappings(image) :
+				ImmutableSet.<BlockDeviceMapping>of();
+		// Spares race the servers of the instances, and stand in for the slowest ones.
+		int spareInstances =
+				Integer.parseInt(template.getConfigurationValue(SPARE_INSTANCES, templateLocalizationContext));
+		this.stragglerTimeoutSeconds = Long.parseLong(
+				template.getConfigurationValue(STRAGGLER_TIMEOUT_SECONDS, templateLocalizationContext));
+		this.spareInstanceIds = provider.getSpareInstanceIds(instanceIds, spareInstances);
+		// Servers building much longer than their peers are replaced as they go.
+		double stragglerFactor = Double.parseDouble(
+				template.getConfigurationValue(STRAGGLER_FACTOR, templateLocalizationContext));
+		this.stragglerDetector = stragglerFactor > 0 ?
+				new StragglerDetector(stragglerFactor, TimeUnit.SECONDS.toMillis(STRAGGLER_MIN_SECONDS)) : null;
+		// Large allocations boot in waves rather than all at once.
+		this.waveSize = Integer.parseInt(template.getConfigurationValue(WAVE_SIZE, templateLocalizationContext));
+		this.waveStartPercent = Integer.parseInt(
+				template.getConfigurationValue(WAVE_START_PERCENT, templateLocalizationContext));
+		// The servers of an allocation make up a server group, named after its instance IDs
+		// so that a retry picks it up.
+		this.serverGroupPolicy = template.getConfigurationValue(SERVER_GROUP_POLICY, templateLocalizationContext);
+		this.serverGroup = hasServerGroup(serverGroupPolicy) ? getServerGroupName(instanceIds) : null;
+		this.serverSpec = new ServerSpec(template, image, flavorId, keyName, networkRoles, securityGroupNames,
+				blockDeviceMappings, requestedVolumeNumber, volumeSize, serverGroup);
+		if (localDiskLayout != null) {
+			serverSpec.localDisks(localDiskLayout);
+		}
+		if (provider.neutronPorts) {
+			useNeutronPorts(securityGroupNames, template.getConfigurationValue(VNIC_TYPE, templateLocalizationContext));
+		} else if (!template.getQosPolicies().isEmpty()) {
+			LOG.warn("Ignoring the QoS policies of template {}, as Nova creates the ports.", template.getName());
+		}
+		// The servers are spread over the availability zones, and fail over to the next
+		// zone when theirs cannot take them.
+		this.placement = ZonePlacement.parse(azone);
+	}
+
+	/**
+	 * Has the ports created in bulk ahead of the servers, with the security groups Nova
+	 * would otherwise have given them.
+	 *
+	 * @param securityGroupNames the security group names
+	 * @param vnicType           the VNIC type of the ports
+	 */
+	private void useNeutronPorts(List<String> securityGroupNames, String vnicType) {
+		NeutronApi neutronApi = provider.getNeutronApi();
+		Map<String, String> securityGroupIdsByNames = neutronApi.getSecurityGroupIdsByNames(securityGroupNames);
+		List<String> securityGroupIds = Lists.newArrayList();
+		for (String securityGroupName : securityGroupNames) {
+			String securityGroupId = securityGroupIdsByNames.get(securityGroupName);
+			if (securityGroupId == null) {
+				throw new IllegalArgumentException("Security group not found: " + securityGroupName);
+			}
+			securityGroupIds.add(securityGroupId);
+		}
+		// The ports of each role get the QoS policy of the role, if any.
+		Map<String, String> qosPolicies = template.getQosPolicies();
+		Map<String, String> qosPolicyIds = neutronApi.getQosPolicyIds(qosPolicies.values());
+		Map<String, String> qosPolicyIdsByRoles = Maps.newHashMap();
+		for (Map.Entry<String, String> qosPolicy : qosPolicies.entrySet()) {
+			String qosPolicyId = qosPolicyIds.get(qosPolicy.getValue());
+			if (qosPolicyId == null) {
+				throw new IllegalArgumentException("QoS policy not found: " + qosPolicy.getValue());
+			}
+			qosPolicyIdsByRoles.put(qosPolicy.getKey(), qosPolicyId);
+		}
+		serverSpec.neutronPorts(neutronApi, vnicType, securityGroupIds, qosPolicyIdsByRoles);
+	}
+
+	/**
+	 * Runs the phases of the allocation.
+	 *
+	 * @throws InterruptedException if the allocation is interrupted
+	 */
+	void run() throws InterruptedException {
+		if (volumeNumber > 0 && volumeSize > 0) {
+			// If volume number and volume size are > 0, we will verify whether
+			// VolumeAttachmentApi presents. If not we will not continue.
+			provider.VerifyVolumeAttachementApi();
+		}
+		if (assignFloatingIps) {
+			// If floatingIpPool is not empty, verify whether
+			// floatingIpApi and flotingipPool present. If not we will not continue.
+			provider.VerifyFloatingIPApis(floatingIpPool);
+		}
+		reconcile();
+		fitInQuotas();
+		if (serverGroup != null) {
+			joinServerGroup();
+		}
+		createServers();
+		awaitAddresses();
+		if (hasVolumes && novaInstancesReady.size() > 0) {
+			awaitVolumes();
+		}
+		provider.markComplete(serverApi, Sets.difference(novaInstancesReady, completeNovaInstanceIds),
+				instanceIdsByNovaInstanceIds, journal, accumulator);
+		if (accumulator.hasError()) {
+			fail("Problem allocating instances and volumes.");
+		}
+	}
+
+	/**
+	 * Reconciles with what an earlier attempt left for these instance IDs rather than
+	 * tearing it down, for idempotency: healthy servers are kept, and only their missing
+	 * floating IPs and volumes are created further down. The journal and the phase
+	 * markers tell which of the kept servers went through the later steps already.
+	 */
+	private void reconcile() {
+		reusedNovaInstanceIds =
+				provider.reconcileServers(volumeNumber, volumeSize, floatingIpPool, instanceIds, journal, accumulator);
+		for (Map.Entry<String, String> reused : reusedNovaInstanceIds.entrySet()) {
+			if (provider.hasCompleted(reused.getKey(), reused.getValue(), AllocationJournal.Phase.COMPLETE, journal)) {
+				completeNovaInstanceIds.add(reused.getValue());
+				networkedNovaInstanceIds.add(reused.getValue());
+			} else if (provider.hasCompleted(reused.getKey(), reused.getValue(), AllocationJournal.Phase.NETWORKED,
+					journal)) {
+				networkedNovaInstanceIds.add(reused.getValue());
+			}
+		}
+		if (!spareInstanceIds.isEmpty() && !provider.getNovaInstanceIdsByInstanceIds(spareInstanceIds).isEmpty()) {
+			// The spares of an earlier attempt are started afresh.
+			provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, spareInstanceIds, null, accumulator);
+		}
+	}
+
+	/**
+	 * Fails fast when the quotas cannot take enough instances, rather than create
+	 * servers only to delete them, and leaves out the instances which would not fit.
+	 */
+	private void fitInQuotas() {
+		List<String> newInstanceIds = Lists.newArrayList();
+		for (String instanceId : instanceIds) {
+			if (!reusedNovaInstanceIds.containsKey(instanceId)) {
+				newInstanceIds.add(instanceId);
+			}
+		}
+		CapacityPlan capacityPlan = provider.planCapacity(flavorName,
+				localDiskLayout != null ? 0 : requestedVolumeNumber, volumeSize, floatingIpPool);
+		int fittingCount = capacityPlan.getFittingCount(newInstanceIds.size() + spareInstanceIds.size());
+		if (reusedNovaInstanceIds.size() + fittingCount < minCount) {
+			String errorMsg = String.format(
+					"Problem allocating %d instances: Only %d new instances fit in the quotas while we want at least %d (%s).",
+					instanceIds.size(), fittingCount, minCount - reusedNovaInstanceIds.size(),
+					capacityPlan.describeShortfall(newInstanceIds.size()));
+			// Only what an earlier attempt left of the new instances goes, the healthy
+			// servers are kept for the next attempt.
+			provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, newInstanceIds, null, accumulator);
+			fail(errorMsg);
+		}
+		if (fittingCount < newInstanceIds.size()) {
+			LOG.info("Only {} of {} new instance(s) fit in the quotas ({}).", fittingCount, newInstanceIds.size(),
+					capacityPlan.describeShortfall(newInstanceIds.size()));
+			Set<String> leftOutInstanceIds =
+					Sets.newHashSet(newInstanceIds.subList(fittingCount, newInstanceIds.size()));
+			instanceIds = Lists.newArrayList(
+					Iterables.filter(instanceIds, Predicates.not(Predicates.in(leftOutInstanceIds))));
+		}
+		spareInstanceIds = spareInstanceIds.subList(0,
+				Math.min(spareInstanceIds.size(), Math.max(0, fittingCount - newInstanceIds.size())));
+	}
+
+	/**
+	 * Has the servers booted into the server group of the allocation, for the scheduler
+	 * to place them by its policy. The group of an earlier attempt is reused, so that the
+	 * servers it kept and the new ones are placed apart from each other.
+	 */
+	private void joinServerGroup() {
+		NovaComputeApi computeApi = provider.getComputeApi();
+		NovaServerGroup group;
+		try {
+			group = computeApi.findServerGroup(serverGroup);
+			if (group == null) {
+				LOG.info(">> Creating server group {} with policy {}", serverGroup, serverGroupPolicy);
+				group = computeApi.createServerGroup(serverGroup, serverGroupPolicy);
+			} else {
+				LOG.info("Reusing server group {} with {} server(s).", serverGroup, group.getMembers().size());
+			}
+		} catch (RuntimeException e) {
+			accumulator.addError(null, String.format("Unable to create server group %s: %s",
+					serverGroup, e.getMessage()));
+			fail("Problem allocating instances and volumes.");
+			return;
+		}
+		serverSpec.serverGroupId(group.getId());
+	}
+
+	/**
+	 * Creates the servers of the instances which have none, and of the spares, in waves.
+	 * Each wave is created concurrently, and starts once enough servers of the previous
+	 * one are active, so that the scheduler and the network agents are not flooded.
+	 *
+	 * @throws InterruptedException if a wave is interrupted
+	 */
+	private void createServers() throws InterruptedException {
+		List<String> creatingInstanceIds = Lists.newArrayList();
+		for (String currentId : Iterables.concat(instanceIds, spareInstanceIds)) {
+			String reusedNovaInstanceId = reusedNovaInstanceIds.get(currentId);
+			if (reusedNovaInstanceId != null) {
+				LOG.info("Reusing instance {} for {}.", reusedNovaInstanceId, currentId);
+				Server reusedServer = provider.getServerInventory().get(reusedNovaInstanceId).orNull();
+				String record = reusedServer == null || reusedServer.getMetadata() == null ? null :
+						reusedServer.getMetadata().get(DIRECTOR_PLACEMENT);
+				placementsByNovaInstanceIds.put(reusedNovaInstanceId,
+						record != null ? record : placement.getPrimaryZone());
+				novaInstancesNotReady.add(reusedNovaInstanceId);
+				instanceIdsByNovaInstanceIds.put(reusedNovaInstanceId, currentId);
+			} else {
+				creatingInstanceIds.add(currentId);
+			}
+		}
+		List<List<String>> waves = Lists.partition(creatingInstanceIds,
+				waveSize > 0 ? waveSize : Math.max(1, creatingInstanceIds.size()));
+		Map<String, String> zonesByInstanceIds = placement.assign(creatingInstanceIds);
+		for (int wave = 0; wave < waves.size(); wave++) {
+			createWave(wave, waves.size(), waves.get(wave), zonesByInstanceIds);
+		}
+
+		int createdCount = novaInstancesNotReady.size() + spareInstanceIdsByNovaInstanceIds.size();
+		if (createdCount < minCount) {
+			// Instance number does not meet the requirement. Delete instances
+			// and floating IPs if existing.
+			// Release all resources already allocated.
+			String errorMsg = String.format(
+					"Problem allocating %d instances: Can only allocate %d instances while we want at least %d.",
+					instanceIds.size(), createdCount, minCount);
+			provider.releaseResources(volumeNumber, volumeSize, floatingIpPool,
+					Lists.newArrayList(Iterables.concat(instanceIds, spareInstanceIds)), floatingIps, accumulator);
+			fail(errorMsg);
+		}
+	}
+
+	private void createWave(int wave, int waveCount, List<String> waveInstanceIds,
+			Map<String, String> zonesByInstanceIds) throws InterruptedException {
+		boolean lastWave = wave == waveCount - 1;
+		long waveStartMillis = System.currentTimeMillis();
+		Map<String, ListenableFuture<ServerCreated>> creations = Maps.newLinkedHashMap();
+		serverSpec.preparePorts(waveInstanceIds, accumulator);
+		for (String currentId : waveInstanceIds) {
+			creations.put(currentId,
+					provider.createServer(serverSpec, serverApi, currentId, zonesByInstanceIds.get(currentId)));
+		}
+		List<ListenableFuture<Boolean>> activations = Lists.newArrayList();
+		int createdCount = 0;
+		for (Map.Entry<String, ListenableFuture<ServerCreated>> creation : creations.entrySet()) {
+			String currentId = creation.getKey();
+			// Create instance for each IntanceId (which is not the nova instance ID, but will be transferred to
+			// Instance name).
+			ServerCreated currentServer;
+			try {
+				currentServer = creation.getValue().get();
+				placementsByNovaInstanceIds.put(currentServer.getId(), zonesByInstanceIds.get(currentId));
+			} catch (ExecutionException e) {
+				// Server creation failed. But it may not fail allocate
+				// method, if success instances number is enough.
+				LOG.info("Unable to create the server of {}: {}", currentId, e.getCause().getMessage());
+				currentServer = failOver(serverSpec, serverApi, currentId, placement,
+						zonesByInstanceIds.get(currentId), placementsByNovaInstanceIds);
+				if (currentServer == null) {
+					continue;
+				}
+			}
+			journal.record(currentId, AllocationJournal.Entry.SERVER, currentServer.getId());
+			createdCount++;
+			if (spareInstanceIds.contains(currentId)) {
+				spareInstanceIdsByNovaInstanceIds.put(currentServer.getId(), currentId);
+			} else {
+				novaInstancesNotReady.add(currentServer.getId());
+				instanceIdsByNovaInstanceIds.put(currentServer.getId(), currentId);
+				if (stragglerDetector != null) {
+					stragglerDetector.started(currentServer.getId(), waveStartMillis);
+				}
+			}
+			if (!lastWave) {
+				activations.add(provider.awaitServerStatus(currentServer.getId(), Status.ACTIVE, WAVE_TIMEOUT_SECONDS));
+			}
+		}
+		long createdMillis = System.currentTimeMillis() - waveStartMillis;
+		if (lastWave) {
+			LOG.info("Wave {} of {}: created {} of {} server(s) in {} ms.", wave + 1, waveCount,
+					createdCount, creations.size(), createdMillis);
+			return;
+		}
+		int startCount = (int) Math.ceil(activations.size() * waveStartPercent / 100.0);
+		awaitFirst(activations, startCount, WAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		int activeCount = 0;
+		for (ListenableFuture<Boolean> activation : activations) {
+			if (isDoneAndTrue(activation)) {
+				activeCount++;
+			}
+		}
+		LOG.info("Wave {} of {}: created {} of {} server(s) in {} ms, {} active after {} ms.", wave + 1,
+				waveCount, createdCount, creations.size(), createdMillis, activeCount,
+				System.currentTimeMillis() - waveStartMillis);
+	}
+
+	/**
+	 * Waits until the instances have a private IP. Each instance gets its floating IP as
+	 * soon as it has an address, concurrently with the others. Meanwhile the spares stand
+	 * in for the slowest instances, stragglers are replaced, and the servers which fail
+	 * or land next to their peers are left out.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	private void awaitAddresses() throws InterruptedException {
+		// Reused instances may hold their floating IP already.
+		Set<String> novaInstanceIdsWithFloatingIp = Sets.newHashSet(networkedNovaInstanceIds);
+		if (assignFloatingIps) {
+			Set<String> uncheckedNovaInstanceIds =
+					Sets.difference(Sets.newHashSet(reusedNovaInstanceIds.values()), networkedNovaInstanceIds);
+			if (!uncheckedNovaInstanceIds.isEmpty()) {
+				novaInstanceIdsWithFloatingIp.addAll(
+						provider.getFloatingIPsByNovaInstanceIds(uncheckedNovaInstanceIds).keySet());
+			}
+		}
+
+		LOG.info(">> Waiting for {} instance(s) to get Private IP",
+				novaInstancesNotReady.size());
+		String managementNetworkId = networkRoles.getNetworkId(NetworkRoles.MANAGEMENT_ROLE);
+		long addressTimeoutSeconds = spareInstanceIdsByNovaInstanceIds.isEmpty() ? PRIVATE_IP_TIMEOUT_SECONDS :
+				Math.max(PRIVATE_IP_TIMEOUT_SECONDS, stragglerTimeoutSeconds);
+		for (String novaInstanceId :
+				Iterables.concat(novaInstancesNotReady, spareInstanceIdsByNovaInstanceIds.keySet())) {
+			ListenableFuture<Boolean> addressWait = provider.waitScheduler.await(provider.getServerSweep(),
+					novaInstanceId, HAS_ADDRESS, addressTimeoutSeconds, TimeUnit.SECONDS);
+			addressWaits.put(novaInstanceId, addressWait);
+			String instanceId = instanceIdsByNovaInstanceIds.containsKey(novaInstanceId) ?
+					instanceIdsByNovaInstanceIds.get(novaInstanceId) :
+					spareInstanceIdsByNovaInstanceIds.get(novaInstanceId);
+			if (assignFloatingIps && !novaInstanceIdsWithFloatingIp.contains(novaInstanceId)) {
+				floatingIpAssignments.put(novaInstanceId, provider.assignFloatingIpOnceAddressed(addressWait,
+						floatingIpPool, novaInstanceId, instanceId, managementNetworkId, journal));
+			}
+		}
+		if (!spareInstanceIdsByNovaInstanceIds.isEmpty()) {
+			new SpareSwap(this).run();
+			provider.releaseInBackground(volumeNumber, volumeSize, floatingIpPool,
+					spareInstanceIdsByNovaInstanceIds, floatingIpAssignments);
+		}
+		if (stragglerDetector != null) {
+			Map<String, String> stragglers = new StragglerReplacement(this).run();
+			provider.releaseInBackground(volumeNumber, volumeSize, floatingIpPool, stragglers, floatingIpAssignments);
+		}
+		// Go through the instances as they get an address, so that each one is complete
+		// as soon as it can be.
+		BlockingQueue<String> addressedNovaInstanceIds = inCompletionOrder(addressWaits);
+		Map<String, String> failedOver = Maps.newHashMap();
+		for (int remaining = addressWaits.size(); remaining > 0; remaining--) {
+			String novaInstanceId = addressedNovaInstanceIds.take();
+			if (!WaitScheduler.getResult(addressWaits.get(novaInstanceId), accumulator)) {
+				String replacementId = failOverUnaddressed(novaInstanceId, failedOver);
+				if (replacementId != null) {
+					// The new server goes through the same steps, along with the others.
+					ListenableFuture<Boolean> addressWait = provider.waitScheduler.await(provider.getServerSweep(),
+							replacementId, HAS_ADDRESS, PRIVATE_IP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					addressWaits.put(replacementId, addressWait);
+					if (assignFloatingIps) {
+						floatingIpAssignments.put(replacementId, provider.assignFloatingIpOnceAddressed(addressWait,
+								floatingIpPool, replacementId, instanceIdsByNovaInstanceIds.get(replacementId),
+								managementNetworkId, journal));
+					}
+					notifyOnCompletion(addressedNovaInstanceIds, replacementId, addressWait);
+					remaining++;
+				}
+				continue;
+			}
+			LOG.info("<< Instance {} got IP", novaInstanceId);
+			ListenableFuture<FloatingIP> floatingIpAssignment = floatingIpAssignments.get(novaInstanceId);
+			if (floatingIpAssignment != null) {
+				FloatingIP floatingIp = getFloatingIp(floatingIpAssignment, accumulator);
+				if (floatingIp == null) {
+					continue;
+				}
+				floatingIps.add(floatingIp.getId());
+			}
+			novaInstancesReady.add(novaInstanceId);
+			novaInstancesNotReady.remove(novaInstanceId);
+			if (!hasVolumes) {
+				progress.completed(instanceIdsByNovaInstanceIds.get(novaInstanceId));
+			}
+		}
+		provider.releaseInBackground(volumeNumber, volumeSize, floatingIpPool, failedOver, floatingIpAssignments);
+		if (!novaInstancesNotReady.isEmpty()) {
+			LOG.info("{} instance(s) still don't have an IP", novaInstancesNotReady.size());
+		}
+
+		for (String novaInstanceId : novaInstancesReady) {
+			if (!networkedNovaInstanceIds.contains(novaInstanceId)) {
+				journal.record(instanceIdsByNovaInstanceIds.get(novaInstanceId), AllocationJournal.Phase.NETWORKED);
+			}
+		}
+
+		int successfulOperationCount = instanceIds.size() - novaInstancesNotReady.size();
+		if (successfulOperationCount < minCount) {
+			// Instance number does not meet the requirement. Delete instances
+			// and floating IPs if existing.
+			// Release all resources already allocated.
+			String errorMsg = String.format(
+					"Problem allocating %d instances: Can only get %d instances with IPs while we want %d.",
+					instanceIds.size(), successfulOperationCount, minCount);
+			provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
+			fail(errorMsg);
+		}
+		// Just delete the fail ones.
+		provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, getInstanceIds(novaInstancesNotReady), null,
+				accumulator);
+	}
+
+	/**
+	 * Replaces the server of an instance which did not get an address with one in
+	 * another zone, if any may take it.
+	 *
+	 * @param novaInstanceId the Nova instance ID of the server
+	 * @param failedOver     gets the server replaced, tagged to be released
+	 * @return the Nova instance ID of the replacement, or null if there is none
+	 */
+	private String failOverUnaddressed(String novaInstanceId, Map<String, String> failedOver) {
+		String instanceId = instanceIdsByNovaInstanceIds.get(novaInstanceId);
+		ServerCreated replacement = instanceId == null ? null : failOverErrored(serverSpec, serverApi,
+				novaInstanceId, instanceId, placement, placementsByNovaInstanceIds);
+		if (replacement == null) {
+			return null;
+		}
+		String replacementId = replacement.getId();
+		journal.record(instanceId, AllocationJournal.Entry.SERVER, replacementId);
+		failedOver.put(novaInstanceId, FAILED_OVER_PREFIX + instanceId);
+		novaInstancesNotReady.remove(novaInstanceId);
+		instanceIdsByNovaInstanceIds.remove(novaInstanceId);
+		novaInstancesNotReady.add(replacementId);
+		instanceIdsByNovaInstanceIds.put(replacementId, instanceId);
+		return replacementId;
+	}
+
+	/**
+	 * Waits for the instances to be active, which attaches the volumes mapped at boot,
+	 * then creates and attaches the volumes of the others.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	private void awaitVolumes() throws InterruptedException {
+		List<String> tempList = Lists.newArrayList();
+		Map<String, ListenableFuture<Boolean>> activations = Maps.newHashMap();
+		for (String novaInstanceId : novaInstancesReady) {
+			activations.put(novaInstanceId, provider.awaitServerStatus(novaInstanceId, Status.ACTIVE, 120));
+		}
+		for (Map.Entry<String, ListenableFuture<Boolean>> activation : activations.entrySet()) {
+			if (!WaitScheduler.getResult(activation.getValue(), accumulator)) {
+				tempList.add(activation.getKey());
+			}
+		}
+		for (String novaInstanceId : tempList) {
+			// Add instance which cannot be ACTIVE to novaInstancesNotReady.
+			novaInstancesReady.remove(novaInstanceId);
+			novaInstancesNotReady.add(novaInstanceId);
+		}
+
+		if (volumeNumber == 0) {
+			for (String novaInstanceId : novaInstancesReady) {
+				progress.completed(instanceIdsByNovaInstanceIds.get(novaInstanceId));
+			}
+		} else {
+			attachVolumes();
+		}
+
+		if (novaInstancesReady.size() < minCount) {
+			// If instances with private IP and volumes do not meet the minCount, delete all of them.
+			String errorMsg = String.format(
+					"Problem allocating %d instances: Can only get %d instances with volumes while we want %d.",
+					instanceIds.size(), novaInstancesReady.size(), minCount);
+			provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, instanceIds, floatingIps, accumulator);
+			fail(errorMsg);
+		}
+		// Just delete the fail ones.
+		provider.releaseResources(volumeNumber, volumeSize, floatingIpPool, getInstanceIds(novaInstancesNotReady), null,
+				accumulator);
+	}
+
+	/**
+	 * Creates the missing volumes of the ready instances, all of them before attaching
+	 * any to save time, then attaches them.
+	 */
+	private void attachVolumes() {
+		LOG.info("Need to allocate {} volumes for each instances.", volumeNumber);
+
+		VolumeApi volumeApi = provider.getCinderApi().getVolumeApi(provider.getRegion());
+		// We have already confirmed volumeAttApi exists, so get will not fail.
+		VolumeAttachmentApi volumeAttachmentApi =
+				provider.getNovaApi().getVolumeAttachmentApi(provider.getRegion()).get();
+
+		// Reused instances may have some of their volumes already, unless they are complete.
+		Set<String> uncheckedInstanceIds = Sets.newHashSet();
+		for (Map.Entry<String, String> reused : reusedNovaInstanceIds.entrySet()) {
+			if (!completeNovaInstanceIds.contains(reused.getValue())) {
+				uncheckedInstanceIds.add(reused.getKey());
+			}
+		}
+		ListMultimap<String, Volume> existingVolumesByInstanceIds = uncheckedInstanceIds.isEmpty() ?
+				ArrayListMultimap.<String, Volume>create() :
+				provider.getVolumesByInstanceIds(uncheckedInstanceIds, 0);
+
+		//Create all volumes before attaching them to save time.
+		Map<String, Collection<String>> volumeIdsByNovaInstanceIds = Maps.newHashMap();
+		for (String novaInstanceId: novaInstancesReady) {
+			Map<String, String> tags = new HashMap<String, String>();
+			final List<String> volumeIds = new ArrayList<String>();
+			volumeIdsByNovaInstanceIds.put(novaInstanceId, volumeIds);
+			if (completeNovaInstanceIds.contains(novaInstanceId)) {
+				continue;
+			}
+			String instanceId = instanceIdsByNovaInstanceIds.get(novaInstanceId);
+			int missingVolumeNumber = volumeNumber;
+			for (Volume volume : existingVolumesByInstanceIds.get(instanceId)) {
+				if (missingVolumeNumber == 0) {
+					break;
+				}
+				if (ATTACHED_VOLUME_STATUSES.contains(volume.getStatus())) {
+					missingVolumeNumber--;
+				} else if (REUSABLE_VOLUME_STATUSES.contains(volume.getStatus())) {
+					volumeIds.add(volume.getId());
+					missingVolumeNumber--;
+				} else if (volume.getStatus() == Volume.Status.ERROR) {
+					volumeApi.delete(volume.getId());
+				}
+			}
+			LOG.info(">> Start to create {} volumes for the instances {}.", missingVolumeNumber, novaInstanceId);
+			tags.put(DIRECTOR_ID, instanceId);
+			// The volumes go to the zone of their server.
+			String zone = ZonePlacement.getZone(placementsByNovaInstanceIds.get(novaInstanceId));
+			CreateVolumeOptions createVolOps = CreateVolumeOptions.Builder
+					.description(provider.VOLUME_DESCRIPTION)
+					.availabilityZone(zone != null ? zone : placement.getPrimaryZone())
+					.metadata(tags);
+			for (int i = 0; i < missingVolumeNumber; i++) {
+				Volume currentVolume = volumeApi.create(volumeSize, createVolOps);
+				journal.record(instanceId, AllocationJournal.Entry.VOLUME, currentVolume.getId());
+				volumeIds.add(currentVolume.getId());
+			}
+		}
+
+		LOG.info(">> Waiting for {} instance(s) to be attached by volumes.",
+				novaInstancesReady.size());
+		final List<String> activeVolIds = new ArrayList<String>();
+		List<String> tempList1 = Lists.newArrayList();
+		for (String novaInstanceId: novaInstancesReady) {
+			Collection<String> involvedVolumeIds = volumeIdsByNovaInstanceIds.get(novaInstanceId);
+			for (String volId : involvedVolumeIds) {
+				// We do not set the device so that the devices could be set automatically.
+				String device = "";
+				// Wait until Available. The default awaitAvailable wait time is too long (10min).
+				// If not success, we delete it, and regenerate a new volId.
+				boolean createdSuccess = false;
+				if (provider.pollVolumeStatus(volId, Volume.Status.AVAILABLE, 30, accumulator)) {
+					activeVolIds.add(volId);
+					createdSuccess = true;
+				}
+				if (!createdSuccess) {
+					// Delete the volume. Instance will be deleted later.
+					volumeApi.delete(volId);
+					tempList1.add(novaInstanceId);
+					LOG.info("Time out on Volume: " + volId);
+				}
+				else {
+					// Attach the volume to the instance.
+					volumeAttachmentApi.attachVolumeToServerAsDevice(volId, novaInstanceId, device);
+					// Wait until In-use.
+					if (!provider.pollVolumeStatus(volId, Volume.Status.IN_USE, 30, accumulator)) {
+						// Attach fail. Delete the volume. Instance will be deleted later.
+						boolean volDeleted = volumeApi.delete(volId);
+						if (volDeleted) {
+							activeVolIds.remove(volId);
+						}
+						tempList1.add(novaInstanceId);
+						LOG.info("Time out on Volume: " + volId);
+					}
+				}
+			}
+			if (!tempList1.contains(novaInstanceId)) {
+				progress.completed(instanceIdsByNovaInstanceIds.get(novaInstanceId));
+			}
+		}
+		for (String novaInstanceId : tempList1) {
+			novaInstancesReady.remove(novaInstanceId);
+			novaInstancesNotReady.add(novaInstanceId);
+		}
+	}
+
+	/**
+	 * Returns the instance IDs of the given servers, read from their metadata for the
+	 * servers the allocation does not map. Servers which are gone, or carry no instance
+	 * ID, are left out.
+	 *
+	 * @param novaInstanceIds the Nova instance IDs
+	 * @return the instance IDs
+	 */
+	private Collection<String> getInstanceIds(Collection<String> novaInstanceIds) {
+		Collection<String> serverInstanceIds = Lists.newArrayList();
+		for (String novaInstanceId : novaInstanceIds) {
+			String instanceId = instanceIdsByNovaInstanceIds.get(novaInstanceId);
+			if (instanceId == null) {
+				Server server = serverApi.get(novaInstanceId);
+				instanceId = server == null || server.getMetadata() == null ? null :
+						server.getMetadata().get(DIRECTOR_ID);
+			}
+			if (instanceId != null) {
+				serverInstanceIds.add(instanceId);
+			}
+		}
+		return serverInstanceIds;
+	}
+
+	private void fail(String message) {
+		PluginExceptionDetails pluginExceptionDetails = new PluginExceptionDetails(accumulator.getConditionsByKey());
+		throw new UnrecoverableProviderException(message, pluginExceptionDetails);
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.openstack.nova.v2_0.options.CreateServerOptions;
+import org.jclouds.util.Strings2;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Options which boot a server into a server group. The create server options of jclouds
+ * have no scheduler hints, so the group is added to the request body they bind, for the
+ * scheduler to place the server by the policy of the group.
+ */
+class ServerGroupCreateServerOptions extends CreateServerOptions {
+
+	private final String serverGroupId;
+
+	/**
+	 * Creates the options of a server of the given server group.
+	 *
+	 * @param serverGroupId the server group ID
+	 */
+	ServerGroupCreateServerOptions(String serverGroupId) {
+		this.serverGroupId = Preconditions.checkNotNull(serverGroupId, "serverGroupId is null");
+	}
+
+	String getServerGroupId() {
+		return serverGroupId;
+	}
+
+	@Override
+	public <R extends HttpRequest> R bindToRequest(R request, Map<String, Object> postParams) {
+		R boundRequest = super.bindToRequest(request, postParams);
+		JsonObject body;
+		try {
+			body = new JsonParser().parse(Strings2.toStringAndClose(boundRequest.getPayload().openStream()))
+					.getAsJsonObject();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read the server request", e);
+		}
+		JsonObject schedulerHints = new JsonObject();
+		schedulerHints.addProperty("group", serverGroupId);
+		body.add("os:scheduler_hints", schedulerHints);
+		boundRequest.setPayload(body.toString());
+		boundRequest.getPayload().getContentMetadata().setContentType("application/json");
+		return boundRequest;
+	}
+}
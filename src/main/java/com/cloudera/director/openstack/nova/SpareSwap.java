@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.cloudera.director.openstack.nova.NovaProvider.DIRECTOR_ID;
+import static com.cloudera.director.openstack.nova.NovaProvider.awaitFirst;
+import static com.cloudera.director.openstack.nova.NovaProvider.decorateInstanceName;
+import static com.cloudera.director.openstack.nova.NovaProvider.isDoneAndTrue;
+
+import com.google.common.base.Function;
+import com.google.common.collect.HashBiMap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Puts the spares of an allocation in the place of its slowest instances. The servers
+ * of the instances and the spares race until as many of them as instances are ready
+ * or the straggler timeout passes. Ready spares then take the place of the instances
+ * whose server is not ready yet, or which have none: the spare is tagged with the
+ * instance ID, and the server it replaces with the spare ID, so that it is released
+ * along with the unused spares.
+ * <p>
+ * The spares taking a place are moved into the instance maps of the allocation, and
+ * the servers they replace out of them. The spare map is left with the servers to
+ * release.
+ */
+final class SpareSwap {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SpareSwap.class);
+
+	private final ServerAllocation allocation;
+	/* Whether the server is ready, by Nova instance ID, along with its floating IP if any. */
+	private final Map<String, ListenableFuture<Boolean>> readiness = Maps.newHashMap();
+	/* The Nova instance IDs of the ready spares which have not taken a place yet. */
+	private final List<String> readySpares = Lists.newArrayList();
+
+	/**
+	 * Creates a spare swap.
+	 *
+	 * @param allocation the allocation whose servers are waiting for an address
+	 */
+	SpareSwap(ServerAllocation allocation) {
+		this.allocation = allocation;
+	}
+
+	/**
+	 * Waits for the servers to get ready, and swaps the ready spares in.
+	 *
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	void run() throws InterruptedException {
+		awaitReadiness();
+		Map<String, String> novaInstanceIdsByInstanceIds =
+				HashBiMap.create(allocation.instanceIdsByNovaInstanceIds).inverse();
+		for (String instanceId : allocation.instanceIds) {
+			if (readySpares.isEmpty()) {
+				break;
+			}
+			String stragglerId = novaInstanceIdsByInstanceIds.get(instanceId);
+			if (stragglerId != null && (!allocation.novaInstancesNotReady.contains(stragglerId)
+					|| isDoneAndTrue(readiness.get(stragglerId)))) {
+				continue;
+			}
+			swap(instanceId, stragglerId, readySpares.remove(0));
+		}
+		// Whatever is left over is released without the allocation waiting on it.
+		for (String novaInstanceId : allocation.spareInstanceIdsByNovaInstanceIds.keySet()) {
+			allocation.addressWaits.remove(novaInstanceId);
+		}
+	}
+
+	private void awaitReadiness() throws InterruptedException {
+		for (Map.Entry<String, ListenableFuture<Boolean>> addressWait : allocation.addressWaits.entrySet()) {
+			ListenableFuture<FloatingIP> floatingIpAssignment =
+					allocation.floatingIpAssignments.get(addressWait.getKey());
+			readiness.put(addressWait.getKey(), floatingIpAssignment == null ? addressWait.getValue() :
+					Futures.transform(floatingIpAssignment, new Function<FloatingIP, Boolean>() {
+						@Override
+						public Boolean apply(FloatingIP floatingIp) {
+							return floatingIp != null;
+						}
+					}));
+		}
+		awaitFirst(readiness.values(), allocation.instanceIds.size(), allocation.stragglerTimeoutSeconds,
+				TimeUnit.SECONDS);
+
+		for (String novaInstanceId : allocation.spareInstanceIdsByNovaInstanceIds.keySet()) {
+			if (isDoneAndTrue(readiness.get(novaInstanceId))) {
+				readySpares.add(novaInstanceId);
+			}
+		}
+	}
+
+	/**
+	 * Puts a spare in the place of the server of an instance, if any. The spare is left
+	 * unused when it cannot be tagged.
+	 *
+	 * @param instanceId          the instance ID
+	 * @param stragglerId         the Nova instance ID of the server replaced, or null
+	 * @param spareNovaInstanceId the Nova instance ID of the spare
+	 */
+	private void swap(String instanceId, String stragglerId, String spareNovaInstanceId) {
+		ServerApi serverApi = allocation.serverApi;
+		String spareInstanceId = allocation.spareInstanceIdsByNovaInstanceIds.get(spareNovaInstanceId);
+		try {
+			// Swap the tags, the straggler first so that no two servers share an instance ID.
+			if (stragglerId != null) {
+				serverApi.updateMetadata(stragglerId, ImmutableMap.of(DIRECTOR_ID, spareInstanceId));
+			}
+			serverApi.updateMetadata(spareNovaInstanceId, ImmutableMap.of(DIRECTOR_ID, instanceId));
+			serverApi.rename(spareNovaInstanceId, decorateInstanceName(allocation.template, instanceId));
+		} catch (RuntimeException e) {
+			LOG.info("Unable to use spare {} for instance {}: {}", spareNovaInstanceId, instanceId, e.getMessage());
+			return;
+		}
+		LOG.info("Spare {} replaces {} for instance {}.", spareNovaInstanceId, stragglerId, instanceId);
+		allocation.journal.record(instanceId, AllocationJournal.Entry.SERVER, spareNovaInstanceId);
+		allocation.spareInstanceIdsByNovaInstanceIds.remove(spareNovaInstanceId);
+		allocation.novaInstancesNotReady.add(spareNovaInstanceId);
+		allocation.instanceIdsByNovaInstanceIds.put(spareNovaInstanceId, instanceId);
+		if (stragglerId != null) {
+			allocation.spareInstanceIdsByNovaInstanceIds.put(stragglerId, spareInstanceId);
+			allocation.novaInstancesNotReady.remove(stragglerId);
+			allocation.instanceIdsByNovaInstanceIds.remove(stragglerId);
+		}
+	}
+}
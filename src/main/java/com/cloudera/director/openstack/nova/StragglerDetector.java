@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tells apart the stragglers of a cohort of servers booted together, by comparing how
+ * long each pending server has been waiting with how long its peers took to get ready.
+ * <p>
+ * Nothing is a straggler until half of the cohort is ready. From then on, a server is a
+ * straggler once it has been waiting longer than the median of its peers by the given
+ * factor, and never less than the given minimum.
+ */
+class StragglerDetector {
+
+	private final double factor;
+	private final long minimumMillis;
+	private final Map<String, Long> startMillisByIds = Maps.newHashMap();
+	private final List<Long> readyMillis = Lists.newArrayList();
+	private int cohortSize;
+
+	/**
+	 * Creates a straggler detector.
+	 *
+	 * @param factor        how many times the median a straggler takes, at least 1
+	 * @param minimumMillis the minimum time a straggler takes in milliseconds
+	 */
+	StragglerDetector(double factor, long minimumMillis) {
+		Preconditions.checkArgument(factor >= 1, "factor is less than 1: %s", factor);
+		this.factor = factor;
+		this.minimumMillis = minimumMillis;
+	}
+
+	/**
+	 * Records that a server of the cohort started.
+	 *
+	 * @param id          the server ID
+	 * @param startMillis the start time in milliseconds
+	 */
+	synchronized void started(String id, long startMillis) {
+		if (startMillisByIds.put(id, startMillis) == null) {
+			cohortSize++;
+		}
+	}
+
+	/**
+	 * Records that a server got ready. Its time counts towards the median.
+	 *
+	 * @param id          the server ID
+	 * @param readyMillis the ready time in milliseconds
+	 */
+	synchronized void ready(String id, long readyMillis) {
+		Long startMillis = startMillisByIds.remove(id);
+		if (startMillis != null) {
+			this.readyMillis.add(readyMillis - startMillis);
+		}
+	}
+
+	/**
+	 * Stops tracking a server which failed. It no longer counts as pending, but still
+	 * counts in the cohort size.
+	 *
+	 * @param id the server ID
+	 */
+	synchronized void forget(String id) {
+		startMillisByIds.remove(id);
+	}
+
+	/**
+	 * Records that a server replaced another one of the cohort, which is no longer tracked.
+	 * The cohort keeps its size.
+	 *
+	 * @param id          the ID of the replaced server
+	 * @param replacement the ID of the replacement server
+	 * @param startMillis the start time of the replacement in milliseconds
+	 */
+	synchronized void replaced(String id, String replacement, long startMillis) {
+		startMillisByIds.remove(id);
+		startMillisByIds.put(replacement, startMillis);
+	}
+
+	/**
+	 * Returns the pending servers which are stragglers at the given time.
+	 *
+	 * @param nowMillis the time in milliseconds
+	 * @return the IDs of the stragglers
+	 */
+	synchronized Set<String> getStragglers(long nowMillis) {
+		Set<String> stragglers = Sets.newHashSet();
+		long thresholdMillis = getThresholdMillis();
+		if (thresholdMillis < 0) {
+			return stragglers;
+		}
+		for (Map.Entry<String, Long> pending : startMillisByIds.entrySet()) {
+			if (nowMillis - pending.getValue() > thresholdMillis) {
+				stragglers.add(pending.getKey());
+			}
+		}
+		return stragglers;
+	}
+
+	/**
+	 * Returns how long a server may take before it is a straggler.
+	 *
+	 * @return the threshold in milliseconds, or -1 while less than half of the cohort is ready
+	 */
+	synchronized long getThresholdMillis() {
+		if (readyMillis.isEmpty() || readyMillis.size() * 2 < cohortSize) {
+			return -1;
+		}
+		List<Long> sorted = Lists.newArrayList(readyMillis);
+		Collections.sort(sorted);
+		int middle = sorted.size() / 2;
+		double median = sorted.size() % 2 == 1 ? sorted.get(middle) :
+				(sorted.get(middle - 1) + sorted.get(middle)) / 2.0;
+		return Math.max(minimumMillis, (long) (median * factor));
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.openstack.cinder.v1.domain.Volume;
+import org.jclouds.openstack.nova.v2_0.domain.ServerCreated;
+import org.jclouds.openstack.nova.v2_0.domain.regionscoped.AvailabilityZone;
+import org.jclouds.openstack.nova.v2_0.extensions.AvailabilityZoneApi;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.cloudera.director.openstack.nova.NovaProvider.DIRECTOR_ID;
+import static com.cloudera.director.openstack.nova.NovaProvider.HAS_ADDRESS;
+import static com.cloudera.director.openstack.nova.NovaProvider.PRIVATE_IP_TIMEOUT_SECONDS;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Replaces the servers of an allocation which the straggler detector tells apart with a
+ * fresh server for the same instance ID, once each, while the servers wait for an
+ * address. The straggler is tagged apart first, so that no two servers share an instance
+ * ID, and the replacement goes to another availability zone unless the instance has
+ * Cinder volumes already, which it stays with.
+ * <p>
+ * The replacements are moved into the instance maps of the allocation, and the
+ * stragglers out of them.
+ */
+final class StragglerReplacement {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StragglerReplacement.class);
+
+	/**
+	 * How often the stragglers are looked for.
+	 */
+	private static final long STRAGGLER_CHECK_SECONDS = 1;
+
+	/**
+	 * The prefix of the tags of replaced stragglers, which are released in the background.
+	 */
+	private static final String STRAGGLER_PREFIX = "straggler-";
+
+	private final ServerAllocation allocation;
+	private final StragglerDetector detector;
+	/* The tags of the replaced stragglers by Nova instance ID. */
+	private final Map<String, String> stragglers = Maps.newHashMap();
+	/* The instances replaced already, which are not replaced again. */
+	private final Set<String> replacedInstanceIds = Sets.newHashSet();
+	/* The zones of the Cinder volumes the instances have already, null for the zone of the straggler. */
+	private final Map<String, String> volumeZonesByInstanceIds = Maps.newHashMap();
+	/* The other available zones of the region, listed on the first replacement which needs them. */
+	private List<String> alternateZones;
+
+	/**
+	 * Creates a straggler replacement.
+	 *
+	 * @param allocation the allocation whose servers are waiting for an address
+	 */
+	StragglerReplacement(ServerAllocation allocation) {
+		this.allocation = allocation;
+		this.detector = allocation.stragglerDetector;
+	}
+
+	/**
+	 * Waits for the servers of the instances to get an address, and replaces the
+	 * stragglers as they are told apart.
+	 *
+	 * @return the tags of the replaced stragglers by Nova instance ID
+	 * @throws InterruptedException if the wait is interrupted
+	 */
+	Map<String, String> run() throws InterruptedException {
+		lookUpVolumeZones();
+		for (String novaInstanceId : allocation.novaInstancesNotReady) {
+			trackAddress(novaInstanceId, allocation.addressWaits.get(novaInstanceId));
+		}
+		while (true) {
+			List<ListenableFuture<Boolean>> pending = Lists.newArrayList();
+			for (String novaInstanceId : allocation.novaInstancesNotReady) {
+				ListenableFuture<Boolean> addressWait = allocation.addressWaits.get(novaInstanceId);
+				if (addressWait != null && !addressWait.isDone()) {
+					pending.add(addressWait);
+				}
+			}
+			if (pending.isEmpty()) {
+				return stragglers;
+			}
+			try {
+				Futures.successfulAsList(pending).get(STRAGGLER_CHECK_SECONDS, TimeUnit.SECONDS);
+			} catch (TimeoutException e) {
+				// Look for stragglers at every check.
+			} catch (ExecutionException e) {
+				// Failed waits are told apart by the allocation.
+			}
+
+			for (String stragglerId : detector.getStragglers(System.currentTimeMillis())) {
+				replace(stragglerId);
+			}
+		}
+	}
+
+	/**
+	 * Looks up the zones of the Cinder volumes the reused instances have already, which
+	 * the replacement of their server has to stay in for the volumes to be attached. An
+	 * instance whose volumes cannot be looked up is bound to the zone of its server.
+	 */
+	private void lookUpVolumeZones() {
+		if (allocation.volumeNumber == 0 || allocation.reusedNovaInstanceIds.isEmpty()) {
+			return;
+		}
+		try {
+			for (Map.Entry<String, Volume> volume : allocation.provider.getVolumesByInstanceIds(
+					allocation.reusedNovaInstanceIds.keySet(), 0).entries()) {
+				if (volume.getValue().getStatus() != Volume.Status.ERROR && volume.getValue().getZone() != null) {
+					volumeZonesByInstanceIds.put(volume.getKey(), volume.getValue().getZone());
+				}
+			}
+		} catch (RuntimeException e) {
+			LOG.info("Unable to look the volumes of the reused instances up: {}", e.getMessage());
+			for (String instanceId : allocation.reusedNovaInstanceIds.keySet()) {
+				volumeZonesByInstanceIds.put(instanceId, null);
+			}
+		}
+	}
+
+	/**
+	 * Replaces a straggler with a fresh server for its instance, unless the instance was
+	 * replaced already or the straggler cannot be tagged apart.
+	 *
+	 * @param stragglerId the Nova instance ID of the straggler
+	 */
+	private void replace(String stragglerId) {
+		String instanceId = allocation.instanceIdsByNovaInstanceIds.get(stragglerId);
+		if (instanceId == null || !replacedInstanceIds.add(instanceId)) {
+			detector.forget(stragglerId);
+			return;
+		}
+		String record = allocation.placementsByNovaInstanceIds.get(stragglerId);
+		String zone = getReplacementZone(instanceId, record);
+		String replacementRecord = zone == null || zone.equals(ZonePlacement.getZone(record)) ? record :
+				ZonePlacement.record(record, zone);
+		String stragglerTag = STRAGGLER_PREFIX + instanceId;
+		ServerApi serverApi = allocation.serverApi;
+		ServerCreated replacement;
+		try {
+			serverApi.updateMetadata(stragglerId, ImmutableMap.of(DIRECTOR_ID, stragglerTag));
+			try {
+				replacement = allocation.serverSpec.create(serverApi, instanceId, replacementRecord);
+			} catch (RuntimeException e) {
+				serverApi.updateMetadata(stragglerId, ImmutableMap.of(DIRECTOR_ID, instanceId));
+				throw e;
+			}
+		} catch (RuntimeException e) {
+			LOG.info("Unable to replace straggler {} of instance {}: {}", stragglerId, instanceId, e.getMessage());
+			detector.forget(stragglerId);
+			return;
+		}
+		String replacementId = replacement.getId();
+		LOG.info("Replacing straggler {} of instance {} with {} in zone {}.",
+				stragglerId, instanceId, replacementId, zone);
+		allocation.journal.record(instanceId, AllocationJournal.Entry.SERVER, replacementId);
+		allocation.placementsByNovaInstanceIds.put(replacementId, replacementRecord);
+		detector.replaced(stragglerId, replacementId, System.currentTimeMillis());
+		stragglers.put(stragglerId, stragglerTag);
+		allocation.novaInstancesNotReady.remove(stragglerId);
+		allocation.instanceIdsByNovaInstanceIds.remove(stragglerId);
+		allocation.addressWaits.remove(stragglerId);
+		allocation.novaInstancesNotReady.add(replacementId);
+		allocation.instanceIdsByNovaInstanceIds.put(replacementId, instanceId);
+		ListenableFuture<Boolean> addressWait = allocation.provider.waitScheduler.await(
+				allocation.provider.getServerSweep(), replacementId, HAS_ADDRESS, PRIVATE_IP_TIMEOUT_SECONDS,
+				TimeUnit.SECONDS);
+		allocation.addressWaits.put(replacementId, addressWait);
+		trackAddress(replacementId, addressWait);
+		if (allocation.assignFloatingIps) {
+			allocation.floatingIpAssignments.put(replacementId, allocation.provider.assignFloatingIpOnceAddressed(
+					addressWait, allocation.floatingIpPool, replacementId, instanceId,
+					allocation.serverSpec.getManagementNetworkId(), allocation.journal));
+		}
+	}
+
+	/**
+	 * Returns the zone the replacement of a straggler goes to: where the volumes of the
+	 * instance are, the next given zone as when failing over, or another available zone.
+	 *
+	 * @param instanceId the instance ID
+	 * @param record     the placement record of the straggler
+	 * @return the zone of the replacement, null if the straggler has none
+	 */
+	private String getReplacementZone(String instanceId, String record) {
+		String zone = ZonePlacement.getZone(record);
+		if (volumeZonesByInstanceIds.containsKey(instanceId)) {
+			// The replacement goes where the volumes of the instance are.
+			String volumeZone = volumeZonesByInstanceIds.get(instanceId);
+			return volumeZone != null ? volumeZone : zone;
+		}
+		if (zone == null) {
+			return null;
+		}
+		if (allocation.placement.getZones().size() > 1) {
+			// Given zones are tried in turn, as when failing over.
+			String failoverZone = allocation.placement.getFailoverZone(record);
+			return failoverZone != null ? failoverZone : zone;
+		}
+		if (alternateZones == null) {
+			alternateZones = getAlternateZones(zone);
+		}
+		return alternateZones.isEmpty() ? zone :
+				alternateZones.get(replacedInstanceIds.size() % alternateZones.size());
+	}
+
+	private void trackAddress(final String novaInstanceId, ListenableFuture<Boolean> addressWait) {
+		if (addressWait == null) {
+			return;
+		}
+		Futures.addCallback(addressWait, new FutureCallback<Boolean>() {
+			@Override
+			public void onSuccess(Boolean hasAddress) {
+				if (Boolean.TRUE.equals(hasAddress)) {
+					detector.ready(novaInstanceId, System.currentTimeMillis());
+				} else {
+					detector.forget(novaInstanceId);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				detector.forget(novaInstanceId);
+			}
+		});
+	}
+
+	/**
+	 * Returns the available zones of the region other than the given one.
+	 *
+	 * @param availabilityZone the availability zone
+	 * @return the other availability zones, empty if they cannot be listed
+	 */
+	private List<String> getAlternateZones(String availabilityZone) {
+		List<String> zones = Lists.newArrayList();
+		NovaProvider provider = allocation.provider;
+		Optional<AvailabilityZoneApi> availabilityZoneApi = provider.getNovaApi().getAvailabilityZoneApi(
+				provider.getRegion());
+		if (!availabilityZoneApi.isPresent()) {
+			return zones;
+		}
+		for (AvailabilityZone zone : availabilityZoneApi.get().listAvailabilityZones()) {
+			if (!zone.getName().equals(availabilityZone) && zone.getState() != null && zone.getState().isAvailable()) {
+				zones.add(zone.getName());
+			}
+		}
+		return zones;
+	}
+}
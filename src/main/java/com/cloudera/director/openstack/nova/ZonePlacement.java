@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Spreads the instances of an allocation over weighted availability zones, so that the
+ * zones schedule them in parallel, and tells which zone a server fails over to when its
+ * zone cannot take it.
+ * <p>
+ * The zones are given as a comma separated list of zone names, each optionally followed
+ * by a colon and a positive weight, such as {@code zone1:2,zone2:1}. The weight defaults
+ * to 1, so a single zone name reads as before. Without any zone, Nova picks one.
+ * <p>
+ * Where a server was placed is recorded as the comma separated list of the zones it was
+ * tried in, the last one being where it lives.
+ */
+class ZonePlacement {
+
+	private static final Splitter ZONE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+	private static final Splitter WEIGHT_SPLITTER = Splitter.on(':').trimResults().limit(2);
+	private static final Joiner RECORD_JOINER = Joiner.on(',');
+
+	private final List<String> zones;
+	private final List<Integer> weights;
+
+	private ZonePlacement(List<String> zones, List<Integer> weights) {
+		this.zones = zones;
+		this.weights = weights;
+	}
+
+	/**
+	 * Parses weighted availability zones.
+	 *
+	 * @param spec the weighted zones, or null
+	 * @return the placement
+	 * @throws IllegalArgumentException if a weight is not a positive integer, or a zone is repeated
+	 */
+	static ZonePlacement parse(String spec) {
+		List<String> zones = Lists.newArrayList();
+		List<Integer> weights = Lists.newArrayList();
+		for (String entry : ZONE_SPLITTER.split(Strings.nullToEmpty(spec))) {
+			List<String> parts = WEIGHT_SPLITTER.splitToList(entry);
+			String zone = parts.get(0);
+			int weight = 1;
+			if (parts.size() > 1) {
+				try {
+					weight = Integer.parseInt(parts.get(1));
+				} catch (NumberFormatException e) {
+					weight = 0;
+				}
+			}
+			if (zone.isEmpty() || weight <= 0) {
+				throw new IllegalArgumentException("Invalid weighted availability zone: " + entry);
+			}
+			if (zones.contains(zone)) {
+				throw new IllegalArgumentException("Repeated availability zone: " + zone);
+			}
+			zones.add(zone);
+			weights.add(weight);
+		}
+		return new ZonePlacement(ImmutableList.copyOf(zones), ImmutableList.copyOf(weights));
+	}
+
+	/**
+	 * Returns the zones, in the order they were given.
+	 *
+	 * @return the zone names, empty when Nova picks the zone
+	 */
+	List<String> getZones() {
+		return zones;
+	}
+
+	/**
+	 * Returns the first zone, where whatever cannot be spread goes.
+	 *
+	 * @return the first zone, or null when Nova picks the zone
+	 */
+	String getPrimaryZone() {
+		return zones.isEmpty() ? null : zones.get(0);
+	}
+
+	/**
+	 * Spreads instances over the zones in proportion to their weights, interleaving the
+	 * zones rather than filling them one after the other. The same instances always get
+	 * the same zones.
+	 *
+	 * @param instanceIds the instance IDs
+	 * @return the zones by instance ID, null when Nova picks the zone
+	 */
+	Map<String, String> assign(Collection<String> instanceIds) {
+		Map<String, String> zonesByInstanceIds = Maps.newLinkedHashMap();
+		// Smooth weighted round robin: every zone earns its weight at each turn, and the
+		// richest one takes the instance and pays back the total.
+		int totalWeight = 0;
+		for (int weight : weights) {
+			totalWeight += weight;
+		}
+		int[] credits = new int[zones.size()];
+		for (String instanceId : instanceIds) {
+			int chosen = -1;
+			for (int i = 0; i < credits.length; i++) {
+				credits[i] += weights.get(i);
+				if (chosen < 0 || credits[i] > credits[chosen]) {
+					chosen = i;
+				}
+			}
+			if (chosen < 0) {
+				zonesByInstanceIds.put(instanceId, null);
+			} else {
+				credits[chosen] -= totalWeight;
+				zonesByInstanceIds.put(instanceId, zones.get(chosen));
+			}
+		}
+		return zonesByInstanceIds;
+	}
+
+	/**
+	 * Returns the zone a server fails over to: the next zone after the one it is in which
+	 * it was not tried in yet.
+	 *
+	 * @param record the placement record of the server, or null
+	 * @return the next zone, or null if there is none left
+	 */
+	String getFailoverZone(String record) {
+		List<String> triedZones = getTriedZones(record);
+		if (triedZones.isEmpty()) {
+			return null;
+		}
+		int start = zones.indexOf(triedZones.get(triedZones.size() - 1));
+		for (int i = 1; i <= zones.size(); i++) {
+			String zone = zones.get((start + i) % zones.size());
+			if (!triedZones.contains(zone)) {
+				return zone;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the placement record of a server placed in the given zone after the ones
+	 * already recorded.
+	 *
+	 * @param record the placement record so far, or null
+	 * @param zone   the zone of the server, or null when Nova picks the zone
+	 * @return the placement record, or null when no zone was ever given
+	 */
+	static String record(String record, String zone) {
+		if (zone == null) {
+			return record;
+		}
+		return Strings.isNullOrEmpty(record) ? zone : RECORD_JOINER.join(record, zone);
+	}
+
+	/**
+	 * Returns the zones a server was tried in, from its placement record.
+	 *
+	 * @param record the placement record, or null
+	 * @return the tried zones, the last one being where the server lives
+	 */
+	static List<String> getTriedZones(String record) {
+		return ZONE_SPLITTER.splitToList(Strings.nullToEmpty(record));
+	}
+
+	/**
+	 * Returns the zone a server lives in, from its placement record.
+	 *
+	 * @param record the placement record, or null
+	 * @return the zone, or null if none was recorded
+	 */
+	static String getZone(String record) {
+		List<String> triedZones = getTriedZones(record);
+		return triedZones.isEmpty() ? null : triedZones.get(triedZones.size() - 1);
+	}
+}
@@ -17,8 +17,10 @@ package com.cloudera.director.openstack.trove;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -31,7 +33,10 @@ import org.jclouds.openstack.trove.v1.features.InstanceApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cloudera.director.openstack.ListingCursor;
 import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.PluginContext;
+import com.cloudera.director.openstack.WaitScheduler;
 import com.cloudera.director.spi.v1.database.DatabaseType;
 import com.cloudera.director.spi.v1.database.util.AbstractDatabaseServerProvider;
 import com.cloudera.director.spi.v1.database.util.SimpleDatabaseServerProviderMetadata;
@@ -46,12 +51,16 @@ import com.cloudera.director.spi.v1.model.exception.UnrecoverableProviderExcepti
 import com.cloudera.director.spi.v1.model.util.SimpleResourceTemplate;
 import com.cloudera.director.spi.v1.provider.ResourceProviderMetadata;
 import com.cloudera.director.spi.v1.util.ConfigurationPropertiesUtil;
+import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.BiMap;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashBiMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 
+import static com.cloudera.director.openstack.trove.TroveProviderConfigurationProperty.NOTIFICATION_BROKER_URI;
 import static com.cloudera.director.openstack.trove.TroveProviderConfigurationProperty.REGION;
 import static com.cloudera.director.openstack.trove.TroveInstanceTemplateConfigurationProperty.FLAVOR_ID;
 import static com.cloudera.director.openstack.trove.TroveInstanceTemplateConfigurationProperty.VOLUME_SIZE;
@@ -59,6 +68,23 @@ import static com.cloudera.director.openstack.trove.TroveInstanceTemplateConfigu
 public class TroveProvider extends AbstractDatabaseServerProvider<TroveInstance, TroveInstanceTemplate> {
 
 	private static final Logger LOG = LoggerFactory.getLogger(TroveProvider.class);
+
+	/**
+	 * The time between two status sweeps of the booting instances.
+	 */
+	private static final long WAIT_TICK_SECONDS = 5;
+
+	/**
+	 * How long new instances may take to become active.
+	 */
+	private static final long BOOT_TIMEOUT_SECONDS = 600;
+
+	private static final Predicate<Instance> IS_ACTIVE = new Predicate<Instance>() {
+		@Override
+		public boolean apply(Instance instance) {
+			return instance != null && instance.getStatus() == Status.ACTIVE;
+		}
+	};
 	
 	/**
 	 * The provider configuration properties.
@@ -88,6 +114,17 @@ public class TroveProvider extends AbstractDatabaseServerProvider<TroveInstance,
 	private final TroveApi troveApi;
 	private final InstanceApi instanceApi;
 	private String region;
+
+	/**
+	 * Checks the booting instances, one sweep per tick, shared with the providers of the
+	 * same configuration.
+	 */
+	private final WaitScheduler waitScheduler;
+
+	/**
+	 * The wait sweep over the Trove instances, shared along with the wait scheduler.
+	 */
+	private final InstanceSweep instanceSweep;
 	
 	/**
 	 * Construct a new provider instance and validate all configurations.
@@ -98,15 +135,96 @@ public class TroveProvider extends AbstractDatabaseServerProvider<TroveInstance,
 	 * @param localizationContext the parent cloud localization context
 	 */
 	public TroveProvider(Configured configuration, OpenStackCredentials credentials, LocalizationContext localizationContext) {
-		this(TroveApiProvider.buildTroveApi(credentials), configuration, credentials, localizationContext);
+		this(configuration, credentials, new PluginContext(), localizationContext);
+	}
+
+	/**
+	 * Construct a new provider instance sharing the given plugin context.
+	 *
+	 * @param configuration       the configuration
+	 * @param credentials         the openstack credentials
+	 * @param pluginContext       what the providers of the plugin share
+	 * @param localizationContext the parent cloud localization context
+	 */
+	public TroveProvider(Configured configuration, OpenStackCredentials credentials, PluginContext pluginContext,
+			LocalizationContext localizationContext) {
+		this(TroveApiProvider.buildTroveApi(credentials), configuration, credentials, pluginContext, localizationContext);
 	}
 	
 	public TroveProvider(TroveApi troveApi, Configured configuration, OpenStackCredentials credentials, LocalizationContext localizationContext) {
+		this(troveApi, configuration, credentials, new PluginContext(), localizationContext);
+	}
+
+	public TroveProvider(TroveApi troveApi, Configured configuration, OpenStackCredentials credentials,
+			final PluginContext pluginContext, LocalizationContext localizationContext) {
 		super(configuration,METADATA,localizationContext);
 		this.credentials = credentials;
 		this.troveApi = troveApi;
 		this.region = configuration.getConfigurationValue(REGION, localizationContext);
 		this.instanceApi = troveApi.getInstanceApi(region);
+		this.waitScheduler = pluginContext.getSharedState("trove-wait-scheduler " + getConfigurationKey(),
+				WaitScheduler.class, new Supplier<WaitScheduler>() {
+					@Override
+					public WaitScheduler get() {
+						return new WaitScheduler(pluginContext.getResourceEvents(), WAIT_TICK_SECONDS,
+								TimeUnit.SECONDS, "trove-wait-scheduler");
+					}
+				});
+		this.instanceSweep = getSharedInstanceSweep(pluginContext);
+		this.instanceSweep.use(instanceApi);
+		String brokerUri = configuration.getConfigurationValue(NOTIFICATION_BROKER_URI, localizationContext);
+		if (brokerUri != null && !brokerUri.isEmpty()) {
+			// One listener per broker for the whole plugin, however many providers are created.
+			pluginContext.listenToNotifications(brokerUri, Collections.singletonList("trove"));
+		}
+	}
+
+	private String getConfigurationKey() {
+		return credentials.getEndpoint() + " " + credentials.getIdentity() + " " + region;
+	}
+
+	private InstanceSweep getSharedInstanceSweep(PluginContext pluginContext) {
+		return pluginContext.getSharedState("trove-instance-sweep " + getConfigurationKey(), InstanceSweep.class,
+				new Supplier<InstanceSweep>() {
+					@Override
+					public InstanceSweep get() {
+						return new InstanceSweep();
+					}
+				});
+	}
+
+	/**
+	 * The wait sweep over the Trove instances of one configuration. It goes through the
+	 * instance API of the provider that last used it rather than holding on to the
+	 * provider creating it.
+	 */
+	static class InstanceSweep extends WaitScheduler.ListingSweep<Instance> {
+
+		private volatile InstanceApi instanceApi;
+
+		/**
+		 * Points the sweep at the instance API of a provider.
+		 *
+		 * @param instanceApi the instance API
+		 */
+		void use(InstanceApi instanceApi) {
+			this.instanceApi = instanceApi;
+		}
+
+		@Override
+		protected Instance get(String troveInstanceId) {
+			return instanceApi.get(troveInstanceId);
+		}
+
+		@Override
+		protected Iterable<? extends Instance> list() {
+			return instanceApi.list();
+		}
+
+		@Override
+		protected String getId(Instance instance) {
+			return instance.getId();
+		}
 	}
 
 	public TroveApi getTroveApi() {
@@ -180,37 +298,24 @@ public class TroveProvider extends AbstractDatabaseServerProvider<TroveInstance,
 			
 		}
 		
-		int totalTimePollingSeconds = 0;
-		int pollingTimeoutSeconds = 600;
-		boolean timeoutExceeded = false; 
+		instanceSweep.use(instanceApi);
+		Map<String, ListenableFuture<Boolean>> boots = Maps.newHashMap();
+		for (String troveInstanceId : instancesBooting) {
+			boots.put(troveInstanceId, waitScheduler.await(instanceSweep, troveInstanceId, IS_ACTIVE,
+					BOOT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		}
 		Set<String> instancesBooted = Sets.newHashSet();
-		
-		while (!instancesBooting.isEmpty() && !timeoutExceeded) {
-			
-			for (String troveInstanceId : instancesBooting) {
-				
-				Status instanceStatus = instanceApi.get(troveInstanceId).getStatus();
-				
-				if(instanceStatus == Status.ACTIVE){
-					//enable the root permission
-					instanceApi.enableRoot(troveInstanceId);
-					instancesBooted.add(troveInstanceId);
-					instancesBooting.remove(troveInstanceId);
-				}
-			}
-			
-			if (!instancesBooting.isEmpty()) {
-				if (totalTimePollingSeconds > pollingTimeoutSeconds) {
-					timeoutExceeded = true;
-				}
-				TimeUnit.SECONDS.sleep(5);
-				totalTimePollingSeconds += 5;
+		PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
+		for (Map.Entry<String, ListenableFuture<Boolean>> boot : boots.entrySet()) {
+			if (WaitScheduler.getResult(boot.getValue(), accumulator)) {
+				//enable the root permission
+				instanceApi.enableRoot(boot.getKey());
+				instancesBooted.add(boot.getKey());
 			}
 		}
 		
 		int successfulOperationCount = instancesBooted.size();
 		if (successfulOperationCount < minCount){
-			PluginExceptionConditionAccumulator accumulator = new PluginExceptionConditionAccumulator();
 			for (String currentId : instanceIds) {
 				try{
 					instanceApi.delete(currentId);
@@ -260,22 +365,28 @@ public class TroveProvider extends AbstractDatabaseServerProvider<TroveInstance,
 	
 	/**
 	 * Returns a map from virtual instance ID to corresponding instance ID for the specified
-	 * virtual instance IDs.
+	 * virtual instance IDs. The listing is walked once, reading each instance name once,
+	 * and only until every virtual instance ID is matched. Should a virtual instance ID
+	 * be in the name of several instances, such as after a retried create, the first one
+	 * listed is kept.
 	 *
 	 * @param virtualInstanceIds 	the virtual instance IDs
 	 * @return the map from virtual instance ID to corresponding Trove instance ID
 	 */
 	private BiMap<String, String> getTroveInstanceIdByVirtualInstanceId(Collection<String> virtualInstanceIds){
 		final BiMap<String, String> troveInstanceIdsByVirtualInstanceId = HashBiMap.create();
-		FluentIterable<Instance> instances = instanceApi.list();
-
-		for (String virtualInstanceId : virtualInstanceIds) {
-			if(instances != null) {
-				for(Instance instance : instances) {
-					String instanceName = instance.getName();
-					if(instanceName.contains(virtualInstanceId)){
-						troveInstanceIdsByVirtualInstanceId.put(virtualInstanceId, instance.getId());
-					}
+		Set<String> unresolved = Sets.newHashSet(virtualInstanceIds);
+		// Stop walking the listing once every virtual instance ID is resolved.
+		ListingCursor<Instance> instances = ListingCursor.of(instanceApi.list());
+		while (!unresolved.isEmpty() && instances.hasNext()) {
+			Instance instance = instances.next();
+			String instanceName = instance.getName();
+			for (Iterator<String> it = unresolved.iterator(); it.hasNext(); ) {
+				String virtualInstanceId = it.next();
+				if (instanceName.contains(virtualInstanceId)) {
+					troveInstanceIdsByVirtualInstanceId.put(virtualInstanceId, instance.getId());
+					it.remove();
+					break;
 				}
 			}
 		}
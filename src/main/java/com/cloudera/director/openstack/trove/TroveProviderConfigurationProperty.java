@@ -25,6 +25,14 @@ public enum TroveProviderConfigurationProperty implements ConfigurationPropertyT
 		.name("Region")
 		.defaultValue("RegionOne")
 		.defaultDescription("Region to target for deployment.")
+		.build()),
+
+	NOTIFICATION_BROKER_URI(new SimpleConfigurationPropertyBuilder()
+		.configKey("notificationBrokerUri")
+		.name("Notification broker URI")
+		.required(false)
+		.defaultDescription("AMQP URI of the broker carrying the Trove notifications, "
+				+ "used to react to instance events without waiting for the next poll.")
 		.build());
 
 	/**
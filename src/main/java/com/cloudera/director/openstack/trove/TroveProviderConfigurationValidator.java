@@ -20,6 +20,7 @@ import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
 import org.jclouds.openstack.trove.v1.TroveApi;
 import org.jclouds.openstack.trove.v1.TroveApiMetadata;
 
+import com.cloudera.director.openstack.NotificationListener;
 import com.cloudera.director.openstack.OpenStackCredentials;
 import com.cloudera.director.spi.v1.model.ConfigurationValidator;
 import com.cloudera.director.spi.v1.model.Configured;
@@ -29,6 +30,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Module;
 
+import static com.cloudera.director.openstack.trove.TroveProviderConfigurationProperty.NOTIFICATION_BROKER_URI;
 import static com.cloudera.director.openstack.trove.TroveProviderConfigurationProperty.REGION;
 import static com.cloudera.director.spi.v1.model.util.Validations.addError;
 
@@ -38,6 +40,9 @@ public class TroveProviderConfigurationValidator implements ConfigurationValidat
 	
 	@VisibleForTesting
 	static final String REGION_NOT_FOUND_MSG = "Region '%s' not found.";
+
+	@VisibleForTesting
+	static final String INVALID_NOTIFICATION_BROKER_URI_MSG = "Notification broker URI must be an amqp:// or amqps:// URI: %s";
 	
 	public TroveProviderConfigurationValidator(OpenStackCredentials credentials){
 		this.credentials = credentials;
@@ -46,6 +51,7 @@ public class TroveProviderConfigurationValidator implements ConfigurationValidat
 	@Override
 	public void validate(String name, Configured configuration, PluginExceptionConditionAccumulator accumulator, LocalizationContext localizationContext) {
 		checkRegion(configuration, accumulator, localizationContext);
+		checkNotificationBrokerUri(configuration, accumulator, localizationContext);
 	}
 
 	/**
@@ -66,5 +72,19 @@ public class TroveProviderConfigurationValidator implements ConfigurationValidat
 			addError(accumulator, REGION, localizationContext, null, REGION_NOT_FOUND_MSG, regionName);
 		}
 	}	
+
+	/**
+	 * validate the notification broker URI
+	 *
+	 * @param configuration
+	 * @param accumulator
+	 * @param localizationContext
+	 */
+	void checkNotificationBrokerUri(Configured configuration, PluginExceptionConditionAccumulator accumulator, LocalizationContext localizationContext){
+		String brokerUri = configuration.getConfigurationValue(NOTIFICATION_BROKER_URI, localizationContext);
+		if (brokerUri != null && !brokerUri.isEmpty() && !NotificationListener.isValidBrokerUri(brokerUri)) {
+			addError(accumulator, NOTIFICATION_BROKER_URI, localizationContext, null, INVALID_NOTIFICATION_BROKER_URI_MSG, brokerUri);
+		}
+	}
 	
 }
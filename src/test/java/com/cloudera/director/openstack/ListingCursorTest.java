@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.List;
+
+import org.jclouds.openstack.v2_0.domain.Link;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link ListingCursor}.
+ */
+public class ListingCursorTest {
+
+	private static final List<List<String>> PAGES = ImmutableList.<List<String>>of(
+			ImmutableList.of("a", "b"),
+			ImmutableList.of("c", "d"),
+			ImmutableList.of("e"));
+
+	/**
+	 * Serves {@link #PAGES}, using the index of the next page as marker.
+	 */
+	private static class PageLister implements Function<PaginationOptions, PaginatedCollection<String>> {
+		private final List<String> requestedMarkers = Lists.newArrayList();
+
+		@Override
+		public PaginatedCollection<String> apply(PaginationOptions options) {
+			String marker = options.buildQueryParameters().get("marker").isEmpty() ?
+					null : options.buildQueryParameters().get("marker").iterator().next();
+			requestedMarkers.add(marker);
+			int index = marker == null ? 0 : Integer.parseInt(marker);
+			List<Link> links = Lists.newArrayList();
+			if (index + 1 < PAGES.size()) {
+				links.add(Link.create(Link.Relation.NEXT,
+						URI.create("http://nova/servers/detail?limit=2&marker=" + (index + 1))));
+			}
+			return new PaginatedCollection<String>(PAGES.get(index), links) {
+			};
+		}
+	}
+
+	@Test
+	public void testOfPaginated_WalksAllPages() {
+		PageLister lister = new PageLister();
+		ListingCursor<String> cursor = ListingCursor.ofPaginated(lister, 2);
+		assertThat(Lists.newArrayList(cursor)).containsExactly("a", "b", "c", "d", "e");
+		assertThat(cursor.getPagesFetched()).isEqualTo(3);
+		assertThat(lister.requestedMarkers).containsExactly(null, "1", "2");
+	}
+
+	@Test
+	public void testCollect_StopsOnceResolved() {
+		PageLister lister = new PageLister();
+		ListingCursor<String> cursor = ListingCursor.ofPaginated(lister, 2);
+		ListMultimap<String, String> matched =
+				cursor.collect(ImmutableList.of("b", "c"), Functions.<String>identity(), 1);
+		assertThat(matched.keySet()).containsOnly("b", "c");
+		assertThat(cursor.getPagesFetched()).isEqualTo(2);
+	}
+
+	@Test
+	public void testCollect_WalksEverythingWithoutExpectedCount() {
+		ListingCursor<String> cursor = ListingCursor.of(ImmutableList.of("a", "b", "a"));
+		ListMultimap<String, String> matched =
+				cursor.collect(ImmutableList.of("a"), Functions.<String>identity(), 0);
+		assertThat(matched.get("a")).hasSize(2);
+	}
+
+	@Test
+	public void testOf_NullListing() {
+		ListingCursor<String> cursor = ListingCursor.of((Iterable<String>) null);
+		assertThat(cursor.hasNext()).isFalse();
+	}
+}
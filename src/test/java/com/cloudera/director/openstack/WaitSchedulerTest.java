@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Tests {@link WaitScheduler}.
+ */
+public class WaitSchedulerTest {
+
+	private static final Predicate<String> IS_READY = Predicates.equalTo("ready");
+
+	/**
+	 * A sweep over an in-memory set of resources which counts its calls.
+	 */
+	private static class FakeSweep implements WaitScheduler.Sweep<String> {
+		private final Map<String, String> states = new ConcurrentHashMap<String, String>();
+		private final AtomicInteger fetches = new AtomicInteger();
+		private final AtomicInteger largestBatch = new AtomicInteger();
+		private volatile RuntimeException failure;
+		private volatile int failureCount = Integer.MAX_VALUE;
+		private final AtomicInteger failures = new AtomicInteger();
+
+		@Override
+		public Map<String, String> fetch(Set<String> resourceIds) {
+			fetches.incrementAndGet();
+			if (resourceIds.size() > largestBatch.get()) {
+				largestBatch.set(resourceIds.size());
+			}
+			if (failure != null && failures.getAndIncrement() < failureCount) {
+				throw failure;
+			}
+			Map<String, String> found = Maps.newHashMap();
+			for (String resourceId : resourceIds) {
+				if (states.containsKey(resourceId)) {
+					found.put(resourceId, states.get(resourceId));
+				}
+			}
+			return ImmutableMap.copyOf(found);
+		}
+	}
+
+	private ResourceEvents events;
+	private FakeSweep servers;
+	private FakeSweep volumes;
+
+	@Before
+	public void setUp() {
+		events = new ResourceEvents();
+		servers = new FakeSweep();
+		volumes = new FakeSweep();
+	}
+
+	@Test
+	public void testAwait_OneSweepPerTypePerTick() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 50, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		List<ListenableFuture<Boolean>> waits = Lists.newArrayList();
+		for (int i = 0; i < 20; i++) {
+			servers.states.put("server-" + i, "building");
+			waits.add(scheduler.await(servers, "server-" + i, IS_READY, 10, TimeUnit.SECONDS));
+		}
+		volumes.states.put("volume-0", "creating");
+		waits.add(scheduler.await(volumes, "volume-0", IS_READY, 10, TimeUnit.SECONDS));
+
+		TimeUnit.MILLISECONDS.sleep(200);
+		for (String serverId : Lists.newArrayList(servers.states.keySet())) {
+			servers.states.put(serverId, "ready");
+		}
+		volumes.states.put("volume-0", "ready");
+		for (ListenableFuture<Boolean> wait : waits) {
+			assertThat(wait.get(5, TimeUnit.SECONDS)).isTrue();
+		}
+		// Every tick checks all of the pending servers with a single call.
+		assertThat(servers.largestBatch.get()).isEqualTo(20);
+		assertThat(volumes.largestBatch.get()).isEqualTo(1);
+		assertThat(scheduler.getPendingCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testAwait_Gone() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 50, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		ListenableFuture<Boolean> deleted =
+				scheduler.await(volumes, "volume-0", Predicates.<String>isNull(), 10, TimeUnit.SECONDS);
+		assertThat(deleted.get(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	public void testAwait_Timeout() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 10, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		servers.states.put("server-0", "building");
+		ListenableFuture<Boolean> wait = scheduler.await(servers, "server-0", IS_READY, 50, TimeUnit.MILLISECONDS);
+		assertThat(wait.get(5, TimeUnit.SECONDS)).isFalse();
+		assertThat(scheduler.getPendingCount()).isEqualTo(0);
+	}
+
+	@Test
+	public void testAwait_EventTriggersSweep() throws Exception {
+		// With an hour long tick, only the event can bring the second sweep.
+		WaitScheduler scheduler = new WaitScheduler(events, 1, TimeUnit.HOURS, "test-wait-scheduler");
+		servers.states.put("server-0", "building");
+		ListenableFuture<Boolean> wait = scheduler.await(servers, "server-0", IS_READY, 2, TimeUnit.HOURS);
+		TimeUnit.MILLISECONDS.sleep(100);
+		assertThat(wait.isDone()).isFalse();
+
+		servers.states.put("server-0", "ready");
+		events.publish("server-0", "compute.instance.create.end");
+		assertThat(wait.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(servers.fetches.get()).isEqualTo(2);
+	}
+
+	@Test
+	public void testAwait_CoalescedIntoNextTick() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 500, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		servers.states.put("server-0", "building");
+		scheduler.await(servers, "server-0", IS_READY, 10, TimeUnit.SECONDS);
+		TimeUnit.MILLISECONDS.sleep(100);
+		assertThat(servers.fetches.get()).isEqualTo(1);
+
+		List<ListenableFuture<Boolean>> waits = Lists.newArrayList();
+		for (int i = 1; i <= 20; i++) {
+			servers.states.put("server-" + i, "ready");
+			waits.add(scheduler.await(servers, "server-" + i, IS_READY, 10, TimeUnit.SECONDS));
+		}
+		for (ListenableFuture<Boolean> wait : waits) {
+			assertThat(wait.get(5, TimeUnit.SECONDS)).isTrue();
+		}
+		// The busy scheduler checks the new waits on its next tick, not one sweep each.
+		assertThat(servers.fetches.get()).isEqualTo(2);
+		assertThat(servers.largestBatch.get()).isEqualTo(21);
+	}
+
+	@Test
+	public void testAwait_SweepFailure() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 50, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		servers.failure = new IllegalStateException("Service Unavailable");
+		ListenableFuture<Boolean> wait = scheduler.await(servers, "server-0", IS_READY, 10, TimeUnit.SECONDS);
+		try {
+			wait.get(5, TimeUnit.SECONDS);
+			fail("The wait should have failed.");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause().getMessage()).isEqualTo("Service Unavailable");
+		}
+	}
+
+	@Test
+	public void testAwait_SweepFailure_Retried() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 50, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		servers.failure = new IllegalStateException("Service Unavailable");
+		servers.failureCount = WaitScheduler.MAX_SWEEP_FAILURES - 1;
+		servers.states.put("server-0", "ready");
+		ListenableFuture<Boolean> wait = scheduler.await(servers, "server-0", IS_READY, 10, TimeUnit.SECONDS);
+		assertThat(wait.get(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(servers.fetches.get()).isEqualTo(WaitScheduler.MAX_SWEEP_FAILURES);
+	}
+
+	@Test
+	public void testAwait_SweepFailure_OtherTypesUnaffected() throws Exception {
+		WaitScheduler scheduler = new WaitScheduler(events, 50, TimeUnit.MILLISECONDS, "test-wait-scheduler");
+		servers.failure = new IllegalStateException("Service Unavailable");
+		ListenableFuture<Boolean> serverWait = scheduler.await(servers, "server-0", IS_READY, 10, TimeUnit.SECONDS);
+		volumes.states.put("volume-0", "creating");
+		ListenableFuture<Boolean> volumeWait = scheduler.await(volumes, "volume-0", IS_READY, 10, TimeUnit.SECONDS);
+		try {
+			serverWait.get(5, TimeUnit.SECONDS);
+			fail("The wait should have failed.");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause().getMessage()).isEqualTo("Service Unavailable");
+		}
+		assertThat(volumeWait.isDone()).isFalse();
+
+		volumes.states.put("volume-0", "ready");
+		assertThat(volumeWait.get(5, TimeUnit.SECONDS)).isTrue();
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.cinder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link RestCinderLimitsApi} against a local stand-in for Keystone and Cinder.
+ */
+@SuppressWarnings("restriction")
+public class RestCinderLimitsApiTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String REGION = "regionOne";
+
+	private HttpServer server;
+	private String baseUrl;
+	private RestCinderLimitsApi limitsApi;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		server.createContext("/v2.0/tokens", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"access\":{\"token\":{\"id\":\"token-1\","
+						+ "\"tenant\":{\"id\":\"project-1\",\"name\":\"admin\"}},"
+						+ "\"serviceCatalog\":[{\"type\":\"volume\",\"endpoints\":["
+						+ "{\"region\":\"" + REGION + "\",\"publicURL\":\"" + baseUrl + "/v1/project-1\"}]}]}}");
+			}
+		});
+		server.createContext("/v1/project-1/limits", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"limits\":{\"rate\":[],\"absolute\":{\"maxTotalVolumes\":10,"
+						+ "\"totalVolumesUsed\":4,\"maxTotalVolumeGigabytes\":1000,\"totalGigabytesUsed\":400,"
+						+ "\"maxTotalBackups\":null}}}");
+			}
+		});
+		server.start();
+		limitsApi = new RestCinderLimitsApi(
+				new OpenStackCredentials(baseUrl + "/v2.0/", "admin", "director", "secret"), REGION);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGetAbsoluteLimits() {
+		assertThat(limitsApi.getAbsoluteLimits())
+				.containsEntry("maxTotalVolumes", 10)
+				.containsEntry("totalVolumesUsed", 4)
+				.containsEntry("maxTotalVolumeGigabytes", 1000)
+				.containsEntry("totalGigabytesUsed", 400)
+				.doesNotContainKey("maxTotalBackups");
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
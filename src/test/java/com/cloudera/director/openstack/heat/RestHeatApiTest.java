@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.heat;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link RestHeatApi} against a local stand-in for Keystone and Heat.
+ */
+@SuppressWarnings("restriction")
+public class RestHeatApiTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String REGION = "regionOne";
+	private static final String TEMPLATE = "{\"heat_template_version\":\"2014-10-16\",\"resources\":{}}";
+
+	private HttpServer server;
+	private String baseUrl;
+	private int tokenCount;
+	private String validToken;
+	private final Map<String, JsonObject> stacksByName = Maps.newHashMap();
+	private RestHeatApi heatApi;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		server.createContext("/v2.0/tokens", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				issueToken(exchange);
+			}
+		});
+		server.createContext("/v1/tenant-1/stacks", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleStacks(exchange);
+			}
+		});
+		server.start();
+		heatApi = new RestHeatApi(new OpenStackCredentials(baseUrl + "/v2.0/", "admin", "director", "secret"), REGION);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testStackLifecycle() {
+		String stackId = heatApi.createStack("director-1", TEMPLATE, 60);
+		assertThat(stacksByName.get("director-1").get("timeout_mins").getAsInt()).isEqualTo(60);
+		assertThat(stacksByName.get("director-1").getAsJsonObject("template").has("resources")).isTrue();
+
+		HeatStack stack = heatApi.getStack("director-1");
+		assertThat(stack.getId()).isEqualTo(stackId);
+		assertThat(stack.getStatus()).isEqualTo(HeatStack.CREATE_COMPLETE);
+		assertThat(stack.isInProgress()).isFalse();
+		assertThat(stack.getOutputs()).containsEntry("server-instance-1", "nova-1");
+
+		heatApi.deleteStack("director-1", stackId);
+		assertThat(heatApi.getStack("director-1")).isNull();
+		// Deleting it again is harmless.
+		heatApi.deleteStack("director-1", stackId);
+		assertThat(tokenCount).isEqualTo(1);
+	}
+
+	@Test
+	public void testGetStack_RenewsRejectedToken() {
+		heatApi.createStack("director-1", TEMPLATE, 60);
+		validToken = "revoked";
+
+		assertThat(heatApi.getStack("director-1")).isNotNull();
+		assertThat(tokenCount).isEqualTo(2);
+	}
+
+	private void issueToken(HttpExchange exchange) throws IOException {
+		JsonObject auth = read(exchange).getAsJsonObject("auth");
+		if (!"admin".equals(auth.get("tenantName").getAsString())
+				|| !"director".equals(auth.getAsJsonObject("passwordCredentials").get("username").getAsString())) {
+			respond(exchange, 401, "{}");
+			return;
+		}
+		tokenCount++;
+		validToken = "token-" + tokenCount;
+		respond(exchange, 200, "{\"access\":{\"token\":{\"id\":\"" + validToken + "\"},"
+				+ "\"serviceCatalog\":[{\"type\":\"compute\",\"endpoints\":[]},"
+				+ "{\"type\":\"orchestration\",\"endpoints\":["
+				+ "{\"region\":\"regionTwo\",\"publicURL\":\"http://elsewhere/v1/tenant-1\"},"
+				+ "{\"region\":\"" + REGION + "\",\"publicURL\":\"" + baseUrl + "/v1/tenant-1/\"}]}]}}");
+	}
+
+	private void handleStacks(HttpExchange exchange) throws IOException {
+		if (!validToken.equals(exchange.getRequestHeaders().getFirst("X-Auth-Token"))) {
+			respond(exchange, 401, "{}");
+			return;
+		}
+		String[] path = exchange.getRequestURI().getPath().substring("/v1/tenant-1/stacks".length()).split("/");
+		String method = exchange.getRequestMethod();
+		if ("POST".equals(method)) {
+			JsonObject request = read(exchange);
+			String name = request.get("stack_name").getAsString();
+			stacksByName.put(name, request);
+			respond(exchange, 201, "{\"stack\":{\"id\":\"id-" + name + "\"}}");
+		} else if ("GET".equals(method) && stacksByName.containsKey(path[1])) {
+			respond(exchange, 200, "{\"stack\":{\"id\":\"id-" + path[1] + "\",\"stack_name\":\"" + path[1] + "\","
+					+ "\"stack_status\":\"CREATE_COMPLETE\",\"stack_status_reason\":null,"
+					+ "\"outputs\":[{\"output_key\":\"server-instance-1\",\"output_value\":\"nova-1\"}]}}");
+		} else if ("DELETE".equals(method) && stacksByName.remove(path[1]) != null) {
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		} else {
+			respond(exchange, 404, "{}");
+		}
+	}
+
+	private static JsonObject read(HttpExchange exchange) throws IOException {
+		return new JsonParser().parse(new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF8))
+				.getAsJsonObject();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.neutron;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link RestNeutronApi} against a local stand-in for Keystone and Neutron.
+ */
+@SuppressWarnings("restriction")
+public class RestNeutronApiTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String REGION = "regionOne";
+
+	private HttpServer server;
+	private String baseUrl;
+	private int portCount;
+	private int createRequests;
+	private final Map<String, JsonObject> portsById = Maps.newLinkedHashMap();
+	private final Map<String, JsonObject> floatingIpsById = Maps.newLinkedHashMap();
+	private RestNeutronApi neutronApi;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		server.createContext("/v2.0/tokens", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"access\":{\"token\":{\"id\":\"token-1\"},"
+						+ "\"serviceCatalog\":[{\"type\":\"network\",\"endpoints\":["
+						+ "{\"region\":\"" + REGION + "\",\"publicURL\":\"" + baseUrl + "/neutron/\"}]}]}}");
+			}
+		});
+		server.createContext("/neutron/v2.0/ports", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handlePorts(exchange);
+			}
+		});
+		server.createContext("/neutron/v2.0/security-groups", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"security_groups\":[{\"id\":\"sg-1\",\"name\":\"default\"}]}");
+			}
+		});
+		server.createContext("/neutron/v2.0/networks", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"networks\":[{\"id\":\"ext-net\",\"name\":\"public\"}]}");
+			}
+		});
+		server.createContext("/neutron/v2.0/qos/policies", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"policies\":[{\"id\":\"qos-1\",\"name\":\"hdfs-limit\"},"
+						+ "{\"id\":\"qos-2\",\"name\":\"hdfs-min\"}]}");
+			}
+		});
+		server.createContext("/neutron/v2.0/floatingips", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleFloatingIps(exchange);
+			}
+		});
+		server.createContext("/neutron/v2.0/quotas/project-1", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"quota\":{\"floatingip\":50,\"port\":-1,\"network\":10}}");
+			}
+		});
+		server.start();
+		neutronApi = new RestNeutronApi(
+				new OpenStackCredentials(baseUrl + "/v2.0/", "admin", "director", "secret"), REGION);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testPortLifecycle() {
+		List<NeutronPort> ports = neutronApi.createPorts(ImmutableList.of(
+				new NeutronPortRequest("net-1", "director-port-1", NeutronPortRequest.VNIC_TYPE_DIRECT,
+						ImmutableList.of("sg-1")),
+				new NeutronPortRequest("net-2", "director-port-1", NeutronPortRequest.VNIC_TYPE_NORMAL,
+						ImmutableList.<String>of(), "qos-1")));
+		// Both ports in one request.
+		assertThat(createRequests).isEqualTo(1);
+		assertThat(ports).hasSize(2);
+		assertThat(ports.get(0).getNetworkId()).isEqualTo("net-1");
+		assertThat(ports.get(0).getDeviceId()).isNull();
+		assertThat(ports.get(0).getFixedIps()).containsExactly("10.0.0.1");
+		assertThat(portsById.get(ports.get(0).getId()).get("binding:vnic_type").getAsString()).isEqualTo("direct");
+		assertThat(portsById.get(ports.get(0).getId()).has("qos_policy_id")).isFalse();
+		assertThat(portsById.get(ports.get(1).getId()).get("qos_policy_id").getAsString()).isEqualTo("qos-1");
+
+		portsById.get(ports.get(1).getId()).addProperty("device_id", "server-1");
+		assertThat(neutronApi.listPortsByNames(ImmutableList.of("director-port-1", "director-port-2"))).hasSize(2);
+		List<NeutronPort> bound = neutronApi.listPortsByDeviceIds(ImmutableList.of("server-1"));
+		assertThat(bound).hasSize(1);
+		assertThat(bound.get(0).getId()).isEqualTo(ports.get(1).getId());
+
+		neutronApi.deletePort(ports.get(0).getId());
+		assertThat(portsById).hasSize(1);
+		// Deleting it again is harmless.
+		neutronApi.deletePort(ports.get(0).getId());
+	}
+
+	@Test
+	public void testGetSecurityGroupIdsByNames() {
+		assertThat(neutronApi.getSecurityGroupIdsByNames(ImmutableList.of("default")))
+				.containsEntry("default", "sg-1");
+	}
+
+	@Test
+	public void testGetQosPolicyIds() {
+		// Policies are found by name as well as by ID.
+		assertThat(neutronApi.getQosPolicyIds(ImmutableList.of("hdfs-limit", "qos-2", "unknown")))
+				.hasSize(2)
+				.containsEntry("hdfs-limit", "qos-1")
+				.containsEntry("qos-2", "qos-2");
+	}
+
+	@Test
+	public void testGetFloatingIpQuota() {
+		assertThat(neutronApi.getFloatingIpQuota("project-1")).isEqualTo(50);
+	}
+
+	@Test
+	public void testFloatingIpLifecycle() {
+		assertThat(neutronApi.getExternalNetworkIdsByNames()).containsEntry("public", "ext-net");
+
+		NeutronFloatingIp floatingIp = neutronApi.createFloatingIp("ext-net");
+		assertThat(floatingIp.getFloatingNetworkId()).isEqualTo("ext-net");
+		assertThat(floatingIp.getPortId()).isNull();
+		assertThat(neutronApi.getFloatingIpByAddress(floatingIp.getFloatingIpAddress()).getId())
+				.isEqualTo(floatingIp.getId());
+
+		NeutronFloatingIp associated = neutronApi.associateFloatingIp(floatingIp.getId(), "port-1");
+		assertThat(associated.getPortId()).isEqualTo("port-1");
+		assertThat(neutronApi.listFloatingIpsByPortIds(ImmutableList.of("port-1", "port-2"))).hasSize(1);
+		assertThat(neutronApi.listFloatingIpsByPortIds(ImmutableList.of("port-2"))).isEmpty();
+		assertThat(neutronApi.associateFloatingIp(floatingIp.getId(), null).getPortId()).isNull();
+
+		neutronApi.deleteFloatingIp(floatingIp.getId());
+		assertThat(neutronApi.getFloatingIp(floatingIp.getId())).isNull();
+		assertThat(neutronApi.listFloatingIps()).isEmpty();
+		// Releasing it again is harmless.
+		neutronApi.deleteFloatingIp(floatingIp.getId());
+	}
+
+	private void handleFloatingIps(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String id = exchange.getRequestURI().getPath().substring("/neutron/v2.0/floatingips".length())
+				.replaceFirst("^/", "");
+		if ("POST".equals(method)) {
+			JsonObject floatingIp = read(exchange).getAsJsonObject("floatingip");
+			String floatingIpId = "floating-ip-" + (floatingIpsById.size() + 1);
+			floatingIp.addProperty("id", floatingIpId);
+			floatingIp.addProperty("floating_ip_address", "172.16.0." + (floatingIpsById.size() + 1));
+			floatingIp.add("port_id", JsonNull.INSTANCE);
+			floatingIpsById.put(floatingIpId, floatingIp);
+			respond(exchange, 201, wrap("floatingip", floatingIp));
+		} else if ("PUT".equals(method) && floatingIpsById.containsKey(id)) {
+			JsonObject floatingIp = floatingIpsById.get(id);
+			floatingIp.add("port_id", read(exchange).getAsJsonObject("floatingip").get("port_id"));
+			respond(exchange, 200, wrap("floatingip", floatingIp));
+		} else if ("GET".equals(method) && !id.isEmpty()) {
+			if (floatingIpsById.containsKey(id)) {
+				respond(exchange, 200, wrap("floatingip", floatingIpsById.get(id)));
+			} else {
+				respond(exchange, 404, "{}");
+			}
+		} else if ("GET".equals(method)) {
+			Map<String, List<String>> filters = parseFilters(exchange);
+			JsonArray listed = new JsonArray();
+			for (JsonObject floatingIp : floatingIpsById.values()) {
+				if (matches(floatingIp, filters)) {
+					listed.add(floatingIp);
+				}
+			}
+			respond(exchange, 200, wrap("floatingips", listed));
+		} else if ("DELETE".equals(method) && floatingIpsById.remove(id) != null) {
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		} else {
+			respond(exchange, 404, "{}");
+		}
+	}
+
+	private void handlePorts(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path = exchange.getRequestURI().getPath().substring("/neutron/v2.0/ports".length());
+		if ("POST".equals(method)) {
+			createRequests++;
+			JsonArray created = new JsonArray();
+			for (JsonElement request : read(exchange).getAsJsonArray("ports")) {
+				JsonObject port = request.getAsJsonObject();
+				portCount++;
+				port.addProperty("id", "port-" + portCount);
+				port.addProperty("device_id", "");
+				JsonObject fixedIp = new JsonObject();
+				fixedIp.addProperty("ip_address", "10.0.0." + portCount);
+				JsonArray fixedIps = new JsonArray();
+				fixedIps.add(fixedIp);
+				port.add("fixed_ips", fixedIps);
+				portsById.put("port-" + portCount, port);
+				created.add(port);
+			}
+			JsonObject body = new JsonObject();
+			body.add("ports", created);
+			respond(exchange, 201, body.toString());
+		} else if ("GET".equals(method)) {
+			Map<String, List<String>> filters = parseFilters(exchange);
+			JsonArray listed = new JsonArray();
+			for (JsonObject port : portsById.values()) {
+				if (matches(port, filters)) {
+					listed.add(port);
+				}
+			}
+			JsonObject body = new JsonObject();
+			body.add("ports", listed);
+			respond(exchange, 200, body.toString());
+		} else if ("DELETE".equals(method) && portsById.remove(path.substring(1)) != null) {
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		} else {
+			respond(exchange, 404, "{}");
+		}
+	}
+
+	private static Map<String, List<String>> parseFilters(HttpExchange exchange) throws IOException {
+		Map<String, List<String>> filters = Maps.newHashMap();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return filters;
+		}
+		for (String parameter : query.split("&")) {
+			String[] keyValue = parameter.split("=", 2);
+			if (!filters.containsKey(keyValue[0])) {
+				filters.put(keyValue[0], Lists.<String>newArrayList());
+			}
+			filters.get(keyValue[0]).add(URLDecoder.decode(keyValue[1], "UTF-8"));
+		}
+		return filters;
+	}
+
+	/**
+	 * Matches the way Neutron does: any of the values of a filter matches.
+	 */
+	private static boolean matches(JsonObject resource, Map<String, List<String>> filters) {
+		for (Map.Entry<String, List<String>> filter : filters.entrySet()) {
+			JsonElement value = resource.get(filter.getKey());
+			if (value == null || value.isJsonNull() || !filter.getValue().contains(value.getAsString())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String wrap(String name, JsonElement resource) {
+		JsonObject body = new JsonObject();
+		body.add(name, resource);
+		return body.toString();
+	}
+
+	private static JsonObject read(HttpExchange exchange) throws IOException {
+		return new JsonParser().parse(new String(ByteStreams.toByteArray(exchange.getRequestBody()), UTF8))
+				.getAsJsonObject();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
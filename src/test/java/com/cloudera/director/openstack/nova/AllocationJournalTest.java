@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+/**
+ * Tests {@link AllocationJournal}.
+ */
+public class AllocationJournalTest {
+
+	private static final List<String> INSTANCE_IDS = ImmutableList.of("instance-2", "instance-1");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+
+	@Before
+	public void setUp() {
+		directory = new File(folder.getRoot(), "journal");
+	}
+
+	@Test
+	public void testRecord_ResumedByTheSameInstanceIds() {
+		AllocationJournal journal = AllocationJournal.open(directory, INSTANCE_IDS);
+		assertThat(journal.isResumed()).isFalse();
+		journal.record("instance-1", AllocationJournal.Entry.SERVER, "server-1");
+		journal.record("instance-1", AllocationJournal.Entry.VOLUME, "volume-1");
+		journal.record("instance-1", AllocationJournal.Entry.VOLUME, "volume-2");
+		journal.record("instance-1", AllocationJournal.Phase.NETWORKED);
+		journal.close();
+
+		// The instance IDs may come back in any order.
+		AllocationJournal resumed = AllocationJournal.open(directory, ImmutableList.of("instance-1", "instance-2"));
+		assertThat(resumed.isResumed()).isTrue();
+		assertThat(resumed.get("instance-1", AllocationJournal.Entry.SERVER)).containsExactly("server-1");
+		assertThat(resumed.get("instance-1", AllocationJournal.Entry.VOLUME)).containsExactly("volume-1", "volume-2");
+		assertThat(resumed.hasPhase("instance-1", AllocationJournal.Phase.NETWORKED)).isTrue();
+		assertThat(resumed.hasPhase("instance-1", AllocationJournal.Phase.COMPLETE)).isFalse();
+		assertThat(resumed.get("instance-2", AllocationJournal.Entry.SERVER)).isEmpty();
+
+		// Another allocation has a journal of its own.
+		assertThat(AllocationJournal.open(directory, ImmutableList.of("instance-1")).isResumed()).isFalse();
+	}
+
+	@Test
+	public void testOpen_SkipsTornLine() throws IOException {
+		AllocationJournal journal = AllocationJournal.open(directory, INSTANCE_IDS);
+		journal.record("instance-1", AllocationJournal.Entry.SERVER, "server-1");
+		journal.close();
+		File file = directory.listFiles()[0];
+		Files.append("instance-2\tSERV", file, Charset.forName("UTF-8"));
+
+		AllocationJournal resumed = AllocationJournal.open(directory, INSTANCE_IDS);
+		assertThat(resumed.get("instance-1", AllocationJournal.Entry.SERVER)).containsExactly("server-1");
+		assertThat(resumed.get("instance-2", AllocationJournal.Entry.SERVER)).isEmpty();
+	}
+
+	@Test
+	public void testDiscard() {
+		AllocationJournal journal = AllocationJournal.open(directory, INSTANCE_IDS);
+		journal.record("instance-1", AllocationJournal.Entry.SERVER, "server-1");
+		journal.discard();
+		assertThat(directory.listFiles()).isEmpty();
+		assertThat(AllocationJournal.open(directory, INSTANCE_IDS).isResumed()).isFalse();
+	}
+
+	@Test
+	public void testRecord_UnwritableDirectory() throws IOException {
+		// A file in the way of the directory keeps the journal in memory.
+		Files.touch(directory);
+		AllocationJournal journal = AllocationJournal.open(directory, INSTANCE_IDS);
+		journal.record("instance-1", AllocationJournal.Entry.FLOATING_IP, "floating-ip-1");
+		assertThat(journal.get("instance-1", AllocationJournal.Entry.FLOATING_IP)).containsExactly("floating-ip-1");
+	}
+}
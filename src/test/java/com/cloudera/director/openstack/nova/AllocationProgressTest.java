@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link AllocationProgress}.
+ */
+public class AllocationProgressTest {
+
+	@Test
+	public void testCompleted_SatisfiedAtRequiredCount() throws InterruptedException {
+		AllocationProgress progress = new AllocationProgress(ImmutableList.of("a", "b", "c"), 2);
+		progress.completed("a");
+		// Completing the same instance twice counts once.
+		progress.completed("a");
+		assertThat(progress.isSatisfied()).isFalse();
+
+		progress.completed("c");
+		assertThat(progress.isSatisfied()).isTrue();
+		progress.awaitSatisfied();
+		assertThat(progress.getPendingInstanceIds()).containsOnly("b");
+		assertThat(progress.isPending("b")).isTrue();
+		assertThat(progress.isPending("a")).isFalse();
+		assertThat(progress.awaitFinished(0, TimeUnit.SECONDS)).isFalse();
+	}
+
+	@Test
+	public void testFinished_WakesUpWaiter() throws InterruptedException {
+		AllocationProgress progress = new AllocationProgress(ImmutableList.of("a", "b"), 2);
+		progress.finished();
+
+		progress.awaitSatisfied();
+		assertThat(progress.isSatisfied()).isFalse();
+		assertThat(progress.awaitFinished(0, TimeUnit.SECONDS)).isTrue();
+	}
+}
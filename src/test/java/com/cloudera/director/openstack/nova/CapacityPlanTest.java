@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link CapacityPlan}.
+ */
+public class CapacityPlanTest {
+
+	@Test
+	public void testGetFittingCount_TightestQuota() {
+		CapacityPlan plan = new CapacityPlan()
+				.require("instances", 10, 2, 1)
+				.require("cores", 40, 20, 4)
+				.require("RAM (MB)", -1, 65536, 8192);
+
+		assertThat(plan.getFittingCount(3)).isEqualTo(3);
+		assertThat(plan.getFittingCount(8)).isEqualTo(5);
+		assertThat(plan.describeShortfall(8)).isEqualTo("cores: 20 of 40 used, 4 per instance");
+		assertThat(plan.describeShortfall(3)).isEmpty();
+	}
+
+	@Test
+	public void testGetFittingCount_OverQuota() {
+		CapacityPlan plan = new CapacityPlan().require("volumes", 10, 12, 2);
+
+		assertThat(plan.getFittingCount(1)).isEqualTo(0);
+	}
+}
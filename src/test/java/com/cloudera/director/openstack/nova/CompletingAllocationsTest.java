@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link CompletingAllocations}.
+ */
+public class CompletingAllocationsTest {
+
+	@Test
+	public void testIsCompleting_ByInstanceId() {
+		CompletingAllocations allocations = new CompletingAllocations();
+		AllocationProgress progress = new AllocationProgress(ImmutableList.of("a", "b"), 1);
+		allocations.add(progress);
+		progress.completed("a");
+
+		assertThat(allocations.isCompleting("a")).isFalse();
+		assertThat(allocations.isCompleting("b")).isTrue();
+		assertThat(allocations.isCompleting("c")).isFalse();
+
+		allocations.remove(progress);
+		assertThat(allocations.isCompleting("b")).isFalse();
+	}
+
+	@Test
+	public void testRemove_LeavesInstancesTakenOver() {
+		CompletingAllocations allocations = new CompletingAllocations();
+		AllocationProgress first = new AllocationProgress(ImmutableList.of("a", "b"), 1);
+		AllocationProgress retry = new AllocationProgress(ImmutableList.of("b"), 1);
+		allocations.add(first);
+		allocations.add(retry);
+
+		allocations.remove(first);
+		assertThat(allocations.isCompleting("a")).isFalse();
+		assertThat(allocations.isCompleting("b")).isTrue();
+	}
+}
@@ -0,0 +1,752 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.openstack.cinder.v1.domain.Volume;
+import org.jclouds.openstack.cinder.v1.features.VolumeApi;
+import org.jclouds.openstack.cinder.v1.options.CreateVolumeOptions;
+import org.jclouds.openstack.nova.v2_0.domain.Address;
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.domain.ServerExtendedAttributes;
+import org.jclouds.openstack.nova.v2_0.domain.Server.Status;
+import org.jclouds.openstack.nova.v2_0.domain.ServerCreated;
+import org.jclouds.openstack.nova.v2_0.domain.VolumeAttachment;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.jclouds.openstack.nova.v2_0.options.CreateServerOptions;
+import org.jclouds.openstack.v2_0.domain.Link;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
+import org.jclouds.openstack.v2_0.domain.Resource;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
+import org.junit.Ignore;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Queues;
+
+/**
+ * A stateful stand-in for the Nova server, Cinder volume, volume attachment and
+ * floating IP APIs, wired into Mockito mocks so that tests can still verify calls.
+ * Resources advance one step along their scripted lifecycle each time they are
+ * observed through a get or a listing, so tests do not depend on how often the
+ * provider polls.
+ */
+@Ignore
+public class FakeNovaCloud {
+
+	/**
+	 * The scripted lifecycle of a server.
+	 */
+	public static class FakeServer {
+		private final String id;
+		private String name;
+		private Map<String, String> metadata = Maps.newHashMap();
+		private String availabilityZone;
+		private String hostId;
+		private String hypervisorHostName;
+		private String privateIp;
+		private Map<String, String> otherIpsByNetworks = Maps.newLinkedHashMap();
+		private boolean withAddress = true;
+		private boolean failCreate = false;
+		private Deque<Status> statuses = Queues.newArrayDeque(Arrays.asList(Status.BUILD, Status.ACTIVE));
+		private Status status = Status.BUILD;
+		private boolean created = false;
+		private int observations = 0;
+		private Map<String, Status> peerStatusesAtCreation = ImmutableMap.of();
+
+		private FakeServer(String id) {
+			this.id = id;
+		}
+
+		public FakeServer privateIp(String privateIp) {
+			this.privateIp = privateIp;
+			return this;
+		}
+
+		public FakeServer otherIp(String network, String ip) {
+			this.otherIpsByNetworks.put(network, ip);
+			return this;
+		}
+
+		public FakeServer hostId(String hostId) {
+			this.hostId = hostId;
+			return this;
+		}
+
+		public FakeServer hypervisorHostName(String hypervisorHostName) {
+			this.hypervisorHostName = hypervisorHostName;
+			return this;
+		}
+
+		public FakeServer withoutAddress() {
+			this.withAddress = false;
+			return this;
+		}
+
+		public FakeServer failCreate() {
+			this.failCreate = true;
+			return this;
+		}
+
+		public FakeServer statuses(Status... statuses) {
+			this.statuses = Queues.newArrayDeque(Arrays.asList(statuses));
+			this.status = statuses[0];
+			return this;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public Map<String, String> getMetadata() {
+			return metadata;
+		}
+
+		public String getAvailabilityZone() {
+			return availabilityZone;
+		}
+
+		public int getObservations() {
+			return observations;
+		}
+
+		public Map<String, Status> getPeerStatusesAtCreation() {
+			return peerStatusesAtCreation;
+		}
+
+		private Server observe() {
+			observations++;
+			Server snapshot = snapshot();
+			if (status != Status.DELETED && statuses.size() > 1) {
+				statuses.removeFirst();
+				status = statuses.peekFirst();
+			}
+			return snapshot;
+		}
+
+		private Server snapshot() {
+			// Nova lists the addresses by network in NIC order.
+			Multimap<String, Address> addresses = LinkedListMultimap.create();
+			if (withAddress && privateIp != null) {
+				addresses.put("private", Address.createV4(privateIp));
+				for (Map.Entry<String, String> otherIp : otherIpsByNetworks.entrySet()) {
+					addresses.put(otherIp.getKey(), Address.createV4(otherIp.getValue()));
+				}
+			}
+			return Server.builder()
+					.id(id)
+					.name(name)
+					.tenantId("tenant")
+					.userId("user")
+					.created(new Date())
+					.updated(new Date())
+					.status(status)
+					.image(Resource.builder().id("image").build())
+					.flavor(Resource.builder().id("flavor").build())
+					.addresses(addresses)
+					// Nova lists deleted servers without their metadata.
+					.metadata(status == Status.DELETED ? ImmutableMap.<String, String>of() : ImmutableMap.copyOf(metadata))
+					.availabilityZone(availabilityZone)
+					.hostId(hostId)
+					.extendedAttributes(ServerExtendedAttributes.builder()
+							.hypervisorHostName(hypervisorHostName)
+							.build())
+					.build();
+		}
+	}
+
+	/**
+	 * The scripted lifecycle of a volume.
+	 */
+	public static class FakeVolume {
+		private final String id;
+		private int size;
+		private Map<String, String> metadata = Maps.newHashMap();
+		private Deque<Volume.Status> statuses =
+				Queues.newArrayDeque(Arrays.asList(Volume.Status.CREATING, Volume.Status.AVAILABLE));
+		private Volume.Status status = Volume.Status.CREATING;
+		private boolean failAttach = false;
+		private boolean gone = false;
+		private String serverId;
+
+		private FakeVolume(String id) {
+			this.id = id;
+		}
+
+		public FakeVolume statuses(Volume.Status... statuses) {
+			this.statuses = Queues.newArrayDeque(Arrays.asList(statuses));
+			this.status = statuses[0];
+			return this;
+		}
+
+		public FakeVolume failAttach() {
+			this.failAttach = true;
+			return this;
+		}
+
+		public FakeVolume attachedTo(String serverId) {
+			this.serverId = serverId;
+			script(Volume.Status.IN_USE);
+			return this;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public Volume.Status getStatus() {
+			return status;
+		}
+
+		public String getServerId() {
+			return serverId;
+		}
+
+		public boolean isGone() {
+			return gone;
+		}
+
+		private void script(Volume.Status... next) {
+			statuses = Queues.newArrayDeque(Arrays.asList(next));
+			status = next[0];
+		}
+
+		private Volume observe() {
+			if (gone) {
+				return null;
+			}
+			Volume snapshot = snapshot();
+			if (status == Volume.Status.DELETING) {
+				gone = true;
+			} else if (statuses.size() > 1) {
+				statuses.removeFirst();
+				status = statuses.peekFirst();
+			}
+			return snapshot;
+		}
+
+		private Volume snapshot() {
+			return Volume.builder()
+					.id(id)
+					.size(size)
+					.status(status)
+					.created(new Date())
+					.metadata(ImmutableMap.copyOf(metadata))
+					.build();
+		}
+	}
+
+	private final ListMultimap<String, FakeServer> serversByName = ArrayListMultimap.create();
+	private final Map<String, FakeServer> serversById = Maps.newLinkedHashMap();
+	private final Map<String, FakeVolume> volumesById = Maps.newLinkedHashMap();
+	private final Deque<FakeVolume> expectedVolumes = Queues.newArrayDeque();
+	private final Map<String, FloatingIP> floatingIpsById = Maps.newLinkedHashMap();
+	private final Deque<FloatingIP> expectedFloatingIps = Queues.newArrayDeque();
+	private final List<String> changesSinceQueries = Lists.newArrayList();
+	private int generatedIds = 0;
+
+	/**
+	 * Expects a server to be created with the given name, and assigns it the given ID.
+	 * Servers expected with the same name are created in turn.
+	 *
+	 * @param name the server name
+	 * @param id   the server ID
+	 * @return the server script
+	 */
+	public synchronized FakeServer expectServer(String name, String id) {
+		FakeServer server = new FakeServer(id);
+		server.name = name;
+		serversByName.put(name, server);
+		return server;
+	}
+
+	/**
+	 * Adds an already existing server.
+	 *
+	 * @param id         the server ID
+	 * @param name       the server name
+	 * @param directorId the Director instance ID in the server metadata, or null
+	 * @param status     the server status
+	 * @return the server script
+	 */
+	public synchronized FakeServer addServer(String id, String name, String directorId, Status status) {
+		FakeServer server = expectServer(name, id).statuses(status);
+		server.created = true;
+		if (directorId != null) {
+			server.metadata.put("DIRECTOR_ID", directorId);
+		}
+		serversById.put(id, server);
+		return server;
+	}
+
+	/**
+	 * Expects a volume to be created next, and assigns it the given ID.
+	 *
+	 * @param id the volume ID
+	 * @return the volume script
+	 */
+	public synchronized FakeVolume expectVolume(String id) {
+		FakeVolume volume = new FakeVolume(id);
+		expectedVolumes.addLast(volume);
+		return volume;
+	}
+
+	/**
+	 * Adds an already existing volume.
+	 *
+	 * @param id         the volume ID
+	 * @param directorId the Director instance ID in the volume metadata
+	 * @param status     the volume status
+	 * @return the volume script
+	 */
+	public synchronized FakeVolume addVolume(String id, String directorId, Volume.Status status) {
+		FakeVolume volume = new FakeVolume(id).statuses(status);
+		volume.metadata.put("DIRECTOR_ID", directorId);
+		volumesById.put(id, volume);
+		return volume;
+	}
+
+	/**
+	 * Expects a floating IP to be allocated next.
+	 *
+	 * @param id the floating IP ID
+	 * @param ip the floating IP address
+	 */
+	public synchronized void expectFloatingIp(String id, String ip) {
+		expectedFloatingIps.addLast(FloatingIP.builder().id(id).ip(ip).build());
+	}
+
+	/**
+	 * Adds an already allocated floating IP.
+	 *
+	 * @param id         the floating IP ID
+	 * @param ip         the floating IP address
+	 * @param instanceId the ID of the server it is associated to, or null
+	 */
+	public synchronized void addFloatingIp(String id, String ip, String instanceId) {
+		floatingIpsById.put(id, FloatingIP.builder().id(id).ip(ip).instanceId(instanceId).build());
+	}
+
+	public synchronized FakeServer getServer(String id) {
+		return serversById.get(id);
+	}
+
+	public synchronized FakeVolume getVolume(String id) {
+		return volumesById.get(id);
+	}
+
+	public synchronized List<FakeVolume> getVolumes() {
+		return ImmutableList.copyOf(volumesById.values());
+	}
+
+	public synchronized List<FloatingIP> getFloatingIps() {
+		return ImmutableList.copyOf(floatingIpsById.values());
+	}
+
+	public synchronized List<String> getChangesSinceQueries() {
+		return ImmutableList.copyOf(changesSinceQueries);
+	}
+
+	/**
+	 * Wires the fake into the server API mock.
+	 *
+	 * @param serverApi the server API mock
+	 */
+	public void install(ServerApi serverApi) {
+		when(serverApi.create(anyString(), anyString(), anyString(), any(CreateServerOptions.class)))
+			.thenAnswer(new Answer<ServerCreated>() {
+				@Override
+				public ServerCreated answer(InvocationOnMock invocation) throws Throwable {
+					Object[] args = invocation.getArguments();
+					return createServer((String) args[0], (CreateServerOptions) args[3]);
+				}
+			});
+		when(serverApi.get(anyString())).thenAnswer(new Answer<Server>() {
+			@Override
+			public Server answer(InvocationOnMock invocation) throws Throwable {
+				return getServer((String) invocation.getArguments()[0], true);
+			}
+		});
+		when(serverApi.delete(anyString())).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				return deleteServer((String) invocation.getArguments()[0]);
+			}
+		});
+		when(serverApi.listInDetail()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return PagedIterables.onlyPage(IterableWithMarkers.from(listServers(false)));
+			}
+		});
+		when(serverApi.listInDetail(any(PaginationOptions.class))).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				PaginationOptions options = (PaginationOptions) invocation.getArguments()[0];
+				Collection<String> changesSince = options == null ?
+						Collections.<String>emptyList() : options.buildQueryParameters().get("changes-since");
+				boolean delta = !changesSince.isEmpty();
+				if (delta) {
+					recordChangesSince(changesSince.iterator().next());
+				}
+				return new PaginatedCollection<Server>(listServers(delta), ImmutableList.<Link>of()) {
+				};
+			}
+		});
+		when(serverApi.getMetadata(anyString())).thenAnswer(new Answer<Map<String, String>>() {
+			@Override
+			public Map<String, String> answer(InvocationOnMock invocation) throws Throwable {
+				FakeServer server = getServer((String) invocation.getArguments()[0]);
+				return server == null ? null : ImmutableMap.copyOf(server.metadata);
+			}
+		});
+		when(serverApi.updateMetadata(anyString(), any(Map.class))).thenAnswer(new Answer<Map<String, String>>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public Map<String, String> answer(InvocationOnMock invocation) throws Throwable {
+				return updateServerMetadata((String) invocation.getArguments()[0],
+						(Map<String, String>) invocation.getArguments()[1]);
+			}
+		});
+	}
+
+	/**
+	 * Wires the fake into the volume API mock.
+	 *
+	 * @param volumeApi the volume API mock
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void install(VolumeApi volumeApi) {
+		when(volumeApi.create(anyInt(), any(CreateVolumeOptions.class))).thenAnswer(new Answer<Volume>() {
+			@Override
+			public Volume answer(InvocationOnMock invocation) throws Throwable {
+				Object[] args = invocation.getArguments();
+				return createVolume((Integer) args[0], (CreateVolumeOptions) args[1]);
+			}
+		});
+		when(volumeApi.get(anyString())).thenAnswer(new Answer<Volume>() {
+			@Override
+			public Volume answer(InvocationOnMock invocation) throws Throwable {
+				return getVolume((String) invocation.getArguments()[0], true);
+			}
+		});
+		when(volumeApi.delete(anyString())).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				return deleteVolume((String) invocation.getArguments()[0]);
+			}
+		});
+		when((Object) volumeApi.listInDetail()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return FluentIterable.from(listVolumes());
+			}
+		});
+	}
+
+	/**
+	 * Wires the fake into the volume attachment API mock.
+	 *
+	 * @param volumeAttachmentApi the volume attachment API mock
+	 */
+	public void install(VolumeAttachmentApi volumeAttachmentApi) {
+		when(volumeAttachmentApi.attachVolumeToServerAsDevice(anyString(), anyString(), anyString()))
+			.thenAnswer(new Answer<VolumeAttachment>() {
+				@Override
+				public VolumeAttachment answer(InvocationOnMock invocation) throws Throwable {
+					Object[] args = invocation.getArguments();
+					return attachVolume((String) args[0], (String) args[1], (String) args[2]);
+				}
+			});
+		when(volumeAttachmentApi.detachVolumeFromServer(anyString(), anyString()))
+			.thenAnswer(new Answer<Boolean>() {
+				@Override
+				public Boolean answer(InvocationOnMock invocation) throws Throwable {
+					Object[] args = invocation.getArguments();
+					return detachVolume((String) args[0], (String) args[1]);
+				}
+			});
+	}
+
+	/**
+	 * Wires the fake into the floating IP API mock.
+	 *
+	 * @param floatingIpApi the floating IP API mock
+	 */
+	public void install(FloatingIPApi floatingIpApi) {
+		when(floatingIpApi.allocateFromPool(anyString())).thenAnswer(new Answer<FloatingIP>() {
+			@Override
+			public FloatingIP answer(InvocationOnMock invocation) throws Throwable {
+				return allocateFloatingIp((String) invocation.getArguments()[0]);
+			}
+		});
+		when(floatingIpApi.get(anyString())).thenAnswer(new Answer<FloatingIP>() {
+			@Override
+			public FloatingIP answer(InvocationOnMock invocation) throws Throwable {
+				return getFloatingIp((String) invocation.getArguments()[0]);
+			}
+		});
+		when(floatingIpApi.list()).thenAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				return FluentIterable.from(getFloatingIps());
+			}
+		});
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				Object[] args = invocation.getArguments();
+				associateFloatingIp((String) args[0], (String) args[1]);
+				return null;
+			}
+		}).when(floatingIpApi).addToServer(anyString(), anyString());
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				Object[] args = invocation.getArguments();
+				associateFloatingIp((String) args[0], null);
+				return null;
+			}
+		}).when(floatingIpApi).removeFromServer(anyString(), anyString());
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				deleteFloatingIp((String) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(floatingIpApi).delete(anyString());
+	}
+
+	private synchronized ServerCreated createServer(String name, CreateServerOptions options) {
+		FakeServer server = null;
+		for (FakeServer expected : serversByName.get(name)) {
+			if (!expected.created) {
+				server = expected;
+				break;
+			}
+		}
+		if (server == null) {
+			server = expectServer(name, "server-" + (++generatedIds));
+		}
+		// A server failing to be created is used up too, so that a retry gets the next one.
+		server.created = true;
+		if (server.failCreate) {
+			server.availabilityZone = options.getAvailabilityZone();
+			throw new IllegalStateException("Quota exceeded for instances.");
+		}
+		Map<String, Status> peerStatuses = Maps.newHashMap();
+		for (FakeServer peer : serversById.values()) {
+			peerStatuses.put(peer.id, peer.status);
+		}
+		server.peerStatusesAtCreation = peerStatuses;
+		Map<String, String> metadata = readField(options, "metadata");
+		if (metadata != null) {
+			server.metadata.putAll(metadata);
+		}
+		server.availabilityZone = options.getAvailabilityZone();
+		serversById.put(server.id, server);
+		return ServerCreated.builder().id(server.id).name(name).build();
+	}
+
+	private synchronized Server getServer(String id, boolean observe) {
+		FakeServer server = serversById.get(id);
+		if (server == null) {
+			return null;
+		}
+		return observe ? server.observe() : server.snapshot();
+	}
+
+	private synchronized boolean deleteServer(String id) {
+		FakeServer server = serversById.get(id);
+		if (server == null || server.status == Status.DELETED) {
+			return false;
+		}
+		server.statuses(Status.DELETED);
+		for (FloatingIP floatingIp : Lists.newArrayList(floatingIpsById.values())) {
+			if (id.equals(floatingIp.getInstanceId())) {
+				associateFloatingIp(floatingIp.getIp(), null);
+			}
+		}
+		for (FakeVolume volume : volumesById.values()) {
+			if (id.equals(volume.serverId)) {
+				volume.serverId = null;
+				volume.script(Volume.Status.AVAILABLE);
+			}
+		}
+		return true;
+	}
+
+	private synchronized List<Server> listServers(boolean includeDeleted) {
+		List<Server> servers = Lists.newArrayList();
+		for (FakeServer server : serversById.values()) {
+			if (includeDeleted || server.status != Status.DELETED) {
+				servers.add(server.observe());
+			}
+		}
+		return servers;
+	}
+
+	private synchronized void recordChangesSince(String changesSince) {
+		changesSinceQueries.add(changesSince);
+	}
+
+	private synchronized Map<String, String> updateServerMetadata(String id, Map<String, String> metadata) {
+		FakeServer server = serversById.get(id);
+		if (server == null) {
+			return null;
+		}
+		server.metadata.putAll(metadata);
+		return ImmutableMap.copyOf(server.metadata);
+	}
+
+	private synchronized Volume createVolume(int size, CreateVolumeOptions options) {
+		FakeVolume volume = expectedVolumes.isEmpty() ?
+				new FakeVolume("volume-" + (++generatedIds)) : expectedVolumes.removeFirst();
+		volume.size = size;
+		Map<String, String> metadata = readField(options, "metadata");
+		if (metadata != null) {
+			volume.metadata.putAll(metadata);
+		}
+		volumesById.put(volume.id, volume);
+		return volume.snapshot();
+	}
+
+	private synchronized Volume getVolume(String id, boolean observe) {
+		FakeVolume volume = volumesById.get(id);
+		if (volume == null) {
+			return null;
+		}
+		return observe ? volume.observe() : (volume.gone ? null : volume.snapshot());
+	}
+
+	private synchronized boolean deleteVolume(String id) {
+		FakeVolume volume = volumesById.get(id);
+		if (volume == null || volume.gone || volume.status == Volume.Status.IN_USE) {
+			return false;
+		}
+		volume.script(Volume.Status.DELETING);
+		return true;
+	}
+
+	private synchronized List<Volume> listVolumes() {
+		List<Volume> volumes = Lists.newArrayList();
+		for (FakeVolume volume : volumesById.values()) {
+			Volume snapshot = volume.observe();
+			if (snapshot != null) {
+				volumes.add(snapshot);
+			}
+		}
+		return volumes;
+	}
+
+	private synchronized VolumeAttachment attachVolume(String volumeId, String serverId, String device) {
+		FakeVolume volume = volumesById.get(volumeId);
+		if (volume == null || volume.status != Volume.Status.AVAILABLE) {
+			throw new IllegalStateException("Volume " + volumeId + " is not available.");
+		}
+		if (volume.failAttach) {
+			volume.script(Volume.Status.ATTACHING, Volume.Status.ERROR);
+		} else {
+			volume.serverId = serverId;
+			volume.script(Volume.Status.ATTACHING, Volume.Status.IN_USE);
+		}
+		return VolumeAttachment.builder().id(volumeId).volumeId(volumeId).serverId(serverId).device(device).build();
+	}
+
+	private synchronized boolean detachVolume(String volumeId, String serverId) {
+		FakeVolume volume = volumesById.get(volumeId);
+		if (volume == null || !serverId.equals(volume.serverId)) {
+			return false;
+		}
+		volume.serverId = null;
+		volume.script(Volume.Status.AVAILABLE);
+		return true;
+	}
+
+	private synchronized FloatingIP allocateFloatingIp(String pool) {
+		FloatingIP floatingIp = expectedFloatingIps.isEmpty() ?
+				FloatingIP.builder().id("floating-ip-" + (++generatedIds)).ip("172.16.1." + generatedIds).build() :
+				expectedFloatingIps.removeFirst();
+		floatingIp = floatingIp.toBuilder().pool(pool).build();
+		floatingIpsById.put(floatingIp.getId(), floatingIp);
+		return floatingIp;
+	}
+
+	private synchronized FloatingIP getFloatingIp(String id) {
+		return floatingIpsById.get(id);
+	}
+
+	private synchronized void associateFloatingIp(String ip, String serverId) {
+		for (FloatingIP floatingIp : Lists.newArrayList(floatingIpsById.values())) {
+			if (floatingIp.getIp().equals(ip)) {
+				floatingIpsById.put(floatingIp.getId(), floatingIp.toBuilder().instanceId(serverId).build());
+			}
+		}
+	}
+
+	private synchronized void deleteFloatingIp(String id) {
+		floatingIpsById.remove(id);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T readField(Object target, String name) {
+		// The field may be declared by a superclass, as with the options of a server group.
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return (T) field.get(target);
+			} catch (NoSuchFieldException e) {
+				continue;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		throw new IllegalStateException("No field " + name + " in " + target.getClass());
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.domain.Flavor;
+import org.jclouds.openstack.nova.v2_0.extensions.FlavorExtraSpecsApi;
+import org.jclouds.openstack.nova.v2_0.features.FlavorApi;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests {@link FlavorCatalog}.
+ */
+public class FlavorCatalogTest {
+
+	private static final String REGION = "regionOne";
+
+	@Test
+	public void testLoad() {
+		NovaApi novaApi = mock(NovaApi.class);
+		FlavorApi flavorApi = mock(FlavorApi.class);
+		FlavorExtraSpecsApi extraSpecsApi = mock(FlavorExtraSpecsApi.class);
+		when(novaApi.getFlavorApi(REGION)).thenReturn(flavorApi);
+		when(novaApi.getFlavorExtraSpecsApi(REGION)).thenReturn(Optional.of(extraSpecsApi));
+		Flavor large = mockFlavor("1", "m1.large", 4, 8192, Optional.of(0), Optional.of(""));
+		Flavor pinned = mockFlavor("2", "hdfs.pinned", 8, 32768, Optional.of(200), Optional.of("4096"));
+		when(flavorApi.listInDetail()).thenReturn(
+				PagedIterables.onlyPage(IterableWithMarkers.from(Lists.newArrayList(large, pinned))));
+		when(extraSpecsApi.getMetadata("1")).thenThrow(new IllegalStateException("Forbidden"));
+		when(extraSpecsApi.getMetadata("2")).thenReturn(ImmutableMap.of("hw:cpu_policy", "dedicated"));
+
+		FlavorCatalog catalog = FlavorCatalog.load(novaApi, REGION);
+
+		// The extra specs of a flavor which cannot be read are left out.
+		assertThat(catalog.getFlavor("m1.large").getExtraSpecs()).isEmpty();
+		assertThat(catalog.getFlavor("m1.large").getSwap()).isEqualTo(0);
+		FlavorCatalog.FlavorTraits flavor = catalog.getFlavor("hdfs.pinned");
+		assertThat(flavor.getId()).isEqualTo("2");
+		assertThat(flavor.getEphemeral()).isEqualTo(200);
+		assertThat(flavor.getSwap()).isEqualTo(4096);
+		assertThat(flavor.getExtraSpecs()).containsEntry("hw:cpu_policy", "dedicated");
+		assertThat(catalog.getFlavor("m1.xlarge")).isNull();
+	}
+
+	@Test
+	public void testRecommend() {
+		FlavorCatalog catalog = new FlavorCatalog(ImmutableList.of(
+				traits("hdfs.xlarge", 16, 65536, 400, "dedicated"),
+				traits("hdfs.large", 8, 32768, 200, "dedicated"),
+				traits("m1.large", 8, 32768, 200, "shared"),
+				traits("m1.small", 1, 2048, 0, "shared")), 0L);
+
+		assertThat(catalog.recommend(FlavorRequirements.parse("vcpus=8,ephemeral=100")).getName())
+				.isEqualTo("hdfs.large");
+		assertThat(catalog.recommend(FlavorRequirements.parse("vcpus=2,hw:cpu_policy=dedicated")).getName())
+				.isEqualTo("hdfs.large");
+		assertThat(catalog.recommend(FlavorRequirements.parse("ram=65537"))).isNull();
+		assertThat(catalog.recommend(FlavorRequirements.parse("")).getName()).isEqualTo("m1.small");
+	}
+
+	@Test
+	public void testIsOlderThan() {
+		FlavorCatalog catalog = new FlavorCatalog(ImmutableList.<FlavorCatalog.FlavorTraits>of(), 1000L);
+		assertThat(catalog.isOlderThan(500L, 1400L)).isFalse();
+		assertThat(catalog.isOlderThan(500L, 1600L)).isTrue();
+	}
+
+	@Test
+	public void testCache_ReadOnceWhileFresh() {
+		NovaApi novaApi = mock(NovaApi.class);
+		FlavorApi flavorApi = mock(FlavorApi.class);
+		when(novaApi.getFlavorApi(REGION)).thenReturn(flavorApi);
+		when(novaApi.getFlavorExtraSpecsApi(REGION)).thenReturn(Optional.<FlavorExtraSpecsApi>absent());
+		Flavor large = mockFlavor("1", "m1.large", 4, 8192, Optional.of(0), Optional.of(""));
+		when(flavorApi.listInDetail()).thenReturn(
+				PagedIterables.onlyPage(IterableWithMarkers.from(Lists.newArrayList(large))));
+
+		FlavorCatalog.Cache cache = new FlavorCatalog.Cache(TimeUnit.MINUTES.toMillis(10));
+		FlavorCatalog catalog = cache.get(novaApi, REGION);
+
+		assertThat(cache.get(novaApi, REGION)).isSameAs(catalog);
+		verify(flavorApi, times(1)).listInDetail();
+	}
+
+	private static Flavor mockFlavor(String id, String name, int vcpus, int ram, Optional<Integer> ephemeral,
+			Optional<String> swap) {
+		Flavor flavor = mock(Flavor.class);
+		when(flavor.getId()).thenReturn(id);
+		when(flavor.getName()).thenReturn(name);
+		when(flavor.getVcpus()).thenReturn(vcpus);
+		when(flavor.getRam()).thenReturn(ram);
+		when(flavor.getDisk()).thenReturn(40);
+		when(flavor.getEphemeral()).thenReturn(ephemeral);
+		when(flavor.getSwap()).thenReturn(swap);
+		return flavor;
+	}
+
+	private static FlavorCatalog.FlavorTraits traits(String name, int vcpus, int ram, int ephemeral, String cpuPolicy) {
+		return new FlavorCatalog.FlavorTraits(name, name, vcpus, ram, 40, ephemeral, 0,
+				ImmutableMap.of("hw:cpu_policy", cpuPolicy));
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link FlavorRequirements}.
+ */
+public class FlavorRequirementsTest {
+
+	private static final FlavorCatalog.FlavorTraits PINNED = new FlavorCatalog.FlavorTraits("3", "hdfs.pinned",
+			8, 32768, 40, 200, 0, ImmutableMap.of("hw:cpu_policy", "dedicated", "hw:mem_page_size", "1GB",
+					"hw:numa_nodes", "2"));
+
+	@Test
+	public void testGetUnmet() {
+		FlavorRequirements requirements = FlavorRequirements.parse(
+				"vcpus=8, ram=65536, ephemeral=100, hw:cpu_policy=dedicated, hw:numa_nodes=1");
+		assertThat(requirements.getUnmet(PINNED)).containsExactly("ram=65536", "hw:numa_nodes=1");
+		assertThat(requirements.isMetBy(PINNED)).isFalse();
+		assertThat(requirements.toString())
+				.isEqualTo("vcpus=8,ram=65536,ephemeral=100,hw:cpu_policy=dedicated,hw:numa_nodes=1");
+	}
+
+	@Test
+	public void testIsMetBy_LargePages() {
+		// Any huge page size meets large pages, not the default small pages.
+		assertThat(FlavorRequirements.parse("hw:mem_page_size=large").isMetBy(PINNED)).isTrue();
+		assertThat(FlavorRequirements.parse("hw:mem_page_size=2048").isMetBy(PINNED)).isFalse();
+		FlavorCatalog.FlavorTraits small = new FlavorCatalog.FlavorTraits("1", "m1.large", 4, 8192, 80, 0, 0,
+				ImmutableMap.of("hw:mem_page_size", "small"));
+		assertThat(FlavorRequirements.parse("hw:mem_page_size=large").isMetBy(small)).isFalse();
+	}
+
+	@Test
+	public void testParse_Empty() {
+		assertThat(FlavorRequirements.parse(null).isEmpty()).isTrue();
+		assertThat(FlavorRequirements.parse(" , ").isMetBy(PINNED)).isTrue();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_NegativeMinimum() {
+		FlavorRequirements.parse("vcpus=-1");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_Duplicate() {
+		FlavorRequirements.parse("hw:cpu_policy=dedicated,hw:cpu_policy=shared");
+	}
+}
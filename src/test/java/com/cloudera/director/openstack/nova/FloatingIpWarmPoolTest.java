@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIP;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests {@link FloatingIpWarmPool} against a mocked floating IP API, refilling on the
+ * calling thread.
+ */
+public class FloatingIpWarmPoolTest {
+
+	private static final String POOL = "public";
+
+	private FloatingIPApi floatingIpApi;
+	private Map<String, FloatingIP> floatingIps;
+	private int allocated;
+
+	@Before
+	public void setUp() {
+		floatingIpApi = mock(FloatingIPApi.class);
+		floatingIps = Maps.newLinkedHashMap();
+		allocated = 0;
+		when(floatingIpApi.list()).thenAnswer(new Answer<FluentIterable<FloatingIP>>() {
+			@Override
+			public FluentIterable<FloatingIP> answer(InvocationOnMock invocation) {
+				return FluentIterable.from(ImmutableList.copyOf(floatingIps.values()));
+			}
+		});
+		when(floatingIpApi.allocateFromPool(anyString())).thenAnswer(new Answer<FloatingIP>() {
+			@Override
+			public FloatingIP answer(InvocationOnMock invocation) {
+				allocated++;
+				return add("allocated-" + allocated, (String) invocation.getArguments()[0], null);
+			}
+		});
+	}
+
+	@Test
+	public void testAcquire_ReusesUnassociated() {
+		add("associated", POOL, "server-1");
+		add("other-pool", "private", null);
+		add("free", POOL, null);
+		FloatingIpWarmPool warmPool = newWarmPool(1);
+
+		assertThat(warmPool.acquire(POOL).getId()).isEqualTo("free");
+		// The refill tops the warm pool up with a new floating IP.
+		verify(floatingIpApi, times(1)).allocateFromPool(POOL);
+		assertThat(warmPool.getReadyCount(POOL)).isEqualTo(1);
+	}
+
+	@Test
+	public void testAcquire_NeverHandsOutTwice() {
+		FloatingIpWarmPool warmPool = newWarmPool(2);
+
+		FloatingIP first = warmPool.acquire(POOL);
+		FloatingIP second = warmPool.acquire(POOL);
+		FloatingIP third = warmPool.acquire(POOL);
+		assertThat(ImmutableList.of(first.getId(), second.getId(), third.getId())).doesNotHaveDuplicates();
+		// After the first allocation on demand, hand outs come from the warm pool.
+		assertThat(second.getId()).isEqualTo("allocated-2");
+		assertThat(warmPool.getReadyCount(POOL)).isEqualTo(2);
+	}
+
+	@Test
+	public void testAcquire_ClaimOutlivesOlderListing() {
+		final FloatingIpWarmPool warmPool = newWarmPool(1);
+		final Map<String, FloatingIP> handedOut = Maps.newHashMap();
+		// Another hand out runs while the first adoption lists the floating IPs, so that
+		// the listing misses the floating IP it allocates.
+		when(floatingIpApi.list()).thenAnswer(new Answer<FluentIterable<FloatingIP>>() {
+			@Override
+			public FluentIterable<FloatingIP> answer(InvocationOnMock invocation) {
+				ImmutableList<FloatingIP> listing = ImmutableList.copyOf(floatingIps.values());
+				if (handedOut.isEmpty()) {
+					handedOut.put("concurrent", null);
+					handedOut.put("concurrent", warmPool.acquire(POOL));
+				}
+				return FluentIterable.from(listing);
+			}
+		});
+
+		FloatingIP first = warmPool.acquire(POOL);
+		FloatingIP second = warmPool.acquire(POOL);
+		assertThat(ImmutableList.of(handedOut.get("concurrent").getId(), first.getId(), second.getId()))
+				.doesNotHaveDuplicates();
+	}
+
+	@Test
+	public void testAcquire_Disabled() {
+		add("free", POOL, null);
+		FloatingIpWarmPool warmPool = newWarmPool(0);
+
+		assertThat(warmPool.acquire(POOL).getId()).isEqualTo("allocated-1");
+		verify(floatingIpApi, never()).list();
+		assertThat(warmPool.getReadyCount(POOL)).isEqualTo(0);
+	}
+
+	@Test
+	public void testRelease_AdoptedAgain() {
+		add("free", POOL, null);
+		FloatingIpWarmPool warmPool = newWarmPool(1);
+
+		FloatingIP floatingIp = warmPool.acquire(POOL);
+		warmPool.release(POOL, floatingIp);
+
+		// The floating IP the project held is kept, and handed out again.
+		verify(floatingIpApi, never()).delete(anyString());
+		assertThat(warmPool.getReadyCount(POOL)).isEqualTo(2);
+	}
+
+	@Test
+	public void testRelease_Disabled() {
+		FloatingIpWarmPool warmPool = newWarmPool(0);
+
+		warmPool.release(POOL, warmPool.acquire(POOL));
+
+		verify(floatingIpApi).delete("allocated-1");
+	}
+
+	private FloatingIpWarmPool newWarmPool(int size) {
+		return new FloatingIpWarmPool(Suppliers.ofInstance(floatingIpApi), size, MoreExecutors.sameThreadExecutor());
+	}
+
+	private FloatingIP add(String id, String pool, String instanceId) {
+		FloatingIP floatingIp = FloatingIP.builder().id(id).ip("172.16.0." + (floatingIps.size() + 1))
+				.pool(pool).instanceId(instanceId).build();
+		floatingIps.put(id, floatingIp);
+		return floatingIp;
+	}
+}
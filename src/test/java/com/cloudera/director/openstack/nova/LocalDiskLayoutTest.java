@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.jclouds.openstack.nova.v2_0.domain.BlockDeviceMapping;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests {@link LocalDiskLayout}.
+ */
+public class LocalDiskLayoutTest {
+
+	private static FlavorCatalog.FlavorTraits flavor(int ephemeral, int swap) {
+		return new FlavorCatalog.FlavorTraits("1", "hdfs.local", 8, 32768, 40, ephemeral, swap,
+				ImmutableMap.<String, String>of());
+	}
+
+	@Test
+	public void testOf_WholeEphemeralDisk() {
+		LocalDiskLayout layout = LocalDiskLayout.of(0, 10, flavor(400, 4096));
+		assertThat(layout.getDevices()).containsExactly("/dev/vdb");
+		assertThat(layout.getDiskSize()).isEqualTo(400);
+		assertThat(layout.getSwapDevice()).isEqualTo("/dev/vdc");
+		// Nova gives the server the ephemeral disk of the flavor on its own.
+		assertThat(layout.getBlockDeviceMappings("rhel6")).isEmpty();
+		assertThat(layout.getMappedDiskNumber()).isEqualTo(0);
+		assertThat(layout.getMetadata()).containsEntry(NovaInstance.DIRECTOR_LOCAL_DISKS, "/dev/vdb")
+				.containsEntry(NovaInstance.DIRECTOR_LOCAL_DISK_SIZE, "400")
+				.containsEntry(NovaInstance.DIRECTOR_SWAP_DISK, "/dev/vdc");
+	}
+
+	@Test
+	public void testOf_MappedDisks() {
+		LocalDiskLayout layout = LocalDiskLayout.of(2, 200, flavor(400, 0));
+		assertThat(layout.getDevices()).containsExactly("/dev/vdb", "/dev/vdc");
+		assertThat(layout.getSwapDevice()).isNull();
+		assertThat(layout.getMetadata()).doesNotContainKey(NovaInstance.DIRECTOR_SWAP_DISK);
+
+		int localDisks = 0;
+		for (BlockDeviceMapping mapping : layout.getBlockDeviceMappings("rhel6")) {
+			assertThat(mapping.getDestinationType()).isEqualTo("local");
+			if ("blank".equals(mapping.getSourceType())) {
+				assertThat(mapping.getVolumeSize()).isEqualTo(200);
+				localDisks++;
+			} else {
+				assertThat(mapping.getUuid()).isEqualTo("rhel6");
+				assertThat(mapping.getBootIndex()).isEqualTo(0);
+			}
+		}
+		assertThat(localDisks).isEqualTo(2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_NoEphemeralDisk() {
+		LocalDiskLayout.of(0, 10, flavor(0, 4096));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_EphemeralDiskTooSmall() {
+		LocalDiskLayout.of(3, 200, flavor(400, 0));
+	}
+}
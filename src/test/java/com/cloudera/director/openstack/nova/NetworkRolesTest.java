@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link NetworkRoles}.
+ */
+public class NetworkRolesTest {
+
+	@Test
+	public void testParse() {
+		NetworkRoles networkRoles = NetworkRoles.parse("net-1", "data=net-2, storage=net-3");
+		assertThat(networkRoles.getRoles()).containsExactly(NetworkRoles.MANAGEMENT_ROLE, "data", "storage");
+		assertThat(networkRoles.getNetworkIds()).containsExactly("net-1", "net-2", "net-3");
+		assertThat(networkRoles.getNetworkId("data")).isEqualTo("net-2");
+		assertThat(NetworkRoles.parseRoles(networkRoles.formatRoles())).isEqualTo(networkRoles.getRoles());
+		assertThat(NetworkRoles.parse("net-1", null).getNetworkIds()).containsExactly("net-1");
+		assertThat(NetworkRoles.parseRoles(null)).containsExactly(NetworkRoles.MANAGEMENT_ROLE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_DuplicateRole() {
+		NetworkRoles.parse("net-1", "data=net-2,data=net-3");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_MissingNetwork() {
+		NetworkRoles.parse("net-1", "data=");
+	}
+
+	@Test
+	public void testParseByRole() {
+		NetworkRoles networkRoles = NetworkRoles.parse("net-1", "data=net-2");
+		assertThat(networkRoles.parseByRole("QoS policy", "management=limit, data=minimum"))
+				.containsEntry(NetworkRoles.MANAGEMENT_ROLE, "limit").containsEntry("data", "minimum");
+		assertThat(networkRoles.parseByRole("QoS policy", null)).isEmpty();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseByRole_UnknownRole() {
+		NetworkRoles.parse("net-1", null).parseByRole("QoS policy", "data=minimum");
+	}
+}
@@ -17,21 +17,55 @@
 package com.cloudera.director.openstack.nova;
 
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.AVAILABILITY_ZONE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.ADDITIONAL_NETWORKS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.COMPLETION_GRACE_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.FLAVOR_REQUIREMENTS;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.KEY_NAME;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.NETWORK_ID;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.QOS_POLICIES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.RACK_MAPPING;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SECURITY_GROUP_NAMES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SERVER_GROUP_POLICY;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VNIC_TYPE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_NUMBER;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SPARE_INSTANCES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_FACTOR;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.TYPE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_PROVISIONING;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_START_PERCENT;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.FLAVOR_NOT_FOUND_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.FLAVOR_REQUIREMENTS_UNMET_BY_ALL_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.FLAVOR_REQUIREMENTS_UNMET_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_COMPLETION_GRACE_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_FLAVOR_REQUIREMENTS_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_KEY_NAME_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_LOCAL_DISKS_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_IMAGE_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_SECURITY_GROUP_NAME_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_SERVER_GROUP_POLICY_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_SPARE_INSTANCES_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_STRAGGLER_FACTOR_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_STRAGGLER_TIMEOUT_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_ADDITIONAL_NETWORKS_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_AVAILABILITY_ZONE_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_PREFIX_LENGTH_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_RACK_MAPPING_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_VNIC_TYPE_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_VOLUME_NUMBER_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_VOLUME_PROVISIONING_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_VOLUME_SIZE_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_WAVE_START_PERCENT_MSG;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.PREFIX_MISSING_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.INVALID_QOS_POLICIES_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.QOS_POLICIES_WITHOUT_NEUTRON_PORTS_MSG;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationValidator.QOS_POLICY_NOT_FOUND_MSG;
 import static com.cloudera.director.spi.v1.model.InstanceTemplate.InstanceTemplateConfigurationPropertyToken.INSTANCE_NAME_PREFIX;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.AdditionalMatchers.not;
 import static org.mockito.Mockito.mock;
@@ -43,6 +77,8 @@ import java.util.Locale;
 import java.util.Map;
 
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.cloudera.director.spi.v1.model.Configured;
 import com.cloudera.director.spi.v1.model.util.SimpleConfiguration;
@@ -59,6 +95,7 @@ import org.jclouds.openstack.nova.v2_0.domain.regionscoped.AvailabilityZone;
 import org.junit.Before;
 
 import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.neutron.NeutronApi;
 import com.cloudera.director.spi.v1.model.ConfigurationPropertyToken;
 import com.cloudera.director.spi.v1.model.LocalizationContext;
 import com.cloudera.director.spi.v1.model.exception.PluginExceptionCondition;
@@ -75,6 +112,7 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 	private NovaProvider novaProvider;
 	private OpenStackCredentials credentials;
 	private NovaApi novaApi;
+	private NeutronApi neutronApi;
 	private String region = "regionOne";
 	private NovaInstanceTemplateConfigurationValidator validator;
 	private PluginExceptionConditionAccumulator accumulator;
@@ -119,6 +157,10 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 		when(securityGroup.getName()).thenReturn("myGroup");
 		FluentIterable<SecurityGroup> securityGroups= FluentIterable.from(Lists.newArrayList(securityGroup));
 		when(securityGroupApi.list()).thenReturn(securityGroups);
+
+		neutronApi = mock(NeutronApi.class);
+		when(neutronApi.getQosPolicyIds(anyCollectionOf(String.class)))
+				.thenReturn(ImmutableMap.of("hdfs-limit", "qos-1"));
 	}
 
 
@@ -136,6 +178,12 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 		verifySingleError(AVAILABILITY_ZONE, INVALID_AVAILABILITY_ZONE_MSG, zoneName);
 	}
 
+	@Test
+	public void testCheckAvailabilityZone_Weighted() {
+		checkAvailabilityZone("zone:2,nonZone");
+		verifySingleError(AVAILABILITY_ZONE, INVALID_AVAILABILITY_ZONE_MSG, "nonZone");
+	}
+
 	@Test
 	public void testCheckImage() {
 		String imageName = "myImage";
@@ -259,6 +307,171 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 		verifySingleError(VOLUME_SIZE, INVALID_VOLUME_SIZE_MSG);
 	}
 
+	@Test
+	public void testCheckVolumeProvisioning() throws IOException {
+		checkVolumeProvisioning(NovaInstanceTemplate.VOLUME_PROVISIONING_ATTACH);
+		checkVolumeProvisioning(NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING);
+		checkVolumeProvisioning(NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL);
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckVolumeProvisioning_Unknown() throws IOException {
+		checkVolumeProvisioning("bdm");
+		verifySingleError(VOLUME_PROVISIONING, INVALID_VOLUME_PROVISIONING_MSG, "bdm");
+	}
+
+	@Test
+	public void testCheckServerGroupPolicy() throws IOException {
+		checkServerGroupPolicy(NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY);
+		checkServerGroupPolicy(NovaInstanceTemplate.SERVER_GROUP_POLICY_SOFT_ANTI_AFFINITY);
+		verifyClean();
+		checkServerGroupPolicy("affinity");
+		verifySingleError(SERVER_GROUP_POLICY, INVALID_SERVER_GROUP_POLICY_MSG, "affinity");
+	}
+
+	@Test
+	public void testCheckRackMapping() throws IOException {
+		checkRackMapping("compute-1=/rack1, zone2=/rack2");
+		verifyClean();
+		checkRackMapping("compute-1=rack1");
+		verifySingleError(RACK_MAPPING, INVALID_RACK_MAPPING_MSG, "compute-1=rack1");
+	}
+
+	@Test
+	public void testCheckAdditionalNetworks() throws IOException {
+		checkAdditionalNetworks("net-1", "data=net-2, storage=net-3");
+		verifyClean();
+		checkAdditionalNetworks("net-1", "data=net-1");
+		verifySingleError(ADDITIONAL_NETWORKS, INVALID_ADDITIONAL_NETWORKS_MSG, "Duplicate network: net-1");
+	}
+
+	@Test
+	public void testCheckVnicType() throws IOException {
+		checkVnicType("direct");
+		verifyClean();
+		checkVnicType("sriov");
+		verifySingleError(VNIC_TYPE, INVALID_VNIC_TYPE_MSG, "sriov");
+	}
+
+	@Test
+	public void testCheckFlavor() {
+		checkFlavor("hdfs.pinned", "vcpus=8,hw:cpu_policy=dedicated");
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckFlavor_NotFound() {
+		checkFlavor("m1.xlarge", "");
+		verifySingleError(TYPE, FLAVOR_NOT_FOUND_MSG, "m1.xlarge");
+	}
+
+	@Test
+	public void testCheckFlavor_InvalidRequirements() {
+		checkFlavor("hdfs.pinned", "vcpus=many");
+		verifySingleError(FLAVOR_REQUIREMENTS, INVALID_FLAVOR_REQUIREMENTS_MSG, "Invalid flavor requirement: vcpus=many");
+	}
+
+	@Test
+	public void testCheckFlavor_Unmet() {
+		// Only a warning, naming the cheapest flavor which meets the requirements.
+		checkFlavor("m1.large", "vcpus=4,hw:cpu_policy=dedicated");
+		verifySingleWarning(TYPE, FLAVOR_REQUIREMENTS_UNMET_MSG, "m1.large", "hw:cpu_policy=dedicated", "hdfs.pinned");
+	}
+
+	@Test
+	public void testCheckFlavor_UnmetByAll() {
+		checkFlavor("m1.large", "ram=131072");
+		verifySingleWarning(TYPE, FLAVOR_REQUIREMENTS_UNMET_BY_ALL_MSG, "m1.large", "ram=131072");
+	}
+
+	@Test
+	public void testCheckLocalDisks() {
+		checkLocalDisks(NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL, "hdfs.pinned", "2", "100");
+		checkLocalDisks(NovaInstanceTemplate.VOLUME_PROVISIONING_ATTACH, "m1.large", "2", "100");
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckLocalDisks_NoEphemeralDisk() {
+		checkLocalDisks(NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL, "m1.large", "0", "10");
+		verifySingleError(VOLUME_PROVISIONING, INVALID_LOCAL_DISKS_MSG, "Flavor m1.large has no ephemeral disk");
+	}
+
+	@Test
+	public void testCheckLocalDisks_EphemeralDiskTooSmall() {
+		checkLocalDisks(NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL, "hdfs.pinned", "3", "100");
+		verifySingleError(VOLUME_PROVISIONING, INVALID_LOCAL_DISKS_MSG,
+				"3 local disks of 100 GB do not fit in the 200 GB ephemeral disk of flavor hdfs.pinned");
+	}
+
+	@Test
+	public void testCheckQosPolicies() {
+		checkQosPolicies("data=net-2", "management=hdfs-limit,data=hdfs-limit", true);
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckQosPolicies_UnknownRole() {
+		checkQosPolicies("", "data=hdfs-limit", true);
+		verifySingleError(QOS_POLICIES, INVALID_QOS_POLICIES_MSG, "No network has role data");
+	}
+
+	@Test
+	public void testCheckQosPolicies_NotFound() {
+		checkQosPolicies("data=net-2", "management=hdfs-limit,data=hdfs-min", true);
+		verifySingleError(QOS_POLICIES, QOS_POLICY_NOT_FOUND_MSG, "hdfs-min");
+	}
+
+	@Test
+	public void testCheckQosPolicies_NovaPorts() {
+		checkQosPolicies("", "management=hdfs-limit", false);
+		verifySingleError(QOS_POLICIES, QOS_POLICIES_WITHOUT_NEUTRON_PORTS_MSG);
+	}
+
+	@Test
+	public void testCheckSpareInstances() throws IOException {
+		checkSpareInstances("2", "60");
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckSpareInstances_Negative() throws IOException {
+		checkSpareInstances("-1", "60");
+		verifySingleError(SPARE_INSTANCES, INVALID_SPARE_INSTANCES_MSG, "-1");
+	}
+
+	@Test
+	public void testCheckSpareInstances_ZeroStragglerTimeout() throws IOException {
+		checkSpareInstances("1", "0");
+		verifySingleError(STRAGGLER_TIMEOUT_SECONDS, INVALID_STRAGGLER_TIMEOUT_MSG, "0");
+	}
+
+	@Test
+	public void testCheckStragglerFactor() throws IOException {
+		checkStragglerFactor("0");
+		checkStragglerFactor("2.5");
+		verifyClean();
+	}
+
+	@Test
+	public void testCheckStragglerFactor_BelowOne() throws IOException {
+		checkStragglerFactor("0.5");
+		verifySingleError(STRAGGLER_FACTOR, INVALID_STRAGGLER_FACTOR_MSG, "0.5");
+	}
+
+	@Test
+	public void testCheckCompletionGrace_Negative() throws IOException {
+		checkCompletionGrace("-5");
+		verifySingleError(COMPLETION_GRACE_SECONDS, INVALID_COMPLETION_GRACE_MSG, "-5");
+	}
+
+	@Test
+	public void testCheckWaves_PercentAboveHundred() throws IOException {
+		checkWaves("50", "120");
+		verifySingleError(WAVE_START_PERCENT, INVALID_WAVE_START_PERCENT_MSG, "120");
+	}
+
 	/**
 	 * Invokes checkAvailabilityZone with the specified configuration.
 	 *
@@ -343,6 +556,180 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 		NovaInstanceTemplateConfigurationValidator.checkVolumeSize(configuration, accumulator, localizationContext);
 	}
 
+	/**
+	 * Invokes checkVolumeProvisioning with the specified configuration.
+	 *
+	 * @param volumeProvisioning the volume provisioning
+	 */
+	protected void checkVolumeProvisioning(String volumeProvisioning) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(VOLUME_PROVISIONING.unwrap().getConfigKey(), volumeProvisioning);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkVolumeProvisioning(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkServerGroupPolicy with the specified configuration.
+	 *
+	 * @param policy the server group policy
+	 */
+	protected void checkServerGroupPolicy(String policy) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(), policy);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkServerGroupPolicy(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkRackMapping with the specified configuration.
+	 *
+	 * @param rackMapping the rack mapping
+	 */
+	protected void checkRackMapping(String rackMapping) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(RACK_MAPPING.unwrap().getConfigKey(), rackMapping);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkRackMapping(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkAdditionalNetworks with the specified configuration.
+	 *
+	 * @param networkId          the network ID
+	 * @param additionalNetworks the additional networks
+	 */
+	protected void checkAdditionalNetworks(String networkId, String additionalNetworks) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(NETWORK_ID.unwrap().getConfigKey(), networkId);
+		configMap.put(ADDITIONAL_NETWORKS.unwrap().getConfigKey(), additionalNetworks);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkAdditionalNetworks(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkVnicType with the specified configuration.
+	 *
+	 * @param vnicType the VNIC type
+	 */
+	protected void checkVnicType(String vnicType) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(VNIC_TYPE.unwrap().getConfigKey(), vnicType);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkVnicType(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkFlavor with the specified configuration, against a catalog of a shared
+	 * and a pinned flavor.
+	 *
+	 * @param flavorName         the flavor name
+	 * @param flavorRequirements the flavor requirements
+	 */
+	protected void checkFlavor(String flavorName, String flavorRequirements) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(TYPE.unwrap().getConfigKey(), flavorName);
+		configMap.put(FLAVOR_REQUIREMENTS.unwrap().getConfigKey(), flavorRequirements);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkFlavor(newFlavorCatalog(), configuration, accumulator,
+				localizationContext);
+	}
+
+	/**
+	 * Invokes checkLocalDisks with the specified configuration, against a catalog of a
+	 * shared flavor without ephemeral disk and a pinned flavor with a 200 GB one.
+	 *
+	 * @param volumeProvisioning the volume provisioning
+	 * @param flavorName         the flavor name
+	 * @param volumeNumber       the volume number
+	 * @param volumeSize         the volume size
+	 */
+	protected void checkLocalDisks(String volumeProvisioning, String flavorName, String volumeNumber,
+			String volumeSize) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(VOLUME_PROVISIONING.unwrap().getConfigKey(), volumeProvisioning);
+		configMap.put(TYPE.unwrap().getConfigKey(), flavorName);
+		configMap.put(VOLUME_NUMBER.unwrap().getConfigKey(), volumeNumber);
+		configMap.put(VOLUME_SIZE.unwrap().getConfigKey(), volumeSize);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkLocalDisks(newFlavorCatalog(), configuration, accumulator,
+				localizationContext);
+	}
+
+	private static FlavorCatalog newFlavorCatalog() {
+		return new FlavorCatalog(ImmutableList.of(
+				new FlavorCatalog.FlavorTraits("1", "m1.large", 4, 8192, 80, 0, 0, ImmutableMap.<String, String>of()),
+				new FlavorCatalog.FlavorTraits("2", "hdfs.pinned", 8, 32768, 40, 200, 0,
+						ImmutableMap.of("hw:cpu_policy", "dedicated"))), 0L);
+	}
+
+	/**
+	 * Invokes checkQosPolicies with the specified configuration.
+	 *
+	 * @param additionalNetworks the additional networks
+	 * @param qosPolicies        the QoS policies
+	 * @param neutronPorts       whether the ports are created through Neutron
+	 */
+	protected void checkQosPolicies(String additionalNetworks, String qosPolicies, boolean neutronPorts) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(NETWORK_ID.unwrap().getConfigKey(), "net-1");
+		configMap.put(ADDITIONAL_NETWORKS.unwrap().getConfigKey(), additionalNetworks);
+		configMap.put(QOS_POLICIES.unwrap().getConfigKey(), qosPolicies);
+		Configured configuration = new SimpleConfiguration(configMap);
+		validator.checkQosPolicies(neutronApi, neutronPorts, configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkSpareInstances with the specified configuration.
+	 *
+	 * @param spareInstances   the number of spare instances
+	 * @param stragglerTimeout the straggler timeout in seconds
+	 */
+	protected void checkSpareInstances(String spareInstances, String stragglerTimeout) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(SPARE_INSTANCES.unwrap().getConfigKey(), spareInstances);
+		configMap.put(STRAGGLER_TIMEOUT_SECONDS.unwrap().getConfigKey(), stragglerTimeout);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkSpareInstances(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkStragglerFactor with the specified configuration.
+	 *
+	 * @param stragglerFactor the straggler factor
+	 */
+	protected void checkStragglerFactor(String stragglerFactor) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(STRAGGLER_FACTOR.unwrap().getConfigKey(), stragglerFactor);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkStragglerFactor(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkCompletionGrace with the specified configuration.
+	 *
+	 * @param completionGrace the completion grace period in seconds
+	 */
+	protected void checkCompletionGrace(String completionGrace) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(COMPLETION_GRACE_SECONDS.unwrap().getConfigKey(), completionGrace);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkCompletionGrace(configuration, accumulator, localizationContext);
+	}
+
+	/**
+	 * Invokes checkWaves with the specified configuration.
+	 *
+	 * @param waveSize         the wave size
+	 * @param waveStartPercent the wave start percentage
+	 */
+	protected void checkWaves(String waveSize, String waveStartPercent) {
+		Map<String, String> configMap = Maps.newHashMap();
+		configMap.put(WAVE_SIZE.unwrap().getConfigKey(), waveSize);
+		configMap.put(WAVE_START_PERCENT.unwrap().getConfigKey(), waveStartPercent);
+		Configured configuration = new SimpleConfiguration(configMap);
+		NovaInstanceTemplateConfigurationValidator.checkWaves(configuration, accumulator, localizationContext);
+	}
+
 	/**
 	 * Verifies that the specified plugin exception condition accumulator contains no errors or
 	 * warnings.
@@ -395,6 +782,25 @@ public class NovaInstanceTemplateConfigurationValidatorTest {
 		verifySingleErrorCondition(condition, errorMsgFormat, args);
 	}
 
+	/**
+	 * Verifies that the specified plugin exception condition accumulator contains exactly
+	 * one condition, which must be a warning with the specified message and associated with
+	 * the specified property.
+	 *
+	 * @param token      the configuration property token for the property which should be warned about
+	 * @param warningMsg the expected warning message
+	 * @param args       the warning message arguments
+	 */
+	private void verifySingleWarning(ConfigurationPropertyToken token, String warningMsg, Object... args) {
+		Map<String, Collection<PluginExceptionCondition>> conditionsByKey = accumulator.getConditionsByKey();
+		assertThat(conditionsByKey).hasSize(1);
+		Collection<PluginExceptionCondition> keyConditions = conditionsByKey.get(token.unwrap().getConfigKey());
+		assertThat(keyConditions).hasSize(1);
+		PluginExceptionCondition condition = keyConditions.iterator().next();
+		assertThat(condition.isWarning()).isTrue();
+		assertThat(condition.getMessage()).isEqualTo(String.format(warningMsg, args));
+	}
+
 	/**
 	 * Verifies that the specified plugin exception condition is an error with the specified message.
 	 *
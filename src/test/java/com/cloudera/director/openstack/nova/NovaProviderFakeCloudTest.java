@@ -0,0 +1,2033 @@
+/*
+ * Copyright (c) 2015 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.director.openstack.nova;
+
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.ALLOCATION_BACKEND;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.JOURNAL_DIRECTORY;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.PORT_PROVISIONING;
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.REGION;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.ADDITIONAL_NETWORKS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.NETWORK_ID;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.TYPE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SECURITY_GROUP_NAMES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.AVAILABILITY_ZONE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.KEY_NAME;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.FLOATING_IP_POOL;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.COMPLETION_GRACE_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.RACK_MAPPING;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SERVER_GROUP_POLICY;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.SPARE_INSTANCES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_FACTOR;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.STRAGGLER_TIMEOUT_SECONDS;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VNIC_TYPE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.QOS_POLICIES;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_NUMBER;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_PROVISIONING;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.VOLUME_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_SIZE;
+import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.WAVE_START_PERCENT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.PluginContext;
+import com.cloudera.director.openstack.cinder.CinderLimitsApi;
+import com.cloudera.director.openstack.heat.HeatApi;
+import com.cloudera.director.openstack.heat.HeatStack;
+import com.cloudera.director.openstack.neutron.NeutronApi;
+import com.cloudera.director.openstack.neutron.NeutronFloatingIp;
+import com.cloudera.director.openstack.neutron.NeutronPort;
+import com.cloudera.director.openstack.neutron.NeutronPortRequest;
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.openstack.cinder.v1.CinderApi;
+import org.jclouds.openstack.cinder.v1.domain.Volume;
+import org.jclouds.openstack.cinder.v1.features.VolumeApi;
+import org.jclouds.openstack.cinder.v1.options.CreateVolumeOptions;
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.domain.Address;
+import org.jclouds.openstack.nova.v2_0.domain.BlockDeviceMapping;
+import org.jclouds.openstack.nova.v2_0.domain.Flavor;
+import org.jclouds.openstack.nova.v2_0.domain.regionscoped.AvailabilityZone;
+import org.jclouds.openstack.nova.v2_0.domain.regionscoped.ZoneState;
+import org.jclouds.openstack.nova.v2_0.domain.FloatingIPPool;
+import org.jclouds.openstack.nova.v2_0.domain.Quota;
+import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.domain.Server.Status;
+import org.jclouds.openstack.nova.v2_0.extensions.AvailabilityZoneApi;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
+import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPPoolApi;
+import org.jclouds.openstack.nova.v2_0.extensions.QuotaApi;
+import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
+import org.jclouds.openstack.nova.v2_0.features.FlavorApi;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.jclouds.openstack.nova.v2_0.options.CreateServerOptions;
+import org.jclouds.openstack.v2_0.domain.Resource;
+
+import com.cloudera.director.spi.v1.model.Configured;
+import com.cloudera.director.spi.v1.model.InstanceState;
+import com.cloudera.director.spi.v1.model.InstanceStatus;
+import com.cloudera.director.spi.v1.model.exception.PluginExceptionCondition;
+import com.cloudera.director.spi.v1.model.exception.UnrecoverableProviderException;
+import com.cloudera.director.spi.v1.model.util.DefaultLocalizationContext;
+import com.cloudera.director.spi.v1.model.util.SimpleConfiguration;
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.mockito.stubbing.OngoingStubbing;
+
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Tests {@link NovaProvider} against {@link FakeNovaCloud}, a stateful stand-in for the
+ * Nova, Cinder and floating IP APIs.
+ */
+public class NovaProviderFakeCloudTest {
+
+	private static final Logger LOG = Logger.getLogger(NovaProviderFakeCloudTest.class.getName());
+
+	private static final DefaultLocalizationContext DEFAULT_LOCALIZATION_CONTEXT =
+			new DefaultLocalizationContext(Locale.getDefault(), "");
+	
+	private static final String END_POINT_VALUE = "http://localhost:5000/v2.0";
+	private static final String IDENTITY_VALUE = "admin:admin";
+	private static final String CREDENTIAL_VALUE = "mycredential";
+	private static final String REGION_NAME = "regionOne";
+	private static final String PROJECT_ID = "project-1";
+	private static final String IMAGE_ALIAS_RHEL = "rhel6";
+	private static final String FLAVOR_TYPE_VALUE = "m1.large";
+	private static final String NETWORK_ID_VALUE = "FakeID111";
+	private static final String AVAILABILITY_ZONE_VALUE = "zone1";
+	private static final String SECURITY_GROUP_NAMES_VALUE = "default";
+	private static final String KEY_NAME_VALUE = "TestKey";
+	private static final String FLOATING_IP_POOL_VALUE = "public";
+	private static final String VOLUME_NUMBER_VALUE = "1";
+	private static final String VOLUME_SIZE_VALUE = "10";
+	
+	private NovaProvider novaProvider;
+	private OpenStackCredentials credentials;
+
+	private static final int VOLUMESIZE = 10;
+	private static final String DEFAULT_FLAVOR = "m1.large";
+	private static final String DEFAULT_FLAVOR_ID = "4";
+	private static final String DEFAULT_PRIVATE_IP1 = "10.0.0.1";
+	private static final String DEFAULT_PRIVATE_IP2 = "10.0.0.2";
+	private static final String DEFAULT_FLOATING_IP1 = "172.16.0.1";
+	private static final String DEFAULT_FLOATING_IP2 = "172.16.0.2";
+	private static final List<String> NO_FIXED_IPS = ImmutableList.of();
+
+	NovaInstanceTemplate template;
+	NovaApi novaApi;
+	NovaComputeApi computeApi;
+	CinderApi cinderApi;
+	ServerApi serverApi;
+	FlavorApi flavorApi;
+	Optional<FloatingIPApi> fltIpApi;
+	Optional<FloatingIPPoolApi> fltIpPoolApi;
+	Optional<VolumeAttachmentApi> volAttApi;
+	FloatingIPApi floatingIpApi;
+	FloatingIPPoolApi floatingIpPoolApi;
+	VolumeAttachmentApi volumeAttachmentApi;
+	VolumeApi volumeApi;
+	CinderLimitsApi cinderLimitsApi;
+	Flavor flavor;
+
+	String instanceId1;
+	String instanceId2;
+	String novaInstanceId1;
+	String novaInstanceId2;
+	String floatingIpId1;
+	String floatingIpId2;
+	String volumeId1;
+	String volumeId2;
+
+	FakeNovaCloud cloud;
+
+	Map<String, String> templateConfig = new HashMap<String, String>();
+
+	@Rule
+	public TemporaryFolder journalFolder = new TemporaryFolder();
+	
+	@Before
+	public void setUp() throws IOException {
+		credentials = mock(OpenStackCredentials.class);
+		
+		when(credentials.getEndpoint()).thenReturn(END_POINT_VALUE);
+		when(credentials.getIdentity()).thenReturn(IDENTITY_VALUE);
+		when(credentials.getCredential()).thenReturn(CREDENTIAL_VALUE);
+		
+		// Prepare configuration for Google compute provider.
+		Map<String, String> openstackConfig = new HashMap<String, String>();
+		openstackConfig.put(REGION.unwrap().getConfigKey(), REGION_NAME);
+		openstackConfig.put(JOURNAL_DIRECTORY.unwrap().getConfigKey(), journalFolder.getRoot().getPath());
+		Configured providerConfiguration = new SimpleConfiguration(openstackConfig);
+		
+		Config buildOsConfig = mock(Config.class);
+		
+		// Create the Nova provider.
+		novaProvider = spy(new NovaProvider(providerConfiguration, credentials,
+				buildOsConfig, DEFAULT_LOCALIZATION_CONTEXT));
+		
+		// Prepare configuration for resource template.
+		templateConfig.put(IMAGE.unwrap().getConfigKey(), IMAGE_ALIAS_RHEL);
+		templateConfig.put(TYPE.unwrap().getConfigKey(), FLAVOR_TYPE_VALUE);
+		templateConfig.put(NETWORK_ID.unwrap().getConfigKey(), NETWORK_ID_VALUE);
+		templateConfig.put(AVAILABILITY_ZONE.unwrap().getConfigKey(), AVAILABILITY_ZONE_VALUE);
+		templateConfig.put(SECURITY_GROUP_NAMES.unwrap().getConfigKey(), SECURITY_GROUP_NAMES_VALUE);
+		templateConfig.put(KEY_NAME.unwrap().getConfigKey(), KEY_NAME_VALUE);
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), FLOATING_IP_POOL_VALUE);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), "0");
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), "0");
+		
+		// Configure the APIs, backed by a fake cloud.
+		novaApi = mock(NovaApi.class);
+		cinderApi = mock(CinderApi.class);
+		serverApi = mock(ServerApi.class);
+		flavorApi = mock(FlavorApi.class);
+		floatingIpApi = mock(FloatingIPApi.class);
+		floatingIpPoolApi = mock(FloatingIPPoolApi.class);
+		volumeAttachmentApi = mock(VolumeAttachmentApi.class);
+		fltIpApi = Optional.of(floatingIpApi);
+		fltIpPoolApi = Optional.of(floatingIpPoolApi);
+		volAttApi = Optional.of(volumeAttachmentApi);
+		volumeApi = mock(VolumeApi.class);
+
+		cloud = new FakeNovaCloud();
+		cloud.install(serverApi);
+		cloud.install(volumeApi);
+		cloud.install(volumeAttachmentApi);
+		cloud.install(floatingIpApi);
+
+		when(novaApi.getServerApi(REGION_NAME)).thenReturn(serverApi);
+		when(novaApi.getFlavorApi(REGION_NAME)).thenReturn(flavorApi);
+		when(novaApi.getFloatingIPApi(REGION_NAME)).thenReturn(fltIpApi);
+		when(novaApi.getFloatingIPPoolApi(REGION_NAME)).thenReturn(fltIpPoolApi);
+		when(novaApi.getVolumeAttachmentApi(REGION_NAME)).thenReturn(volAttApi);
+		when(novaApi.getQuotaApi(REGION_NAME)).thenReturn(Optional.<QuotaApi>absent());
+		when(cinderApi.getVolumeApi(REGION_NAME)).thenReturn(volumeApi);
+		
+		when(novaProvider.getNovaApi()).thenReturn(novaApi);
+		when(novaProvider.getCinderApi()).thenReturn(cinderApi);
+		computeApi = mock(NovaComputeApi.class);
+		when(computeApi.getProjectId()).thenReturn(PROJECT_ID);
+		doReturn(computeApi).when(novaProvider).getComputeApi();
+		cinderLimitsApi = mock(CinderLimitsApi.class);
+		doReturn(cinderLimitsApi).when(novaProvider).getCinderLimitsApi();
+		// Neutron is not in the catalog, so floating IPs go through Nova.
+		doReturn(mock(NeutronApi.class)).when(novaProvider).getNeutronApi();
+		
+		instanceId1 = UUID.randomUUID().toString();
+		instanceId2 = UUID.randomUUID().toString();
+		novaInstanceId1 =  UUID.randomUUID().toString();
+		novaInstanceId2 =  UUID.randomUUID().toString();
+		floatingIpId1 = UUID.randomUUID().toString();
+		floatingIpId2 = UUID.randomUUID().toString();
+		volumeId1 = UUID.randomUUID().toString();
+		volumeId2 = UUID.randomUUID().toString();
+
+		flavor = mock(Flavor.class);
+		when(flavor.getName()).thenReturn(DEFAULT_FLAVOR);
+		when(flavor.getId()).thenReturn(DEFAULT_FLAVOR_ID);
+		PagedIterable<Resource> flavorList = PagedIterables.onlyPage(IterableWithMarkers.from(Lists.newArrayList(flavor)));
+		when(flavorApi.list()).thenReturn(flavorList);
+		
+	}
+
+	/**
+	 * Returns whether the server has the given private IP.
+	 *
+	 * @param novaInstanceId the Nova instance ID
+	 * @param privateIp      the private IP
+	 * @return whether the server has the given private IP
+	 */
+	private boolean hasAddress(String novaInstanceId, String privateIp) {
+		Multimap<String, Address> addresses = serverApi.get(novaInstanceId).getAddresses();
+		for (Address pAddr : addresses.values()) {
+			if (pAddr.getAddr().equals(privateIp)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Makes the floating IP pool API list the given pool names.
+	 *
+	 * @param poolNames the pool names
+	 */
+	private void stubFloatingIpPools(String... poolNames) {
+		Collection<FloatingIPPool> pools = Lists.newArrayList();
+		for (String poolName : poolNames) {
+			FloatingIPPool floatingIpPool = mock(FloatingIPPool.class);
+			when(floatingIpPool.getName()).thenReturn(poolName);
+			pools.add(floatingIpPool);
+		}
+		FluentIterable<? extends FloatingIPPool> fltIpPools = FluentIterable.from(pools);
+		// We cannto directly thenReturn fltIpPools, for it is extends type. 
+		OngoingStubbing<FluentIterable<? extends FloatingIPPool>> stub = when(floatingIpPoolApi.list());
+		stub.thenReturn(fltIpPools);
+	}
+
+	/**
+	 * Makes the availability zone API list the given available zones.
+	 *
+	 * @param zoneNames the zone names
+	 */
+	private void stubAvailabilityZones(String... zoneNames) {
+		Collection<AvailabilityZone> zones = Lists.newArrayList();
+		for (String zoneName : zoneNames) {
+			AvailabilityZone zone = mock(AvailabilityZone.class);
+			ZoneState state = mock(ZoneState.class);
+			when(state.isAvailable()).thenReturn(true);
+			when(zone.getName()).thenReturn(zoneName);
+			when(zone.getState()).thenReturn(state);
+			zones.add(zone);
+		}
+		AvailabilityZoneApi availabilityZoneApi = mock(AvailabilityZoneApi.class);
+		when(availabilityZoneApi.listAvailabilityZones()).thenReturn(FluentIterable.from(zones));
+		when(novaApi.getAvailabilityZoneApi(REGION_NAME)).thenReturn(Optional.of(availabilityZoneApi));
+	}
+
+	/**
+	 * Makes the tenant have the given instance quota, with unlimited cores and RAM, and
+	 * the given number of servers already.
+	 *
+	 * @param instances   the instance quota
+	 * @param serverCount the number of servers of the tenant
+	 */
+	private void stubInstanceQuota(int instances, int serverCount) {
+		Quota quota = mock(Quota.class);
+		when(quota.getInstances()).thenReturn(instances);
+		when(quota.getCores()).thenReturn(-1);
+		when(quota.getRam()).thenReturn(-1);
+		QuotaApi quotaApi = mock(QuotaApi.class);
+		when(quotaApi.getByTenant(PROJECT_ID)).thenReturn(quota);
+		when(novaApi.getQuotaApi(REGION_NAME)).thenReturn(Optional.of(quotaApi));
+		when(computeApi.getAbsoluteLimits()).thenReturn(ImmutableMap.of("totalInstancesUsed", serverCount));
+	}
+
+	/**
+	 * Creates a Nova provider allocating through Heat, backed by the same APIs as the
+	 * default provider and by the given Heat API.
+	 *
+	 * @param heatApi the Heat API
+	 * @return the Nova provider
+	 */
+	private NovaProvider newHeatProvider(HeatApi heatApi) {
+		Map<String, String> openstackConfig = new HashMap<String, String>();
+		openstackConfig.put(REGION.unwrap().getConfigKey(), REGION_NAME);
+		openstackConfig.put(JOURNAL_DIRECTORY.unwrap().getConfigKey(), journalFolder.getRoot().getPath());
+		openstackConfig.put(ALLOCATION_BACKEND.unwrap().getConfigKey(), NovaProvider.ALLOCATION_BACKEND_HEAT);
+		NovaProvider heatProvider = spy(new NovaProvider(new SimpleConfiguration(openstackConfig), credentials,
+				mock(Config.class), DEFAULT_LOCALIZATION_CONTEXT));
+		doReturn(novaApi).when(heatProvider).getNovaApi();
+		doReturn(cinderApi).when(heatProvider).getCinderApi();
+		doReturn(computeApi).when(heatProvider).getComputeApi();
+		doReturn(cinderLimitsApi).when(heatProvider).getCinderLimitsApi();
+		doReturn(heatApi).when(heatProvider).getHeatApi();
+		doReturn(mock(NeutronApi.class)).when(heatProvider).getNeutronApi();
+		return heatProvider;
+	}
+
+	/**
+	 * Creates a Nova provider backed by the same APIs as the default provider, sharing
+	 * state with the other providers of the given plugin context.
+	 *
+	 * @param pluginContext the plugin context
+	 * @return the Nova provider
+	 */
+	private NovaProvider newSharingProvider(PluginContext pluginContext) {
+		Map<String, String> openstackConfig = new HashMap<String, String>();
+		openstackConfig.put(REGION.unwrap().getConfigKey(), REGION_NAME);
+		openstackConfig.put(JOURNAL_DIRECTORY.unwrap().getConfigKey(), journalFolder.getRoot().getPath());
+		NovaProvider sharingProvider = spy(new NovaProvider(new SimpleConfiguration(openstackConfig), credentials,
+				mock(Config.class), pluginContext, DEFAULT_LOCALIZATION_CONTEXT));
+		doReturn(novaApi).when(sharingProvider).getNovaApi();
+		doReturn(cinderApi).when(sharingProvider).getCinderApi();
+		doReturn(computeApi).when(sharingProvider).getComputeApi();
+		doReturn(cinderLimitsApi).when(sharingProvider).getCinderLimitsApi();
+		doReturn(mock(NeutronApi.class)).when(sharingProvider).getNeutronApi();
+		return sharingProvider;
+	}
+
+	/**
+	 * Creates a Nova provider creating the ports of the servers through the given Neutron API.
+	 *
+	 * @param neutronApi the Neutron API
+	 * @return the Nova provider
+	 */
+	private NovaProvider newNeutronProvider(NeutronApi neutronApi) {
+		Map<String, String> openstackConfig = new HashMap<String, String>();
+		openstackConfig.put(REGION.unwrap().getConfigKey(), REGION_NAME);
+		openstackConfig.put(JOURNAL_DIRECTORY.unwrap().getConfigKey(), journalFolder.getRoot().getPath());
+		openstackConfig.put(PORT_PROVISIONING.unwrap().getConfigKey(), NovaProvider.PORT_PROVISIONING_NEUTRON);
+		NovaProvider neutronProvider = spy(new NovaProvider(new SimpleConfiguration(openstackConfig), credentials,
+				mock(Config.class), DEFAULT_LOCALIZATION_CONTEXT));
+		doReturn(novaApi).when(neutronProvider).getNovaApi();
+		doReturn(cinderApi).when(neutronProvider).getCinderApi();
+		doReturn(computeApi).when(neutronProvider).getComputeApi();
+		doReturn(cinderLimitsApi).when(neutronProvider).getCinderLimitsApi();
+		doReturn(neutronApi).when(neutronProvider).getNeutronApi();
+		return neutronProvider;
+	}
+		
+	@Test
+	public void testAllocate_Instances() throws InterruptedException, IOException {
+		// We do not test floating IP allocation in this method.
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2);
+		
+		//Create the two Instances.
+		novaProvider.allocate(template, instanceIds, 2);
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+		verify(serverApi).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+		
+		// Verify the instances are tagged with their Director IDs.
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId1);
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId2);
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+
+		assertThat(serverApi.get(novaInstanceId2).getName()).isEqualTo(decoratedInstanceName2);
+		assertThat(hasAddress(novaInstanceId2, DEFAULT_PRIVATE_IP2)).isEqualTo(true);
+
+		// Verify the instances are marked complete, and the journal is gone.
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+		assertThat(journalFolder.getRoot().listFiles()).isEmpty();
+	}
+
+	@Test
+	public void testAllocate_Instances_MinTwo_FailOne() throws InterruptedException, IOException {
+		// We do not test floating IP allocation in this method.
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance never gets an IP.
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2)
+				.withoutAddress().statuses(Status.BUILD);
+		
+		//Create the two Instances.
+		try {
+			novaProvider.allocate(template, instanceIds, 2);
+			fail("An exception should have been thrown when we failed to provision at least minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			LOG.info("Caught: " + e.getMessage());
+			assertThat(e.getMessage()).isEqualTo("Problem allocating 2 instances: Can only get 1 instances with IPs while we want 2.");
+		}
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+		verify(serverApi).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Verify both instances were deleted.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi).delete(eq(novaInstanceId2));
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+
+		assertThat(serverApi.get(novaInstanceId2).getName()).isEqualTo(decoratedInstanceName2);
+		assertThat(serverApi.get(novaInstanceId2).getAddresses().isEmpty()).isEqualTo(true);
+	}
+
+	@Test
+	public void testAllocate_Instances_MinOne_FailOne() throws InterruptedException, IOException {
+		// We do not test floating IP allocation in this method.
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance never gets an IP.
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2)
+				.withoutAddress().statuses(Status.BUILD);
+		
+		//Create the two Instances.		
+		novaProvider.allocate(template, instanceIds, 1);
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+		verify(serverApi).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+
+		assertThat(serverApi.get(novaInstanceId2).getName()).isEqualTo(decoratedInstanceName2);
+		assertThat(serverApi.get(novaInstanceId2).getAddresses().isEmpty()).isEqualTo(true);
+
+		// Verify instance 2 were deleted.
+		verify(serverApi).delete(eq(novaInstanceId2));
+		verify(serverApi, times(0)).delete(eq(novaInstanceId1));
+	}
+
+	@Test
+	public void testAllocate_Instances_SpareReplacesStraggler() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SPARE_INSTANCES.unwrap().getConfigKey(), "1");
+		templateConfig.put(STRAGGLER_TIMEOUT_SECONDS.unwrap().getConfigKey(), "5");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		String spareInstanceId = NovaProvider.getSpareInstanceIds(instanceIds, 1).get(0);
+		String spareNovaInstanceId = UUID.randomUUID().toString();
+
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance never gets an IP, and the spare takes its place.
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2).withoutAddress().statuses(Status.BUILD);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + spareInstanceId, spareNovaInstanceId)
+				.privateIp("10.0.0.3");
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		// The tags are swapped, so the straggler is released as the spare.
+		assertThat(cloud.getServer(spareNovaInstanceId).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId2);
+		assertThat(cloud.getServer(spareNovaInstanceId).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_ID")).isEqualTo(spareInstanceId);
+		verify(serverApi).rename(spareNovaInstanceId, template.getInstanceNamePrefix() + "-" + instanceId2);
+		verify(serverApi, timeout(30000)).delete(eq(novaInstanceId2));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+		verify(serverApi, never()).delete(eq(spareNovaInstanceId));
+	}
+
+	@Test
+	public void testAllocate_Instances_UnusedSpareIsReleased() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SPARE_INSTANCES.unwrap().getConfigKey(), "1");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		String spareInstanceId = NovaProvider.getSpareInstanceIds(instanceIds, 1).get(0);
+		String spareNovaInstanceId = UUID.randomUUID().toString();
+
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + spareInstanceId, spareNovaInstanceId)
+				.privateIp("10.0.0.3");
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId1);
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId2);
+		verify(serverApi, never()).rename(anyString(), anyString());
+		verify(serverApi, timeout(30000)).delete(eq(spareNovaInstanceId));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+		verify(serverApi, never()).delete(eq(novaInstanceId2));
+	}
+
+	@Test
+	public void testAllocate_Instances_StragglerReplacedInAnotherZone() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(STRAGGLER_FACTOR.unwrap().getConfigKey(), "2");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubAvailabilityZones(AVAILABILITY_ZONE_VALUE, "zone2");
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		String replacementNovaInstanceId = UUID.randomUUID().toString();
+
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance never gets an IP, and a second boot replaces it.
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2).withoutAddress().statuses(Status.BUILD);
+		cloud.expectServer(decoratedInstanceName2, replacementNovaInstanceId).privateIp(DEFAULT_PRIVATE_IP2);
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		verify(serverApi, times(2)).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID),
+				any(CreateServerOptions.class));
+		assertThat(cloud.getServer(replacementNovaInstanceId).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId2);
+		assertThat(cloud.getServer(replacementNovaInstanceId).getAvailabilityZone()).isEqualTo("zone2");
+		assertThat(cloud.getServer(replacementNovaInstanceId).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_ID"))
+				.isEqualTo("straggler-" + instanceId2);
+		verify(serverApi, timeout(30000)).delete(eq(novaInstanceId2));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+		verify(serverApi, never()).delete(eq(replacementNovaInstanceId));
+	}
+
+	@Test
+	public void testAllocate_Retry_StragglerWithoutVolumesReplacedInAnotherZone()
+			throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(STRAGGLER_FACTOR.unwrap().getConfigKey(), "2");
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubAvailabilityZones(AVAILABILITY_ZONE_VALUE, "zone2");
+
+		String instanceId3 = UUID.randomUUID().toString();
+		String novaInstanceId3 = UUID.randomUUID().toString();
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2, instanceId3);
+		String decoratedInstanceName3 = template.getInstanceNamePrefix() + "-" + instanceId3;
+		String replacementNovaInstanceId = UUID.randomUUID().toString();
+
+		// An earlier attempt built the first instance with its volume.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addVolume(volumeId1, instanceId1, Volume.Status.IN_USE).attachedTo(novaInstanceId1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2);
+		// The third instance has no volume yet, so that its replacement is not bound to
+		// the zone of the straggler.
+		cloud.expectServer(decoratedInstanceName3, novaInstanceId3)
+				.privateIp("10.0.0.3").withoutAddress().statuses(Status.BUILD);
+		cloud.expectServer(decoratedInstanceName3, replacementNovaInstanceId).privateIp("10.0.0.3");
+		cloud.expectVolume(volumeId2);
+		cloud.expectVolume(UUID.randomUUID().toString());
+
+		novaProvider.allocate(template, instanceIds, 3);
+
+		assertThat(cloud.getServer(replacementNovaInstanceId).getMetadata().get("DIRECTOR_ID")).isEqualTo(instanceId3);
+		assertThat(cloud.getServer(replacementNovaInstanceId).getAvailabilityZone()).isEqualTo("zone2");
+		verify(serverApi, timeout(30000)).delete(eq(novaInstanceId3));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+	}
+
+	@Test
+	public void testAllocate_Instances_ReturnsAtMinCount() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(COMPLETION_GRACE_SECONDS.unwrap().getConfigKey(), "2");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance is active, but never gets an IP.
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2).withoutAddress().statuses(Status.ACTIVE);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// Only the ready instance is found, the other one is still provisioning.
+		Collection<NovaInstance> novaInstances = novaProvider.find(template, instanceIds);
+		assertThat(novaInstances).hasSize(1);
+		assertThat(novaInstances.iterator().next().getId()).isEqualTo(instanceId1);
+		assertThat(novaProvider.getInstanceState(template, instanceIds).get(instanceId2).getInstanceStatus())
+				.isEqualTo(InstanceStatus.PENDING);
+
+		// It is released once the grace period passes.
+		verify(serverApi, timeout(30000)).delete(eq(novaInstanceId2));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+	}
+
+	@Test
+	public void testAllocate_Instances_Waves() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(WAVE_SIZE.unwrap().getConfigKey(), "1");
+		templateConfig.put(WAVE_START_PERCENT.unwrap().getConfigKey(), "100");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2);
+
+		novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+
+		// The second wave started once the first one was active.
+		assertThat(cloud.getServer(novaInstanceId2).getPeerStatusesAtCreation())
+				.containsEntry(novaInstanceId1, Status.ACTIVE);
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+	}
+
+	@Test
+	public void testAllocate_Instances_SpreadOverZones() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(AVAILABILITY_ZONE.unwrap().getConfigKey(), AVAILABILITY_ZONE_VALUE + ",zone2");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2);
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		assertThat(cloud.getServer(novaInstanceId1).getAvailabilityZone()).isEqualTo(AVAILABILITY_ZONE_VALUE);
+		assertThat(cloud.getServer(novaInstanceId2).getAvailabilityZone()).isEqualTo("zone2");
+		Map<String, String> placementsByInstanceIds = Maps.newHashMap();
+		for (NovaInstance novaInstance : novaProvider.find(template, instanceIds)) {
+			placementsByInstanceIds.put(novaInstance.getId(), novaInstance.getProperties().get("placement"));
+		}
+		assertThat(placementsByInstanceIds).containsEntry(instanceId1, AVAILABILITY_ZONE_VALUE)
+				.containsEntry(instanceId2, "zone2");
+	}
+
+	@Test
+	public void testAllocate_Instances_FailOverToNextZone() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(AVAILABILITY_ZONE.unwrap().getConfigKey(), AVAILABILITY_ZONE_VALUE + ",zone2");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		String replacementNovaInstanceId = UUID.randomUUID().toString();
+		// The first server goes into error, as when no host of its zone can take it.
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1).withoutAddress().statuses(Status.ERROR);
+		cloud.expectServer(decoratedInstanceName1, replacementNovaInstanceId).privateIp(DEFAULT_PRIVATE_IP1);
+		// The second one cannot even be created in its zone.
+		cloud.expectServer(decoratedInstanceName2, UUID.randomUUID().toString()).failCreate();
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2);
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		assertThat(cloud.getServer(replacementNovaInstanceId).getAvailabilityZone()).isEqualTo("zone2");
+		assertThat(cloud.getServer(replacementNovaInstanceId).getMetadata())
+				.containsEntry("DIRECTOR_PLACEMENT", AVAILABILITY_ZONE_VALUE + ",zone2")
+				.containsEntry("DIRECTOR_PHASE", "COMPLETE");
+		assertThat(cloud.getServer(novaInstanceId2).getAvailabilityZone()).isEqualTo(AVAILABILITY_ZONE_VALUE);
+		assertThat(cloud.getServer(novaInstanceId2).getMetadata())
+				.containsEntry("DIRECTOR_PLACEMENT", "zone2," + AVAILABILITY_ZONE_VALUE);
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_ID"))
+				.isEqualTo("failed-over-" + instanceId1);
+		verify(serverApi, timeout(30000)).delete(eq(novaInstanceId1));
+		verify(serverApi, never()).delete(eq(replacementNovaInstanceId));
+	}
+
+	@Test
+	public void testAllocate_Instances_AntiAffinity() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(),
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		when(computeApi.createServerGroup(anyString(), eq(NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY)))
+				.thenReturn(new NovaServerGroup("group-1", "group", ImmutableSet.<String>of()));
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1).hostId("host-1");
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2).hostId("host-2");
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		// The servers are booted into a new server group, which Nova places them by.
+		ArgumentCaptor<String> serverGroupName = ArgumentCaptor.forClass(String.class);
+		verify(computeApi).createServerGroup(serverGroupName.capture(),
+				eq(NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY));
+		assertThat(serverGroupName.getValue()).startsWith("director-").endsWith("-group");
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi, times(2)).create(anyString(), anyString(), anyString(), options.capture());
+		for (CreateServerOptions serverOptions : options.getAllValues()) {
+			assertThat(serverOptions).isInstanceOf(ServerGroupCreateServerOptions.class);
+			assertThat(((ServerGroupCreateServerOptions) serverOptions).getServerGroupId()).isEqualTo("group-1");
+		}
+		assertThat(novaProvider.find(template, instanceIds)).hasSize(2);
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata())
+				.containsEntry("DIRECTOR_SERVER_GROUP", serverGroupName.getValue());
+		verify(serverApi, never()).delete(anyString());
+	}
+
+	@Test
+	public void testAllocate_Instances_AntiAffinity_ReusesServerGroup() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(),
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_SOFT_ANTI_AFFINITY);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		// An earlier attempt created the group already.
+		when(computeApi.findServerGroup(anyString()))
+				.thenReturn(new NovaServerGroup("group-1", "group", ImmutableSet.<String>of()));
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		verify(computeApi, never()).createServerGroup(anyString(), anyString());
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi).create(anyString(), anyString(), anyString(), options.capture());
+		assertThat(((ServerGroupCreateServerOptions) options.getValue()).getServerGroupId()).isEqualTo("group-1");
+	}
+
+	@Test
+	public void testAllocate_Instances_AntiAffinity_ServerGroupFails() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(),
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		when(computeApi.createServerGroup(anyString(), anyString()))
+				.thenThrow(new IllegalStateException("Quota exceeded for server groups"));
+
+		try {
+			novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+			fail("An exception should have been thrown when the server group cannot be created.");
+		} catch (UnrecoverableProviderException e) {
+			assertThat(e.getMessage()).isEqualTo("Problem allocating instances and volumes.");
+		}
+		// The servers are not booted without their group.
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+	}
+
+	@Test
+	public void testDelete_Instances_DeletesEmptyServerGroup() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(),
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		when(computeApi.createServerGroup(anyString(), anyString()))
+				.thenReturn(new NovaServerGroup("group-1", "group", ImmutableSet.<String>of()));
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2);
+		novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+		ArgumentCaptor<String> groupName = ArgumentCaptor.forClass(String.class);
+		verify(computeApi).createServerGroup(groupName.capture(), anyString());
+
+		// The group stays for as long as one of its servers does.
+		when(computeApi.findServerGroup(groupName.getValue())).thenReturn(
+				new NovaServerGroup("group-1", "group", ImmutableSet.of(novaInstanceId2)),
+				new NovaServerGroup("group-1", "group", ImmutableSet.<String>of()));
+		novaProvider.delete(template, Lists.newArrayList(instanceId1));
+		verify(computeApi, never()).deleteServerGroup(anyString());
+
+		novaProvider.delete(template, Lists.newArrayList(instanceId2));
+		verify(computeApi).deleteServerGroup("group-1");
+	}
+
+	@Test
+	public void testDelete_Instances_DeletesServerGroupOfUnseenServers() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(SERVER_GROUP_POLICY.unwrap().getConfigKey(),
+				NovaInstanceTemplate.SERVER_GROUP_POLICY_ANTI_AFFINITY);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		// The servers never made it, so that no server tells the group.
+		when(computeApi.findServerGroup(anyString()))
+				.thenReturn(new NovaServerGroup("group-1", "group", ImmutableSet.<String>of()));
+
+		novaProvider.delete(template, Lists.newArrayList(instanceId1, instanceId2));
+
+		verify(computeApi).deleteServerGroup("group-1");
+	}
+
+	@Test
+	public void testFind_Instances_Topology() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(AVAILABILITY_ZONE.unwrap().getConfigKey(), "zone1");
+		templateConfig.put(RACK_MAPPING.unwrap().getConfigKey(), "compute-1=/rack1,zone1=/rack2");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1).hostId("host-1").hypervisorHostName("compute-1");
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId2, novaInstanceId2)
+				.privateIp(DEFAULT_PRIVATE_IP2).hostId("host-2");
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		Map<String, Map<String, String>> propertiesByInstanceIds = Maps.newHashMap();
+		for (NovaInstance novaInstance : novaProvider.find(template, instanceIds)) {
+			propertiesByInstanceIds.put(novaInstance.getId(), novaInstance.getProperties());
+		}
+		Map<String, String> properties1 = propertiesByInstanceIds.get(instanceId1);
+		assertThat(properties1.get("hypervisorHostname")).isEqualTo("compute-1");
+		assertThat(properties1.get("availabilityZone")).isEqualTo("zone1");
+		assertThat(properties1.get("rack")).isEqualTo("/rack1");
+		// Without the hypervisor host name, the rack falls back to the zone.
+		Map<String, String> properties2 = propertiesByInstanceIds.get(instanceId2);
+		assertThat(properties2.get("hypervisorHostname")).isNull();
+		assertThat(properties2.get("rack")).isEqualTo("/rack2");
+	}
+
+	@Test
+	public void testAllocate_Instances_AdditionalNetworks() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(ADDITIONAL_NETWORKS.unwrap().getConfigKey(), "data=FakeID222");
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1);
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1).otherIp("data-net", "192.168.10.5");
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// A NIC on each network, the management one first.
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), options.capture());
+		assertThat(options.getValue().getNetworks()).containsExactly(NETWORK_ID_VALUE, "FakeID222");
+
+		NovaInstance novaInstance = novaProvider.find(template, instanceIds).iterator().next();
+		assertThat(novaInstance.getPrivateIpAddress().getHostAddress()).isEqualTo(DEFAULT_PRIVATE_IP1);
+		assertThat(novaInstance.getNetworkAddresses().get("data").getHostAddress()).isEqualTo("192.168.10.5");
+		Map<String, String> properties = novaInstance.getProperties();
+		assertThat(properties.get("networkId")).isEqualTo(NETWORK_ID_VALUE);
+		assertThat(properties.get("networkAddresses"))
+				.isEqualTo("management=" + DEFAULT_PRIVATE_IP1 + ",data=192.168.10.5");
+		assertThat(properties.get("publicIpAddress")).isNull();
+	}
+
+	@Test
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void testAllocate_Instances_NeutronPorts() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VNIC_TYPE.unwrap().getConfigKey(), NeutronPortRequest.VNIC_TYPE_DIRECT);
+		templateConfig.put(QOS_POLICIES.unwrap().getConfigKey(), "management=hdfs-limit");
+		NeutronApi neutronApi = mock(NeutronApi.class);
+		when(neutronApi.getSecurityGroupIdsByNames(any(Collection.class)))
+				.thenReturn(ImmutableMap.of(SECURITY_GROUP_NAMES_VALUE, "sg-1"));
+		when(neutronApi.getQosPolicyIds(any(Collection.class))).thenReturn(ImmutableMap.of("hdfs-limit", "qos-1"));
+		when(neutronApi.createPorts(any(List.class))).thenReturn(Lists.newArrayList(
+				new NeutronPort("port-1", "director-port-" + instanceId1, NETWORK_ID_VALUE, null, NO_FIXED_IPS),
+				new NeutronPort("port-2", "director-port-" + instanceId2, NETWORK_ID_VALUE, null, NO_FIXED_IPS)));
+		NovaProvider neutronProvider = newNeutronProvider(neutronApi);
+		NovaInstanceTemplate template = neutronProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2);
+
+		neutronProvider.allocate(template, instanceIds, 2);
+
+		// The ports of the wave are created in one request, with the security groups and QoS policy.
+		ArgumentCaptor<List> requests = ArgumentCaptor.forClass(List.class);
+		verify(neutronApi, times(1)).createPorts(requests.capture());
+		assertThat(requests.getValue()).hasSize(2);
+		NeutronPortRequest request = (NeutronPortRequest) requests.getValue().get(0);
+		assertThat(request.getVnicType()).isEqualTo(NeutronPortRequest.VNIC_TYPE_DIRECT);
+		assertThat(request.getSecurityGroupIds()).containsExactly("sg-1");
+		assertThat(request.getQosPolicyId()).isEqualTo("qos-1");
+
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), options.capture());
+		assertThat(options.getValue().getNovaNetworks()).hasSize(1);
+		assertThat(options.getValue().getNovaNetworks().iterator().next().getPortUuid()).isEqualTo("port-1");
+		assertThat(options.getValue().getNetworks()).isEmpty();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAllocate_Instances_NeutronPorts_BulkCreateFails() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		NeutronApi neutronApi = mock(NeutronApi.class);
+		when(neutronApi.getSecurityGroupIdsByNames(any(Collection.class)))
+				.thenReturn(ImmutableMap.of(SECURITY_GROUP_NAMES_VALUE, "sg-1"));
+		when(neutronApi.createPorts(any(List.class))).thenThrow(new IllegalStateException("Port quota exceeded"));
+		NovaProvider neutronProvider = newNeutronProvider(neutronApi);
+		NovaInstanceTemplate template = neutronProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		try {
+			neutronProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+			fail("An exception should have been thrown when no port can be created.");
+		} catch (UnrecoverableProviderException e) {
+			// The failed bulk request is reported along with the failed allocation.
+			List<String> warnings = Lists.newArrayList();
+			for (Collection<PluginExceptionCondition> conditions : e.getDetails().getConditionsByKey().values()) {
+				for (PluginExceptionCondition condition : conditions) {
+					if (condition.isWarning()) {
+						warnings.add(condition.getMessage());
+					}
+				}
+			}
+			assertThat(warnings).containsExactly(
+					"Unable to create the ports of 2 instance(s) in bulk: Port quota exceeded");
+		}
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+	}
+
+	@Test
+	public void testAllocate_Instances_QuotaFailsFast()throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubInstanceQuota(10, 9);
+
+		try {
+			novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+			fail("An exception should have been thrown when the quotas cannot take minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			assertThat(e.getMessage()).isEqualTo("Problem allocating 2 instances: Only 1 new instances fit in the "
+					+ "quotas while we want at least 2 (instances: 9 of 10 used, 1 per instance).");
+		}
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+	}
+
+	@Test
+	public void testAllocate_Volumes_QuotaFailsFast() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubInstanceQuota(10, 0);
+		// Cinder tells what the project uses along with its quotas.
+		when(cinderLimitsApi.getAbsoluteLimits()).thenReturn(ImmutableMap.of("maxTotalVolumes", 10,
+				"totalVolumesUsed", 9, "maxTotalVolumeGigabytes", -1, "totalGigabytesUsed", 90));
+
+		try {
+			novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+			fail("An exception should have been thrown when the quotas cannot take minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			assertThat(e.getMessage()).isEqualTo("Problem allocating 2 instances: Only 1 new instances fit in the "
+					+ "quotas while we want at least 2 (volumes: 9 of 10 used, 1 per instance).");
+		}
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+	}
+
+	@Test
+	public void testAllocate_Retry_QuotaFailsFastKeepsReusedInstance() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubInstanceQuota(10, 10);
+
+		// An earlier attempt built the first instance.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+
+		try {
+			novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 2);
+			fail("An exception should have been thrown when the quotas cannot take minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			assertThat(e.getMessage()).startsWith("Problem allocating 2 instances: Only 0 new instances fit");
+		}
+		// The healthy instance of the earlier attempt is left for the next one.
+		verify(serverApi, never()).delete(anyString());
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+	}
+
+	@Test
+	public void testAllocate_Instances_OnlyWhatFitsIsCreated() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		stubInstanceQuota(10, 9);
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+
+		novaProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 1);
+
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID),
+				any(CreateServerOptions.class));
+		verify(serverApi, never()).create(eq(template.getInstanceNamePrefix() + "-" + instanceId2), anyString(),
+				anyString(), any(CreateServerOptions.class));
+		assertThat(cloud.getServer(novaInstanceId1).getMetadata().get("DIRECTOR_PHASE")).isEqualTo("COMPLETE");
+	}
+
+	@Test
+	public void testAllocate_Instance_Volume() throws InterruptedException, IOException {
+		// We do not test floating IP allocation in this method.
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectVolume(volumeId1);
+		
+		//Create the Instance.
+		novaProvider.allocate(template, instanceIds, 1);
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+		
+		//Verify volume creating and attaching was called.
+		verify(volumeApi).create(eq(VOLUMESIZE), any(CreateVolumeOptions.class));
+		verify(volumeAttachmentApi).attachVolumeToServerAsDevice(eq(volumeId1), eq(novaInstanceId1), eq(""));
+		assertThat(cloud.getVolume(volumeId1).getStatus()).isEqualTo(Volume.Status.IN_USE);
+	}
+
+	@Test
+	public void testAllocate_Instance_BlockDeviceMappingVolumes() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), "2");
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		templateConfig.put(VOLUME_PROVISIONING.unwrap().getConfigKey(),
+				NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// Nova creates the volumes at boot, so Cinder is left alone.
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), options.capture());
+		Collection<BlockDeviceMapping> mappings = options.getValue().getBlockDeviceMappings();
+		assertThat(mappings).hasSize(3);
+		int blankVolumes = 0;
+		for (BlockDeviceMapping mapping : mappings) {
+			assertThat(mapping.getDeleteOnTermination()).isTrue();
+			if ("blank".equals(mapping.getSourceType())) {
+				assertThat(mapping.getVolumeSize()).isEqualTo(VOLUMESIZE);
+				blankVolumes++;
+			} else {
+				assertThat(mapping.getUuid()).isEqualTo(IMAGE_ALIAS_RHEL);
+				assertThat(mapping.getBootIndex()).isEqualTo(0);
+			}
+		}
+		assertThat(blankVolumes).isEqualTo(2);
+		verify(volumeApi, never()).create(anyInt(), any(CreateVolumeOptions.class));
+		verify(volumeAttachmentApi, never()).attachVolumeToServerAsDevice(anyString(), anyString(), anyString());
+	}
+
+	@Test
+	public void testAllocate_Instance_LocalDisks() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), "2");
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		templateConfig.put(VOLUME_PROVISIONING.unwrap().getConfigKey(), NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL);
+		doReturn(new FlavorCatalog(ImmutableList.of(new FlavorCatalog.FlavorTraits(DEFAULT_FLAVOR_ID, DEFAULT_FLAVOR,
+				8, 32768, 40, 2 * VOLUMESIZE, 1024, ImmutableMap.<String, String>of())), 0L))
+				.when(novaProvider).getFlavorCatalog();
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+
+		novaProvider.allocate(template, Lists.newArrayList(instanceId1), 1);
+
+		// The disks are local to the hypervisor, so Cinder is left alone.
+		ArgumentCaptor<CreateServerOptions> options = ArgumentCaptor.forClass(CreateServerOptions.class);
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), options.capture());
+		int localDisks = 0;
+		for (BlockDeviceMapping mapping : options.getValue().getBlockDeviceMappings()) {
+			assertThat(mapping.getDestinationType()).isEqualTo("local");
+			if ("blank".equals(mapping.getSourceType())) {
+				assertThat(mapping.getVolumeSize()).isEqualTo(VOLUMESIZE);
+				localDisks++;
+			}
+		}
+		assertThat(localDisks).isEqualTo(2);
+		verify(volumeApi, never()).create(anyInt(), any(CreateVolumeOptions.class));
+		verify(volumeAttachmentApi, never()).attachVolumeToServerAsDevice(anyString(), anyString(), anyString());
+
+		// The disks can be found on the instance.
+		Map<String, String> metadata = cloud.getServer(novaInstanceId1).getMetadata();
+		assertThat(metadata.get(NovaInstance.DIRECTOR_LOCAL_DISKS)).isEqualTo("/dev/vdb,/dev/vdc");
+		assertThat(metadata.get(NovaInstance.DIRECTOR_SWAP_DISK)).isEqualTo("/dev/vdd");
+		// None of them is a Cinder volume.
+		assertThat(metadata.get("VOLUME_NUMBER")).isEqualTo("0");
+	}
+
+	@Test
+	public void testAllocate_TwoInstancesVolumes_MinTwo_FailOne() throws InterruptedException, IOException {
+		// We do not test floating IP allocation in this method.
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2);
+		cloud.expectVolume(volumeId1);
+		// volume2 will fail.
+		cloud.expectVolume(volumeId2).statuses(Volume.Status.CREATING, Volume.Status.ERROR);
+
+		//Create the two Instances.		
+		try {
+			novaProvider.allocate(template, instanceIds, 2);
+			fail("An exception should have been thrown when we failed to provision at least minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			LOG.info("Caught: " + e.getMessage());
+			assertThat(e.getMessage()).isEqualTo("Problem allocating 2 instances: Can only get 1 instances with volumes while we want 2.");
+		}
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+		verify(serverApi).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Verify instances were deleted.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi).delete(eq(novaInstanceId2));
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+
+		assertThat(serverApi.get(novaInstanceId2).getName()).isEqualTo(decoratedInstanceName2);
+		assertThat(hasAddress(novaInstanceId2, DEFAULT_PRIVATE_IP2)).isEqualTo(true);
+
+		//Verify volume creatings and deletings was called.
+		verify(volumeApi, times(2)).create(eq(VOLUMESIZE), any(CreateVolumeOptions.class));
+		verify(volumeApi).delete(eq(volumeId2));
+		verify(volumeApi).delete(eq(volumeId1));
+	}
+
+	@Test
+	public void testAllocate_Instance_FloatingIP() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools(FLOATING_IP_POOL_VALUE);
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.expectFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1);
+
+		//Create the Instance.
+		novaProvider.allocate(template, instanceIds, 1);
+		
+		//Verify instance creatings was called.
+		verify(serverApi).create(eq(decoratedInstanceName1), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Verify instance name and private IP.
+		assertThat(serverApi.get(novaInstanceId1).getName()).isEqualTo(decoratedInstanceName1);
+		assertThat(hasAddress(novaInstanceId1, DEFAULT_PRIVATE_IP1)).isEqualTo(true);
+		
+		//Verify floating IP.
+		verify(floatingIpApi).allocateFromPool(eq(FLOATING_IP_POOL_VALUE));
+		verify(floatingIpApi).addToServer(eq(DEFAULT_FLOATING_IP1), eq(novaInstanceId1));
+		assertThat(floatingIpApi.get(floatingIpId1).getInstanceId()).isEqualTo(novaInstanceId1);
+	}
+
+	@Test
+	public void testAllocate_TwoInstances_FloatingIP_OneWithoutAddress() throws InterruptedException, IOException {
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools(FLOATING_IP_POOL_VALUE);
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName1 = template.getInstanceNamePrefix() + "-" + instanceId1;
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+
+		cloud.expectServer(decoratedInstanceName1, novaInstanceId1).privateIp(DEFAULT_PRIVATE_IP1);
+		// The second instance never gets an IP, so it never gets a floating IP either.
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2)
+				.withoutAddress().statuses(Status.BUILD);
+		cloud.expectFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// The association is triggered by the address, without waiting on the other instance.
+		verify(floatingIpApi, times(1)).allocateFromPool(eq(FLOATING_IP_POOL_VALUE));
+		verify(floatingIpApi).addToServer(eq(DEFAULT_FLOATING_IP1), eq(novaInstanceId1));
+		assertThat(floatingIpApi.get(floatingIpId1).getInstanceId()).isEqualTo(novaInstanceId1);
+		verify(serverApi).delete(eq(novaInstanceId2));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+	}
+	
+	@Test
+	public void testAllocate_Retry_ReusesCompleteInstance() throws InterruptedException, IOException {
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools(FLOATING_IP_POOL_VALUE);
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		// An earlier attempt built the instance completely.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addVolume(volumeId1, instanceId1, Volume.Status.IN_USE).attachedTo(novaInstanceId1);
+		cloud.addFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, novaInstanceId1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// Nothing is torn down or created again.
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+		verify(serverApi, never()).delete(anyString());
+		verify(volumeApi, never()).create(anyInt(), any(CreateVolumeOptions.class));
+		verify(volumeApi, never()).delete(anyString());
+		verify(floatingIpApi, never()).allocateFromPool(anyString());
+		verify(floatingIpApi, never()).delete(anyString());
+	}
+
+	@Test
+	public void testAllocate_Retry_RepairsAndReplaces() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		String decoratedInstanceName2 = template.getInstanceNamePrefix() + "-" + instanceId2;
+		String brokenNovaInstanceId = UUID.randomUUID().toString();
+
+		// The first instance lacks its volume, the second one failed to boot.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addServer(brokenNovaInstanceId, decoratedInstanceName2, instanceId2, Status.ERROR);
+		cloud.expectServer(decoratedInstanceName2, novaInstanceId2).privateIp(DEFAULT_PRIVATE_IP2);
+		cloud.expectVolume(volumeId1);
+		cloud.expectVolume(volumeId2);
+
+		novaProvider.allocate(template, instanceIds, 2);
+
+		// Only the broken instance is replaced.
+		verify(serverApi).delete(eq(brokenNovaInstanceId));
+		verify(serverApi, never()).delete(eq(novaInstanceId1));
+		verify(serverApi, times(1)).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+		verify(serverApi).create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class));
+
+		// Each instance gets the one volume it misses.
+		verify(volumeApi, times(2)).create(eq(VOLUMESIZE), any(CreateVolumeOptions.class));
+		assertThat(cloud.getVolume(volumeId1).getStatus()).isEqualTo(Volume.Status.IN_USE);
+		assertThat(cloud.getVolume(volumeId2).getStatus()).isEqualTo(Volume.Status.IN_USE);
+	}
+
+	@Test
+	public void testAllocate_Resume_SkipsCompleteInstance() throws InterruptedException, IOException {
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools(FLOATING_IP_POOL_VALUE);
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		// The marker tells the instance went through every step.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1)
+				.getMetadata().put("DIRECTOR_PHASE", "COMPLETE");
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// Neither its floating IP nor its volumes are looked up again.
+		verify(floatingIpApi, never()).list();
+		verify(volumeApi, never()).listInDetail();
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+		verify(volumeApi, never()).create(anyInt(), any(CreateVolumeOptions.class));
+		verify(floatingIpApi, never()).allocateFromPool(anyString());
+	}
+
+	@Test
+	public void testAllocate_Resume_ReleasesJournaledFloatingIP() throws InterruptedException, IOException {
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools(FLOATING_IP_POOL_VALUE);
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		// The earlier attempt went down between allocating the floating IP and associating it.
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addFloatingIp(floatingIpId2, DEFAULT_FLOATING_IP2, null);
+		AllocationJournal journal = AllocationJournal.open(journalFolder.getRoot(), instanceIds);
+		journal.record(instanceId1, AllocationJournal.Entry.SERVER, novaInstanceId1);
+		journal.record(instanceId1, AllocationJournal.Entry.FLOATING_IP, floatingIpId2);
+		journal.close();
+		cloud.expectFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+		verify(floatingIpApi).delete(eq(floatingIpId2));
+		verify(floatingIpApi).addToServer(eq(DEFAULT_FLOATING_IP1), eq(novaInstanceId1));
+		assertThat(journalFolder.getRoot().listFiles()).isEmpty();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAllocate_Instance_NeutronFloatingIP() throws InterruptedException, IOException {
+		final NeutronApi neutronApi = mock(NeutronApi.class);
+		doReturn(neutronApi).when(novaProvider).getNeutronApi();
+		when(neutronApi.isAvailable()).thenReturn(true);
+		when(neutronApi.getExternalNetworkIdsByNames()).thenReturn(ImmutableMap.of(FLOATING_IP_POOL_VALUE, "ext-net"));
+		when(neutronApi.getFloatingIpQuota(PROJECT_ID)).thenReturn(10);
+		final AtomicReference<NeutronFloatingIp> floatingIp = new AtomicReference<NeutronFloatingIp>(
+				new NeutronFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, "ext-net", null, null));
+		when(neutronApi.createFloatingIp("ext-net")).thenReturn(floatingIp.get());
+		NeutronPort port = new NeutronPort("port-1", null, NETWORK_ID_VALUE, novaInstanceId1,
+				ImmutableList.of(DEFAULT_PRIVATE_IP1));
+		when(neutronApi.listPortsByDeviceIds(any(Collection.class))).thenReturn(Lists.newArrayList(port));
+		when(neutronApi.listPortsByIds(any(Collection.class))).thenReturn(Lists.newArrayList(port));
+		when(neutronApi.associateFloatingIp(floatingIpId1, "port-1")).thenAnswer(new Answer<NeutronFloatingIp>() {
+			@Override
+			public NeutronFloatingIp answer(InvocationOnMock invocation) {
+				floatingIp.set(new NeutronFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, "ext-net", "port-1",
+						DEFAULT_PRIVATE_IP1));
+				return floatingIp.get();
+			}
+		});
+		Answer<List<NeutronFloatingIp>> listed = new Answer<List<NeutronFloatingIp>>() {
+			@Override
+			public List<NeutronFloatingIp> answer(InvocationOnMock invocation) {
+				return Lists.newArrayList(floatingIp.get());
+			}
+		};
+		when(neutronApi.listFloatingIps()).thenAnswer(listed);
+		when(neutronApi.listFloatingIpsByPortIds(any(Collection.class))).thenAnswer(listed);
+		when(neutronApi.getFloatingIp(floatingIpId1)).thenAnswer(new Answer<NeutronFloatingIp>() {
+			@Override
+			public NeutronFloatingIp answer(InvocationOnMock invocation) {
+				return floatingIp.get();
+			}
+		});
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1);
+		cloud.expectServer(template.getInstanceNamePrefix() + "-" + instanceId1, novaInstanceId1)
+				.privateIp(DEFAULT_PRIVATE_IP1);
+
+		novaProvider.allocate(template, instanceIds, 1);
+
+		// The floating IP goes to the port of the server, without the Nova proxy, within
+		// the floating IP quota of Neutron.
+		verify(neutronApi).getFloatingIpQuota(PROJECT_ID);
+		verify(neutronApi).associateFloatingIp(floatingIpId1, "port-1");
+		verify(floatingIpApi, never()).allocateFromPool(anyString());
+		verify(floatingIpApi, never()).addToServer(anyString(), anyString());
+		verify(floatingIpPoolApi, never()).list();
+
+		// The floating IPs of the released servers are looked up by their ports.
+		novaProvider.delete(template, instanceIds);
+		verify(neutronApi).deleteFloatingIp(floatingIpId1);
+		verify(floatingIpApi, never()).list();
+	}
+
+	@Test
+	public void testAllocate_Heat_OneStack() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		HeatApi heatApi = mock(HeatApi.class);
+		NovaProvider heatProvider = newHeatProvider(heatApi);
+		NovaInstanceTemplate template = heatProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+		HeatStack created = new HeatStack("stack-id", "stack", HeatStack.CREATE_COMPLETE, null, ImmutableMap.of(
+				NovaStackTemplate.getServerOutputKey(instanceId1), novaInstanceId1,
+				NovaStackTemplate.getServerOutputKey(instanceId2), novaInstanceId2));
+		when(heatApi.getStack(anyString())).thenReturn(null, created);
+
+		heatProvider.allocate(template, instanceIds, 2);
+
+		// Heat creates the servers, so the plugin only submits the stack.
+		ArgumentCaptor<String> stackTemplate = ArgumentCaptor.forClass(String.class);
+		verify(heatApi).createStack(anyString(), stackTemplate.capture(), anyInt());
+		assertThat(stackTemplate.getValue()).contains(NovaStackTemplate.getServerOutputKey(instanceId1),
+				NovaStackTemplate.getServerOutputKey(instanceId2));
+		verify(serverApi, never()).create(anyString(), anyString(), anyString(), any(CreateServerOptions.class));
+		verify(heatApi, never()).deleteStack(anyString(), anyString());
+	}
+
+	@Test
+	public void testAllocate_Heat_LocalDisks() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), "2");
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		templateConfig.put(VOLUME_PROVISIONING.unwrap().getConfigKey(), NovaInstanceTemplate.VOLUME_PROVISIONING_LOCAL);
+		HeatApi heatApi = mock(HeatApi.class);
+		NovaProvider heatProvider = newHeatProvider(heatApi);
+		doReturn(new FlavorCatalog(ImmutableList.of(new FlavorCatalog.FlavorTraits(DEFAULT_FLAVOR_ID, DEFAULT_FLAVOR,
+				8, 32768, 40, 2 * VOLUMESIZE, 1024, ImmutableMap.<String, String>of())), 0L))
+				.when(heatProvider).getFlavorCatalog();
+		NovaInstanceTemplate template = heatProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1);
+		HeatStack created = new HeatStack("stack-id", "stack", HeatStack.CREATE_COMPLETE, null, ImmutableMap.of(
+				NovaStackTemplate.getServerOutputKey(instanceId1), novaInstanceId1));
+		when(heatApi.getStack(anyString())).thenReturn(null, created);
+
+		heatProvider.allocate(template, instanceIds, 1);
+
+		// The servers are tagged with their local disks, and with no Cinder volume.
+		ArgumentCaptor<String> stackTemplate = ArgumentCaptor.forClass(String.class);
+		verify(heatApi).createStack(anyString(), stackTemplate.capture(), anyInt());
+		assertThat(stackTemplate.getValue()).contains("\"VOLUME_NUMBER\":\"0\"",
+				"\"" + NovaInstance.DIRECTOR_LOCAL_DISKS + "\":\"/dev/vdb,/dev/vdc\"");
+	}
+
+	@Test
+	public void testAllocate_Heat_FailedStackIsDeleted() throws InterruptedException, IOException {
+		templateConfig.put(FLOATING_IP_POOL.unwrap().getConfigKey(), null);
+		HeatApi heatApi = mock(HeatApi.class);
+		NovaProvider heatProvider = newHeatProvider(heatApi);
+		NovaInstanceTemplate template = heatProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		HeatStack failed = new HeatStack("stack-id", "stack", "CREATE_FAILED", "Quota exceeded",
+				ImmutableMap.<String, String>of());
+		when(heatApi.getStack(anyString())).thenReturn(null, failed, failed, null);
+
+		try {
+			heatProvider.allocate(template, Lists.newArrayList(instanceId1, instanceId2), 1);
+			fail("The allocation should fail along with its stack.");
+		} catch (UnrecoverableProviderException e) {
+			assertThat(e.getMessage()).contains("CREATE_FAILED");
+		}
+		verify(heatApi).deleteStack(anyString(), eq("stack-id"));
+	}
+
+	@Test
+	public void testAllocate_Instance_FloatingIP_NoPool() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		stubFloatingIpPools();
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+
+		//Create the Instance.		
+		try {
+			novaProvider.allocate(template, instanceIds, 1);
+			fail("An exception should have been thrown when we failed to provision at least minCount instances.");
+		} catch (UnrecoverableProviderException e) {
+			LOG.info("Caught: " + e.getMessage());
+			// Check the Error Message.
+			assertThat(e.getMessage()).isEqualTo("FloatingIpPool does not exist.");
+		}
+	}
+	
+	@Test
+	public void testFind_TwoInstances() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP2);
+		
+		Collection<NovaInstance> novaInstances = novaProvider.find(template, instanceIds);
+		
+		// Verify both instances are found.
+		assertThat(novaInstances.size()).isEqualTo(2);
+		
+		// Verify the properties of the first returned instance.
+		Iterator<NovaInstance> instanceIterator = novaInstances.iterator();
+		NovaInstance novaInstance1 = instanceIterator.next();
+		assertThat(novaInstance1.getId()).isEqualTo(instanceId1);
+		assertThat(novaInstance1.getPrivateIpAddress().getHostAddress()).isEqualTo(DEFAULT_PRIVATE_IP1);
+
+		// Verify the properties of the second returned instance.
+		NovaInstance novaInstance2 = instanceIterator.next();
+		assertThat(novaInstance2.getId()).isEqualTo(instanceId2);
+		assertThat(novaInstance2.getPrivateIpAddress().getHostAddress()).isEqualTo(DEFAULT_PRIVATE_IP2);
+
+	}
+	
+	@Test
+	public void testFind_TwoInstances_OneFail() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		
+		Collection<NovaInstance> novaInstances = novaProvider.find(template, instanceIds);
+		
+		// Verify only one instance is found.
+		assertThat(novaInstances.size()).isEqualTo(1);
+		
+		// Verify the properties of the first returned instance.
+		Iterator<NovaInstance> instanceIterator = novaInstances.iterator();
+		NovaInstance novaInstance1 = instanceIterator.next();
+		assertThat(novaInstance1.getId()).isEqualTo(instanceId1);
+		assertThat(novaInstance1.getPrivateIpAddress().getHostAddress()).isEqualTo(DEFAULT_PRIVATE_IP1);
+	}
+	
+	@Test
+	public void testFind_TwoInstances_TwoFail() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		Collection<NovaInstance> novaInstances = novaProvider.find(template, instanceIds);
+		
+		// Verify no instance is found.
+		assertThat(novaInstances.size()).isEqualTo(0);
+	}
+	
+	@Test
+	public void testCheck_TwoInstances_States() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.BUILD);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE);
+
+		Map<String, InstanceState> instanceStates = novaProvider.getInstanceState(template, instanceIds);
+		
+		// Verify both instances are found.
+		assertThat(instanceStates.size()).isEqualTo(2);
+		
+		// Verify the state of the first instance.
+		InstanceState instanceState1 = instanceStates.get(instanceId1);
+		assertThat(instanceState1.getInstanceStatus()).isEqualTo(InstanceStatus.PENDING);
+
+		// Verify the state of the second instance.
+		InstanceState instanceState2 = instanceStates.get(instanceId2);
+		assertThat(instanceState2.getInstanceStatus()).isEqualTo(InstanceStatus.RUNNING);
+	}
+
+	@Test
+	public void testCheck_TwoInstances_States_PartialSuccess() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.BUILD);
+		
+		Map<String, InstanceState> instanceStates = novaProvider.getInstanceState(template, instanceIds);
+		
+		// Verify both instances are found (the not existing one will be DELELTED).
+		assertThat(instanceStates.size()).isEqualTo(2);
+		
+		// Verify the state of the first instance.
+		InstanceState instanceState1 = instanceStates.get(instanceId1);
+	    assertThat(instanceState1.getInstanceStatus()).isEqualTo(InstanceStatus.PENDING);
+
+	    // Verify the state of the first instance.
+	    InstanceState instanceState2 = instanceStates.get(instanceId2);
+	    assertThat(instanceState2.getInstanceStatus()).isEqualTo(InstanceStatus.DELETED);
+	}
+
+	@Test
+	public void testCheck_TwoInstances_States_BothFail() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		Map<String, InstanceState> instanceStates = novaProvider.getInstanceState(template, instanceIds);
+		
+		// Verify both instances are found (the not existing one will be DELELTED).
+		assertThat(instanceStates.size()).isEqualTo(2);
+		
+		// Verify the state of the first instance.
+		InstanceState instanceState1 = instanceStates.get(instanceId1);
+	    assertThat(instanceState1.getInstanceStatus()).isEqualTo(InstanceStatus.DELETED);
+
+	    // Verify the state of the first instance.
+	    InstanceState instanceState2 = instanceStates.get(instanceId2);
+	    assertThat(instanceState2.getInstanceStatus()).isEqualTo(InstanceStatus.DELETED);
+	}
+
+	@Test
+	public void testCheck_TwoInstances_States_ChangesSince() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.BUILD).statuses(Status.BUILD, Status.ACTIVE);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE);
+
+		// The first check loads the whole inventory.
+		Map<String, InstanceState> instanceStates = novaProvider.getInstanceState(template, instanceIds);
+		assertThat(instanceStates.get(instanceId1).getInstanceStatus()).isEqualTo(InstanceStatus.PENDING);
+		assertThat(cloud.getChangesSinceQueries()).isEmpty();
+
+		// The second check only asks for the servers changed since the first one.
+		serverApi.delete(novaInstanceId2);
+		instanceStates = novaProvider.getInstanceState(template, instanceIds);
+		assertThat(cloud.getChangesSinceQueries()).hasSize(1);
+		assertThat(instanceStates.get(instanceId1).getInstanceStatus()).isEqualTo(InstanceStatus.RUNNING);
+		assertThat(instanceStates.get(instanceId2).getInstanceStatus()).isEqualTo(InstanceStatus.DELETED);
+	}
+
+	@Test
+	public void testCheck_TwoProviders_ShareInventory() throws InterruptedException, IOException {
+		PluginContext pluginContext = new PluginContext();
+		NovaProvider provider1 = newSharingProvider(pluginContext);
+		NovaProvider provider2 = newSharingProvider(pluginContext);
+		assertThat(provider2.getServerInventory()).isSameAs(provider1.getServerInventory());
+
+		NovaInstanceTemplate template = provider1.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1);
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.BUILD).statuses(Status.BUILD, Status.ACTIVE);
+
+		// The first provider loads the whole inventory, the second one only asks for the
+		// servers changed since.
+		assertThat(provider1.getInstanceState(template, instanceIds).get(instanceId1).getInstanceStatus())
+				.isEqualTo(InstanceStatus.PENDING);
+		assertThat(cloud.getChangesSinceQueries()).isEmpty();
+		assertThat(provider2.getInstanceState(template, instanceIds).get(instanceId1).getInstanceStatus())
+				.isEqualTo(InstanceStatus.RUNNING);
+		assertThat(cloud.getChangesSinceQueries()).hasSize(1);
+	}
+
+	@Test
+	public void testFloatingIpWarmPool_TwoProviders_Shared() {
+		PluginContext pluginContext = new PluginContext();
+		NovaProvider provider1 = newSharingProvider(pluginContext);
+		NovaProvider provider2 = newSharingProvider(pluginContext);
+		assertThat(provider2.getFloatingIpWarmPool()).isSameAs(provider1.getFloatingIpWarmPool());
+	}
+
+	@Test
+	public void testDelete_TwoInstances() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+		
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE);
+		cloud.addFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, novaInstanceId1);
+		cloud.addFloatingIp(floatingIpId2, DEFAULT_FLOATING_IP2, novaInstanceId2);
+		
+		novaProvider.delete(template, instanceIds);
+		
+		//Verify instance deletings were called.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi).delete(eq(novaInstanceId2));
+		
+		//Verify floating IP deletings were called.
+		verify(floatingIpApi).delete(eq(floatingIpId1));
+		verify(floatingIpApi).delete(eq(floatingIpId2));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testDelete_TwoInstances_NeutronPorts() throws InterruptedException, IOException {
+		NeutronApi neutronApi = mock(NeutronApi.class);
+		NovaProvider neutronProvider = newNeutronProvider(neutronApi);
+		NovaInstanceTemplate template = neutronProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+		Collection<String> instanceIds = Lists.newArrayList(instanceId1, instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE);
+		when(neutronApi.listPortsByDeviceIds(any(Collection.class))).thenReturn(Lists.newArrayList(
+				new NeutronPort("port-1", "director-port-" + instanceId1, NETWORK_ID_VALUE, novaInstanceId1, NO_FIXED_IPS)));
+		// The port of a server which failed to boot is left unbound, the other one is in use.
+		when(neutronApi.listPortsByNames(any(Collection.class))).thenReturn(Lists.newArrayList(
+				new NeutronPort("port-1", "director-port-" + instanceId1, NETWORK_ID_VALUE, novaInstanceId1, NO_FIXED_IPS),
+				new NeutronPort("port-2", "director-port-" + instanceId2, NETWORK_ID_VALUE, null, NO_FIXED_IPS),
+				new NeutronPort("port-3", "director-port-" + instanceId2, NETWORK_ID_VALUE, "spare", NO_FIXED_IPS)));
+
+		neutronProvider.delete(template, instanceIds);
+
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(neutronApi).deletePort("port-1");
+		verify(neutronApi).deletePort("port-2");
+		verify(neutronApi, never()).deletePort("port-3");
+	}
+
+	@Test
+	public void testDelete_TwoInstances_Volumes() throws InterruptedException, IOException {
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE);
+		cloud.addVolume(volumeId1, instanceId1, Volume.Status.IN_USE).attachedTo(novaInstanceId1);
+		cloud.addVolume(volumeId2, instanceId2, Volume.Status.IN_USE).attachedTo(novaInstanceId2);
+		cloud.addFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, novaInstanceId1);
+		cloud.addFloatingIp(floatingIpId2, DEFAULT_FLOATING_IP2, novaInstanceId2);
+
+		novaProvider.delete(template, instanceIds);
+
+		// Servers and floating IPs go first, each volume once its server released it.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi).delete(eq(novaInstanceId2));
+		verify(floatingIpApi).delete(eq(floatingIpId1));
+		verify(floatingIpApi).delete(eq(floatingIpId2));
+		verify(volumeApi).delete(eq(volumeId1));
+		verify(volumeApi).delete(eq(volumeId2));
+		assertThat(cloud.getVolume(volumeId1).isGone()).isTrue();
+		assertThat(cloud.getVolume(volumeId2).isGone()).isTrue();
+	}
+
+	@Test
+	public void testDelete_TwoInstances_BlockDeviceMappingVolumes() throws InterruptedException, IOException {
+		templateConfig.put(VOLUME_NUMBER.unwrap().getConfigKey(), VOLUME_NUMBER_VALUE);
+		templateConfig.put(VOLUME_SIZE.unwrap().getConfigKey(), VOLUME_SIZE_VALUE);
+		templateConfig.put(VOLUME_PROVISIONING.unwrap().getConfigKey(),
+				NovaInstanceTemplate.VOLUME_PROVISIONING_BLOCK_DEVICE_MAPPING);
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE);
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE);
+
+		novaProvider.delete(template, instanceIds);
+
+		// The volumes go away with their servers, so there is no volume phase.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi).delete(eq(novaInstanceId2));
+		verify(volumeApi, never()).listInDetail();
+		verify(volumeApi, never()).delete(anyString());
+	}
+	
+	@Test
+	public void testDelete_Heat_WholeStack() throws InterruptedException, IOException {
+		HeatApi heatApi = mock(HeatApi.class);
+		NovaProvider heatProvider = newHeatProvider(heatApi);
+		NovaInstanceTemplate template = heatProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).getMetadata()
+				.put("DIRECTOR_STACK", "director-stack");
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE).getMetadata()
+				.put("DIRECTOR_STACK", "director-stack");
+		HeatStack stack = new HeatStack("stack-id", "director-stack", HeatStack.CREATE_COMPLETE, null, ImmutableMap.of(
+				NovaStackTemplate.getServerOutputKey(instanceId1), novaInstanceId1,
+				NovaStackTemplate.getServerOutputKey(instanceId2), novaInstanceId2));
+		when(heatApi.getStack("director-stack")).thenReturn(stack, (HeatStack) null);
+
+		heatProvider.delete(template, Lists.newArrayList(instanceId1, instanceId2));
+
+		// One stack delete takes everything away.
+		verify(heatApi).deleteStack("director-stack", "stack-id");
+		verify(serverApi, never()).delete(anyString());
+	}
+
+	@Test
+	public void testDelete_Heat_PartOfStack() throws InterruptedException, IOException {
+		HeatApi heatApi = mock(HeatApi.class);
+		NovaProvider heatProvider = newHeatProvider(heatApi);
+		NovaInstanceTemplate template = heatProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).getMetadata()
+				.put("DIRECTOR_STACK", "director-stack");
+		cloud.addServer(novaInstanceId2, "server-2", instanceId2, Status.ACTIVE).getMetadata()
+				.put("DIRECTOR_STACK", "director-stack");
+		HeatStack stack = new HeatStack("stack-id", "director-stack", HeatStack.CREATE_COMPLETE, null, ImmutableMap.of(
+				NovaStackTemplate.getServerOutputKey(instanceId1), novaInstanceId1,
+				NovaStackTemplate.getServerOutputKey(instanceId2), novaInstanceId2));
+		when(heatApi.getStack("director-stack")).thenReturn(stack);
+
+		heatProvider.delete(template, Lists.newArrayList(instanceId1));
+
+		// The rest of the stack stays, so the instance is released on its own.
+		verify(heatApi, never()).deleteStack(anyString(), anyString());
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi, never()).delete(eq(novaInstanceId2));
+	}
+
+	@Test
+	public void testDelete_TwoInstances_PartialSuccess() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addServer(novaInstanceId1, "server-1", instanceId1, Status.ACTIVE).privateIp(DEFAULT_PRIVATE_IP1);
+		cloud.addFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, novaInstanceId1);
+		cloud.addFloatingIp(floatingIpId2, DEFAULT_FLOATING_IP2, novaInstanceId2);
+		
+		novaProvider.delete(template, instanceIds);
+		
+		//Verify only instance1 deleting was called.
+		verify(serverApi).delete(eq(novaInstanceId1));
+		verify(serverApi, times(0)).delete(eq(novaInstanceId2));
+		
+		//Verify floating IP of instance1 deleting was called.
+		verify(floatingIpApi).delete(floatingIpId1);
+		verify(floatingIpApi, times(0)).delete(floatingIpId2);
+	}
+	
+	@Test
+	public void testDelete_TwoInstances_NotExisting() throws InterruptedException, IOException {
+		// Create the resource template.
+		NovaInstanceTemplate template = novaProvider.createResourceTemplate("template-1",
+				new SimpleConfiguration(templateConfig), new HashMap<String, String>());
+
+		Collection<String> instanceIds = Lists.newArrayList();
+		instanceIds.add(instanceId1);
+		instanceIds.add(instanceId2);
+
+		cloud.addFloatingIp(floatingIpId1, DEFAULT_FLOATING_IP1, novaInstanceId1);
+		cloud.addFloatingIp(floatingIpId2, DEFAULT_FLOATING_IP2, novaInstanceId2);
+		
+		novaProvider.delete(template, instanceIds);
+				
+		//Verify no instance deleting was called.
+		verify(serverApi, times(0)).delete(eq(novaInstanceId1));
+		verify(serverApi, times(0)).delete(eq(novaInstanceId2));
+		
+		//Verify no floating IP deleting was called.
+		verify(floatingIpApi, times(0)).delete(floatingIpId1);
+		verify(floatingIpApi, times(0)).delete(floatingIpId2);
+	}
+
+}
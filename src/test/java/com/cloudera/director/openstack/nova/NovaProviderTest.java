@@ -16,6 +16,7 @@
 
 package com.cloudera.director.openstack.nova;
 
+import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.JOURNAL_DIRECTORY;
 import static com.cloudera.director.openstack.nova.NovaProviderConfigurationProperty.REGION;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.IMAGE;
 import static com.cloudera.director.openstack.nova.NovaInstanceTemplateConfigurationProperty.NETWORK_ID;
@@ -32,6 +33,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -40,6 +42,7 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.doNothing;
 
 import com.cloudera.director.openstack.OpenStackCredentials;
+import com.cloudera.director.openstack.neutron.NeutronApi;
 import org.jclouds.collect.IterableWithMarkers;
 import org.jclouds.collect.PagedIterable;
 import org.jclouds.collect.PagedIterables;
@@ -58,11 +61,14 @@ import org.jclouds.openstack.nova.v2_0.domain.ServerCreated;
 import org.jclouds.openstack.nova.v2_0.domain.VolumeAttachment;
 import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPApi;
 import org.jclouds.openstack.nova.v2_0.extensions.FloatingIPPoolApi;
+import org.jclouds.openstack.nova.v2_0.extensions.QuotaApi;
 import org.jclouds.openstack.nova.v2_0.extensions.VolumeAttachmentApi;
 import org.jclouds.openstack.nova.v2_0.features.FlavorApi;
 import org.jclouds.openstack.nova.v2_0.features.ServerApi;
 import org.jclouds.openstack.nova.v2_0.options.CreateServerOptions;
+import org.jclouds.openstack.v2_0.domain.PaginatedCollection;
 import org.jclouds.openstack.v2_0.domain.Resource;
+import org.jclouds.openstack.v2_0.options.PaginationOptions;
 
 import com.cloudera.director.spi.v1.model.Configured;
 import com.cloudera.director.spi.v1.model.InstanceState;
@@ -77,7 +83,11 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import org.mockito.stubbing.OngoingStubbing;
 
@@ -90,6 +100,7 @@ import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -152,6 +163,8 @@ public class NovaProviderTest {
 
 	Map<String, String> templateConfig = new HashMap<String, String>();
 
+	@Rule
+	public TemporaryFolder journalFolder = new TemporaryFolder();
 	
 	@Before
 	public void setUp() throws IOException {
@@ -164,6 +177,7 @@ public class NovaProviderTest {
 		// Prepare configuration for Google compute provider.
 		Map<String, String> openstackConfig = new HashMap<String, String>();
 		openstackConfig.put(REGION.unwrap().getConfigKey(), REGION_NAME);
+		openstackConfig.put(JOURNAL_DIRECTORY.unwrap().getConfigKey(), journalFolder.getRoot().getPath());
 		Configured providerConfiguration = new SimpleConfiguration(openstackConfig);
 		
 		Config buildOsConfig = mock(Config.class);
@@ -201,10 +215,25 @@ public class NovaProviderTest {
 		when(novaApi.getFloatingIPApi(REGION_NAME)).thenReturn(fltIpApi);
 		when(novaApi.getFloatingIPPoolApi(REGION_NAME)).thenReturn(fltIpPoolApi);
 		when(novaApi.getVolumeAttachmentApi(REGION_NAME)).thenReturn(volAttApi);
+		when(novaApi.getQuotaApi(REGION_NAME)).thenReturn(Optional.<QuotaApi>absent());
 		when(cinderApi.getVolumeApi(REGION_NAME)).thenReturn(volumeApi);
+		// The server inventory lists in pages; serve each page from the unpaged listing.
+		when(serverApi.listInDetail(any(PaginationOptions.class))).thenAnswer(new Answer<PaginatedCollection<Server>>() {
+			@Override
+			public PaginatedCollection<Server> answer(InvocationOnMock invocation) {
+				PagedIterable<? extends Server> servers = serverApi.listInDetail();
+				Iterable<? extends Server> page = servers == null ?
+						Lists.<Server>newArrayList() : servers.concat();
+				return new PaginatedCollection<Server>(Lists.<Server>newArrayList(page), null) {
+				};
+			}
+		});
 		
 		when(novaProvider.getNovaApi()).thenReturn(novaApi);
 		when(novaProvider.getCinderApi()).thenReturn(cinderApi);
+		doReturn(mock(NovaComputeApi.class)).when(novaProvider).getComputeApi();
+		// Neutron is not in the catalog, so floating IPs go through Nova.
+		doReturn(mock(NeutronApi.class)).when(novaProvider).getNeutronApi();
 		
 		instanceId1 = UUID.randomUUID().toString();
 		instanceId2 = UUID.randomUUID().toString();
@@ -222,6 +251,73 @@ public class NovaProviderTest {
 		when(flavorApi.list()).thenReturn(flavorList);
 		
 	}
+
+	/**
+	 * Makes the server go through the given statuses, keeping the last one, until the
+	 * server API is asked to delete it, and read as deleted from then on. The server
+	 * inventory forgets the servers listed as deleted, so a server must not read as
+	 * deleted before its delete.
+	 *
+	 * @param server         the server
+	 * @param novaInstanceId the Nova instance ID of the server
+	 * @param statuses       the statuses of the server before its delete
+	 */
+	private void stubStatusUntilDeleted(Server server, String novaInstanceId, final Status... statuses) {
+		final AtomicBoolean deleted = new AtomicBoolean();
+		when(server.getStatus()).thenAnswer(new Answer<Status>() {
+			private int reads;
+
+			@Override
+			public synchronized Status answer(InvocationOnMock invocation) {
+				if (deleted.get()) {
+					return Status.DELETED;
+				}
+				return statuses[Math.min(reads++, statuses.length - 1)];
+			}
+		});
+		when(serverApi.delete(novaInstanceId)).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) {
+				deleted.set(true);
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Makes the volume go through the given statuses, keeping the last one, until the
+	 * volume API is asked to delete it, and go away from then on. The volume teardown
+	 * waits for volumes to settle before deleting them, so a volume must not read as
+	 * deleting before its delete.
+	 *
+	 * @param volume   the volume
+	 * @param volumeId the volume ID
+	 * @param statuses the statuses of the volume before its delete
+	 */
+	private void stubStatusUntilDeleted(final Volume volume, String volumeId, final Volume.Status... statuses) {
+		final AtomicBoolean deleted = new AtomicBoolean();
+		when(volume.getStatus()).thenAnswer(new Answer<Volume.Status>() {
+			private int reads;
+
+			@Override
+			public synchronized Volume.Status answer(InvocationOnMock invocation) {
+				return statuses[Math.min(reads++, statuses.length - 1)];
+			}
+		});
+		when(volumeApi.get(volumeId)).thenAnswer(new Answer<Volume>() {
+			@Override
+			public Volume answer(InvocationOnMock invocation) {
+				return deleted.get() ? null : volume;
+			}
+		});
+		when(volumeApi.delete(volumeId)).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) {
+				deleted.set(true);
+				return true;
+			}
+		});
+	}
 		
 	@Test
 	public void testAllocate_Instances() throws InterruptedException, IOException {
@@ -351,10 +447,6 @@ public class NovaProviderTest {
 		when(server1.getId()).thenReturn(novaInstanceId1);
 		when(server1.getAddresses()).thenReturn(addresses1);
 		when(server1.getName()).thenReturn(decoratedInstanceName1);
-		when(server1.getStatus()).thenReturn(Status.BUILD)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.DELETED);
 		
 		ServerCreated servercreated2 = mock(ServerCreated.class);
 		Address address2 = mock(Address.class);
@@ -393,7 +485,7 @@ public class NovaProviderTest {
 		when(serverApi.create(eq(decoratedInstanceName2), eq(IMAGE_ALIAS_RHEL), eq(DEFAULT_FLAVOR_ID), any(CreateServerOptions.class)))
 				.thenReturn(servercreated2);
 		when(serverApi.get(novaInstanceId2)).thenReturn(server2);
-		when(serverApi.delete(novaInstanceId1)).thenReturn(true);
+		stubStatusUntilDeleted(server1, novaInstanceId1, Status.BUILD, Status.ACTIVE);
 		when(serverApi.delete(novaInstanceId2)).thenReturn(true);
 		
 		//Create the two Instances.
@@ -675,10 +767,6 @@ public class NovaProviderTest {
 		when(server1.getId()).thenReturn(novaInstanceId1);
 		when(server1.getAddresses()).thenReturn(addresses1);
 		when(server1.getName()).thenReturn(decoratedInstanceName1);
-		when(server1.getStatus()).thenReturn(Status.BUILD)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.DELETED);
 		
 		ServerCreated servercreated2 = mock(ServerCreated.class);
 		Address address2 = mock(Address.class);
@@ -692,10 +780,6 @@ public class NovaProviderTest {
 		when(server2.getId()).thenReturn(novaInstanceId2);
 		when(server2.getAddresses()).thenReturn(addresses2);
 		when(server2.getName()).thenReturn(decoratedInstanceName2);
-		when(server2.getStatus()).thenReturn(Status.BUILD)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.ACTIVE)
-				.thenReturn(Status.DELETED);
 
 		FloatingIP floatingIp1 = mock(FloatingIP.class);
 		when(floatingIp1.getId()).thenReturn(floatingIpId1);
@@ -740,72 +824,30 @@ public class NovaProviderTest {
 		.thenReturn(servercreated2);
 		when(serverApi.get(novaInstanceId1)).thenReturn(server1);
 		when(serverApi.get(novaInstanceId2)).thenReturn(server2);
-		when(serverApi.delete(novaInstanceId1)).thenReturn(true);
-		when(serverApi.delete(novaInstanceId2)).thenReturn(true);
+		stubStatusUntilDeleted(server1, novaInstanceId1, Status.BUILD, Status.ACTIVE);
+		stubStatusUntilDeleted(server2, novaInstanceId2, Status.BUILD, Status.ACTIVE);
 		
 		Volume volume1 = mock(Volume.class);
 		when(volume1.getId()).thenReturn(volumeId1);
 		when(volume1.getMetadata()).thenReturn(meta1);
-		when(volume1.getStatus()).thenReturn(Volume.Status.CREATING)
-				.thenReturn(Volume.Status.AVAILABLE)
-				.thenReturn(Volume.Status.ATTACHING)
-				.thenReturn(Volume.Status.IN_USE)
-				.thenReturn(Volume.Status.AVAILABLE)
-				.thenReturn(Volume.Status.DELETING);
-		// At last the volume is deleted, so return null.
-		when(volumeApi.get(volumeId1)).thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(volume1)
-				.thenReturn(null);
-		when(volumeApi.delete(volumeId1)).thenReturn(true);
+		stubStatusUntilDeleted(volume1, volumeId1, Volume.Status.CREATING, Volume.Status.AVAILABLE,
+				Volume.Status.ATTACHING, Volume.Status.IN_USE, Volume.Status.AVAILABLE);
 		
 		Volume volume2 = mock(Volume.class);
 		// volume2 will fail.
 		when(volume2.getId()).thenReturn(volumeId2);
 		when(volume2.getMetadata()).thenReturn(meta2);
-		when(volume2.getStatus()).thenReturn(Volume.Status.CREATING)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.ERROR)
-				.thenReturn(Volume.Status.DELETING);
-		// At last the volume is deleted, so return null.
-		when(volumeApi.get(volumeId2)).thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(volume2)
-				.thenReturn(null);
-		when(volumeApi.delete(volumeId2)).thenReturn(true);
+		stubStatusUntilDeleted(volume2, volumeId2, Volume.Status.CREATING, Volume.Status.ERROR);
 		
 		when(volumeApi.create(anyInt(), any(CreateVolumeOptions.class)))
 			.thenReturn(volume1)
 			.thenReturn(volume2);
 
-		// The first thenReturn is at the beginning of allocate->releaseResources.
-		// So return an empty list.
-		FluentIterable<? extends Volume> emptyVolumes = FluentIterable.from(Lists.newArrayList());
+		// Allocate reconciles with the existing servers instead of releasing first, so the
+		// volumes are only listed by the release of the failed allocation.
 		FluentIterable<? extends Volume> volumes1 = FluentIterable.from(Lists.newArrayList(volume1));
 		OngoingStubbing<FluentIterable<? extends Volume>> stub = when(volumeApi.listInDetail());
-		stub.thenReturn(emptyVolumes)
-			.thenReturn(volumes1);
+		stub.thenReturn(volumes1);
 		
 		VolumeAttachment volumeAttachment = mock(VolumeAttachment.class);
 		when(volumeAttachmentApi.attachVolumeToServerAsDevice(volumeId1, instanceId1, "")).thenReturn(volumeAttachment);
@@ -1220,11 +1262,9 @@ public class NovaProviderTest {
 		
 		Server server1 = mock(Server.class);
 		when(server1.getId()).thenReturn(novaInstanceId1);
-		when(server1.getStatus()).thenReturn(Status.DELETED);
 		
 		Server server2 = mock(Server.class);
 		when(server2.getId()).thenReturn(novaInstanceId2);
-		when(server2.getStatus()).thenReturn(Status.DELETED);
 		
 		Map<String, String> meta1 = Maps.newHashMap();
 		meta1.put("DIRECTOR_ID", instanceId1);
@@ -1253,8 +1293,8 @@ public class NovaProviderTest {
 		doNothing().when(floatingIpApi).delete(floatingIpId1);
 		doNothing().when(floatingIpApi).delete(floatingIpId2);
 		
-		when(serverApi.delete(novaInstanceId1)).thenReturn(true);
-		when(serverApi.delete(novaInstanceId2)).thenReturn(true);
+		stubStatusUntilDeleted(server1, novaInstanceId1, Status.ACTIVE);
+		stubStatusUntilDeleted(server2, novaInstanceId2, Status.ACTIVE);
 		
 		novaProvider.delete(template, instanceIds);
 		
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Tests {@link NovaStackTemplate}.
+ */
+public class NovaStackTemplateTest {
+
+	private static NovaStackTemplate newTemplate() {
+		return new NovaStackTemplate("rhel6", "m1.large", "key", ImmutableList.of("net-1", "net-2"), "zone1",
+				ImmutableList.of("default"));
+	}
+
+	@Test
+	public void testRender_AttachedVolumesAndFloatingIp() {
+		NovaStackTemplate template = newTemplate().floatingIpPool("public").volumes(2, 10, false);
+		template.addServer("instance-1", "director-instance-1", ImmutableMap.of("DIRECTOR_ID", "instance-1"));
+		JsonObject resources = parse(template).getAsJsonObject("resources");
+
+		JsonObject server = resources.getAsJsonObject("server-instance-1");
+		assertThat(server.get("type").getAsString()).isEqualTo("OS::Nova::Server");
+		JsonObject properties = server.getAsJsonObject("properties");
+		assertThat(properties.get("name").getAsString()).isEqualTo("director-instance-1");
+		assertThat(properties.getAsJsonObject("metadata").get("DIRECTOR_ID").getAsString()).isEqualTo("instance-1");
+		assertThat(properties.has("block_device_mapping_v2")).isFalse();
+		// A NIC on each network, in order.
+		assertThat(properties.getAsJsonArray("networks")).hasSize(2);
+		assertThat(properties.getAsJsonArray("networks").get(1).getAsJsonObject().get("network").getAsString())
+				.isEqualTo("net-2");
+
+		// The volumes are tagged like those the plugin creates, so they are found on release.
+		JsonObject volume = resources.getAsJsonObject("volume-instance-1-1");
+		assertThat(volume.getAsJsonObject("properties").get("size").getAsInt()).isEqualTo(10);
+		assertThat(volume.getAsJsonObject("properties").getAsJsonObject("metadata").get("DIRECTOR_ID")
+				.getAsString()).isEqualTo("instance-1");
+		assertThat(resources.getAsJsonObject("volume-attachment-instance-1-1").getAsJsonObject("properties")
+				.getAsJsonObject("instance_uuid").get("get_resource").getAsString()).isEqualTo("server-instance-1");
+		assertThat(resources.getAsJsonObject("floating-ip-instance-1").getAsJsonObject("properties")
+				.get("pool").getAsString()).isEqualTo("public");
+		assertThat(resources.has("floating-ip-association-instance-1")).isTrue();
+		// A server, two volumes with their attachments, a floating IP and its association.
+		assertThat(resources.entrySet()).hasSize(7);
+
+		JsonObject output = parse(template).getAsJsonObject("outputs")
+				.getAsJsonObject(NovaStackTemplate.getServerOutputKey("instance-1"));
+		assertThat(output.getAsJsonObject("value").get("get_resource").getAsString()).isEqualTo("server-instance-1");
+		assertThat(NovaStackTemplate.getInstanceId(NovaStackTemplate.getServerOutputKey("instance-1")))
+				.isEqualTo("instance-1");
+	}
+
+	@Test
+	public void testRender_BootVolumes() {
+		NovaStackTemplate template = newTemplate().volumes(2, 10, true);
+		template.addServer("instance-1", "director-instance-1", ImmutableMap.of("DIRECTOR_ID", "instance-1"));
+		JsonObject resources = parse(template).getAsJsonObject("resources");
+
+		// The volumes are mapped at boot, after the image.
+		assertThat(resources.entrySet()).hasSize(1);
+		assertThat(resources.getAsJsonObject("server-instance-1").getAsJsonObject("properties")
+				.getAsJsonArray("block_device_mapping_v2")).hasSize(3);
+	}
+
+	@Test
+	public void testRender_LocalDisks() {
+		NovaStackTemplate template = newTemplate().localDisks(2, 200);
+		template.addServer("instance-1", "director-instance-1", ImmutableMap.of("DIRECTOR_ID", "instance-1"));
+		JsonObject resources = parse(template).getAsJsonObject("resources");
+
+		// The local disks come out of the ephemeral disk, with no Cinder volume.
+		assertThat(resources.entrySet()).hasSize(1);
+		JsonArray mappings = resources.getAsJsonObject("server-instance-1").getAsJsonObject("properties")
+				.getAsJsonArray("block_device_mapping_v2");
+		assertThat(mappings).hasSize(2);
+		JsonObject mapping = mappings.get(1).getAsJsonObject();
+		assertThat(mapping.get("device_name").getAsString()).isEqualTo("vdc");
+		assertThat(mapping.get("ephemeral_size").getAsInt()).isEqualTo(200);
+	}
+
+	@Test
+	public void testRender_ServerGroup() {
+		NovaStackTemplate template = newTemplate().serverGroup("director-group", "anti-affinity");
+		template.addServer("instance-1", "director-instance-1", ImmutableMap.of("DIRECTOR_ID", "instance-1"));
+		JsonObject resources = parse(template).getAsJsonObject("resources");
+
+		JsonObject group = resources.getAsJsonObject("server-group");
+		assertThat(group.get("type").getAsString()).isEqualTo("OS::Nova::ServerGroup");
+		assertThat(group.getAsJsonObject("properties").getAsJsonArray("policies").get(0).getAsString())
+				.isEqualTo("anti-affinity");
+		// The servers are scheduled in the group.
+		assertThat(resources.getAsJsonObject("server-instance-1").getAsJsonObject("properties")
+				.getAsJsonObject("scheduler_hints").getAsJsonObject("group").get("get_resource").getAsString())
+				.isEqualTo("server-group");
+	}
+
+	private static JsonObject parse(NovaStackTemplate template) {
+		return new JsonParser().parse(template.render()).getAsJsonObject();
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link RackMapping}.
+ */
+public class RackMappingTest {
+
+	@Test
+	public void testGetRack() {
+		RackMapping rackMapping = RackMapping.parse("compute-1=/rack1, host-2=/rack2, zone1=/rack3");
+		assertThat(rackMapping.getRack("compute-1", "host-2", "zone1")).isEqualTo("/rack1");
+		assertThat(rackMapping.getRack(null, "host-2", "zone1")).isEqualTo("/rack2");
+		assertThat(rackMapping.getRack("compute-9", "host-9", "zone1")).isEqualTo("/rack3");
+		assertThat(rackMapping.getRack(null, null, null)).isEqualTo(RackMapping.DEFAULT_RACK);
+		assertThat(RackMapping.parse(null).getRack("compute-1", null, null)).isEqualTo(RackMapping.DEFAULT_RACK);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_RelativeRack() {
+		RackMapping.parse("compute-1=rack1");
+	}
+}
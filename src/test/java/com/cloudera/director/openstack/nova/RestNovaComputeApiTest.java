@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cloudera.director.openstack.OpenStackCredentials;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests {@link RestNovaComputeApi} against a local stand-in for Keystone and Nova.
+ */
+@SuppressWarnings("restriction")
+public class RestNovaComputeApiTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String REGION = "regionOne";
+
+	private HttpServer server;
+	private String baseUrl;
+	private RestNovaComputeApi computeApi;
+	private final List<String> requests = Lists.newArrayList();
+	private JsonObject createdServerGroup;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+		server.createContext("/v2.0/tokens", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"access\":{\"token\":{\"id\":\"token-1\","
+						+ "\"tenant\":{\"id\":\"project-1\",\"name\":\"admin\"}},"
+						+ "\"serviceCatalog\":[{\"type\":\"compute\",\"endpoints\":["
+						+ "{\"region\":\"" + REGION + "\",\"publicURL\":\"" + baseUrl + "/v2/project-1\"}]}]}}");
+			}
+		});
+		server.createContext("/v2/project-1/limits", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "{\"limits\":{\"rate\":[],\"absolute\":{\"maxTotalInstances\":10,"
+						+ "\"totalInstancesUsed\":4,\"maxTotalCores\":-1,\"totalCoresUsed\":16,"
+						+ "\"maxServerGroups\":null}}}");
+			}
+		});
+		server.createContext("/v2/project-1/os-server-groups", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String method = exchange.getRequestMethod();
+				String path = exchange.getRequestURI().getPath();
+				requests.add(method + " " + path);
+				if ("GET".equals(method)) {
+					respond(exchange, 200, "{\"server_groups\":[{\"id\":\"group-1\",\"name\":\"director-1-group\","
+							+ "\"policies\":[\"anti-affinity\"],\"members\":[\"server-1\",\"server-2\"]}]}");
+				} else if ("POST".equals(method)) {
+					createdServerGroup = new JsonParser().parse(readBody(exchange)).getAsJsonObject();
+					respond(exchange, 200, "{\"server_group\":{\"id\":\"group-2\",\"name\":\"director-2-group\","
+							+ "\"policies\":[\"anti-affinity\"],\"members\":[]}}");
+				} else if (path.endsWith("/group-1")) {
+					exchange.sendResponseHeaders(204, -1);
+					exchange.close();
+				} else {
+					respond(exchange, 404, "{\"itemNotFound\":{\"code\":404}}");
+				}
+			}
+		});
+		server.start();
+		computeApi = new RestNovaComputeApi(
+				new OpenStackCredentials(baseUrl + "/v2.0/", "admin", "director", "secret"), REGION);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGetProjectId() {
+		// The project ID comes with the token, rather than from the tenant name.
+		assertThat(computeApi.getProjectId()).isEqualTo("project-1");
+	}
+
+	@Test
+	public void testGetAbsoluteLimits() {
+		assertThat(computeApi.getAbsoluteLimits())
+				.containsEntry("maxTotalInstances", 10)
+				.containsEntry("totalInstancesUsed", 4)
+				.containsEntry("maxTotalCores", -1)
+				.containsEntry("totalCoresUsed", 16)
+				.doesNotContainKey("maxServerGroups");
+	}
+
+	@Test
+	public void testFindServerGroup() {
+		NovaServerGroup serverGroup = computeApi.findServerGroup("director-1-group");
+		assertThat(serverGroup.getId()).isEqualTo("group-1");
+		assertThat(serverGroup.getMembers()).containsOnly("server-1", "server-2");
+		assertThat(computeApi.findServerGroup("director-3-group")).isNull();
+	}
+
+	@Test
+	public void testCreateServerGroup() {
+		NovaServerGroup serverGroup = computeApi.createServerGroup("director-2-group", "anti-affinity");
+		assertThat(serverGroup.getId()).isEqualTo("group-2");
+		assertThat(serverGroup.getMembers()).isEmpty();
+		JsonObject request = createdServerGroup.getAsJsonObject("server_group");
+		assertThat(request.get("name").getAsString()).isEqualTo("director-2-group");
+		assertThat(request.getAsJsonArray("policies").get(0).getAsString()).isEqualTo("anti-affinity");
+	}
+
+	@Test
+	public void testDeleteServerGroup() {
+		computeApi.deleteServerGroup("group-1");
+		// A group which is gone already is not an error.
+		computeApi.deleteServerGroup("group-3");
+		assertThat(requests).containsExactly("DELETE /v2/project-1/os-server-groups/group-1",
+				"DELETE /v2/project-1/os-server-groups/group-3");
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		try {
+			return new String(ByteStreams.toByteArray(in), UTF8);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+}
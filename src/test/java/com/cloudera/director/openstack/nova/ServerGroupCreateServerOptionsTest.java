@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.jclouds.http.HttpRequest;
+import org.jclouds.json.Json;
+import org.jclouds.json.internal.GsonWrapper;
+import org.jclouds.util.Strings2;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+
+/**
+ * Tests {@link ServerGroupCreateServerOptions}.
+ */
+public class ServerGroupCreateServerOptionsTest {
+
+	@Test
+	public void testBindToRequest_AddsSchedulerHint() throws IOException {
+		ServerGroupCreateServerOptions options = new ServerGroupCreateServerOptions("group-1");
+		options.keyPairName("key-1").metadata(ImmutableMap.of("DIRECTOR_ID", "instance-1"));
+		// jclouds injects the JSON binder of the options before binding them.
+		Guice.createInjector(new AbstractModule() {
+			@Override
+			protected void configure() {
+				bind(Json.class).toInstance(new GsonWrapper(new Gson()));
+			}
+		}).injectMembers(options);
+		Map<String, Object> postParams = ImmutableMap.<String, Object>of(
+				"name", "server-1", "imageRef", "image-1", "flavorRef", "flavor-1");
+
+		HttpRequest request = options.bindToRequest(
+				HttpRequest.builder().method("POST").endpoint("http://127.0.0.1/v2/project-1/servers").build(),
+				postParams);
+
+		assertThat(request.getPayload().getContentMetadata().getContentType()).isEqualTo("application/json");
+		JsonObject body = new JsonParser().parse(Strings2.toStringAndClose(request.getPayload().openStream()))
+				.getAsJsonObject();
+		assertThat(body.getAsJsonObject("os:scheduler_hints").get("group").getAsString()).isEqualTo("group-1");
+		JsonObject server = body.getAsJsonObject("server");
+		assertThat(server.get("name").getAsString()).isEqualTo("server-1");
+		assertThat(server.get("key_name").getAsString()).isEqualTo("key-1");
+		assertThat(server.getAsJsonObject("metadata").get("DIRECTOR_ID").getAsString()).isEqualTo("instance-1");
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link StragglerDetector}.
+ */
+public class StragglerDetectorTest {
+
+	@Test
+	public void testGetStragglers_AgainstMedian() {
+		StragglerDetector detector = new StragglerDetector(2, 1000);
+		for (String id : new String[] { "a", "b", "c", "d" }) {
+			detector.started(id, 0);
+		}
+		detector.ready("a", 3000);
+		// Less than half of the cohort is ready.
+		assertThat(detector.getStragglers(60000)).isEmpty();
+
+		detector.ready("b", 5000);
+		assertThat(detector.getThresholdMillis()).isEqualTo(8000);
+		assertThat(detector.getStragglers(8000)).isEmpty();
+		assertThat(detector.getStragglers(8001)).containsOnly("c", "d");
+
+		detector.forget("c");
+		assertThat(detector.getStragglers(8001)).containsOnly("d");
+	}
+
+	@Test
+	public void testGetStragglers_Minimum() {
+		StragglerDetector detector = new StragglerDetector(3, 10000);
+		detector.started("a", 0);
+		detector.started("b", 0);
+		detector.ready("a", 100);
+
+		assertThat(detector.getThresholdMillis()).isEqualTo(10000);
+		assertThat(detector.getStragglers(9000)).isEmpty();
+		assertThat(detector.getStragglers(10001)).containsOnly("b");
+	}
+
+	@Test
+	public void testGetStragglers_ReplacementStartsAfresh() {
+		StragglerDetector detector = new StragglerDetector(2, 0);
+		detector.started("a", 0);
+		detector.started("b", 0);
+		detector.ready("a", 1000);
+		detector.replaced("b", "b-replacement", 5000);
+
+		assertThat(detector.getStragglers(6000)).isEmpty();
+		assertThat(detector.getStragglers(7001)).containsOnly("b-replacement");
+	}
+}
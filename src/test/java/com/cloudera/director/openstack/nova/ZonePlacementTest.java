@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Intel Corporation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.director.openstack.nova;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link ZonePlacement}.
+ */
+public class ZonePlacementTest {
+
+	@Test
+	public void testAssign_Weighted() {
+		ZonePlacement placement = ZonePlacement.parse("zone1:2, zone2");
+		assertThat(placement.getZones()).containsExactly("zone1", "zone2");
+
+		Map<String, String> zones = placement.assign(ImmutableList.of("a", "b", "c", "d", "e", "f"));
+		// The zones are interleaved in proportion to their weights.
+		assertThat(zones.values()).containsExactly("zone1", "zone2", "zone1", "zone1", "zone2", "zone1");
+
+		assertThat(ZonePlacement.parse("").assign(ImmutableList.of("a"))).containsEntry("a", null);
+	}
+
+	@Test
+	public void testGetFailoverZone() {
+		ZonePlacement placement = ZonePlacement.parse("zone1,zone2,zone3");
+		assertThat(placement.getFailoverZone("zone2")).isEqualTo("zone3");
+		assertThat(placement.getFailoverZone("zone2,zone3")).isEqualTo("zone1");
+		assertThat(placement.getFailoverZone("zone2,zone3,zone1")).isNull();
+		assertThat(placement.getFailoverZone(null)).isNull();
+
+		String record = ZonePlacement.record(ZonePlacement.record(null, "zone2"), "zone3");
+		assertThat(record).isEqualTo("zone2,zone3");
+		assertThat(ZonePlacement.getZone(record)).isEqualTo("zone3");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParse_InvalidWeight() {
+		ZonePlacement.parse("zone1:0");
+	}
+}
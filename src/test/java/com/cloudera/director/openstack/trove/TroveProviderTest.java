@@ -54,6 +54,7 @@ import static com.cloudera.director.openstack.trove.TroveInstanceTemplateConfigu
 import static com.cloudera.director.openstack.trove.TroveProviderConfigurationProperty.REGION;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
@@ -223,8 +224,8 @@ public class TroveProviderTest {
 		String decoratedInstanceName2 = INSTANCE_NAME_PREFIX.unwrap().getDefaultValue() + "-" + instanceNameSuffix2;		
 		Instance instanceCreated1 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName1, instanceNameSuffix1, Status.ACTIVE);
 		Instance instanceCreated2 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName2, instanceNameSuffix2, Status.ACTIVE);
-		when(instanceCreated1.getName()).thenReturn(decoratedInstanceName1, decoratedInstanceName1, InetAddress.getLocalHost().getHostName());
-		when(instanceCreated2.getName()).thenReturn(decoratedInstanceName2, decoratedInstanceName2, InetAddress.getLocalHost().getHostName());
+		when(instanceCreated1.getName()).thenReturn(decoratedInstanceName1, InetAddress.getLocalHost().getHostName());
+		when(instanceCreated2.getName()).thenReturn(decoratedInstanceName2, InetAddress.getLocalHost().getHostName());
 		
 		List<Instance> instanceList = ImmutableList.of(instanceCreated1, instanceCreated2);
 		FluentIterable<Instance> instances = FluentIterable.from(instanceList);
@@ -250,8 +251,8 @@ public class TroveProviderTest {
 		String decoratedInstanceName2 = INSTANCE_NAME_PREFIX.unwrap().getDefaultValue() + "-" + instanceNameSuffix2;		
 		Instance instanceCreated1 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName1, instanceNameSuffix1, Status.BUILD);
 		Instance instanceCreated2 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName2, instanceNameSuffix2, Status.ACTIVE);
-		when(instanceCreated1.getName()).thenReturn(decoratedInstanceName1, decoratedInstanceName1, InetAddress.getLocalHost().getHostName());
-		when(instanceCreated2.getName()).thenReturn(decoratedInstanceName2, decoratedInstanceName2, InetAddress.getLocalHost().getHostName());
+		when(instanceCreated1.getName()).thenReturn(decoratedInstanceName1, InetAddress.getLocalHost().getHostName());
+		when(instanceCreated2.getName()).thenReturn(decoratedInstanceName2, InetAddress.getLocalHost().getHostName());
 		List<Instance> instanceList = ImmutableList.of(instanceCreated1, instanceCreated2);
 		FluentIterable<Instance> instances = FluentIterable.from(instanceList);
 		when(instanceApi.list()).thenReturn(instances);
@@ -298,6 +299,43 @@ public class TroveProviderTest {
 		verify(instanceApi, times(1)).delete(instanceNameSuffix);
 	}
 	
+	@Test
+	public void testDelete_StopsListingOnceResolved() throws InterruptedException {
+		Configured configuration = prepareTemplateConfig();
+		TroveInstanceTemplate template = troveProvider.createResourceTemplate("trove-template", configuration, new HashMap<String, String>());
+		String instanceNameSuffix1 = UUID.randomUUID().toString();
+		String decoratedInstanceName1 = INSTANCE_NAME_PREFIX.unwrap().getDefaultValue() + "-" + instanceNameSuffix1;
+		String instanceNameSuffix2 = UUID.randomUUID().toString();
+		String decoratedInstanceName2 = INSTANCE_NAME_PREFIX.unwrap().getDefaultValue() + "-" + instanceNameSuffix2;
+		Instance instanceCreated1 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName1, instanceNameSuffix1, Status.ACTIVE);
+		Instance instanceCreated2 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName2, instanceNameSuffix2, Status.ACTIVE);
+		List<Instance> instanceList = ImmutableList.of(instanceCreated1, instanceCreated2);
+		FluentIterable<Instance> instances = FluentIterable.from(instanceList);
+		when(instanceApi.list()).thenReturn(instances);
+		
+		troveProvider.delete(template, Lists.newArrayList(instanceNameSuffix1));
+		verify(instanceApi, times(1)).delete(instanceNameSuffix1);
+		verify(instanceCreated1, times(1)).getName();
+		verify(instanceCreated2, never()).getName();
+	}
+	
+	@Test
+	public void testDelete_DuplicateName_FirstListedIsKept() throws InterruptedException {
+		Configured configuration = prepareTemplateConfig();
+		TroveInstanceTemplate template = troveProvider.createResourceTemplate("trove-template", configuration, new HashMap<String, String>());
+		String instanceNameSuffix = UUID.randomUUID().toString();
+		String decoratedInstanceName = INSTANCE_NAME_PREFIX.unwrap().getDefaultValue() + "-" + instanceNameSuffix;
+		Instance instanceCreated1 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName, "trove-1", Status.ACTIVE);
+		Instance instanceCreated2 = mockInstance(TEST_FLAVOR_ID, Integer.parseInt(TEST_VOLUME_SIZE), decoratedInstanceName, "trove-2", Status.ACTIVE);
+		List<Instance> instanceList = ImmutableList.of(instanceCreated1, instanceCreated2);
+		FluentIterable<Instance> instances = FluentIterable.from(instanceList);
+		when(instanceApi.list()).thenReturn(instances);
+		
+		troveProvider.delete(template, Lists.newArrayList(instanceNameSuffix));
+		verify(instanceApi, times(1)).delete("trove-1");
+		verify(instanceApi, never()).delete("trove-2");
+	}
+	
 	@Test
 	public void testGetInstanceState() {
 		Configured configuration = prepareTemplateConfig();